@@ -0,0 +1,115 @@
+package sk.stigo.tensorflowliteocr;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import sk.stigo.tensorflowliteocr.utils.OCRModelExecutor;
+import sk.stigo.tensorflowliteocr.utils.OCRResult;
+
+/**
+ * Runs {@link OCRModelExecutor} from several threads at once over the bundled photos
+ * and checks that every call returns the same texts as a sequential run. Sequential
+ * and concurrent throughput are written to logcat with the tag {@value #TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConcurrentRecognitionStressTest {
+    private static final String TAG = "ConcurrentRecognitionStressTest";
+    private static final int CALLER_THREADS = 8;
+    private static final int ITERATIONS_PER_CALLER = 5;
+
+    private OCRModelExecutor ocrModelExecutor;
+    private List<String> photos;
+    private List<Bitmap> images;
+
+    @Before
+    public void setUp() throws IOException {
+        OpenCVLoader.initDebug();
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        ocrModelExecutor = new OCRModelExecutor(context);
+
+        photos = new ArrayList<>();
+        images = new ArrayList<>();
+        for (String photo : context.getAssets().list("photo")) {
+            try (InputStream inputStream = context.getAssets().open("photo/" + photo)) {
+                photos.add(photo);
+                images.add(BitmapFactory.decodeStream(inputStream));
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        ocrModelExecutor.close();
+    }
+
+    @Test
+    public void concurrentCallsMatchSequentialResults() throws Exception {
+        List<List<String>> expected = new ArrayList<>();
+        long start = System.nanoTime();
+        for (Bitmap image : images) {
+            expected.add(ocrModelExecutor.run(image).getTexts());
+        }
+        long sequentialNanos = System.nanoTime() - start;
+
+        ExecutorService callers = Executors.newFixedThreadPool(CALLER_THREADS);
+        List<Future<Integer>> futures = new ArrayList<>();
+        start = System.nanoTime();
+        try {
+            for (int caller = 0; caller < CALLER_THREADS; caller++) {
+                int firstImage = caller;
+                futures.add(callers.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        int calls = 0;
+                        for (int i = 0; i < ITERATIONS_PER_CALLER * images.size(); i++) {
+                            // Each caller walks the photos from a different offset so
+                            // different images are in flight at the same time.
+                            int index = (firstImage + i) % images.size();
+                            OCRResult result = ocrModelExecutor.run(images.get(index));
+                            assertEquals(photos.get(index), expected.get(index), result.getTexts());
+                            calls++;
+                        }
+                        return calls;
+                    }
+                }));
+            }
+
+            int calls = 0;
+            for (Future<Integer> future : futures) {
+                calls += future.get();
+            }
+            long concurrentNanos = System.nanoTime() - start;
+
+            Log.i(TAG, String.format(
+                    "sequential %.1f images/s, %d callers %.1f images/s",
+                    images.size() / (sequentialNanos / 1e9),
+                    CALLER_THREADS,
+                    calls / (concurrentNanos / 1e9)
+            ));
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+}
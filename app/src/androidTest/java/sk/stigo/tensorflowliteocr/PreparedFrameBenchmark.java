@@ -0,0 +1,193 @@
+package sk.stigo.tensorflowliteocr;
+
+import static org.opencv.android.Utils.bitmapToMat;
+import static org.opencv.android.Utils.matToBitmap;
+import static org.opencv.imgproc.Imgproc.boxPoints;
+import static org.opencv.imgproc.Imgproc.getPerspectiveTransform;
+import static org.opencv.imgproc.Imgproc.warpPerspective;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import sk.stigo.tensorflowliteocr.core.PreparedFrame;
+import sk.stigo.tensorflowliteocr.core.RotatedNms;
+import sk.stigo.tensorflowliteocr.core.TextRecognizer;
+import sk.stigo.tensorflowliteocr.utils.BitmapPixelBuffer;
+import sk.stigo.tensorflowliteocr.utils.ImageUtils;
+
+/**
+ * Compares how warping latency grows with the number of detected boxes when the
+ * source bitmap is converted once per box (old behaviour) and once per frame.
+ * Results are written to logcat with the tag {@value #TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PreparedFrameBenchmark {
+    private static final String TAG = "PreparedFrameBenchmark";
+    private static final int[] BOX_COUNTS = new int[]{1, 2, 4, 8, 16, 32};
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int ITERATIONS = 5;
+    private static final int RECOGNITION_IMAGE_HEIGHT = 31;
+    private static final int RECOGNITION_IMAGE_WIDTH = 200;
+
+    private Bitmap image;
+    private Bitmap recognitionBitmap;
+    private ByteBuffer recognitionInput;
+
+    @Before
+    public void setUp() throws IOException {
+        OpenCVLoader.initDebug();
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        try (InputStream inputStream = context.getAssets().open("photo/raw_g1.jpg")) {
+            image = BitmapFactory.decodeStream(inputStream);
+        }
+        recognitionBitmap = ImageUtils.createEmptyBitmap(
+                RECOGNITION_IMAGE_WIDTH,
+                RECOGNITION_IMAGE_HEIGHT,
+                0,
+                Bitmap.Config.ARGB_8888
+        );
+        recognitionInput = ByteBuffer.allocateDirect(TextRecognizer.CROP_SIZE_BYTES);
+        recognitionInput.order(ByteOrder.nativeOrder());
+    }
+
+    @Test
+    public void warpLatencyByBoxCount() {
+        Log.i(TAG, String.format("image %dx%d", image.getWidth(), image.getHeight()));
+        Log.i(TAG, "boxes, per-box conversion [ms], prepared frame [ms]");
+
+        for (int boxCount : BOX_COUNTS) {
+            float[] boxes = createBoxes(boxCount);
+
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                warpPerBox(boxes);
+                warpPrepared(boxes);
+            }
+
+            long perBoxNanos = 0;
+            long preparedNanos = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                long start = System.nanoTime();
+                warpPerBox(boxes);
+                perBoxNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                warpPrepared(boxes);
+                preparedNanos += System.nanoTime() - start;
+            }
+
+            Log.i(TAG, String.format(
+                    "%d, %.2f, %.2f",
+                    boxCount,
+                    perBoxNanos / 1e6 / ITERATIONS,
+                    preparedNanos / 1e6 / ITERATIONS
+            ));
+        }
+    }
+
+    private float[] createBoxes(int boxCount) {
+        float[] boxes = new float[boxCount * RotatedNms.BOX_SIZE];
+        int columns = (int) Math.ceil(Math.sqrt(boxCount));
+        double cellWidth = (double) image.getWidth() / columns;
+        double cellHeight = (double) image.getHeight() / columns;
+
+        for (int i = 0; i < boxCount; i++) {
+            double centerX = (i % columns + 0.5) * cellWidth;
+            double centerY = (i / columns + 0.5) * cellHeight;
+            int box = i * RotatedNms.BOX_SIZE;
+            boxes[box] = (float) centerX;
+            boxes[box + 1] = (float) centerY;
+            boxes[box + 2] = (float) (cellWidth * 0.6);
+            boxes[box + 3] = (float) (cellHeight * 0.2);
+            boxes[box + 4] = (i % 5) * 3f;
+        }
+        return boxes;
+    }
+
+    private void warpPerBox(float[] boxes) {
+        MatOfPoint2f targetVerticesMat = new MatOfPoint2f(
+                new Point(0, (RECOGNITION_IMAGE_HEIGHT - 1)),
+                new Point(0, 0),
+                new Point((RECOGNITION_IMAGE_WIDTH - 1), 0),
+                new Point((RECOGNITION_IMAGE_WIDTH - 1), (RECOGNITION_IMAGE_HEIGHT - 1))
+        );
+
+        for (int i = 0; i < boxes.length / RotatedNms.BOX_SIZE; i++) {
+            int offset = i * RotatedNms.BOX_SIZE;
+            RotatedRect box = new RotatedRect(
+                    new Point(boxes[offset], boxes[offset + 1]),
+                    new Size(boxes[offset + 2], boxes[offset + 3]),
+                    boxes[offset + 4]
+            );
+            Mat boundingBoxPointsMat = new Mat();
+            boxPoints(box, boundingBoxPointsMat);
+            MatOfPoint2f srcVerticesMat = new MatOfPoint2f(
+                    new Point(boundingBoxPointsMat.get(0, 0)[0], boundingBoxPointsMat.get(0, 1)[0]),
+                    new Point(boundingBoxPointsMat.get(1, 0)[0], boundingBoxPointsMat.get(1, 1)[0]),
+                    new Point(boundingBoxPointsMat.get(2, 0)[0], boundingBoxPointsMat.get(2, 1)[0]),
+                    new Point(boundingBoxPointsMat.get(3, 0)[0], boundingBoxPointsMat.get(3, 1)[0])
+            );
+            Mat rotationMatrix = getPerspectiveTransform(srcVerticesMat, targetVerticesMat);
+            Mat recognitionBitmapMat = new Mat();
+            Mat srcBitmapMat = new Mat();
+
+            bitmapToMat(image, srcBitmapMat);
+            warpPerspective(
+                    srcBitmapMat,
+                    recognitionBitmapMat,
+                    rotationMatrix,
+                    new Size(RECOGNITION_IMAGE_WIDTH, RECOGNITION_IMAGE_HEIGHT)
+            );
+            matToBitmap(recognitionBitmapMat, recognitionBitmap);
+
+            boundingBoxPointsMat.release();
+            srcVerticesMat.release();
+            rotationMatrix.release();
+            recognitionBitmapMat.release();
+            srcBitmapMat.release();
+        }
+        targetVerticesMat.release();
+    }
+
+    private void warpPrepared(float[] boxes) {
+        PreparedFrame preparedFrame = new PreparedFrame(
+                new BitmapPixelBuffer(image),
+                1f,
+                1f,
+                RECOGNITION_IMAGE_WIDTH,
+                RECOGNITION_IMAGE_HEIGHT
+        );
+        try {
+            for (int i = 0; i < boxes.length / RotatedNms.BOX_SIZE; i++) {
+                recognitionInput.clear();
+                preparedFrame.warp(
+                        preparedFrame.getSourceVertices(boxes, i),
+                        recognitionInput,
+                        TextRecognizer.IMAGE_MEAN,
+                        TextRecognizer.IMAGE_STD
+                );
+            }
+        } finally {
+            preparedFrame.release();
+        }
+    }
+}
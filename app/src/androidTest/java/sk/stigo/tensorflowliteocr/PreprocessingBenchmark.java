@@ -0,0 +1,121 @@
+package sk.stigo.tensorflowliteocr;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import sk.stigo.tensorflowliteocr.core.ImagePreprocessor;
+import sk.stigo.tensorflowliteocr.core.TextRecognizer;
+import sk.stigo.tensorflowliteocr.utils.BitmapPixelBuffer;
+import sk.stigo.tensorflowliteocr.utils.ImageUtils;
+
+/**
+ * Compares allocated bytes and per-call latency of the per-call TensorImage
+ * pipelines in {@link ImageUtils} with the cached {@link ImagePreprocessor}s.
+ * Results are written to logcat with the tag {@value #TAG}. Allocations are counted
+ * for the whole process, so other threads of the test app add to them.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PreprocessingBenchmark {
+    private static final String TAG = "PreprocessingBenchmark";
+    private static final int EAST_DETECTION_IMAGE_SIZE = 320;
+    private static final float[] EAST_DETECTION_IMAGE_MEANS = new float[]{103.94f, 116.78f, 123.68f};
+    private static final float[] EAST_DETECTION_IMAGE_STDS = new float[]{1f, 1f, 1f};
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int ITERATIONS = 50;
+
+    private Bitmap image;
+    private Bitmap crop;
+    private int[] pixels;
+
+    @Before
+    public void setUp() throws IOException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        try (InputStream inputStream = context.getAssets().open("photo/raw_g1.jpg")) {
+            image = BitmapFactory.decodeStream(inputStream);
+        }
+        crop = Bitmap.createScaledBitmap(image, TextRecognizer.IMAGE_WIDTH, TextRecognizer.IMAGE_HEIGHT, true);
+        pixels = new int[image.getWidth() * image.getHeight()];
+        image.getPixels(pixels, 0, image.getWidth(), 0, 0, image.getWidth(), image.getHeight());
+    }
+
+    @Test
+    public void detectionPreprocessing() {
+        ImagePreprocessor preprocessor = ImagePreprocessor.forDetection(
+                EAST_DETECTION_IMAGE_SIZE,
+                EAST_DETECTION_IMAGE_SIZE,
+                EAST_DETECTION_IMAGE_MEANS,
+                EAST_DETECTION_IMAGE_STDS
+        );
+
+        measure("detection, ImageUtils", () -> ImageUtils.bitmapToTensorImageForDetection(
+                image,
+                EAST_DETECTION_IMAGE_SIZE,
+                EAST_DETECTION_IMAGE_SIZE,
+                EAST_DETECTION_IMAGE_MEANS,
+                EAST_DETECTION_IMAGE_STDS
+        ));
+        BitmapPixelBuffer imageBuffer = new BitmapPixelBuffer(image);
+        measure("detection, ImagePreprocessor bitmap", () -> preprocessor.process(imageBuffer));
+        measure("detection, ImagePreprocessor fused int[]",
+                () -> preprocessor.process(pixels, image.getWidth(), image.getHeight()));
+    }
+
+    @Test
+    public void recognitionPreprocessing() {
+        ImagePreprocessor preprocessor = ImagePreprocessor.forRecognition(
+                TextRecognizer.IMAGE_WIDTH,
+                TextRecognizer.IMAGE_HEIGHT,
+                TextRecognizer.IMAGE_MEAN,
+                TextRecognizer.IMAGE_STD
+        );
+
+        measure("recognition, ImageUtils", () -> ImageUtils.bitmapToTensorImageForRecognition(
+                crop,
+                TextRecognizer.IMAGE_WIDTH,
+                TextRecognizer.IMAGE_HEIGHT,
+                TextRecognizer.IMAGE_MEAN,
+                TextRecognizer.IMAGE_STD
+        ));
+        BitmapPixelBuffer cropBuffer = new BitmapPixelBuffer(crop);
+        measure("recognition, ImagePreprocessor", () -> preprocessor.process(cropBuffer));
+    }
+
+    private void measure(String name, Runnable preprocessing) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            preprocessing.run();
+        }
+
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            preprocessing.run();
+        }
+        long nanos = System.nanoTime() - start;
+        long allocated = getAllocatedBytes() - allocatedBefore;
+
+        Log.i(TAG, String.format(
+                "%s: %.3f ms/call, %.0f bytes/call",
+                name,
+                nanos / 1e6 / ITERATIONS,
+                (float) allocated / ITERATIONS
+        ));
+    }
+
+    // Bytes allocated by the process since it started, as counted by ART.
+    private static long getAllocatedBytes() {
+        return Long.parseLong(Debug.getRuntimeStat("art.gc.bytes-allocated"));
+    }
+}
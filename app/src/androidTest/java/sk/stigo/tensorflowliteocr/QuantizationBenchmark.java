@@ -0,0 +1,131 @@
+package sk.stigo.tensorflowliteocr;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import sk.stigo.tensorflowliteocr.core.DetectionModel;
+import sk.stigo.tensorflowliteocr.core.OCRPipeline;
+import sk.stigo.tensorflowliteocr.core.RuntimeOptions;
+import sk.stigo.tensorflowliteocr.utils.AssetModelSource;
+import sk.stigo.tensorflowliteocr.utils.BitmapPixelBuffer;
+
+/**
+ * Compares the float16 and quantized EAST and recognition models on the bundled gauge
+ * photos: mean latency, PSS after loading and how many texts the quantized models
+ * reproduce, taking the float16 texts as reference. Skipped when the quantized models
+ * are not in the assets. Results are written to logcat with the tag {@value #TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QuantizationBenchmark {
+    private static final String TAG = "QuantizationBenchmark";
+    private static final String QUANTIZED_EAST_DETECTION_MODEL = "lite-model_east-text-detector_int8_1.tflite";
+    private static final int WARMUP_ITERATIONS = 1;
+    private static final int ITERATIONS = 3;
+
+    private Context context;
+    private List<String> photos;
+    private List<BitmapPixelBuffer> images;
+
+    @Before
+    public void setUp() throws IOException {
+        OpenCVLoader.initDebug();
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Assume.assumeTrue(Arrays.asList(context.getAssets().list("")).contains(QUANTIZED_EAST_DETECTION_MODEL));
+
+        photos = new ArrayList<>();
+        images = new ArrayList<>();
+        for (String photo : context.getAssets().list("photo")) {
+            try (InputStream inputStream = context.getAssets().open("photo/" + photo)) {
+                Bitmap image = BitmapFactory.decodeStream(inputStream);
+                photos.add(photo);
+                images.add(new BitmapPixelBuffer(image));
+            }
+        }
+    }
+
+    @Test
+    public void accuracyVersusLatency() {
+        List<List<String>> reference = new ArrayList<>();
+        Log.i(TAG, "models, mean latency [ms], PSS [kB], photos with identical texts, matching texts");
+        run(false, reference);
+        run(true, reference);
+    }
+
+    // The first run fills reference, the second compares with it.
+    private void run(boolean quantized, List<List<String>> reference) {
+        RuntimeOptions options = new RuntimeOptions().setQuantizedModels(quantized);
+        try (OCRPipeline pipeline = new OCRPipeline(new AssetModelSource(context), options)) {
+            pipeline.warmUp(DetectionModel.EAST);
+            long pss = Debug.getPss();
+
+            List<List<String>> texts = new ArrayList<>();
+            for (BitmapPixelBuffer image : images) {
+                texts.add(pipeline.run(image, DetectionModel.EAST, false, OCRPipeline.NO_DEADLINE).getTexts());
+            }
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                runAll(pipeline);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                runAll(pipeline);
+            }
+            double meanMillis = (System.nanoTime() - start) / 1e6 / (ITERATIONS * images.size());
+
+            if (reference.isEmpty()) {
+                reference.addAll(texts);
+            }
+            int identicalPhotos = 0;
+            int matchingTexts = 0;
+            int referenceTexts = 0;
+            for (int i = 0; i < images.size(); i++) {
+                List<String> expected = reference.get(i);
+                if (expected.equals(texts.get(i))) {
+                    identicalPhotos++;
+                } else {
+                    Log.i(TAG, photos.get(i) + ": " + expected + " -> " + texts.get(i));
+                }
+                for (String text : expected) {
+                    if (texts.get(i).contains(text)) {
+                        matchingTexts++;
+                    }
+                }
+                referenceTexts += expected.size();
+            }
+
+            Log.i(TAG, String.format(
+                    "%s, %.1f, %d, %d/%d, %d/%d",
+                    quantized ? "quantized" : "float16",
+                    meanMillis,
+                    pss,
+                    identicalPhotos,
+                    images.size(),
+                    matchingTexts,
+                    referenceTexts
+            ));
+        }
+    }
+
+    private void runAll(OCRPipeline pipeline) {
+        for (BitmapPixelBuffer image : images) {
+            pipeline.run(image, DetectionModel.EAST, false, OCRPipeline.NO_DEADLINE);
+        }
+    }
+}
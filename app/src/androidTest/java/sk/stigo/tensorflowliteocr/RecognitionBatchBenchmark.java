@@ -0,0 +1,132 @@
+package sk.stigo.tensorflowliteocr;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.tensorflow.lite.Interpreter;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import sk.stigo.tensorflowliteocr.core.TextRecognizer;
+import sk.stigo.tensorflowliteocr.utils.ImageUtils;
+
+/**
+ * Compares recognition throughput of one interpreter invocation per crop with a
+ * single batched invocation. Results are written to logcat with the tag {@value #TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RecognitionBatchBenchmark {
+    private static final String TAG = "RecognitionBatchBenchmark";
+    private static final String TXT_RECOGNITION_MODEL = "lite-model_keras-ocr_float16_2.tflite";
+    private static final int[] BATCH_SIZES = new int[]{1, 4, 8, 16};
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int ITERATIONS = 5;
+
+    private Interpreter perCropInterpreter;
+    private Interpreter batchedInterpreter;
+    private ByteBuffer crop;
+
+    @Before
+    public void setUp() throws IOException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Interpreter.Options options = new Interpreter.Options();
+        options.setNumThreads(4);
+        perCropInterpreter = new Interpreter(loadModelFile(context, TXT_RECOGNITION_MODEL), options);
+        batchedInterpreter = new Interpreter(loadModelFile(context, TXT_RECOGNITION_MODEL), options);
+
+        Bitmap image;
+        try (InputStream inputStream = context.getAssets().open("photo/test_g1.jpg")) {
+            image = BitmapFactory.decodeStream(inputStream);
+        }
+        crop = ImageUtils.bitmapToTensorImageForRecognition(
+                image,
+                TextRecognizer.IMAGE_WIDTH,
+                TextRecognizer.IMAGE_HEIGHT,
+                TextRecognizer.IMAGE_MEAN,
+                TextRecognizer.IMAGE_STD
+        ).getBuffer();
+    }
+
+    @After
+    public void tearDown() {
+        perCropInterpreter.close();
+        batchedInterpreter.close();
+    }
+
+    @Test
+    public void perCropVersusBatchedThroughput() {
+        TextRecognizer perCropRecognizer = new TextRecognizer(perCropInterpreter);
+        TextRecognizer batchedRecognizer = new TextRecognizer(batchedInterpreter);
+        Log.i(TAG, "batch size, per-crop [crops/s], batched [crops/s]");
+
+        for (int batchSize : BATCH_SIZES) {
+            ByteBuffer crops = fillCrops(batchedRecognizer, batchSize);
+
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                recognizePerCrop(perCropRecognizer, batchSize);
+                batchedRecognizer.recognizeBatch(crops, batchSize);
+            }
+
+            long perCropNanos = 0;
+            long batchedNanos = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                long start = System.nanoTime();
+                recognizePerCrop(perCropRecognizer, batchSize);
+                perCropNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                batchedRecognizer.recognizeBatch(crops, batchSize);
+                batchedNanos += System.nanoTime() - start;
+            }
+
+            Log.i(TAG, String.format(
+                    "%d, %.1f, %.1f",
+                    batchSize,
+                    batchSize * ITERATIONS / (perCropNanos / 1e9),
+                    batchSize * ITERATIONS / (batchedNanos / 1e9)
+            ));
+        }
+    }
+
+    private ByteBuffer fillCrops(TextRecognizer recognizer, int batchSize) {
+        ByteBuffer crops = recognizer.getInputBuffer(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            crop.rewind();
+            crops.put(crop);
+        }
+        return crops;
+    }
+
+    private void recognizePerCrop(TextRecognizer recognizer, int batchSize) {
+        for (int i = 0; i < batchSize; i++) {
+            recognizer.recognize(crop);
+        }
+    }
+
+    private MappedByteBuffer loadModelFile(Context context, String modelFile) throws IOException {
+        try (AssetFileDescriptor fileDescriptor = context.getAssets().openFd(modelFile);
+             FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor())) {
+            FileChannel fileChannel = inputStream.getChannel();
+            return fileChannel.map(
+                    FileChannel.MapMode.READ_ONLY,
+                    fileDescriptor.getStartOffset(),
+                    fileDescriptor.getDeclaredLength()
+            );
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package sk.stigo.tensorflowliteocr;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.opencv.dnn.Dnn.NMSBoxesRotated;
+import static org.opencv.utils.Converters.vector_RotatedRect_to_Mat;
+import static org.opencv.utils.Converters.vector_float_to_Mat;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfRotatedRect;
+import org.opencv.core.Point;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+import org.tensorflow.lite.Interpreter;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import sk.stigo.tensorflowliteocr.core.EastDecoder;
+import sk.stigo.tensorflowliteocr.core.RotatedNms;
+import sk.stigo.tensorflowliteocr.utils.ImageUtils;
+
+/**
+ * Checks that {@link RotatedNms} selects the same boxes as OpenCV's NMSBoxesRotated
+ * on the EAST output for every bundled photo, and logs the time per call of both
+ * implementations for 10 to 6400 candidates with the tag {@value #TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RotatedNmsBenchmark {
+    private static final String TAG = "RotatedNmsBenchmark";
+    private static final String EAST_DETECTION_MODEL = "lite-model_east-text-detector_fp16_1.tflite";
+    private static final int EAST_DETECTION_IMAGE_SIZE = 320;
+    private static final float[] EAST_DETECTION_IMAGE_MEANS = new float[]{103.94f, 116.78f, 123.68f};
+    private static final float[] EAST_DETECTION_IMAGE_STDS = new float[]{1f, 1f, 1f};
+    private static final float CONFIDENCE_THRESHOLD = 0.5f;
+    private static final float NMS_THRESHOLD = 0.4f;
+    private static final int[] CANDIDATE_COUNTS = new int[]{10, 100, 400, 1600, 6400};
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int ITERATIONS = 20;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        OpenCVLoader.initDebug();
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    }
+
+    @Test
+    public void matchesOpenCvOnBundledPhotos() throws IOException {
+        Interpreter interpreter = new Interpreter(loadModelFile(EAST_DETECTION_MODEL), new Interpreter.Options());
+        EastDecoder decoder = new EastDecoder();
+        RotatedNms nms = new RotatedNms();
+
+        try {
+            for (String photo : context.getAssets().list("photo")) {
+                Bitmap image;
+                try (InputStream inputStream = context.getAssets().open("photo/" + photo)) {
+                    image = BitmapFactory.decodeStream(inputStream);
+                }
+                Buffer input = ImageUtils.bitmapToTensorImageForDetection(
+                        image,
+                        EAST_DETECTION_IMAGE_SIZE,
+                        EAST_DETECTION_IMAGE_SIZE,
+                        EAST_DETECTION_IMAGE_MEANS,
+                        EAST_DETECTION_IMAGE_STDS
+                ).getBuffer().rewind();
+                interpreter.runForMultipleInputsOutputs(new Object[]{input}, decoder.getOutputs());
+                int count = decoder.decode(CONFIDENCE_THRESHOLD);
+
+                int kept = nms.run(decoder.getBoxes(), decoder.getConfidences(), count,
+                        CONFIDENCE_THRESHOLD, NMS_THRESHOLD, 0);
+                int[] expected = runOpenCv(decoder.getBoxes(), decoder.getConfidences(), count);
+
+                Log.i(TAG, String.format("%s: %d candidates, %d kept", photo, count, kept));
+                assertArrayEquals(photo, expected, Arrays.copyOf(nms.getIndices(), kept));
+            }
+        } finally {
+            interpreter.close();
+        }
+    }
+
+    @Test
+    public void latencyByCandidateCount() {
+        RotatedNms nms = new RotatedNms();
+        Log.i(TAG, "candidates, OpenCV [us/op], RotatedNms [us/op]");
+
+        for (int count : CANDIDATE_COUNTS) {
+            float[] boxes = new float[count * RotatedNms.BOX_SIZE];
+            float[] scores = new float[count];
+            createCandidates(boxes, scores, count);
+
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                runOpenCv(boxes, scores, count);
+                nms.run(boxes, scores, count, CONFIDENCE_THRESHOLD, NMS_THRESHOLD, 0);
+            }
+
+            long openCvNanos = 0;
+            long javaNanos = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                long start = System.nanoTime();
+                runOpenCv(boxes, scores, count);
+                openCvNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                nms.run(boxes, scores, count, CONFIDENCE_THRESHOLD, NMS_THRESHOLD, 0);
+                javaNanos += System.nanoTime() - start;
+            }
+
+            Log.i(TAG, String.format(
+                    "%d, %.1f, %.1f",
+                    count,
+                    openCvNanos / 1e3 / ITERATIONS,
+                    javaNanos / 1e3 / ITERATIONS
+            ));
+        }
+    }
+
+    // EAST-like candidates: clusters of overlapping, slightly rotated boxes on a 320x320 input.
+    private static void createCandidates(float[] boxes, float[] scores, int count) {
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            int box = i * RotatedNms.BOX_SIZE;
+            boxes[box] = (i * 37 % 300) + random.nextFloat() * 8f;
+            boxes[box + 1] = (i * 53 % 300) + random.nextFloat() * 8f;
+            boxes[box + 2] = 20f + random.nextFloat() * 60f;
+            boxes[box + 3] = 8f + random.nextFloat() * 16f;
+            boxes[box + 4] = random.nextFloat() * 20f - 10f;
+            scores[i] = 0.5f + random.nextFloat() * 0.5f;
+        }
+    }
+
+    // The previous detector code path: boxed lists, vector converters and toArray.
+    private static int[] runOpenCv(float[] boxes, float[] scores, int count) {
+        List<RotatedRect> rotatedRects = new ArrayList<>();
+        List<Float> confidences = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int box = i * RotatedNms.BOX_SIZE;
+            rotatedRects.add(new RotatedRect(
+                    new Point(boxes[box], boxes[box + 1]),
+                    new Size(boxes[box + 2], boxes[box + 3]),
+                    boxes[box + 4]
+            ));
+            confidences.add(scores[i]);
+        }
+        if (count == 0) {
+            return new int[0];
+        }
+
+        MatOfRotatedRect boxesMat = new MatOfRotatedRect(vector_RotatedRect_to_Mat(rotatedRects));
+        MatOfFloat confidencesMat = new MatOfFloat(vector_float_to_Mat(confidences));
+        MatOfInt indicesMat = new MatOfInt();
+        NMSBoxesRotated(boxesMat, confidencesMat, CONFIDENCE_THRESHOLD, NMS_THRESHOLD, indicesMat);
+        int[] indices = indicesMat.toArray();
+
+        boxesMat.release();
+        confidencesMat.release();
+        indicesMat.release();
+        return indices;
+    }
+
+    private MappedByteBuffer loadModelFile(String modelFile) throws IOException {
+        try (AssetFileDescriptor fileDescriptor = context.getAssets().openFd(modelFile);
+             FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor())) {
+            FileChannel fileChannel = inputStream.getChannel();
+            return fileChannel.map(
+                    FileChannel.MapMode.READ_ONLY,
+                    fileDescriptor.getStartOffset(),
+                    fileDescriptor.getDeclaredLength()
+            );
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package sk.stigo.tensorflowliteocr;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import sk.stigo.tensorflowliteocr.core.DetectionModel;
+import sk.stigo.tensorflowliteocr.core.OCRPipeline;
+import sk.stigo.tensorflowliteocr.utils.AssetModelSource;
+import sk.stigo.tensorflowliteocr.utils.BitmapPixelBuffer;
+
+/**
+ * Measures time to first result and process PSS of a fresh {@link OCRPipeline}, once
+ * with models loaded by the first image and once after {@link OCRPipeline#warmUp}.
+ * Results are written to logcat with the tag {@value #TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+    private static final String TAG = "StartupBenchmark";
+
+    private Context context;
+    private Bitmap image;
+
+    @Before
+    public void setUp() throws IOException {
+        OpenCVLoader.initDebug();
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        try (InputStream inputStream = context.getAssets().open("photo/test_g1.jpg")) {
+            image = BitmapFactory.decodeStream(inputStream);
+        }
+    }
+
+    @Test
+    public void timeToFirstResult() {
+        Log.i(TAG, "detector, startup, construction [ms], warm-up [ms], first result [ms], PSS before, after construction, after first result [kB]");
+        for (DetectionModel detectionModel : DetectionModel.values()) {
+            measure(detectionModel, false);
+            measure(detectionModel, true);
+        }
+    }
+
+    private void measure(DetectionModel detectionModel, boolean warmUp) {
+        long pssBefore = Debug.getPss();
+        long start = System.nanoTime();
+        try (OCRPipeline pipeline = new OCRPipeline(new AssetModelSource(context))) {
+            long constructionNanos = System.nanoTime() - start;
+            long pssAfterConstruction = Debug.getPss();
+
+            start = System.nanoTime();
+            if (warmUp) {
+                pipeline.warmUp(detectionModel);
+            }
+            long warmUpNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            pipeline.run(new BitmapPixelBuffer(image), detectionModel, false, OCRPipeline.NO_DEADLINE);
+            long firstResultNanos = System.nanoTime() - start;
+
+            Log.i(TAG, String.format(
+                    "%s, %s, %.1f, %.1f, %.1f, %d, %d, %d",
+                    detectionModel,
+                    warmUp ? "warmed up" : "lazy",
+                    constructionNanos / 1e6,
+                    warmUpNanos / 1e6,
+                    firstResultNanos / 1e6,
+                    pssBefore,
+                    pssAfterConstruction,
+                    Debug.getPss()
+            ));
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package sk.stigo.tensorflowliteocr;
 
 import static sk.stigo.tensorflowliteocr.utils.PhotoUtils.deletePhoto;
-import static sk.stigo.tensorflowliteocr.utils.PhotoUtils.getRotatedImg;
 
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
@@ -11,7 +10,6 @@ import androidx.core.content.FileProvider;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
@@ -21,7 +19,6 @@ import android.text.TextUtils;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.view.WindowManager;
 import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.ProgressBar;
@@ -32,11 +29,17 @@ import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import org.opencv.android.OpenCVLoader;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import sk.stigo.tensorflowliteocr.core.Orientation;
+import sk.stigo.tensorflowliteocr.utils.BitmapDecoder;
 import sk.stigo.tensorflowliteocr.utils.OCRModelExecutor;
+import sk.stigo.tensorflowliteocr.utils.OCRResult;
+import sk.stigo.tensorflowliteocr.utils.OrientedBitmapDrawable;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -50,9 +53,15 @@ public class MainActivity extends AppCompatActivity {
     private OCRModelExecutor ocrModelExecutor;
     private SharedPreferences.OnSharedPreferenceChangeListener sharedPreferenceChangeListener;
     private String selectedImageFile;
+    private BitmapDecoder bitmapDecoder;
+    // The decoded bitmap shown in photoResultImageView.
+    private Bitmap shownBitmap;
+    // Bitmaps of recognition requests that have delivered results but not finished yet.
+    private final Set<Bitmap> recognizingBitmaps = new HashSet<>();
 
 
     static final int REQUEST_IMAGE_CAPTURE = 1;
+    static final long RECOGNITION_TIMEOUT_MILLIS = 30000;
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
@@ -88,12 +97,8 @@ public class MainActivity extends AppCompatActivity {
 
         OpenCVLoader.initDebug();
 
-        try {
-            ocrModelExecutor = new OCRModelExecutor(getApplicationContext());
-        } catch (IOException e) {
-            e.printStackTrace();
-            createErrorDialog("Loading TF model failed");
-        }
+        ocrModelExecutor = new OCRModelExecutor(getApplicationContext());
+        bitmapDecoder = new BitmapDecoder();
 
         sharedPreferenceChangeListener = (sharedPreferences, s) -> {
             resetActivityViews(sharedPreferences);
@@ -108,11 +113,25 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (ocrModelExecutor != null) {
+            ocrModelExecutor.close();
+        }
         deletePhoto(currentPhotoPath);
         SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getApplicationContext()) ;
         preferences.unregisterOnSharedPreferenceChangeListener(sharedPreferenceChangeListener);
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (ocrModelExecutor != null) {
+            ocrModelExecutor.trimMemory(level);
+        }
+        if (bitmapDecoder != null) {
+            bitmapDecoder.clear();
+        }
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
@@ -165,26 +184,25 @@ public class MainActivity extends AppCompatActivity {
         if (recognitionResult.getText() != null) {
             recognitionResult.setText(null);
         }
-        Bitmap bitmap;
-
-        try {
-            if (preferences.getBoolean("useCamera", false)) {
-                bitmap = getRotatedImg(BitmapFactory.decodeFile(currentPhotoPath, getBitMapOptions()), currentPhotoPath);
+        BitmapDecoder.Source source = preferences.getBoolean("useCamera", false) ? getPhotoSource() : getFileSource();
+        runTextRecognition(source);
+    }
 
-            } else {
-                bitmap = getBitmapFromFile();
-            }
-        } catch (IOException e) {
-            createErrorDialog("Unexpected exception occurred in onBtnRecognitionClick. Message: " + e.getMessage());
-            return;
-        }
+    private BitmapDecoder.Source getFileSource() {
+        String assetPath = "photo/" + selectedImageFile + ".jpg";
+        return () -> getAssets().open(assetPath);
+    }
 
-        runTextRecognition(bitmap);
+    private BitmapDecoder.Source getPhotoSource() {
+        String photoPath = currentPhotoPath;
+        return () -> new FileInputStream(photoPath);
     }
 
-    private Bitmap getBitmapFromFile() throws IOException {
-        InputStream gaugeInputStream = getAssets().open("photo/" + selectedImageFile + ".jpg");
-        return BitmapFactory.decodeStream(gaugeInputStream);
+    private void showImage(BitmapDecoder.Source source) throws IOException {
+        showBitmap(
+                bitmapDecoder.decode(source, ocrModelExecutor.getDecodeBudget()),
+                BitmapDecoder.readOrientation(source)
+        );
     }
 
     private File createImageFile() throws IOException {
@@ -201,20 +219,66 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void setPic() {
-        Bitmap bitmap;
         try {
-            bitmap = getRotatedImg(BitmapFactory.decodeFile(currentPhotoPath, getBitMapOptions()), currentPhotoPath);
-            photoResultImageView.setImageBitmap(bitmap);
+            showImage(getPhotoSource());
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private void runTextRecognition(Bitmap image) {
-        Bitmap resultImage = ocrModelExecutor.run(image);
+    // Shows the bitmap upright without rotating its pixels.
+    private OrientedBitmapDrawable showBitmap(Bitmap bitmap, Orientation orientation) {
+        OrientedBitmapDrawable drawable = new OrientedBitmapDrawable(bitmap, orientation);
+        photoResultImageView.setImageDrawable(drawable);
+        Bitmap previous = shownBitmap;
+        shownBitmap = bitmap;
+        if (previous != bitmap) {
+            releaseIfUnused(previous);
+        }
+        return drawable;
+    }
+
+    // A bitmap goes back to the decoder's pool once it is neither shown nor read by an
+    // unfinished request, so the next decode cannot overwrite it while it is in use.
+    private void releaseIfUnused(Bitmap bitmap) {
+        if (bitmap != shownBitmap && !recognizingBitmaps.contains(bitmap)) {
+            bitmapDecoder.release(bitmap);
+        }
+    }
+
+    // The image is decoded on the inference thread, so large photos do not block the UI.
+    private void runTextRecognition(BitmapDecoder.Source source) {
+        ocrModelExecutor.runAsync(source, bitmapDecoder, RECOGNITION_TIMEOUT_MILLIS, new OCRModelExecutor.Callback() {
+            @Override
+            public void onResult(OCRResult result) {
+                recognizingBitmaps.add(result.getImage());
+                showRecognitionResult(result);
+            }
+
+            @Override
+            public void onPartialResult(OCRResult partial) {
+                recognizingBitmaps.add(partial.getImage());
+                showPartialResult(partial);
+            }
 
+            @Override
+            public void onError(Exception e) {
+                setLoadingSpinnerVisibility(View.GONE);
+                createErrorDialog("Text recognition failed. Message: " + e.getMessage());
+            }
+
+            @Override
+            public void onFinished(Bitmap image) {
+                if (image != null) {
+                    recognizingBitmaps.remove(image);
+                    releaseIfUnused(image);
+                }
+            }
+        });
+    }
 
-        List<String> results = ocrModelExecutor.getOcrResults();
+    private void showRecognitionResult(OCRResult result) {
+        List<String> results = result.getTexts();
 
         String resultStr = "No result";
 
@@ -223,46 +287,40 @@ public class MainActivity extends AppCompatActivity {
         }
         recognitionResult.setText(resultStr);
 
-        photoResultImageView.setImageBitmap(resultImage);
+        showBitmap(result.getImage(), result.getOrientation()).setTextBoxes(result.getBoxes());
         createResultDialog(resultStr);
         recognitionResult.setVisibility(View.VISIBLE);
         recognitionResultLabel.setVisibility(View.VISIBLE);
         setLoadingSpinnerVisibility(View.GONE);
     }
 
-    private BitmapFactory.Options getBitMapOptions() {
-        // Get the dimensions of the View
-        int targetW = photoResultImageView.getWidth();
-        int targetH = photoResultImageView.getHeight();
-
-        // Get the dimensions of the bitmap
-        BitmapFactory.Options bmOptions = new BitmapFactory.Options();
-        bmOptions.inJustDecodeBounds = true;
-
-        int photoW = bmOptions.outWidth;
-        int photoH = bmOptions.outHeight;
-
-        // Determine how much to scale down the image
-        int scaleFactor = Math.min(photoW/targetW, photoH/targetH);
-
-        // Decode the image file into a Bitmap sized to fill the View
-        bmOptions.inJustDecodeBounds = false;
-        bmOptions.inSampleSize = scaleFactor;
-        bmOptions.inPurgeable = true;
-        return bmOptions;
+    // Shows the texts read so far while the spinner keeps running.
+    private void showPartialResult(OCRResult partial) {
+        recognitionResult.setText(TextUtils.join("\n", partial.getTexts()));
+        showBitmap(partial.getImage(), partial.getOrientation()).setTextBoxes(partial.getBoxes());
+        recognitionResult.setVisibility(View.VISIBLE);
+        recognitionResultLabel.setVisibility(View.VISIBLE);
     }
 
     private void resetActivityViews(SharedPreferences preferences) {
         preferences.registerOnSharedPreferenceChangeListener(sharedPreferenceChangeListener);
+        if (ocrModelExecutor != null) {
+            ocrModelExecutor.cancel();
+            ocrModelExecutor.warmUp();
+        }
+        setLoadingSpinnerVisibility(View.GONE);
         selectedImageFile = preferences.getString("selectFile", "g1");
 
         if (preferences.getBoolean("useCamera", false)) {
             photoResultImageView.setImageResource(R.drawable.photo_placeholder);
+            Bitmap previous = shownBitmap;
+            shownBitmap = null;
+            releaseIfUnused(previous);
             btnTakePicture.setVisibility(View.VISIBLE);
             btnRecognize.setVisibility(View.GONE);
         } else {
             try {
-                photoResultImageView.setImageBitmap(getBitmapFromFile());
+                showImage(getFileSource());
             } catch (IOException e) {
                 createErrorDialog("Unexpected exception occurred in onBtnRecognitionClick. Message: " + e.getMessage());
             }
@@ -275,13 +333,6 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void setLoadingSpinnerVisibility(int visibility) {
-        if (visibility == View.VISIBLE) {
-            getWindow().setFlags(WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE,
-                    WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE);
-        } else {
-            getWindow().clearFlags(WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE);
-        }
-
         spinner.setVisibility(visibility);
     }
 
@@ -0,0 +1,35 @@
+package sk.stigo.tensorflowliteocr.utils;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import sk.stigo.tensorflowliteocr.core.ModelSource;
+
+/**
+ * {@link ModelSource} that memory-maps uncompressed models from the app assets.
+ */
+public class AssetModelSource implements ModelSource {
+    private final Context context;
+
+    public AssetModelSource(Context context) {
+        this.context = context;
+    }
+
+    @Override
+    public ByteBuffer load(String modelName) throws IOException {
+        try (AssetFileDescriptor fileDescriptor = context.getAssets().openFd(modelName);
+             FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor())) {
+            FileChannel fileChannel = inputStream.getChannel();
+            return fileChannel.map(
+                    FileChannel.MapMode.READ_ONLY,
+                    fileDescriptor.getStartOffset(),
+                    fileDescriptor.getDeclaredLength()
+            );
+        }
+    }
+}
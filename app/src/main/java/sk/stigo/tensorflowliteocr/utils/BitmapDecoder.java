@@ -0,0 +1,119 @@
+package sk.stigo.tensorflowliteocr.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import sk.stigo.tensorflowliteocr.core.DecodeBudget;
+import sk.stigo.tensorflowliteocr.core.Orientation;
+
+/**
+ * Decodes images for OCR within a {@link DecodeBudget}. The bounds are read first and
+ * the image is decoded with the sample size of the budget into a pooled bitmap when
+ * one is large enough. Decoded bitmaps are mutable and stored as encoded; their EXIF
+ * orientation, from {@link #readOrientation}, is applied by the pipeline and by
+ * {@link OrientedBitmapDrawable} instead of rotating the pixels.
+ *
+ * Bitmaps that are no longer shown or processed go back to the pool with
+ * {@link #release}; the pool keeps at most {@value #MAX_POOLED_BITMAPS} of them. All
+ * methods are thread-safe, so images may be decoded on a background thread while the
+ * main thread releases bitmaps; decoding itself runs without holding the pool.
+ */
+public class BitmapDecoder {
+    /**
+     * Opens the encoded image; called once for the bounds and once for the pixels.
+     */
+    public interface Source {
+        InputStream open() throws IOException;
+    }
+
+    private static final int MAX_POOLED_BITMAPS = 2;
+
+    private final Deque<Bitmap> pool;
+
+    public BitmapDecoder() {
+        this.pool = new ArrayDeque<>();
+    }
+
+    public static Orientation readOrientation(Source source) throws IOException {
+        try (InputStream input = source.open()) {
+            return PhotoUtils.getOrientation(input);
+        }
+    }
+
+    public Bitmap decode(Source source, DecodeBudget budget) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeStream(source, options);
+        int width = options.outWidth;
+        int height = options.outHeight;
+        if (width <= 0 || height <= 0) {
+            throw new IOException("Unsupported image format");
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = budget.getSampleSize(width, height, 1);
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        options.inBitmap = poll(DecodeBudget.getBytes(width, height, options.inSampleSize));
+
+        Bitmap bitmap;
+        try {
+            bitmap = decodeStream(source, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap could not be reused.
+            options.inBitmap = null;
+            bitmap = decodeStream(source, options);
+        }
+        if (bitmap == null) {
+            throw new IOException("Image could not be decoded");
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns a bitmap from {@link #decode} to the pool. It must not be used afterwards.
+     */
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || !bitmap.isMutable() || bitmap.isRecycled() || pool.contains(bitmap)) {
+            return;
+        }
+        if (pool.size() >= MAX_POOLED_BITMAPS) {
+            pool.pollFirst();
+        }
+        pool.offerLast(bitmap);
+    }
+
+    /**
+     * Drops the pooled bitmaps, e.g. under memory pressure.
+     */
+    public synchronized void clear() {
+        pool.clear();
+    }
+
+    private static Bitmap decodeStream(Source source, BitmapFactory.Options options) throws IOException {
+        try (InputStream input = new BufferedInputStream(source.open())) {
+            return BitmapFactory.decodeStream(input, null, options);
+        }
+    }
+
+    // Takes the smallest pooled bitmap holding at least this many bytes, or returns null.
+    private synchronized Bitmap poll(long bytes) {
+        Bitmap best = null;
+        for (Bitmap bitmap : pool) {
+            if (bitmap.getAllocationByteCount() >= bytes
+                    && (best == null || bitmap.getAllocationByteCount() < best.getAllocationByteCount())) {
+                best = bitmap;
+            }
+        }
+        if (best != null) {
+            pool.remove(best);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,107 @@
+package sk.stigo.tensorflowliteocr.utils;
+
+import static org.opencv.android.Utils.bitmapToMat;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import org.opencv.core.Mat;
+
+import sk.stigo.tensorflowliteocr.core.PixelBuffer;
+
+/**
+ * {@link PixelBuffer} over an Android bitmap. Scaled reads draw the bitmap, or a region
+ * of it, into a reusable bitmap of the requested size with bilinear filtering, so the
+ * full-resolution pixels are never copied to the Java heap. Instances can be pointed at
+ * a new bitmap with {@link #setBitmap} and reused; they are not thread-safe.
+ */
+public class BitmapPixelBuffer implements PixelBuffer {
+    private final Paint scalePaint;
+    private final Rect sourceRect;
+    private final Rect targetRect;
+    private Bitmap bitmap;
+    private Bitmap scaledBitmap;
+    private Canvas scaledCanvas;
+    // The previous scaled bitmap, so alternating reads of two sizes, such as a
+    // detector input and a thumbnail, do not allocate.
+    private Bitmap spareBitmap;
+    private Canvas spareCanvas;
+
+    public BitmapPixelBuffer() {
+        this.scalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        this.sourceRect = new Rect();
+        this.targetRect = new Rect();
+    }
+
+    public BitmapPixelBuffer(Bitmap bitmap) {
+        this();
+        setBitmap(bitmap);
+    }
+
+    public void setBitmap(Bitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    @Override
+    public int getWidth() {
+        return bitmap.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return bitmap.getHeight();
+    }
+
+    @Override
+    public void readPixels(int[] out, int width, int height) {
+        readPixels(out, 0, 0, bitmap.getWidth(), bitmap.getHeight(), width, height);
+    }
+
+    @Override
+    public void readPixels(int[] out, int regionX, int regionY, int regionWidth, int regionHeight, int width, int height) {
+        if (regionWidth == width && regionHeight == height) {
+            bitmap.getPixels(out, 0, width, regionX, regionY, width, height);
+            return;
+        }
+        sourceRect.set(regionX, regionY, regionX + regionWidth, regionY + regionHeight);
+        scale(width, height).getPixels(out, 0, width, 0, 0, width, height);
+    }
+
+    @Override
+    public Mat toRgbaMat() {
+        Mat mat = new Mat();
+        bitmapToMat(bitmap, mat);
+        return mat;
+    }
+
+    // Draws sourceRect of the bitmap scaled to width x height.
+    private Bitmap scale(int width, int height) {
+        if (!hasSize(scaledBitmap, width, height)) {
+            Bitmap previousBitmap = scaledBitmap;
+            Canvas previousCanvas = scaledCanvas;
+            if (hasSize(spareBitmap, width, height)) {
+                scaledBitmap = spareBitmap;
+                scaledCanvas = spareCanvas;
+            } else {
+                scaledBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                scaledCanvas = new Canvas(scaledBitmap);
+            }
+            spareBitmap = previousBitmap;
+            spareCanvas = previousCanvas;
+        }
+        targetRect.set(0, 0, width, height);
+        scaledBitmap.eraseColor(0);
+        scaledCanvas.drawBitmap(bitmap, sourceRect, targetRect, scalePaint);
+        return scaledBitmap;
+    }
+
+    private static boolean hasSize(Bitmap bitmap, int width, int height) {
+        return bitmap != null && bitmap.getWidth() == width && bitmap.getHeight() == height;
+    }
+}
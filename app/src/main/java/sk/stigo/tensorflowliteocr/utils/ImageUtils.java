@@ -10,7 +10,6 @@ import org.tensorflow.lite.support.image.ops.ResizeOp;
 import org.tensorflow.lite.support.image.ops.TransformToGrayscaleOp;
 
 public class ImageUtils {
-
     public static TensorImage bitmapToTensorImageForDetection(Bitmap bitmapIn, int width, int height, float[] means, float[] stds) {
         ResizeOp resizeOp = new ResizeOp(height, width, ResizeOp.ResizeMethod.BILINEAR);
         NormalizeOp normalizeOp = new NormalizeOp(means, stds);
@@ -45,7 +44,6 @@ public class ImageUtils {
         return tensorImage;
     }
 
-
     public static Bitmap createEmptyBitmap(
             int imageWidth,
             int imageHeigth,
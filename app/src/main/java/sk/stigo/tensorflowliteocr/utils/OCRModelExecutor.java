@@ -1,422 +1,702 @@
 package sk.stigo.tensorflowliteocr.utils;
 
-import static org.opencv.android.Utils.bitmapToMat;
-import static org.opencv.android.Utils.matToBitmap;
-import static org.opencv.dnn.Dnn.NMSBoxesRotated;
-import static org.opencv.imgproc.Imgproc.boxPoints;
-import static org.opencv.imgproc.Imgproc.getPerspectiveTransform;
-import static org.opencv.imgproc.Imgproc.warpPerspective;
-import static org.opencv.utils.Converters.vector_RotatedRect_to_Mat;
-import static org.opencv.utils.Converters.vector_float_to_Mat;
-
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.PreferenceManager;
+import android.util.Log;
 
-import org.opencv.core.Mat;
-import org.opencv.core.MatOfFloat;
-import org.opencv.core.MatOfInt;
-import org.opencv.core.MatOfPoint2f;
-import org.opencv.core.MatOfRotatedRect;
-import org.opencv.core.Point;
-import org.opencv.core.RotatedRect;
-import org.opencv.core.Size;
-import org.tensorflow.lite.Interpreter;
 import org.tensorflow.lite.gpu.GpuDelegate;
-import org.tensorflow.lite.support.image.TensorImage;
+import org.tensorflow.lite.nnapi.NnApiDelegate;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.nio.Buffer;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import sk.stigo.tensorflowliteocr.core.DecodeBudget;
+import sk.stigo.tensorflowliteocr.core.AdaptiveDetection;
+import sk.stigo.tensorflowliteocr.core.DetectionModel;
+import sk.stigo.tensorflowliteocr.core.MetricsListener;
+import sk.stigo.tensorflowliteocr.core.MetricsRecorder;
+import sk.stigo.tensorflowliteocr.core.OCRPipeline;
+import sk.stigo.tensorflowliteocr.core.OCRPipelineResult;
+import sk.stigo.tensorflowliteocr.core.Orientation;
+import sk.stigo.tensorflowliteocr.core.OrientedPixelBuffer;
+import sk.stigo.tensorflowliteocr.core.PixelBuffer;
+import sk.stigo.tensorflowliteocr.core.RecognitionCache;
+import sk.stigo.tensorflowliteocr.core.RecognitionSchedule;
+import sk.stigo.tensorflowliteocr.core.RegionCache;
+import sk.stigo.tensorflowliteocr.core.ResultCache;
+import sk.stigo.tensorflowliteocr.core.RuntimeOptions;
+import sk.stigo.tensorflowliteocr.core.StreamingOcr;
+
+/**
+ * Android front end of {@link OCRPipeline}: loads the models from the app assets,
+ * reads the pipeline settings from the shared preferences and runs requests
+ * asynchronously with results delivered on the main thread.
+ * {@link #run(Bitmap)} may be called from several threads at once.
+ *
+ * Models are loaded on first use. {@link #warmUp} prepares the selected detector in
+ * the background and {@link #trimMemory} releases models under memory pressure. The
+ * time from construction to warm-up and to the first result is logged with the tag
+ * {@value #STARTUP_TAG}, together with the process PSS and native heap size.
+ *
+ * With the {@code useRegionCache} setting on, the text regions of the last detection are
+ * reused for the following frames of a fixed camera until a {@link RegionCache} check
+ * fails, so steady frames skip the detector and only run recognition.
+ *
+ * With the {@code useAdaptiveDetection} setting on, photos are detected with Mobile Net
+ * and detected again with EAST only when an {@link AdaptiveDetection} finds the first
+ * pass incomplete and EAST, at its cost measured on this device, fits
+ * {@value #ADAPTIVE_DETECTION_BUDGET_MS} ms.
+ *
+ * With the {@code useScheduledRecognition} setting on, the timeout of a request limits
+ * recognition instead of failing the request: boxes are recognized in the order of a
+ * {@link RecognitionSchedule}, delivered as they finish, and the boxes left when the
+ * time is up are dropped. Such incomplete results are not cached.
+ *
+ * With the {@code useResultCache} setting on, results are looked up in a
+ * {@link ResultCache} by the content of the image, in memory and in the app's cache
+ * directory, and crops in a {@link RecognitionCache}, so resubmitted images and
+ * repeated text regions are not processed again.
+ *
+ * With the {@code recordMetrics} setting on, every stage is traced with systrace and
+ * the aggregated stage latencies and counters are logged with the tag
+ * {@value #METRICS_TAG} after each run.
+ */
 public class OCRModelExecutor {
-    private static final int MOBILE_NET_DETECTION_IMAGE_HEIGHT = 300;
-    private static final int MOBILE_NET_DETECTION_IMAGE_WIDTH = 300;
-    private static final int EAST_DETECTION_IMAGE_HEIGHT = 320;
-    private static final int EAST_DETECTION_IMAGE_WIDTH = 320;
-    private static final float[] MOBILE_NET_DETECTION_IMAGE_MEANS = new float[]{127.5f, 127.5f, 127.5f};
-    private static final float[] MOBILE_NET_DETECTION_IMAGE_STDS = new float[]{127.5f, 127.5f, 127.5f};
-    private static final float[] EAST_DETECTION_IMAGE_MEANS = new float[]{103.94f, 116.78f, 123.68f};
-    private static final float[] EAST_DETECTION_IMAGE_STDS = new float[]{1f, 1f, 1f};
-    private static final String MOBILE_NET_DETECTION_MODEL = "final_model.tflite";
-    private static final String EAST_DETECTION_MODEL = "lite-model_east-text-detector_fp16_1.tflite";
-    private static final String TXT_RECOGNITION_MODEL = "lite-model_keras-ocr_float16_2.tflite";
-    private static final float DETECTION_CONFIDENCE_THRESHOLD = 0.5f;
-    private static final float DETECTION_NMS_THRESHOLD = 0.4f;
-    private static final boolean USE_GPU = false;
-    private static final int RECOGNITION_IMAGE_HEIGHT = 31;
-    private static final int RECOGNITION_IMAGE_WIDTH = 200;
-    private static final float RECOGNITION_IMAGE_MEAN = 0f;
-    private static final float RECOGNITION_IMAGE_STD = 255f;
-    private static final int RECOGNITION_MODEL_OUTPUT_SIZE = 48;
-    private static final String ALPHABETS = "0123456789abcdefghijklmnopqrstuvwxyz";
+    /**
+     * Receives the outcome of {@link #runAsync} on the main thread. Superseded and
+     * cancelled requests are never delivered, but are still finished.
+     */
+    public interface Callback {
+        void onResult(OCRResult result);
+
+        void onError(Exception e);
+
+        /**
+         * With the {@code useScheduledRecognition} setting on, receives the boxes
+         * recognized so far before {@link #onResult}.
+         */
+        default void onPartialResult(OCRResult partial) {
+        }
+
+        /**
+         * Called once for every request, after its other callbacks, when it no longer
+         * reads its image: delivered, failed, superseded or cancelled. Only then may the
+         * image be reused, e.g. with {@link BitmapDecoder#release}.
+         *
+         * @param image the image of the request, or {@code null} if it was never decoded
+         */
+        default void onFinished(Bitmap image) {
+        }
+    }
+
+    // Supplies the image of a request on the inference thread.
+    private interface ImageLoader {
+        LoadedImage load() throws IOException;
+    }
+
+    private static final class LoadedImage {
+        final Bitmap image;
+        final Orientation orientation;
+
+        LoadedImage(Bitmap image, Orientation orientation) {
+            this.image = image;
+            this.orientation = orientation;
+        }
+    }
 
+    private static final boolean USE_GPU = false;
+    private static final long NO_DEADLINE = OCRPipeline.NO_DEADLINE;
+    private static final String METRICS_TAG = "OCRMetrics";
+    private static final String STARTUP_TAG = "OCRStartup";
+    private static final String RESULT_CACHE_DIRECTORY = "ocr-results";
+    private static final String DEFAULT_IMAGE_MEMORY_MB = "32";
+    private static final long ADAPTIVE_DETECTION_BUDGET_MS = 1500;
 
     private Context context;
-    private Interpreter mobileNetDetectionInterpreter;
-    private Interpreter eastDetectionInterpreter;
-    private Interpreter recognitionInterpreter;
-    private GpuDelegate gpuDelegate;
-    private MatOfRotatedRect boundingBoxesMat;
-    private MatOfInt indicesMat;
-    private ByteBuffer recognitionResult;
-    private List<String> ocrResults;
-    float ratioHeight;
-    float ratioWidth;
-
-    public OCRModelExecutor(Context context) throws IOException {
+    private OCRPipeline pipeline;
+    private final Queue<BitmapPixelBuffer> pixelBuffers;
+    private final Queue<OrientedPixelBuffer> orientedPixelBuffers;
+    private final ExecutorService inferenceExecutor;
+    private final Handler mainHandler;
+    private final Object requestLock;
+    private final AtomicLong requestGeneration;
+    private Future<?> currentRequest;
+    private final MetricsRecorder metricsRecorder;
+    private final MetricsListener metricsListener;
+    private volatile boolean recordingMetrics;
+    private final long createdNanos;
+    private final Set<DetectionModel> warmedUpModels;
+    private final AtomicBoolean firstResultLogged;
+    private String runtimeSettings;
+    private final RegionCache regionCache;
+    private String regionCacheSettings;
+    private String pipelineSettings;
+    private ResultCache resultCache;
+    private final RecognitionCache recognitionCache;
+    private final AdaptiveDetection adaptiveDetection;
+    private final RecognitionSchedule recognitionSchedule;
+
+    public OCRModelExecutor(Context context) {
+        this.createdNanos = System.nanoTime();
         this.context = context;
-        this.indicesMat = new MatOfInt();
-        this.ocrResults = new ArrayList<>();
-        this.ratioWidth = 0f;
-        this.ratioHeight = 0f;
+        this.pixelBuffers = new ConcurrentLinkedQueue<>();
+        this.orientedPixelBuffers = new ConcurrentLinkedQueue<>();
+        this.inferenceExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "OCRInference"));
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.requestLock = new Object();
+        this.requestGeneration = new AtomicLong();
+        // ART has no supported per-thread allocation counter, so only the batch tool
+        // reports allocations.
+        this.metricsRecorder = new MetricsRecorder();
+        this.metricsListener = new TraceMetricsListener(metricsRecorder);
+        this.warmedUpModels = Collections.synchronizedSet(EnumSet.noneOf(DetectionModel.class));
+        this.firstResultLogged = new AtomicBoolean();
+        this.regionCache = new RegionCache();
+        this.recognitionCache = new RecognitionCache();
+        this.recognitionSchedule = new RecognitionSchedule();
+        this.adaptiveDetection = new AdaptiveDetection(
+                TimeUnit.MILLISECONDS.toNanos(ADAPTIVE_DETECTION_BUDGET_MS),
+                AdaptiveDetection.DEFAULT_MIN_MEAN_CONFIDENCE,
+                AdaptiveDetection.DEFAULT_MAX_EMPTY_FRACTION
+        );
         init();
     }
 
-    private void init() throws IOException {
-        this.mobileNetDetectionInterpreter = getInterpreter(this.context, MOBILE_NET_DETECTION_MODEL, USE_GPU);
-        this.eastDetectionInterpreter = getInterpreter(this.context, EAST_DETECTION_MODEL, USE_GPU);
-        this.recognitionInterpreter = getInterpreter(this.context, TXT_RECOGNITION_MODEL, USE_GPU);
-        this.recognitionResult = ByteBuffer.allocateDirect(RECOGNITION_MODEL_OUTPUT_SIZE * 8);
-        this.recognitionResult.order(ByteOrder.nativeOrder());
+    private void init() {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        this.runtimeSettings = getRuntimeSettings(preferences);
+        this.pipeline = new OCRPipeline(new AssetModelSource(this.context), getRuntimeOptions(preferences));
     }
 
-    public Bitmap run(Bitmap image) {
+    /**
+     * Applies changed runtime settings, then loads and warms up the selected detector
+     * and the recognizers on the inference thread, unless that was already done.
+     * Requests submitted meanwhile run after it.
+     */
+    public void warmUp() {
         SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
-
-        ocrResults.clear();
-
-        if (preferences.getBoolean("useMobileNetDetectionModel", true)) {
-            ratioHeight = (float)image.getHeight() / MOBILE_NET_DETECTION_IMAGE_HEIGHT;
-            ratioWidth = (float)image.getWidth() / MOBILE_NET_DETECTION_IMAGE_WIDTH;
-            detectTextsUsingMobileNet(image);
-        } else {
-            ratioHeight = (float)image.getHeight() / EAST_DETECTION_IMAGE_HEIGHT;
-            ratioWidth = (float)image.getWidth() / EAST_DETECTION_IMAGE_WIDTH;
-            detectTextsUsingEast(image);
+        updateRuntimeOptions(preferences);
+        DetectionModel detectionModel = getDetectionModel(preferences);
+        updatePipelineSettings(preferences);
+        if (!warmedUpModels.add(detectionModel)) {
+            return;
         }
 
-
-        return recognizeTexts(image);
+        try {
+            inferenceExecutor.execute(() -> {
+                try {
+                    pipeline.warmUp(detectionModel);
+                    logStartup("warm-up of " + detectionModel);
+                } catch (RuntimeException e) {
+                    warmedUpModels.remove(detectionModel);
+                    Log.w(STARTUP_TAG, "Warm-up of " + detectionModel + " failed", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Already closed.
+        }
     }
 
-    private void detectTextsUsingMobileNet(Bitmap image) {
-        TensorImage detectionTensorImage = ImageUtils.bitmapToTensorImageForDetection(
-                image,
-                MOBILE_NET_DETECTION_IMAGE_WIDTH,
-                MOBILE_NET_DETECTION_IMAGE_HEIGHT,
-                MOBILE_NET_DETECTION_IMAGE_MEANS,
-                MOBILE_NET_DETECTION_IMAGE_STDS
-        );
+    /**
+     * Releases models according to an {@link ComponentCallbacks2#onTrimMemory} level:
+     * the detector that is not selected when memory runs low, and all models when the
+     * app is in the background or memory is critical. They are loaded again on demand.
+     */
+    public void trimMemory(int level) {
+        boolean releaseAll = level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+        if (!releaseAll && level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return;
+        }
+        DetectionModel selected = getDetectionModel(PreferenceManager.getDefaultSharedPreferences(context));
+
+        try {
+            // Releasing waits for running requests, so it is kept off the calling thread.
+            inferenceExecutor.execute(() -> {
+                if (releaseAll) {
+                    pipeline.releaseAll();
+                    warmedUpModels.clear();
+                    return;
+                }
+                for (DetectionModel detectionModel : DetectionModel.values()) {
+                    if (detectionModel != selected) {
+                        pipeline.release(detectionModel);
+                        warmedUpModels.remove(detectionModel);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Already closed.
+        }
+    }
 
+    /**
+     * Runs the OCR pipeline on a dedicated inference thread and delivers the result to
+     * {@code callback} on the main thread. A new request supersedes the previous one:
+     * a queued request is dropped and a running one stops at the next stage or text box.
+     *
+     * @param timeoutMillis the request fails with a {@link CancellationException} once
+     *                      this much time has passed, or with the
+     *                      {@code useScheduledRecognition} setting returns the boxes
+     *                      recognized by then; 0 for no deadline
+     */
+    public Future<?> runAsync(Bitmap image, long timeoutMillis, Callback callback) {
+        return runAsync(image, Orientation.NORMAL, timeoutMillis, callback);
+    }
 
-        Buffer[] detectionInputs = new Buffer[]{detectionTensorImage.getBuffer().rewind()};
-        HashMap<Integer, Object> detectionOutputs = new HashMap();
+    /**
+     * Like {@link #runAsync(Bitmap, long, Callback)} for an image stored in
+     * {@code orientation}, such as a photo with an EXIF orientation. The pixels are not
+     * rotated; texts are recognized upright and the boxes drawn on the stored image.
+     */
+    public Future<?> runAsync(Bitmap image, Orientation orientation, long timeoutMillis, Callback callback) {
+        LoadedImage loaded = new LoadedImage(image, orientation);
+        return submit(() -> loaded, image, timeoutMillis, callback);
+    }
 
+    /**
+     * Like {@link #runAsync(Bitmap, Orientation, long, Callback)} for an encoded image,
+     * which is decoded on the inference thread with {@code decoder} within
+     * {@link #getDecodeBudget()}. Decoding counts against the timeout, and failures
+     * go to {@link Callback#onError}. The decoded bitmap is passed to
+     * {@link Callback#onFinished}.
+     */
+    public Future<?> runAsync(
+            BitmapDecoder.Source source,
+            BitmapDecoder decoder,
+            long timeoutMillis,
+            Callback callback
+    ) {
+        return submit(() -> {
+            // Read first, so a failure cannot lose a decoded bitmap.
+            Orientation orientation = BitmapDecoder.readOrientation(source);
+            return new LoadedImage(decoder.decode(source, getDecodeBudget()), orientation);
+        }, null, timeoutMillis, callback);
+    }
 
-        float[][][] detectionBoxes = new float[1][10][4];
-        float[][] detectionClasses = new float[1][10];
-        float[][] detectionScores = new float[1][10];
-        float[] detectionMasks = new float[1];
+    private Future<?> submit(ImageLoader loader, Bitmap knownImage, long timeoutMillis, Callback callback) {
+        long deadline = timeoutMillis > 0
+                ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis)
+                : NO_DEADLINE;
 
-        detectionOutputs.put(0, detectionBoxes);
-        detectionOutputs.put(1, detectionClasses);
-        detectionOutputs.put(2, detectionScores);
-        detectionOutputs.put(3, detectionMasks);
+        synchronized (requestLock) {
+            long generation = requestGeneration.incrementAndGet();
+            if (currentRequest != null) {
+                currentRequest.cancel(true);
+            }
 
+            // Taken by whichever comes first, the request starting or being cancelled
+            // before it starts, which then finishes the request.
+            AtomicBoolean claimed = new AtomicBoolean();
+            FutureTask<Void> request = new FutureTask<Void>(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    return;
+                }
+                Bitmap image = knownImage;
+                try {
+                    LoadedImage loaded = loader.load();
+                    image = loaded.image;
+                    OCRResult result = run(loaded.image, loaded.orientation, deadline, partial -> deliver(
+                            generation,
+                            () -> callback.onPartialResult(new OCRResult(loaded.image, loaded.orientation, partial))
+                    ));
+                    deliver(generation, () -> callback.onResult(result));
+                } catch (IOException | RuntimeException e) {
+                    deliver(generation, () -> callback.onError(e));
+                } finally {
+                    finish(image, callback);
+                }
+            }, null) {
+                @Override
+                protected void done() {
+                    if (isCancelled() && claimed.compareAndSet(false, true)) {
+                        finish(knownImage, callback);
+                    }
+                }
+            };
+            inferenceExecutor.execute(request);
+            currentRequest = request;
+            return request;
+        }
+    }
 
-        mobileNetDetectionInterpreter.runForMultipleInputsOutputs(detectionInputs, detectionOutputs);
+    // Posted after every delivery of the request, so onFinished comes last.
+    private void finish(Bitmap image, Callback callback) {
+        mainHandler.post(() -> callback.onFinished(image));
+    }
 
-        List detectedRotatedRects = new ArrayList<RotatedRect>();
-        List detectedConfidences = new ArrayList<Float>();
+    /**
+     * Cancels the pending {@link #runAsync} request, if any. Its callback is not called.
+     */
+    public void cancel() {
+        synchronized (requestLock) {
+            requestGeneration.incrementAndGet();
+            if (currentRequest != null) {
+                currentRequest.cancel(true);
+                currentRequest = null;
+            }
+        }
+    }
 
-        for (int x = 0; x < detectionBoxes[0][0].length; x++) {
-            float detectionScoreData = detectionScores[0][x];
-            float detectionGeometryYMin = detectionBoxes[0][x][0];
-            float detectionGeometryXMin = detectionBoxes[0][x][1];
-            float detectionGeometryYMax = detectionBoxes[0][x][2];
-            float detectionGeometryXMax = detectionBoxes[0][x][3];
+    /**
+     * Cancels the pending request, stops the inference thread and releases the models.
+     */
+    public void close() {
+        cancel();
+        // Runs after the cancelled request stops, so no interpreter is closed mid-inference.
+        inferenceExecutor.execute(pipeline::close);
+        inferenceExecutor.shutdown();
+    }
 
-            if (detectionScoreData < 0.5) {
-                continue;
-            }
+    /**
+     * Metrics aggregated since the {@code recordMetrics} setting was last switched on.
+     */
+    public MetricsRecorder getMetricsRecorder() {
+        return metricsRecorder;
+    }
 
-            double w = (detectionGeometryXMax - detectionGeometryXMin) * MOBILE_NET_DETECTION_IMAGE_WIDTH;
-            double h = (detectionGeometryYMax - detectionGeometryYMin) * MOBILE_NET_DETECTION_IMAGE_HEIGHT;
-            double centerW = detectionGeometryXMin * MOBILE_NET_DETECTION_IMAGE_WIDTH  + w/2;
-            double centerH = detectionGeometryYMin * MOBILE_NET_DETECTION_IMAGE_HEIGHT + h/2;
-
-            float angle = 0;
-            Point center = new Point(centerW,centerH);
-
-            RotatedRect textDetection =
-                    new RotatedRect(
-                            center,
-                            new Size(w, h),
-                            (-1 * angle * 180.0 / Math.PI)
-                    );
-            detectedRotatedRects.add(textDetection);
-            detectedConfidences.add(detectionScoreData);
-        }
+    /**
+     * Starts continuous OCR of live frames, such as camera previews wrapped in a
+     * {@link BitmapPixelBuffer}, with the detector and batching selected in the settings.
+     * The listener is called on the stream's threads. Close the stream before this
+     * executor.
+     */
+    public StreamingOcr openStream(StreamingOcr.Listener listener) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        updatePipelineSettings(preferences);
+        return new StreamingOcr(
+                pipeline,
+                getDetectionModel(preferences),
+                preferences.getBoolean("useBatchedRecognition", false),
+                listener
+        );
+    }
 
-        if (detectedConfidences.size() == 0) {
+    private void deliver(long generation, Runnable delivery) {
+        if (generation != requestGeneration.get()) {
             return;
         }
+        mainHandler.post(() -> {
+            if (generation == requestGeneration.get()) {
+                delivery.run();
+            }
+        });
+    }
 
-        MatOfFloat detectedConfidencesMat = new MatOfFloat(vector_float_to_Mat(detectedConfidences));
-        boundingBoxesMat = new MatOfRotatedRect(vector_RotatedRect_to_Mat(detectedRotatedRects));
-        NMSBoxesRotated(
-                boundingBoxesMat,
-                detectedConfidencesMat,
-                DETECTION_CONFIDENCE_THRESHOLD,
-                DETECTION_NMS_THRESHOLD,
-                indicesMat
+    /**
+     * Budget to decode images for the selected detector with, bounded by the
+     * {@code imageMemoryMb} setting.
+     */
+    public DecodeBudget getDecodeBudget() {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        long maxBytes = Long.parseLong(preferences.getString("imageMemoryMb", DEFAULT_IMAGE_MEMORY_MB)) * 1024 * 1024;
+        return DecodeBudget.forDetection(
+                getDetectionModel(preferences),
+                preferences.getBoolean("useTiledDetection", false),
+                maxBytes
         );
     }
 
-        public void detectTextsUsingEast(Bitmap image) {
-            TensorImage detectionTensorImage = ImageUtils.bitmapToTensorImageForDetection(
-                    image,
-                    EAST_DETECTION_IMAGE_WIDTH,
-                    EAST_DETECTION_IMAGE_HEIGHT,
-                    EAST_DETECTION_IMAGE_MEANS,
-                    EAST_DETECTION_IMAGE_STDS
-            );
-
-
-            Buffer[] detectionInputs = new Buffer[]{detectionTensorImage.getBuffer().rewind()};
-            HashMap<Integer, Object> detectionOutputs = new HashMap();
-
-            float[][][][] detectionScores = new float[1][80][80][1];
-            float[][][][] detectionGeometries = new float[1][80][80][5];
-
-            detectionOutputs.put(0, detectionScores);
-            detectionOutputs.put(1, detectionGeometries);
-
-            eastDetectionInterpreter.runForMultipleInputsOutputs(detectionInputs, detectionOutputs);
+    /**
+     * Runs the OCR pipeline on the calling thread. Safe to call from several threads.
+     * {@code image} is only read; nothing is drawn on it.
+     */
+    public OCRResult run(Bitmap image) {
+        return run(image, Orientation.NORMAL, NO_DEADLINE, null);
+    }
 
-            float[][][][] transposeddetectionScores = new float[1][1][80][80];
-            float[][][][] transposedDetectionGeometries = new float[1][5][80][80];
+    private OCRResult run(
+            Bitmap image,
+            Orientation orientation,
+            long deadlineNanos,
+            OCRPipeline.ProgressListener listener
+    ) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        DetectionModel detectionModel = getDetectionModel(preferences);
+        boolean recordMetrics = preferences.getBoolean("recordMetrics", false);
+        updateMetricsListener(recordMetrics);
 
-            for (int i = 0; i < transposeddetectionScores[0][0].length ; i++){
-                for (int j = 0; j < transposeddetectionScores[0][0][0].length ; j++){
-                    for (int k = 0; k < 1 ; k++){
-                        transposeddetectionScores[0][k][i][j] = detectionScores[0][i][j][k];
-                    }
-                    for (int k = 0; k < 5 ; k++){
-                        transposedDetectionGeometries[0][k][i][j] = detectionGeometries[0][i][j][k];
-                    }
-                }
+        BitmapPixelBuffer pixelBuffer = pixelBuffers.poll();
+        if (pixelBuffer == null) {
+            pixelBuffer = new BitmapPixelBuffer();
+        }
+        pixelBuffer.setBitmap(image);
+        PixelBuffer orientedImage = pixelBuffer;
+        OrientedPixelBuffer orientedPixelBuffer = null;
+        if (orientation != Orientation.NORMAL) {
+            orientedPixelBuffer = orientedPixelBuffers.poll();
+            if (orientedPixelBuffer == null) {
+                orientedPixelBuffer = new OrientedPixelBuffer();
             }
+            orientedPixelBuffer.set(pixelBuffer, orientation);
+            orientedImage = orientedPixelBuffer;
+        }
 
-            List detectedRotatedRects = new ArrayList<RotatedRect>();
-            List detectedConfidences = new ArrayList<Float>();
-
-            for (int y = 0; y < transposeddetectionScores[0][0].length; y++) {
-                float[] detectionScoreData = transposeddetectionScores[0][0][y];
-                float[] detectionGeometryX0Data = transposedDetectionGeometries[0][0][y];
-                float[] detectionGeometryX1Data = transposedDetectionGeometries[0][1][y];
-                float[] detectionGeometryX2Data = transposedDetectionGeometries[0][2][y];
-                float[] detectionGeometryX3Data = transposedDetectionGeometries[0][3][y];
-                float[] detectionRotationAngleData = transposedDetectionGeometries[0][4][y];
-
-                for (int x = 0; x < transposeddetectionScores[0][0][0].length; x++) {
-                    if (detectionScoreData[x] < 0.5) {
-                        continue;
-                    }
-
-                    double offsetX = x * 4.0;
-                    double offsetY = y * 4.0;
-
-                    double h = detectionGeometryX0Data[x] + detectionGeometryX2Data[x];
-                    double w = detectionGeometryX1Data[x] + detectionGeometryX3Data[x];
-
-                    float angle = detectionRotationAngleData[x];
-                    double cos = Math.cos(angle);
-                    double sin = Math.sin(angle);
-
-                    Point offset = new Point(
-                            offsetX + cos * detectionGeometryX1Data[x] + sin * detectionGeometryX2Data[x],
-                            offsetY - sin * detectionGeometryX1Data[x] + cos * detectionGeometryX2Data[x]
-                    );
-
-                    Point p1 = new Point(-sin * h + offset.x, -cos * h + offset.y);
-                    Point p3 = new Point(-cos * w + offset.x, sin * w + offset.y);
-                    Point center = new Point(0.5 * (p1.x + p3.x), 0.5 * (p1.y + p3.y));
-
-                    RotatedRect textDetection =
-                            new RotatedRect(
-                                    center,
-                                    new Size(w, h),
-                                    (-1 * angle * 180.0 / Math.PI)
-                            );
-                    detectedRotatedRects.add(textDetection);
-                    detectedConfidences.add(detectionScoreData[x]);
-                }
+        OCRPipelineResult result;
+        ScheduledProgress progress = new ScheduledProgress(listener);
+        boolean useResultCache = preferences.getBoolean("useResultCache", false);
+        updatePipelineSettings(preferences);
+        try {
+            if (useResultCache) {
+                result = runWithResultCache(orientedImage, preferences, detectionModel, deadlineNanos, progress);
+            } else {
+                result = runPipeline(orientedImage, preferences, detectionModel, deadlineNanos, progress);
+            }
+        } finally {
+            pixelBuffer.setBitmap(null);
+            pixelBuffers.offer(pixelBuffer);
+            if (orientedPixelBuffer != null) {
+                orientedPixelBuffer.set(null, Orientation.NORMAL);
+                orientedPixelBuffers.offer(orientedPixelBuffer);
             }
+        }
 
-            if (detectedConfidences.size() == 0) {
-                return;
+        if (firstResultLogged.compareAndSet(false, true)) {
+            logStartup("first result");
+        }
+        if (recordMetrics) {
+            Log.i(METRICS_TAG, metricsRecorder.toJson());
+            if (useResultCache) {
+                Log.i(METRICS_TAG, getResultCache().toString());
             }
+            if (preferences.getBoolean("useAdaptiveDetection", false)) {
+                Log.i(METRICS_TAG, adaptiveDetection.toString());
+            }
+        }
+        return new OCRResult(image, orientation, result);
+    }
 
-        MatOfFloat detectedConfidencesMat = new MatOfFloat(vector_float_to_Mat(detectedConfidences));
-        boundingBoxesMat = new MatOfRotatedRect(vector_RotatedRect_to_Mat(detectedRotatedRects));
-        NMSBoxesRotated(
-                boundingBoxesMat,
-                detectedConfidencesMat,
-                DETECTION_CONFIDENCE_THRESHOLD,
-                DETECTION_NMS_THRESHOLD,
-                indicesMat
-        );
+    private OCRPipelineResult runWithResultCache(
+            PixelBuffer pixelBuffer,
+            SharedPreferences preferences,
+            DetectionModel detectionModel,
+            long deadlineNanos,
+            ScheduledProgress progress
+    ) {
+        ResultCache resultCache = getResultCache();
+        String key = ResultCache.key(pixelBuffer, detectionModel
+                + "," + preferences.getBoolean("useAdaptiveDetection", false)
+                + "," + preferences.getBoolean("useTiledDetection", false)
+                + "," + preferences.getBoolean("useLocalityAwareMerging", false)
+                + "," + preferences.getBoolean("useBucketedRecognition", false)
+                + "," + preferences.getBoolean("useScheduledRecognition", false)
+                + "," + getRuntimeSettings(preferences));
+        OCRPipelineResult result = resultCache.get(key);
+        if (result == null) {
+            result = runPipeline(pixelBuffer, preferences, detectionModel, deadlineNanos, progress);
+            if (!progress.isDeferred()) {
+                resultCache.put(key, result);
+            }
+        }
+        return result;
     }
 
-    public Bitmap recognizeTexts(Bitmap image) {
-        if (boundingBoxesMat == null) {
-            return image;
+    private OCRPipelineResult runPipeline(
+            PixelBuffer pixelBuffer,
+            SharedPreferences preferences,
+            DetectionModel detectionModel,
+            long deadlineNanos,
+            ScheduledProgress progress
+    ) {
+        boolean batched = preferences.getBoolean("useBatchedRecognition", false);
+        if (preferences.getBoolean("useScheduledRecognition", false)) {
+            // Known regions would save detection, but scheduling needs their scores.
+            return pipeline.runScheduled(pixelBuffer, detectionModel, batched, deadlineNanos, recognitionSchedule, progress);
         }
+        if (preferences.getBoolean("useRegionCache", false)) {
+            updateRegionCache(detectionModel
+                    + "," + preferences.getBoolean("useAdaptiveDetection", false)
+                    + "," + preferences.getBoolean("useTiledDetection", false)
+                    + "," + preferences.getBoolean("useLocalityAwareMerging", false));
+            return runWithRegionCache(pixelBuffer, detectionModel, batched, deadlineNanos);
+        }
+        return pipeline.run(pixelBuffer, detectionModel, batched, deadlineNanos);
+    }
 
-        Bitmap bitmapWithBoundingBoxes = image.copy(Bitmap.Config.ARGB_8888, true);
-        Canvas canvas = new Canvas(bitmapWithBoundingBoxes);
-        Paint paint = new Paint();
-
-        paint.setStyle( Paint.Style.STROKE);
-        paint.setStrokeWidth(10f);
-        paint.setColor(Color.GREEN);
-
-        for(int i:indicesMat.toArray()) {
-            RotatedRect boundingBox = boundingBoxesMat.toArray()[i];
-            List<Point> targetVertices = new ArrayList<>();
-            targetVertices.add(new Point(0, (RECOGNITION_IMAGE_HEIGHT - 1)));
-            targetVertices.add(new Point(0, 0));
-            targetVertices.add(new Point((RECOGNITION_IMAGE_WIDTH - 1), 0));
-            targetVertices.add(new Point((RECOGNITION_IMAGE_WIDTH - 1), (RECOGNITION_IMAGE_HEIGHT - 1)));
-
-            List<Point> srcVertices = new ArrayList<>();
-
-            Mat boundingBoxPointsMat = new Mat();
-            boxPoints(boundingBox, boundingBoxPointsMat);
-
-            for(int j = 0; j < 4; j++) {
-                srcVertices.add(
-                        new Point(
-                                boundingBoxPointsMat.get(j, 0)[0] * ratioWidth,
-                                boundingBoxPointsMat.get(j, 1)[0] * ratioHeight
-                        )
-                );
-
-                if (j != 0) {
-                    canvas.drawLine(
-                            (float)boundingBoxPointsMat.get(j, 0)[0] *  ratioWidth,
-                            (float)boundingBoxPointsMat.get(j, 1)[0] * ratioHeight,
-                            (float)boundingBoxPointsMat.get(j - 1, 0)[0] *  ratioWidth,
-                            (float)boundingBoxPointsMat.get(j - 1, 1)[0] * ratioHeight,
-                            paint
-                    );
-                }
-            }
-            canvas.drawLine(
-                    (float)boundingBoxPointsMat.get(0, 0)[0] * ratioWidth,
-                    (float)boundingBoxPointsMat.get(0, 1)[0] * ratioHeight,
-                    (float)boundingBoxPointsMat.get(3, 0)[0] * ratioWidth,
-                    (float)boundingBoxPointsMat.get(3, 1)[0] * ratioHeight,
-                    paint
+    // Created on first use, since it lists its directory.
+    private synchronized ResultCache getResultCache() {
+        if (resultCache == null) {
+            resultCache = new ResultCache(
+                    ResultCache.DEFAULT_MAX_ENTRIES,
+                    ResultCache.DEFAULT_MAX_BYTES,
+                    new File(context.getCacheDir(), RESULT_CACHE_DIRECTORY),
+                    ResultCache.DEFAULT_MAX_DISK_ENTRIES
             );
+        }
+        return resultCache;
+    }
 
-            MatOfPoint2f srcVerticesMat = new MatOfPoint2f(
-                    srcVertices.get(0),
-                    srcVertices.get(1),
-                    srcVertices.get(2),
-                    srcVertices.get(3)
-            );
-            MatOfPoint2f targetVerticesMat = new MatOfPoint2f(
-                    targetVertices.get(0),
-                    targetVertices.get(1),
-                    targetVertices.get(2),
-                    targetVertices.get(3)
-            );
-            Mat rotationMatrix = getPerspectiveTransform(srcVerticesMat, targetVerticesMat);
-            Mat recognitionBitmapMat = new Mat();
-            Mat srcBitmapMat = new Mat();
-
-            bitmapToMat(image, srcBitmapMat);
-            warpPerspective(
-                    srcBitmapMat,
-                    recognitionBitmapMat,
-                    rotationMatrix,
-                    new Size(RECOGNITION_IMAGE_WIDTH, RECOGNITION_IMAGE_HEIGHT)
-            );
+    private OCRPipelineResult runWithRegionCache(
+            PixelBuffer pixelBuffer,
+            DetectionModel detectionModel,
+            boolean batched,
+            long deadlineNanos
+    ) {
+        int[] thumbnail = RegionCache.thumbnail(pixelBuffer);
+        float[] regions = regionCache.lookup(thumbnail, pixelBuffer.getWidth(), pixelBuffer.getHeight());
+        if (regions != null) {
+            OCRPipelineResult result = pipeline.recognize(pixelBuffer, regions, batched, deadlineNanos);
+            if (regionCache.accept(result)) {
+                return result;
+            }
+        }
 
-            Bitmap recognitionBitmap = ImageUtils.createEmptyBitmap(
-                    RECOGNITION_IMAGE_WIDTH,
-                    RECOGNITION_IMAGE_HEIGHT,
-                    0,
-                    Bitmap.Config.ARGB_8888
-            );
-            matToBitmap(recognitionBitmapMat, recognitionBitmap);
-
-            TensorImage recognitionTensorImage = ImageUtils.bitmapToTensorImageForRecognition(
-                    recognitionBitmap,
-                    RECOGNITION_IMAGE_WIDTH,
-                    RECOGNITION_IMAGE_HEIGHT,
-                    RECOGNITION_IMAGE_MEAN,
-                    RECOGNITION_IMAGE_STD
-            );
+        OCRPipelineResult result = pipeline.run(pixelBuffer, detectionModel, batched, deadlineNanos);
+        regionCache.remember(thumbnail, pixelBuffer.getWidth(), pixelBuffer.getHeight(), result);
+        return result;
+    }
 
-            recognitionResult.rewind();
-            recognitionInterpreter.run(recognitionTensorImage.getBuffer(), recognitionResult);
+    // Regions found with another detector or detection mode are detected again.
+    private synchronized void updateRegionCache(String settings) {
+        if (!settings.equals(regionCacheSettings)) {
+            regionCache.invalidate();
+            regionCacheSettings = settings;
+        }
+    }
 
-            String recognizedText = "";
-            for (int k = 0; k < RECOGNITION_MODEL_OUTPUT_SIZE ; k++) {
-                int alphabetIndex = recognitionResult.getInt(k * 8);
+    // The pipeline is shared by concurrent requests, so its settings are only written
+    // when they change and never by every request.
+    private synchronized void updatePipelineSettings(SharedPreferences preferences) {
+        boolean tiledDetection = preferences.getBoolean("useTiledDetection", false);
+        boolean localityAwareMerging = preferences.getBoolean("useLocalityAwareMerging", false);
+        boolean bucketedRecognition = preferences.getBoolean("useBucketedRecognition", false);
+        boolean useResultCache = preferences.getBoolean("useResultCache", false);
+        boolean useAdaptiveDetection = preferences.getBoolean("useAdaptiveDetection", false);
+        String settings = tiledDetection
+                + "," + localityAwareMerging
+                + "," + bucketedRecognition
+                + "," + useResultCache
+                + "," + useAdaptiveDetection;
+        if (settings.equals(pipelineSettings)) {
+            return;
+        }
+        pipelineSettings = settings;
+        pipeline.setTiledDetection(tiledDetection);
+        pipeline.setLocalityAwareMerging(localityAwareMerging);
+        pipeline.setBucketedRecognition(bucketedRecognition);
+        pipeline.setRecognitionCache(useResultCache ? recognitionCache : null);
+        pipeline.setAdaptiveDetection(useAdaptiveDetection ? adaptiveDetection : null);
+    }
 
-                if (0 <= alphabetIndex && 35 >= alphabetIndex) {
-                    recognizedText = recognizedText + ALPHABETS.charAt(alphabetIndex);
-                }
-            }
-            if (!recognizedText.isEmpty()) {
-                ocrResults.add(recognizedText);
-            }
+    private synchronized void updateRuntimeOptions(SharedPreferences preferences) {
+        String settings = getRuntimeSettings(preferences);
+        if (settings.equals(runtimeSettings)) {
+            return;
         }
+        runtimeSettings = settings;
+        RuntimeOptions options = getRuntimeOptions(preferences);
+        warmedUpModels.clear();
+        // The quantized detector may find other regions.
+        regionCache.invalidate();
+
+        try {
+            // Replacing the options releases the models, which waits for running requests.
+            inferenceExecutor.execute(() -> pipeline.setRuntimeOptions(options));
+        } catch (RejectedExecutionException e) {
+            // Already closed.
+        }
+    }
 
-        return bitmapWithBoundingBoxes;
+    private static String getRuntimeSettings(SharedPreferences preferences) {
+        return preferences.getBoolean("useXnnpack", true)
+                + "," + preferences.getBoolean("allowFp16", false)
+                + "," + preferences.getBoolean("useNnapi", false)
+                + "," + preferences.getBoolean("useQuantizedModels", false);
     }
 
-    private Interpreter getInterpreter(Context context, String modelName, boolean useGpu) throws IOException {
-        Interpreter.Options tfliteOptions = new Interpreter.Options();
-        tfliteOptions.setNumThreads(4);
-        this.gpuDelegate = null;
-        if (useGpu) {
-            this.gpuDelegate = new GpuDelegate();
-            tfliteOptions.addDelegate(this.gpuDelegate);
+    private static RuntimeOptions getRuntimeOptions(SharedPreferences preferences) {
+        boolean allowFp16 = preferences.getBoolean("allowFp16", false);
+        RuntimeOptions options = new RuntimeOptions()
+                .setUseXnnpack(preferences.getBoolean("useXnnpack", true))
+                .setAllowFp16(allowFp16)
+                .setQuantizedModels(preferences.getBoolean("useQuantizedModels", false));
+
+        if (preferences.getBoolean("useNnapi", false)) {
+            // Without the NNAPI reference CPU implementation, models the accelerators
+            // cannot run fall back to the TFLite CPU kernels.
+            options.setDelegateFactory(() -> new NnApiDelegate(new NnApiDelegate.Options()
+                    .setAllowFp16(allowFp16)
+                    .setUseNnapiCpu(false)));
+        } else if (USE_GPU) {
+            options.setDelegateFactory(GpuDelegate::new);
         }
+        return options;
+    }
 
-        return new Interpreter(this.loadModelFile(context, modelName), tfliteOptions);
+    // Adaptive detection starts with Mobile Net and loads EAST when it first escalates.
+    private static DetectionModel getDetectionModel(SharedPreferences preferences) {
+        return preferences.getBoolean("useAdaptiveDetection", false)
+                || preferences.getBoolean("useMobileNetDetectionModel", true)
+                ? DetectionModel.MOBILE_NET
+                : DetectionModel.EAST;
     }
 
-    private final MappedByteBuffer loadModelFile(Context context, String modelFile) throws IOException {
-        AssetFileDescriptor fileDescriptor = context.getAssets().openFd(modelFile);
-        FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
-        FileChannel fileChannel = inputStream.getChannel();
-        long startOffset = fileDescriptor.getStartOffset();
-        long declaredLength = fileDescriptor.getDeclaredLength();
-        MappedByteBuffer retFile = fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
-        fileDescriptor.close();
-        return retFile;
+    private void logStartup(String milestone) {
+        Log.i(STARTUP_TAG, String.format(
+                "%s after %d ms, PSS %d kB, native heap %d kB",
+                milestone,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - createdNanos),
+                Debug.getPss(),
+                Debug.getNativeHeapAllocatedSize() / 1024
+        ));
     }
 
-    public List<String> getOcrResults() {
-        return ocrResults;
+    private synchronized void updateMetricsListener(boolean recordMetrics) {
+        if (recordMetrics == recordingMetrics) {
+            return;
+        }
+        if (recordMetrics) {
+            metricsRecorder.reset();
+            pipeline.setMetricsListener(metricsListener);
+        } else {
+            pipeline.setMetricsListener(MetricsListener.NONE);
+        }
+        recordingMetrics = recordMetrics;
+    }
+
+    // Forwards the partial results of a scheduled run and notes whether boxes were dropped.
+    private static final class ScheduledProgress implements OCRPipeline.ProgressListener {
+        private final OCRPipeline.ProgressListener listener;
+        private boolean deferred;
+
+        ScheduledProgress(OCRPipeline.ProgressListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onPartialResult(OCRPipelineResult partial) {
+            if (listener != null) {
+                listener.onPartialResult(partial);
+            }
+        }
+
+        @Override
+        public void onDeferred(float[] corners) {
+            deferred = true;
+        }
+
+        boolean isDeferred() {
+            return deferred;
+        }
     }
 }
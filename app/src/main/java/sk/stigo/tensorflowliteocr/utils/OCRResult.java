@@ -0,0 +1,47 @@
+package sk.stigo.tensorflowliteocr.utils;
+
+import android.graphics.Bitmap;
+
+import java.util.List;
+
+import sk.stigo.tensorflowliteocr.core.OCRPipelineResult;
+import sk.stigo.tensorflowliteocr.core.Orientation;
+
+/**
+ * Outcome of one OCR request: the unchanged image, stored in the orientation it was
+ * recognized in, and the detected boxes with their texts and confidences. Boxes can
+ * be shown over the image with {@link OrientedBitmapDrawable#setTextBoxes}.
+ */
+public class OCRResult {
+    private final Bitmap image;
+    private final Orientation orientation;
+    private final OCRPipelineResult result;
+
+    public OCRResult(Bitmap image, Orientation orientation, OCRPipelineResult result) {
+        this.image = image;
+        this.orientation = orientation;
+        this.result = result;
+    }
+
+    public Bitmap getImage() {
+        return image;
+    }
+
+    /**
+     * Boxes in upright image coordinates with their texts and confidences.
+     */
+    public OCRPipelineResult getBoxes() {
+        return result;
+    }
+
+    public Orientation getOrientation() {
+        return orientation;
+    }
+
+    /**
+     * Non-empty recognized texts in detection order.
+     */
+    public List<String> getTexts() {
+        return result.getTexts();
+    }
+}
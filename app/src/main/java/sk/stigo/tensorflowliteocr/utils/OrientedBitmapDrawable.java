@@ -0,0 +1,127 @@
+package sk.stigo.tensorflowliteocr.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+import sk.stigo.tensorflowliteocr.core.OCRPipelineResult;
+import sk.stigo.tensorflowliteocr.core.Orientation;
+
+/**
+ * Draws a bitmap upright in its {@link Orientation} by transforming the canvas, so a
+ * photo stored sideways is shown without a rotated copy of its pixels. Text boxes set
+ * with {@link #setTextBoxes} are drawn over it at display resolution, never into the
+ * bitmap.
+ */
+public class OrientedBitmapDrawable extends Drawable {
+    private static final float BOX_STROKE_WIDTH = 4f;
+    private static final float[] TRANSPOSE = new float[]{0f, 1f, 0f, 1f, 0f, 0f, 0f, 0f, 1f};
+
+    private final Bitmap bitmap;
+    private final Orientation orientation;
+    private final Paint paint;
+    private final Matrix matrix;
+    private final Matrix transpose;
+    private final Paint boxPaint;
+    private OCRPipelineResult textBoxes;
+
+    public OrientedBitmapDrawable(Bitmap bitmap, Orientation orientation) {
+        this.bitmap = bitmap;
+        this.orientation = orientation;
+        this.paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        this.boxPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        this.boxPaint.setStyle(Paint.Style.STROKE);
+        this.boxPaint.setStrokeWidth(BOX_STROKE_WIDTH);
+        this.boxPaint.setColor(Color.GREEN);
+        this.matrix = new Matrix();
+        this.transpose = new Matrix();
+        this.transpose.setValues(TRANSPOSE);
+    }
+
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    /**
+     * Draws the boxes of {@code result}, recognized in the upright bitmap, over it, or
+     * none for {@code null}.
+     */
+    public void setTextBoxes(OCRPipelineResult result) {
+        this.textBoxes = result;
+        invalidateSelf();
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        Rect bounds = getBounds();
+        // Maps stored pixels to upright ones, the inverse of Orientation.getStoredX and getStoredY.
+        matrix.setScale(orientation.isFlippedX() ? -1f : 1f, orientation.isFlippedY() ? -1f : 1f);
+        matrix.postTranslate(
+                orientation.isFlippedX() ? bitmap.getWidth() : 0f,
+                orientation.isFlippedY() ? bitmap.getHeight() : 0f
+        );
+        if (orientation.isTransposed()) {
+            matrix.postConcat(transpose);
+        }
+        matrix.postScale(
+                (float) bounds.width() / getIntrinsicWidth(),
+                (float) bounds.height() / getIntrinsicHeight()
+        );
+        matrix.postTranslate(bounds.left, bounds.top);
+        canvas.drawBitmap(bitmap, matrix, paint);
+        if (textBoxes != null) {
+            drawTextBoxes(canvas, bounds);
+        }
+    }
+
+    // Boxes are in upright bitmap coordinates, so they only need scaling to the bounds.
+    private void drawTextBoxes(Canvas canvas, Rect bounds) {
+        float scaleX = (float) bounds.width() / getIntrinsicWidth();
+        float scaleY = (float) bounds.height() / getIntrinsicHeight();
+        for (int box = 0; box < textBoxes.getBoxCount(); box++) {
+            for (int corner = 0; corner < 4; corner++) {
+                int previous = (corner + 3) % 4;
+                canvas.drawLine(
+                        bounds.left + textBoxes.getCorner(box, corner * 2) * scaleX,
+                        bounds.top + textBoxes.getCorner(box, corner * 2 + 1) * scaleY,
+                        bounds.left + textBoxes.getCorner(box, previous * 2) * scaleX,
+                        bounds.top + textBoxes.getCorner(box, previous * 2 + 1) * scaleY,
+                        boxPaint
+                );
+            }
+        }
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return orientation.isTransposed() ? bitmap.getHeight() : bitmap.getWidth();
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return orientation.isTransposed() ? bitmap.getWidth() : bitmap.getHeight();
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        paint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        paint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
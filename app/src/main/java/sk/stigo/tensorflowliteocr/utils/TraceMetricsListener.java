@@ -0,0 +1,36 @@
+package sk.stigo.tensorflowliteocr.utils;
+
+import android.os.Trace;
+
+import sk.stigo.tensorflowliteocr.core.Counter;
+import sk.stigo.tensorflowliteocr.core.MetricsListener;
+import sk.stigo.tensorflowliteocr.core.Stage;
+
+/**
+ * Marks every pipeline stage as a systrace section, so the stages show up in Perfetto
+ * and the Android Studio profiler, and forwards everything to {@code delegate}.
+ */
+public class TraceMetricsListener implements MetricsListener {
+    private final MetricsListener delegate;
+
+    public TraceMetricsListener(MetricsListener delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void onStageStarted(Stage stage) {
+        Trace.beginSection("OCR " + stage);
+        delegate.onStageStarted(stage);
+    }
+
+    @Override
+    public void onStageFinished(Stage stage, long durationNanos) {
+        delegate.onStageFinished(stage, durationNanos);
+        Trace.endSection();
+    }
+
+    @Override
+    public void onCount(Counter counter, long value) {
+        delegate.onCount(counter, value);
+    }
+}
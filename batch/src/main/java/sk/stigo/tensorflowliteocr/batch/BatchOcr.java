@@ -0,0 +1,411 @@
+package sk.stigo.tensorflowliteocr.batch;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import sk.stigo.tensorflowliteocr.core.AdaptiveDetection;
+import sk.stigo.tensorflowliteocr.core.DetectionModel;
+import sk.stigo.tensorflowliteocr.core.EastDecoder;
+import sk.stigo.tensorflowliteocr.core.FileModelSource;
+import sk.stigo.tensorflowliteocr.core.MetricsRecorder;
+import sk.stigo.tensorflowliteocr.core.OCRPipeline;
+import sk.stigo.tensorflowliteocr.core.OCRPipelineResult;
+import sk.stigo.tensorflowliteocr.core.PixelBuffer;
+import sk.stigo.tensorflowliteocr.core.RecognitionCache;
+import sk.stigo.tensorflowliteocr.core.ReplayFrameSource;
+import sk.stigo.tensorflowliteocr.core.ResultCache;
+import sk.stigo.tensorflowliteocr.core.RuntimeOptions;
+import sk.stigo.tensorflowliteocr.core.StreamingOcr;
+
+/**
+ * Command-line entry point: OCRs every image in a directory on the CPU and writes one
+ * JSON line per image. The summary goes to stderr, so stdout can be piped as is.
+ */
+public class BatchOcr {
+    private static final String USAGE = "Usage: BatchOcr [options] <image directory>\n"
+            + "  --models <dir>             directory with the .tflite models (default app/src/main/assets)\n"
+            + "  --output <file>            JSON lines output (default stdout)\n"
+            + "  --threads <n>              recognition worker threads (default half of the cores)\n"
+            + "  --decoders <n>             image decoder threads (default 2)\n"
+            + "  --queue <n>                decoded images and results held in memory (default 2 per worker)\n"
+            + "  --detector <name>          mobilenet, east, or auto to run east only where mobilenet misses text (default mobilenet)\n"
+            + "  --budget-ms <n>            with --detector auto, skip east when it would make an image take longer\n"
+            + "  --batched                  recognize the crops of each image in batches\n"
+            + "  --buckets                  keep the aspect ratio of crops, in a few crop widths\n"
+            + "  --deadline-ms <n>          recognize the boxes of each image by priority for at most this long, dropping the rest\n"
+            + "  --tiled                    also detect in overlapping tiles of large images\n"
+            + "  --merge                    merge neighbouring east boxes before suppression\n"
+            + "  --max-candidates <n>       east boxes kept per image or tile before suppression (default 1024)\n"
+            + "  --cache                    reuse the results of identical images and text crops\n"
+            + "  --cache-dir <dir>          like --cache, also keeping image results on disk\n"
+            + "  --detection-threads <n>    TFLite threads of the detector (default half of the cores, at most 4)\n"
+            + "  --recognition-threads <n>  TFLite threads of all recognizers together (default the other cores, at most 4)\n"
+            + "  --no-xnnpack               use the default TFLite CPU kernels instead of XNNPACK\n"
+            + "  --fp16                     allow float16 precision for float32 operations\n"
+            + "  --quantized                use the quantized EAST and recognition models\n"
+            + "  --metrics                  print per-stage latencies and allocations as JSON to stderr\n"
+            + "  --stream <fps>             replay the images as a live stream at this frame rate instead\n"
+            + "  --frames <n>               frames of the replayed stream (default 300)";
+    private static final List<String> IMAGE_EXTENSIONS = Arrays.asList("jpg", "jpeg", "png", "bmp");
+
+    public static void main(String[] args) throws Exception {
+        File modelsDirectory = new File("app/src/main/assets");
+        File outputFile = null;
+        int workerThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        int decoderThreads = 2;
+        int queueCapacity = -1;
+        DetectionModel detectionModel = DetectionModel.MOBILE_NET;
+        boolean adaptive = false;
+        long budgetNanos = AdaptiveDetection.NO_BUDGET;
+        boolean batched = false;
+        boolean bucketed = false;
+        boolean tiled = false;
+        long deadlineNanos = 0;
+        boolean merged = false;
+        int maxCandidates = EastDecoder.DEFAULT_MAX_CANDIDATES;
+        boolean cache = false;
+        File cacheDirectory = null;
+        boolean metrics = false;
+        double streamFps = 0;
+        int streamFrames = 300;
+        RuntimeOptions runtimeOptions = new RuntimeOptions();
+        File inputDirectory = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--models":
+                        modelsDirectory = new File(args[++i]);
+                        break;
+                    case "--output":
+                        outputFile = new File(args[++i]);
+                        break;
+                    case "--threads":
+                        workerThreads = parsePositive(args[++i]);
+                        break;
+                    case "--decoders":
+                        decoderThreads = parsePositive(args[++i]);
+                        break;
+                    case "--queue":
+                        queueCapacity = parsePositive(args[++i]);
+                        break;
+                    case "--detector":
+                        adaptive = args[++i].equalsIgnoreCase("auto");
+                        detectionModel = adaptive ? DetectionModel.MOBILE_NET : parseDetectionModel(args[i]);
+                        break;
+                    case "--budget-ms":
+                        budgetNanos = TimeUnit.MILLISECONDS.toNanos(parsePositive(args[++i]));
+                        break;
+                    case "--batched":
+                        batched = true;
+                        break;
+                    case "--buckets":
+                        bucketed = true;
+                        break;
+                    case "--deadline-ms":
+                        deadlineNanos = TimeUnit.MILLISECONDS.toNanos(parsePositive(args[++i]));
+                        break;
+                    case "--tiled":
+                        tiled = true;
+                        break;
+                    case "--merge":
+                        merged = true;
+                        break;
+                    case "--max-candidates":
+                        maxCandidates = parsePositive(args[++i]);
+                        break;
+                    case "--cache":
+                        cache = true;
+                        break;
+                    case "--cache-dir":
+                        cache = true;
+                        cacheDirectory = new File(args[++i]);
+                        break;
+                    case "--detection-threads":
+                        runtimeOptions.setDetectionThreads(parsePositive(args[++i]));
+                        break;
+                    case "--recognition-threads":
+                        runtimeOptions.setRecognitionThreads(parsePositive(args[++i]));
+                        break;
+                    case "--no-xnnpack":
+                        runtimeOptions.setUseXnnpack(false);
+                        break;
+                    case "--fp16":
+                        runtimeOptions.setAllowFp16(true);
+                        break;
+                    case "--quantized":
+                        runtimeOptions.setQuantizedModels(true);
+                        break;
+                    case "--metrics":
+                        metrics = true;
+                        break;
+                    case "--stream":
+                        streamFps = Double.parseDouble(args[++i]);
+                        if (!(streamFps > 0)) {
+                            throw new IllegalArgumentException("Expected a positive frame rate, got " + args[i]);
+                        }
+                        break;
+                    case "--frames":
+                        streamFrames = parsePositive(args[++i]);
+                        break;
+                    default:
+                        if (args[i].startsWith("--") || inputDirectory != null) {
+                            throw new IllegalArgumentException("Unexpected argument " + args[i]);
+                        }
+                        inputDirectory = new File(args[i]);
+                }
+            }
+            if (inputDirectory == null || !inputDirectory.isDirectory()) {
+                throw new IllegalArgumentException("Missing image directory");
+            }
+            if (deadlineNanos > 0 && streamFps > 0) {
+                throw new IllegalArgumentException("--deadline-ms cannot be used with --stream");
+            }
+            if (adaptive && streamFps > 0) {
+                // Streams detect and recognize on separate threads, one detector per stream.
+                throw new IllegalArgumentException("--detector auto cannot be used with --stream");
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e instanceof ArrayIndexOutOfBoundsException ? "Missing option value" : e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        if (queueCapacity < 0) {
+            queueCapacity = workerThreads * 2;
+        }
+
+        nu.pattern.OpenCV.loadLocally();
+        List<File> images = listImages(inputDirectory);
+        if (streamFps > 0) {
+            stream(
+                    images,
+                    modelsDirectory,
+                    runtimeOptions,
+                    detectionModel,
+                    batched,
+                    bucketed,
+                    tiled,
+                    merged,
+                    maxCandidates,
+                    streamFps,
+                    streamFrames,
+                    outputFile
+            );
+            return;
+        }
+        MetricsRecorder metricsRecorder = metrics ? new MetricsRecorder(threadAllocatedBytes()) : null;
+        ResultCache resultCache = cache
+                ? new ResultCache(
+                        ResultCache.DEFAULT_MAX_ENTRIES,
+                        ResultCache.DEFAULT_MAX_BYTES,
+                        cacheDirectory,
+                        ResultCache.DEFAULT_MAX_DISK_ENTRIES
+                )
+                : null;
+        AdaptiveDetection adaptiveDetection = adaptive
+                ? new AdaptiveDetection(
+                        budgetNanos,
+                        AdaptiveDetection.DEFAULT_MIN_MEAN_CONFIDENCE,
+                        AdaptiveDetection.DEFAULT_MAX_EMPTY_FRACTION
+                )
+                : null;
+        BatchSummary summary;
+        try (OCRPipeline pipeline = new OCRPipeline(new FileModelSource(modelsDirectory), runtimeOptions);
+             Writer output = new BufferedWriter(new OutputStreamWriter(
+                     outputFile != null ? new FileOutputStream(outputFile) : System.out,
+                     StandardCharsets.UTF_8
+             ))) {
+            pipeline.setMetricsListener(metricsRecorder);
+            pipeline.setTiledDetection(tiled);
+            pipeline.setLocalityAwareMerging(merged);
+            pipeline.setMaxDetectionCandidates(maxCandidates);
+            pipeline.setBucketedRecognition(bucketed);
+            pipeline.setAdaptiveDetection(adaptiveDetection);
+            if (cache) {
+                pipeline.setRecognitionCache(new RecognitionCache());
+            }
+            // Keeps model loading out of the latency of the first images.
+            pipeline.warmUp(detectionModel);
+            BatchRunner runner = new BatchRunner(
+                    pipeline,
+                    detectionModel,
+                    batched,
+                    workerThreads,
+                    decoderThreads,
+                    queueCapacity
+            );
+            runner.setRecognitionBudget(deadlineNanos);
+            runner.setResultCache(
+                    resultCache,
+                    detectionModel + "," + adaptive + "," + tiled + "," + merged + "," + bucketed
+                            + "," + (deadlineNanos > 0) + "," + getRuntimeSettings(runtimeOptions)
+                            + "," + maxCandidates
+            );
+            summary = runner.run(images, output);
+        }
+
+        System.err.println(summary);
+        if (resultCache != null) {
+            System.err.println(resultCache);
+        }
+        if (adaptiveDetection != null) {
+            System.err.println(adaptiveDetection);
+        }
+        if (metricsRecorder != null) {
+            System.err.println(metricsRecorder.toJson());
+        }
+        System.exit(summary.getFailures() > 0 ? 1 : 0);
+    }
+
+    // Replays the images as a camera would deliver frames and reports the sustained
+    // frame rate and the latency from frame to result.
+    private static void stream(
+            List<File> files,
+            File modelsDirectory,
+            RuntimeOptions runtimeOptions,
+            DetectionModel detectionModel,
+            boolean batched,
+            boolean bucketed,
+            boolean tiled,
+            boolean merged,
+            int maxCandidates,
+            double framesPerSecond,
+            int frameCount,
+            File outputFile
+    ) throws IOException, InterruptedException {
+        List<PixelBuffer> frames = new ArrayList<>();
+        Map<PixelBuffer, File> frameFiles = new IdentityHashMap<>();
+        for (File file : files) {
+            PixelBuffer frame = BatchRunner.decode(file);
+            frames.add(frame);
+            frameFiles.put(frame, file);
+        }
+        if (frames.isEmpty()) {
+            throw new IOException("No images to stream");
+        }
+
+        try (OCRPipeline pipeline = new OCRPipeline(new FileModelSource(modelsDirectory), runtimeOptions);
+             Writer output = new BufferedWriter(new OutputStreamWriter(
+                     outputFile != null ? new FileOutputStream(outputFile) : System.out,
+                     StandardCharsets.UTF_8
+             ))) {
+            pipeline.setTiledDetection(tiled);
+            pipeline.setLocalityAwareMerging(merged);
+            pipeline.setMaxDetectionCandidates(maxCandidates);
+            pipeline.setBucketedRecognition(bucketed);
+            pipeline.warmUp(detectionModel);
+            StreamingOcr.Listener listener = new StreamingOcr.Listener() {
+                @Override
+                public void onResult(PixelBuffer frame, OCRPipelineResult result, long latencyNanos) {
+                    write(new JsonWriter()
+                            .field("file", frameFiles.get(frame).getPath())
+                            .field("latencyMs", latencyNanos / 1e6)
+                            .field("texts", result.getTexts()));
+                }
+
+                @Override
+                public void onError(PixelBuffer frame, RuntimeException e) {
+                    write(new JsonWriter()
+                            .field("file", frameFiles.get(frame).getPath())
+                            .field("error", e.toString()));
+                }
+
+                private synchronized void write(JsonWriter json) {
+                    try {
+                        output.write(json.toString());
+                        output.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            };
+
+            try (StreamingOcr stream = new StreamingOcr(pipeline, detectionModel, batched, listener)) {
+                stream.stream(new ReplayFrameSource(frames, framesPerSecond, frameCount));
+                System.err.println(stream);
+            }
+        }
+    }
+
+    /**
+     * Image files directly inside {@code directory}, sorted by name.
+     */
+    static List<File> listImages(File directory) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Cannot list " + directory);
+        }
+        Arrays.sort(files);
+
+        List<File> images = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName().toLowerCase(Locale.ROOT);
+            int dot = name.lastIndexOf('.');
+            if (file.isFile() && dot >= 0 && IMAGE_EXTENSIONS.contains(name.substring(dot + 1))) {
+                images.add(file);
+            }
+        }
+        return images;
+    }
+
+    /**
+     * Runtime options that change results, in the order the app keys its result cache with.
+     * The batch tool never uses NNAPI.
+     */
+    static String getRuntimeSettings(RuntimeOptions options) {
+        return options.isUseXnnpack()
+                + "," + options.isAllowFp16()
+                + "," + false
+                + "," + options.isQuantizedModels();
+    }
+
+    // Per-thread allocation counter of HotSpot and OpenJ9, null on other JVMs.
+    private static LongSupplier threadAllocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean hotSpotThreads = (com.sun.management.ThreadMXBean) threads;
+        if (!hotSpotThreads.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        hotSpotThreads.setThreadAllocatedMemoryEnabled(true);
+        return () -> hotSpotThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static int parsePositive(String value) {
+        int number = Integer.parseInt(value);
+        if (number < 1) {
+            throw new IllegalArgumentException("Expected a positive number, got " + value);
+        }
+        return number;
+    }
+
+    private static DetectionModel parseDetectionModel(String value) {
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "mobilenet":
+                return DetectionModel.MOBILE_NET;
+            case "east":
+                return DetectionModel.EAST;
+            default:
+                throw new IllegalArgumentException("Unknown detector " + value);
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package sk.stigo.tensorflowliteocr.batch;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import sk.stigo.tensorflowliteocr.core.ArgbPixelBuffer;
+import sk.stigo.tensorflowliteocr.core.DetectionModel;
+import sk.stigo.tensorflowliteocr.core.OCRPipeline;
+import sk.stigo.tensorflowliteocr.core.OCRPipelineResult;
+import sk.stigo.tensorflowliteocr.core.PixelBuffer;
+import sk.stigo.tensorflowliteocr.core.RecognitionSchedule;
+import sk.stigo.tensorflowliteocr.core.ResultCache;
+
+/**
+ * Runs an {@link OCRPipeline} over many image files. Decoder threads read images ahead
+ * into a bounded queue, worker threads run detection and recognition, and one JSON
+ * line per image is written by the calling thread as soon as it is done. The bounded
+ * queues keep at most a few decoded images in memory however large the input is.
+ */
+public class BatchRunner {
+    private static final ImageTask END_OF_IMAGES = new ImageTask(null, null, null);
+    private static final ImageResult END_OF_RESULTS = new ImageResult(null, null, 0, null);
+
+    private final OCRPipeline pipeline;
+    private final DetectionModel detectionModel;
+    private final boolean batched;
+    private final int workerThreads;
+    private final int decoderThreads;
+    private final int queueCapacity;
+    private ResultCache resultCache;
+    private String resultCacheSettings;
+    private long recognitionBudgetNanos;
+
+    public BatchRunner(
+            OCRPipeline pipeline,
+            DetectionModel detectionModel,
+            boolean batched,
+            int workerThreads,
+            int decoderThreads,
+            int queueCapacity
+    ) {
+        this.pipeline = pipeline;
+        this.detectionModel = detectionModel;
+        this.batched = batched;
+        this.workerThreads = workerThreads;
+        this.decoderThreads = decoderThreads;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Looks up every decoded image in {@code resultCache} before running the pipeline
+     * and adds new results to it.
+     *
+     * @param settings the settings of the pipeline that change its results, part of the
+     *                 cache keys
+     */
+    public void setResultCache(ResultCache resultCache, String settings) {
+        this.resultCache = resultCache;
+        this.resultCacheSettings = settings;
+    }
+
+    /**
+     * Recognizes the boxes of each image by priority for at most {@code budgetNanos}
+     * after the image is taken up, with {@link OCRPipeline#runScheduled}, and leaves the
+     * rest out of its result. Such incomplete results are not cached.
+     */
+    public void setRecognitionBudget(long budgetNanos) {
+        this.recognitionBudgetNanos = budgetNanos;
+    }
+
+    /**
+     * Processes {@code files} and writes the results to {@code output} in completion
+     * order. Images that fail to decode or recognize get an {@code error} line.
+     */
+    public BatchSummary run(List<File> files, Writer output) throws IOException, InterruptedException {
+        BlockingQueue<ImageTask> images = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<ImageResult> results = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicInteger nextFile = new AtomicInteger();
+        AtomicInteger activeDecoders = new AtomicInteger(decoderThreads);
+        AtomicInteger activeWorkers = new AtomicInteger(workerThreads);
+        LatencyStats latencies = new LatencyStats();
+
+        resetPeakHeapUsage();
+        long start = System.nanoTime();
+
+        Thread[] threads = new Thread[decoderThreads + workerThreads];
+        for (int i = 0; i < decoderThreads; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    decode(files, nextFile, images);
+                } finally {
+                    if (activeDecoders.decrementAndGet() == 0) {
+                        putAll(images, END_OF_IMAGES, workerThreads);
+                    }
+                }
+            }, "BatchDecoder-" + i);
+        }
+        for (int i = 0; i < workerThreads; i++) {
+            threads[decoderThreads + i] = new Thread(() -> {
+                try {
+                    recognize(images, results, latencies);
+                } finally {
+                    if (activeWorkers.decrementAndGet() == 0) {
+                        putAll(results, END_OF_RESULTS, 1);
+                    }
+                }
+            }, "BatchWorker-" + i);
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        // A failed write stops the whole batch.
+        int processed = 0;
+        int failures = 0;
+        try {
+            ImageResult result;
+            while ((result = results.take()) != END_OF_RESULTS) {
+                output.write(result.toJson());
+                output.write('\n');
+                output.flush();
+                processed++;
+                if (result.error != null) {
+                    failures++;
+                }
+            }
+        } finally {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+        }
+
+        long wallNanos = System.nanoTime() - start;
+        return new BatchSummary(
+                processed,
+                failures,
+                wallNanos,
+                latencies.getPercentile(50),
+                latencies.getPercentile(95),
+                latencies.getPercentile(99),
+                getPeakHeapUsage(),
+                getPeakResidentSetSize()
+        );
+    }
+
+    private void decode(List<File> files, AtomicInteger nextFile, BlockingQueue<ImageTask> images) {
+        int index;
+        while ((index = nextFile.getAndIncrement()) < files.size()) {
+            File file = files.get(index);
+            ImageTask task;
+            try {
+                task = new ImageTask(file, decode(file), null);
+            } catch (IOException | RuntimeException e) {
+                task = new ImageTask(file, null, e);
+            }
+            if (!put(images, task)) {
+                return;
+            }
+        }
+    }
+
+    private void recognize(
+            BlockingQueue<ImageTask> images,
+            BlockingQueue<ImageResult> results,
+            LatencyStats latencies
+    ) {
+        while (true) {
+            ImageTask task;
+            try {
+                task = images.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (task == END_OF_IMAGES) {
+                return;
+            }
+
+            ImageResult result;
+            if (task.error != null) {
+                result = new ImageResult(task.file, null, 0, task.error);
+            } else {
+                long start = System.nanoTime();
+                try {
+                    OCRPipelineResult ocrResult = run(task.image);
+                    long latency = System.nanoTime() - start;
+                    latencies.record(latency);
+                    result = new ImageResult(task.file, ocrResult, latency, null);
+                } catch (RuntimeException e) {
+                    result = new ImageResult(task.file, null, System.nanoTime() - start, e);
+                }
+            }
+            if (!put(results, result)) {
+                return;
+            }
+        }
+    }
+
+    private OCRPipelineResult run(PixelBuffer image) {
+        if (resultCache == null) {
+            return runPipeline(image, null);
+        }
+        String key = ResultCache.key(image, resultCacheSettings);
+        OCRPipelineResult result = resultCache.get(key);
+        if (result == null) {
+            boolean[] deferred = new boolean[1];
+            result = runPipeline(image, deferred);
+            if (!deferred[0]) {
+                resultCache.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    // Sets deferred[0] when the recognition budget left boxes out.
+    private OCRPipelineResult runPipeline(PixelBuffer image, boolean[] deferred) {
+        if (recognitionBudgetNanos <= 0) {
+            return pipeline.run(image, detectionModel, batched, OCRPipeline.NO_DEADLINE);
+        }
+        return pipeline.runScheduled(
+                image,
+                detectionModel,
+                batched,
+                System.nanoTime() + recognitionBudgetNanos,
+                new RecognitionSchedule(),
+                new OCRPipeline.ProgressListener() {
+                    @Override
+                    public void onPartialResult(OCRPipelineResult partial) {
+                    }
+
+                    @Override
+                    public void onDeferred(float[] corners) {
+                        if (deferred != null) {
+                            deferred[0] = true;
+                        }
+                    }
+                }
+        );
+    }
+
+    static PixelBuffer decode(File file) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("Unsupported image format");
+        }
+        int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+        return new ArgbPixelBuffer(image.getWidth(), image.getHeight(), pixels);
+    }
+
+    private static <T> boolean put(BlockingQueue<T> queue, T item) {
+        try {
+            queue.put(item);
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    // End markers must get through even when the thread placing them was interrupted.
+    private static <T> void putAll(BlockingQueue<T> queue, T item, int count) {
+        for (int i = 0; i < count; i++) {
+            try {
+                while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                    // Consumers may still be draining the queue.
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static void resetPeakHeapUsage() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    // Sum of the per-pool peaks, an upper bound of the real heap peak.
+    private static long getPeakHeapUsage() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    // Peak resident set size of the process from /proc, which includes the native
+    // memory of the interpreters and OpenCV. Returns -1 when not running on Linux.
+    private static long getPeakResidentSetSize() {
+        File status = new File("/proc/self/status");
+        if (!status.isFile()) {
+            return -1;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(status))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+
+    private static class ImageTask {
+        private final File file;
+        private final PixelBuffer image;
+        private final Exception error;
+
+        ImageTask(File file, PixelBuffer image, Exception error) {
+            this.file = file;
+            this.image = image;
+            this.error = error;
+        }
+    }
+
+    private static class ImageResult {
+        private final File file;
+        private final OCRPipelineResult result;
+        private final long latencyNanos;
+        private final Exception error;
+
+        ImageResult(File file, OCRPipelineResult result, long latencyNanos, Exception error) {
+            this.file = file;
+            this.result = result;
+            this.latencyNanos = latencyNanos;
+            this.error = error;
+        }
+
+        String toJson() {
+            JsonWriter json = new JsonWriter()
+                    .field("file", file.getPath())
+                    .field("latencyMs", latencyNanos / 1e6);
+            if (error != null) {
+                return json.field("error", error.toString()).toString();
+            }
+            float[] confidences = new float[result.getBoxCount()];
+            for (int box = 0; box < confidences.length; box++) {
+                confidences[box] = result.getConfidence(box);
+            }
+            return json
+                    .field("texts", result.getTexts())
+                    .field("boxes", result.getCorners(), OCRPipelineResult.CORNERS_SIZE)
+                    .field("confidences", confidences)
+                    .toString();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package sk.stigo.tensorflowliteocr.batch;
+
+import java.util.Locale;
+
+/**
+ * Throughput, latency percentiles and peak memory of one {@link BatchRunner} run.
+ */
+public class BatchSummary {
+    private final int images;
+    private final int failures;
+    private final long wallNanos;
+    private final long p50Nanos;
+    private final long p95Nanos;
+    private final long p99Nanos;
+    private final long peakHeapBytes;
+    private final long peakResidentBytes;
+
+    public BatchSummary(
+            int images,
+            int failures,
+            long wallNanos,
+            long p50Nanos,
+            long p95Nanos,
+            long p99Nanos,
+            long peakHeapBytes,
+            long peakResidentBytes
+    ) {
+        this.images = images;
+        this.failures = failures;
+        this.wallNanos = wallNanos;
+        this.p50Nanos = p50Nanos;
+        this.p95Nanos = p95Nanos;
+        this.p99Nanos = p99Nanos;
+        this.peakHeapBytes = peakHeapBytes;
+        this.peakResidentBytes = peakResidentBytes;
+    }
+
+    public int getImages() {
+        return images;
+    }
+
+    public int getFailures() {
+        return failures;
+    }
+
+    public double getImagesPerSecond() {
+        return wallNanos > 0 ? images / (wallNanos / 1e9) : 0;
+    }
+
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    public long getP95Nanos() {
+        return p95Nanos;
+    }
+
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    /**
+     * Peak resident set size of the process, or -1 when the platform does not report it.
+     */
+    public long getPeakResidentBytes() {
+        return peakResidentBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                Locale.ROOT,
+                "%d images (%d failed) in %.1f s, %.2f images/s, latency p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, "
+                        + "peak heap %.1f MB, peak RSS %s",
+                images,
+                failures,
+                wallNanos / 1e9,
+                getImagesPerSecond(),
+                p50Nanos / 1e6,
+                p95Nanos / 1e6,
+                p99Nanos / 1e6,
+                peakHeapBytes / 1048576.0,
+                peakResidentBytes < 0 ? "n/a" : String.format(Locale.ROOT, "%.1f MB", peakResidentBytes / 1048576.0)
+        );
+    }
+}
@@ -0,0 +1,127 @@
+package sk.stigo.tensorflowliteocr.batch;
+
+import java.util.List;
+
+/**
+ * Builds the JSON object of one output line. Only what the batch results need:
+ * strings, numbers and flat arrays of them.
+ */
+public class JsonWriter {
+    private final StringBuilder json;
+    private boolean firstField;
+
+    public JsonWriter() {
+        this.json = new StringBuilder("{");
+        this.firstField = true;
+    }
+
+    public JsonWriter field(String name, String value) {
+        name(name);
+        string(value);
+        return this;
+    }
+
+    public JsonWriter field(String name, long value) {
+        name(name);
+        json.append(value);
+        return this;
+    }
+
+    public JsonWriter field(String name, double value) {
+        name(name);
+        json.append(Double.isFinite(value) ? String.valueOf(value) : "null");
+        return this;
+    }
+
+    public JsonWriter field(String name, List<String> values) {
+        name(name);
+        json.append('[');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            string(values.get(i));
+        }
+        json.append(']');
+        return this;
+    }
+
+    public JsonWriter field(String name, float[] values) {
+        name(name);
+        json.append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(values[i]);
+        }
+        json.append(']');
+        return this;
+    }
+
+    /**
+     * Writes {@code values} as an array of arrays of {@code groupSize} numbers each.
+     */
+    public JsonWriter field(String name, float[] values, int groupSize) {
+        name(name);
+        json.append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i % groupSize == 0) {
+                json.append(i > 0 ? ",[" : "[");
+            } else {
+                json.append(',');
+            }
+            json.append(values[i]);
+            if (i % groupSize == groupSize - 1) {
+                json.append(']');
+            }
+        }
+        json.append(']');
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return json + "}";
+    }
+
+    private void name(String name) {
+        if (!firstField) {
+            json.append(',');
+        }
+        firstField = false;
+        string(name);
+        json.append(':');
+    }
+
+    private void string(String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,41 @@
+package sk.stigo.tensorflowliteocr.batch;
+
+import java.util.Arrays;
+
+/**
+ * Collects per-image latencies from several worker threads and reports nearest-rank
+ * percentiles.
+ */
+public class LatencyStats {
+    private long[] latencies;
+    private int count;
+
+    public LatencyStats() {
+        this.latencies = new long[1024];
+    }
+
+    public synchronized void record(long nanos) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = nanos;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the smallest recorded latency that is at least {@code percentile} percent
+     * of all recorded latencies, or 0 when nothing was recorded.
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return sorted[Math.max(0, Math.min(count - 1, rank - 1))];
+    }
+}
@@ -0,0 +1,48 @@
+package sk.stigo.tensorflowliteocr.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+import sk.stigo.tensorflowliteocr.core.RuntimeOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+public class BatchOcrTest {
+
+    @Test
+    public void listImages_keepsImageFilesSortedByName() throws IOException {
+        File directory = Files.createTempDirectory("batch-ocr").toFile();
+        try {
+            for (String name : new String[]{"test_g1.JPG", "raw_g0.jpg", "notes.txt", "raw_g1.png", "noextension"}) {
+                new File(directory, name).createNewFile();
+            }
+            new File(directory, "nested.jpg").mkdir();
+
+            List<File> images = BatchOcr.listImages(directory);
+
+            assertEquals(3, images.size());
+            assertEquals("raw_g0.jpg", images.get(0).getName());
+            assertEquals("raw_g1.png", images.get(1).getName());
+            assertEquals("test_g1.JPG", images.get(2).getName());
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void getRuntimeSettings_tellsPrecisionsAndKernelsApart() {
+        String defaults = BatchOcr.getRuntimeSettings(new RuntimeOptions());
+
+        assertEquals("true,false,false,false", defaults);
+        assertNotEquals(defaults, BatchOcr.getRuntimeSettings(new RuntimeOptions().setAllowFp16(true)));
+        assertNotEquals(defaults, BatchOcr.getRuntimeSettings(new RuntimeOptions().setUseXnnpack(false)));
+        assertNotEquals(defaults, BatchOcr.getRuntimeSettings(new RuntimeOptions().setQuantizedModels(true)));
+    }
+}
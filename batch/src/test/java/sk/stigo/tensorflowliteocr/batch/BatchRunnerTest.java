@@ -0,0 +1,101 @@
+package sk.stigo.tensorflowliteocr.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import sk.stigo.tensorflowliteocr.core.DetectionModel;
+import sk.stigo.tensorflowliteocr.core.OCRPipelineResult;
+import sk.stigo.tensorflowliteocr.core.ResultCache;
+
+public class BatchRunnerTest {
+
+    // Undecodable files never reach the pipeline, so this needs no models.
+    @Test
+    public void run_writesOneLinePerImageThroughBoundedQueues() throws Exception {
+        File directory = Files.createTempDirectory("batch-runner").toFile();
+        try {
+            List<File> files = new ArrayList<>();
+            for (int i = 0; i < 25; i++) {
+                File file = new File(directory, "broken_" + i + ".jpg");
+                Files.write(file.toPath(), new byte[]{1, 2, 3});
+                files.add(file);
+            }
+            StringWriter output = new StringWriter();
+
+            BatchSummary summary = new BatchRunner(null, DetectionModel.EAST, false, 3, 2, 2)
+                    .run(files, output);
+
+            String[] lines = output.toString().split("\n");
+            assertEquals(25, lines.length);
+            for (String line : lines) {
+                assertTrue(line, line.startsWith("{\"file\":"));
+                assertTrue(line, line.contains("\"error\":\"java.io.IOException"));
+            }
+            assertEquals(25, summary.getImages());
+            assertEquals(25, summary.getFailures());
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void run_finishesWithoutImages() throws Exception {
+        StringWriter output = new StringWriter();
+
+        BatchSummary summary = new BatchRunner(null, DetectionModel.EAST, false, 2, 1, 1)
+                .run(new ArrayList<File>(), output);
+
+        assertEquals("", output.toString());
+        assertEquals(0, summary.getImages());
+    }
+
+    // Cached images never reach the pipeline either.
+    @Test
+    public void run_answersResubmittedImagesFromTheResultCache() throws Exception {
+        File directory = Files.createTempDirectory("batch-runner").toFile();
+        try {
+            File file = new File(directory, "label.png");
+            ImageIO.write(new BufferedImage(8, 4, BufferedImage.TYPE_INT_RGB), "png", file);
+            ResultCache cache = new ResultCache();
+            cache.put(
+                    ResultCache.key(BatchRunner.decode(file), "EAST"),
+                    new OCRPipelineResult(new float[]{0f, 4f, 0f, 0f, 8f, 0f, 8f, 4f}, new String[]{"42"})
+            );
+            List<File> files = new ArrayList<>();
+            files.add(file);
+            files.add(file);
+            StringWriter output = new StringWriter();
+
+            BatchRunner runner = new BatchRunner(null, DetectionModel.EAST, false, 2, 1, 1);
+            runner.setResultCache(cache, "EAST");
+            BatchSummary summary = runner.run(files, output);
+
+            for (String line : output.toString().split("\n")) {
+                assertTrue(line, line.contains("\"42\""));
+            }
+            assertEquals(0, summary.getFailures());
+            assertEquals(2, cache.getMemoryHits());
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    private static void deleteDirectory(File directory) throws IOException {
+        for (File file : directory.listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(directory.toPath());
+    }
+}
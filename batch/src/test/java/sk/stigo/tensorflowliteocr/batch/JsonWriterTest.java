@@ -0,0 +1,48 @@
+package sk.stigo.tensorflowliteocr.batch;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class JsonWriterTest {
+
+    @Test
+    public void writesFieldsInOrder() {
+        String json = new JsonWriter()
+                .field("file", "photo/raw_g1.jpg")
+                .field("count", 3)
+                .field("texts", Arrays.asList("12", "34"))
+                .toString();
+
+        assertEquals("{\"file\":\"photo/raw_g1.jpg\",\"count\":3,\"texts\":[\"12\",\"34\"]}", json);
+    }
+
+    @Test
+    public void escapesStrings() {
+        String json = new JsonWriter().field("error", "a \"b\"\\c\n\u0001").toString();
+
+        assertEquals("{\"error\":\"a \\\"b\\\"\\\\c\\n\\u0001\"}", json);
+    }
+
+    @Test
+    public void groupsNumberArrays() {
+        String json = new JsonWriter()
+                .field("boxes", new float[]{1f, 2f, 3f, 4f}, 2)
+                .field("empty", new float[0], 2)
+                .toString();
+
+        assertEquals("{\"boxes\":[[1.0,2.0],[3.0,4.0]],\"empty\":[]}", json);
+    }
+
+    @Test
+    public void writesFlatNumberArrays() {
+        String json = new JsonWriter()
+                .field("confidences", new float[]{0.5f, 1f})
+                .field("empty", new float[0])
+                .toString();
+
+        assertEquals("{\"confidences\":[0.5,1.0],\"empty\":[]}", json);
+    }
+}
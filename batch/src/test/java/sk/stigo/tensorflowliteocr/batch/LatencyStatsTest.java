@@ -0,0 +1,44 @@
+package sk.stigo.tensorflowliteocr.batch;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LatencyStatsTest {
+
+    @Test
+    public void getPercentile_usesNearestRank() {
+        LatencyStats stats = new LatencyStats();
+        for (int i = 100; i >= 1; i--) {
+            stats.record(i);
+        }
+
+        assertEquals(100, stats.getCount());
+        assertEquals(50, stats.getPercentile(50));
+        assertEquals(95, stats.getPercentile(95));
+        assertEquals(99, stats.getPercentile(99));
+        assertEquals(100, stats.getPercentile(100));
+    }
+
+    @Test
+    public void getPercentile_handlesFewSamples() {
+        LatencyStats stats = new LatencyStats();
+        assertEquals(0, stats.getPercentile(50));
+
+        stats.record(7);
+        stats.record(3);
+        assertEquals(3, stats.getPercentile(50));
+        assertEquals(7, stats.getPercentile(99));
+    }
+
+    @Test
+    public void record_growsPastInitialCapacity() {
+        LatencyStats stats = new LatencyStats();
+        for (int i = 0; i < 5000; i++) {
+            stats.record(i);
+        }
+
+        assertEquals(5000, stats.getCount());
+        assertEquals(4999, stats.getPercentile(100));
+    }
+}
@@ -0,0 +1,156 @@
+package sk.stigo.tensorflowliteocr.core;
+
+/**
+ * Decides when a run with the cheap {@link DetectionModel#MOBILE_NET} detector is
+ * repeated with {@link DetectionModel#EAST}. A first pass is escalated when it looks
+ * incomplete: it found no boxes, as many boxes as the detector reports at most, boxes
+ * with a low mean detection score, or too many boxes without recognized text.
+ *
+ * The cost of each detector is learned from the runs on this device as a moving
+ * average. An escalation is skipped when EAST is expected to push the run over the
+ * latency budget, and always when it would miss the deadline of the call; every
+ * {@value #PROBE_INTERVAL}th escalation skipped only for the budget runs anyway, so an
+ * estimate spoiled by a slow run recovers. All methods are thread-safe.
+ *
+ * @see OCRPipeline#setAdaptiveDetection
+ */
+public class AdaptiveDetection {
+    public static final long NO_BUDGET = Long.MAX_VALUE;
+    public static final float DEFAULT_MIN_MEAN_CONFIDENCE = 0.7f;
+    public static final float DEFAULT_MAX_EMPTY_FRACTION = 0.5f;
+    static final int PROBE_INTERVAL = 20;
+    // Weight of the newest run in the cost averages.
+    private static final double SMOOTHING = 0.2;
+
+    private final long latencyBudgetNanos;
+    private final float minMeanConfidence;
+    private final float maxEmptyFraction;
+    // Average cost of a whole pass per detector, 0 before the first one.
+    private final long[] costNanos;
+    private long runs;
+    private long escalations;
+    private long skippedEscalations;
+    private int skippedSinceProbe;
+
+    public AdaptiveDetection() {
+        this(NO_BUDGET, DEFAULT_MIN_MEAN_CONFIDENCE, DEFAULT_MAX_EMPTY_FRACTION);
+    }
+
+    /**
+     * @param latencyBudgetNanos time a whole run, both passes included, should take at
+     *                           most, or {@link #NO_BUDGET}
+     * @param minMeanConfidence  first passes whose boxes have a lower mean detection
+     *                           score are escalated
+     * @param maxEmptyFraction   first passes with a larger fraction of boxes without
+     *                           recognized text are escalated
+     */
+    public AdaptiveDetection(long latencyBudgetNanos, float minMeanConfidence, float maxEmptyFraction) {
+        if (latencyBudgetNanos < 1) {
+            throw new IllegalArgumentException("latencyBudgetNanos must be positive, got " + latencyBudgetNanos);
+        }
+        this.latencyBudgetNanos = latencyBudgetNanos;
+        this.minMeanConfidence = minMeanConfidence;
+        this.maxEmptyFraction = maxEmptyFraction;
+        this.costNanos = new long[DetectionModel.values().length];
+    }
+
+    /**
+     * Whether {@code firstPass} looks like the detector missed text.
+     *
+     * @param maxBoxes the most boxes the detector reports; a full result may have been cut
+     */
+    public boolean isIncomplete(OCRPipelineResult firstPass, int maxBoxes) {
+        int boxCount = firstPass.getBoxCount();
+        if (boxCount == 0 || boxCount >= maxBoxes) {
+            return true;
+        }
+
+        float[] confidences = firstPass.getDetectionConfidences();
+        float confidenceSum = 0f;
+        int empty = 0;
+        for (int box = 0; box < boxCount; box++) {
+            confidenceSum += confidences[box];
+            if (firstPass.getText(box).isEmpty()) {
+                empty++;
+            }
+        }
+        return confidenceSum / boxCount < minMeanConfidence
+                || empty > maxEmptyFraction * boxCount;
+    }
+
+    /**
+     * Decides whether to repeat {@code firstPass} with EAST and counts the decision.
+     *
+     * @param elapsedNanos   time the run has taken so far
+     * @param remainingNanos time left until the deadline of the call, or
+     *                       {@link Long#MAX_VALUE}
+     */
+    public synchronized boolean shouldEscalate(
+            OCRPipelineResult firstPass,
+            int maxBoxes,
+            long elapsedNanos,
+            long remainingNanos
+    ) {
+        runs++;
+        if (!isIncomplete(firstPass, maxBoxes)) {
+            return false;
+        }
+
+        long eastCost = costNanos[DetectionModel.EAST.ordinal()];
+        if (eastCost > remainingNanos) {
+            skippedEscalations++;
+            return false;
+        }
+        boolean withinBudget = eastCost == 0
+                || latencyBudgetNanos == NO_BUDGET
+                || elapsedNanos + eastCost <= latencyBudgetNanos;
+        if (!withinBudget && ++skippedSinceProbe < PROBE_INTERVAL) {
+            skippedEscalations++;
+            return false;
+        }
+
+        skippedSinceProbe = 0;
+        escalations++;
+        return true;
+    }
+
+    /**
+     * Adds the time of a whole pass, detection and recognition, with
+     * {@code detectionModel} to its cost average.
+     */
+    public synchronized void record(DetectionModel detectionModel, long nanos) {
+        int index = detectionModel.ordinal();
+        costNanos[index] = costNanos[index] == 0
+                ? Math.max(1, nanos)
+                : Math.max(1, Math.round(costNanos[index] + SMOOTHING * (nanos - costNanos[index])));
+    }
+
+    /**
+     * Average cost of a pass with {@code detectionModel} on this device, or 0 before
+     * the first one.
+     */
+    public synchronized long getCostNanos(DetectionModel detectionModel) {
+        return costNanos[detectionModel.ordinal()];
+    }
+
+    public synchronized long getRuns() {
+        return runs;
+    }
+
+    public synchronized long getEscalations() {
+        return escalations;
+    }
+
+    public synchronized long getSkippedEscalations() {
+        return skippedEscalations;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AdaptiveDetection{runs=" + runs
+                + ", escalations=" + escalations
+                + ", skippedEscalations=" + skippedEscalations
+                + ", mobileNetCostMs=" + costNanos[DetectionModel.MOBILE_NET.ordinal()] / 1_000_000
+                + ", eastCostMs=" + costNanos[DetectionModel.EAST.ordinal()] / 1_000_000 + "}";
+    }
+}
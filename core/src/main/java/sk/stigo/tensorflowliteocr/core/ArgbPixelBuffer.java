@@ -0,0 +1,102 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * {@link PixelBuffer} over packed ARGB pixels on the Java heap, for example decoded
+ * with ImageIO on the desktop.
+ */
+public class ArgbPixelBuffer implements PixelBuffer {
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+
+    public ArgbPixelBuffer(int width, int height, int[] pixels) {
+        if (pixels.length < width * height) {
+            throw new IllegalArgumentException("Expected " + width * height + " pixels, got " + pixels.length);
+        }
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public void readPixels(int[] out, int targetWidth, int targetHeight) {
+        readPixels(out, 0, 0, width, height, targetWidth, targetHeight);
+    }
+
+    @Override
+    public void readPixels(
+            int[] out,
+            int regionX,
+            int regionY,
+            int regionWidth,
+            int regionHeight,
+            int targetWidth,
+            int targetHeight
+    ) {
+        if (targetWidth == regionWidth && targetHeight == regionHeight) {
+            for (int y = 0; y < regionHeight; y++) {
+                System.arraycopy(pixels, (regionY + y) * width + regionX, out, y * regionWidth, regionWidth);
+            }
+            return;
+        }
+
+        float scaleX = (float) regionWidth / targetWidth;
+        float scaleY = (float) regionHeight / targetHeight;
+        for (int y = 0; y < targetHeight; y++) {
+            float srcY = Math.max(0f, (y + 0.5f) * scaleY - 0.5f);
+            int y0 = Math.min((int) srcY, regionHeight - 1);
+            int y1 = Math.min(y0 + 1, regionHeight - 1);
+            float fy = srcY - y0;
+            int row0 = (regionY + y0) * width + regionX;
+            int row1 = (regionY + y1) * width + regionX;
+
+            for (int x = 0; x < targetWidth; x++) {
+                float srcX = Math.max(0f, (x + 0.5f) * scaleX - 0.5f);
+                int x0 = Math.min((int) srcX, regionWidth - 1);
+                int x1 = Math.min(x0 + 1, regionWidth - 1);
+                float fx = srcX - x0;
+
+                int p00 = pixels[row0 + x0];
+                int p01 = pixels[row0 + x1];
+                int p10 = pixels[row1 + x0];
+                int p11 = pixels[row1 + x1];
+                int argb = 0;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    float top = ((p00 >>> shift) & 0xff) * (1f - fx) + ((p01 >>> shift) & 0xff) * fx;
+                    float bottom = ((p10 >>> shift) & 0xff) * (1f - fx) + ((p11 >>> shift) & 0xff) * fx;
+                    argb |= Math.round(top * (1f - fy) + bottom * fy) << shift;
+                }
+                out[y * targetWidth + x] = argb;
+            }
+        }
+    }
+
+    @Override
+    public Mat toRgbaMat() {
+        byte[] rgba = new byte[width * height * 4];
+        for (int i = 0; i < width * height; i++) {
+            int argb = pixels[i];
+            rgba[i * 4] = (byte) (argb >> 16);
+            rgba[i * 4 + 1] = (byte) (argb >> 8);
+            rgba[i * 4 + 2] = (byte) argb;
+            rgba[i * 4 + 3] = (byte) (argb >>> 24);
+        }
+
+        Mat mat = new Mat(height, width, CvType.CV_8UC4);
+        mat.put(0, 0, rgba);
+        return mat;
+    }
+}
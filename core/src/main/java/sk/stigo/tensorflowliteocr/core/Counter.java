@@ -0,0 +1,28 @@
+package sk.stigo.tensorflowliteocr.core;
+
+/**
+ * Counts reported once per {@link OCRPipeline#run} call, or once per model load for
+ * {@link #DELEGATE_FALLBACKS}. {@link #DETECTION_TILES} is only reported by tiled
+ * runs, {@link #RECOGNITION_CACHE_HITS} only with a recognition cache and
+ * {@link #DETECTOR_ESCALATIONS} only with adaptive detection, and
+ * {@link #DEFERRED_BOXES} only by {@link OCRPipeline#runScheduled} calls that ran out
+ * of time. Escalated runs report the detection counts of both passes.
+ */
+public enum Counter {
+    /** Boxes produced by the detector that passed the confidence threshold. */
+    CANDIDATE_BOXES,
+    /** Boxes kept by non-maximum suppression and sent to recognition. */
+    NMS_SURVIVORS,
+    /** Boxes in which a non-empty text was recognized. */
+    RECOGNIZED_TEXTS,
+    /** Detector invocations of a tiled run, including the whole image. */
+    DETECTION_TILES,
+    /** Boxes whose text was taken from the {@link RecognitionCache}. */
+    RECOGNITION_CACHE_HITS,
+    /** Interpreters built on the CPU because the hardware delegate rejected the model. */
+    DELEGATE_FALLBACKS,
+    /** MobileNet runs repeated with EAST by {@link AdaptiveDetection}. */
+    DETECTOR_ESCALATIONS,
+    /** Boxes left unrecognized because the deadline of a scheduled run came first. */
+    DEFERRED_BOXES
+}
@@ -0,0 +1,82 @@
+package sk.stigo.tensorflowliteocr.core;
+
+/**
+ * Chooses the power-of-two sample size to decode an image with, so the decoded pixels
+ * keep the detail the pipeline uses and fit a memory budget.
+ *
+ * The detector only sees its input size, but text crops are cut from the decoded
+ * image, so images are decoded with at least {@value #RECOGNITION_SCALE} times the
+ * detector input on their shorter side, or as much as {@link DetectionTiles} detects
+ * without downscaling its tiles with tiled detection. The sample size then doubles
+ * until the decoded images held at once fit in the budget.
+ */
+public class DecodeBudget {
+    public static final int BYTES_PER_PIXEL = 4;
+    static final int RECOGNITION_SCALE = 4;
+
+    private final int minShortSide;
+    private final long maxBytes;
+
+    /**
+     * @param minShortSide shorter side of the decoded image below which it is not sampled down
+     * @param maxBytes     bytes of the decoded images held at once
+     */
+    public DecodeBudget(int minShortSide, long maxBytes) {
+        if (minShortSide < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("Decode budget must be positive");
+        }
+        this.minShortSide = minShortSide;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Budget for images recognized with {@code detectionModel}.
+     */
+    public static DecodeBudget forDetection(DetectionModel detectionModel, boolean tiledDetection, long maxBytes) {
+        int inputSize = Math.min(
+                OCRPipeline.getDetectionImageWidth(detectionModel),
+                OCRPipeline.getDetectionImageHeight(detectionModel)
+        );
+        float scale = tiledDetection
+                ? Math.max(RECOGNITION_SCALE, DetectionTiles.getMaxScale())
+                : RECOGNITION_SCALE;
+        return new DecodeBudget((int) Math.ceil(inputSize * scale), maxBytes);
+    }
+
+    /**
+     * Sample size to decode a {@code width} x {@code height} image with when
+     * {@code copies} decoded images are held at once.
+     */
+    public int getSampleSize(int width, int height, int copies) {
+        int shortSide = Math.min(width, height);
+        int sampleSize = 1;
+        while (shortSide / (sampleSize * 2) >= minShortSide) {
+            sampleSize *= 2;
+        }
+        while (copies * getBytes(width, height, sampleSize) > maxBytes
+                && getSampledSize(shortSide, sampleSize) > 1) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Bytes of a {@code width} x {@code height} image decoded with {@code sampleSize}.
+     */
+    public static long getBytes(int width, int height, int sampleSize) {
+        return (long) getSampledSize(width, sampleSize) * getSampledSize(height, sampleSize) * BYTES_PER_PIXEL;
+    }
+
+    // Decoders round sampled sizes up.
+    static int getSampledSize(int size, int sampleSize) {
+        return (size + sampleSize - 1) / sampleSize;
+    }
+
+    public int getMinShortSide() {
+        return minShortSide;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+}
@@ -0,0 +1,9 @@
+package sk.stigo.tensorflowliteocr.core;
+
+/**
+ * Text detector used by {@link OCRPipeline}.
+ */
+public enum DetectionModel {
+    MOBILE_NET,
+    EAST
+}
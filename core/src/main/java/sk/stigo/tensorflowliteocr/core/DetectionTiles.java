@@ -0,0 +1,208 @@
+package sk.stigo.tensorflowliteocr.core;
+
+/**
+ * Overlapping detector-sized tiles of a large image, so small text that disappears
+ * when the whole photo is squashed into the detector input is detected at a finer
+ * scale.
+ *
+ * Tile 0 is always the whole image, which still finds text larger than the tile
+ * overlap. Images more than {@value #TILE_SCALE} times the detector input add a grid
+ * of tiles covering {@value #TILE_SCALE} times the detector input each, overlapping by
+ * at least a quarter of a tile; when that would take more than
+ * {@value #MAX_TILES_PER_SIDE} tiles along a side, the tiles grow instead, so the
+ * number of detector invocations stays bounded however large the photo is.
+ *
+ * {@link #mapCandidates} maps the candidate boxes of a tile into image coordinates
+ * and drops boxes touching a tile edge shared with a neighbouring tile: text cut
+ * there is seen whole by the neighbour thanks to the overlap, and the non-maximum
+ * suppression of all tiles together merges the duplicates. Instances are not
+ * thread-safe.
+ */
+public class DetectionTiles {
+    static final float TILE_SCALE = 2f;
+    static final int MAX_TILES_PER_SIDE = 3;
+    private static final float MIN_OVERLAP = 0.25f;
+    // Boxes this close to an inner tile edge, in detector pixels, are left to the neighbouring tile.
+    private static final float EDGE_MARGIN = 4f;
+    private static final int CORNERS_SIZE = 8;
+
+    private final int imageWidth;
+    private final int imageHeight;
+    private final int inputWidth;
+    private final int inputHeight;
+    // x, y, width and height of every tile.
+    private final int[] regions;
+    private final float[] corners;
+
+    private DetectionTiles(int imageWidth, int imageHeight, int inputWidth, int inputHeight, int[] regions) {
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        this.inputWidth = inputWidth;
+        this.inputHeight = inputHeight;
+        this.regions = regions;
+        this.corners = new float[CORNERS_SIZE];
+    }
+
+    /**
+     * Plans the tiles of an {@code imageWidth} x {@code imageHeight} image for a
+     * detector with an {@code inputWidth} x {@code inputHeight} input.
+     */
+    public static DetectionTiles plan(int imageWidth, int imageHeight, int inputWidth, int inputHeight) {
+        float maxCoverage = getMaxScale() / TILE_SCALE;
+        float scale = Math.max(TILE_SCALE, Math.max(
+                imageWidth / (inputWidth * maxCoverage),
+                imageHeight / (inputHeight * maxCoverage)
+        ));
+        int tileWidth = Math.min(imageWidth, (int) Math.ceil(inputWidth * scale));
+        int tileHeight = Math.min(imageHeight, (int) Math.ceil(inputHeight * scale));
+        int columns = countTiles(imageWidth, tileWidth);
+        int rows = countTiles(imageHeight, tileHeight);
+        if (columns * rows == 1) {
+            return new DetectionTiles(imageWidth, imageHeight, inputWidth, inputHeight,
+                    new int[]{0, 0, imageWidth, imageHeight});
+        }
+
+        int[] regions = new int[(1 + columns * rows) * 4];
+        regions[2] = imageWidth;
+        regions[3] = imageHeight;
+        int tile = 1;
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                regions[tile * 4] = getTileStart(imageWidth, tileWidth, columns, column);
+                regions[tile * 4 + 1] = getTileStart(imageHeight, tileHeight, rows, row);
+                regions[tile * 4 + 2] = tileWidth;
+                regions[tile * 4 + 3] = tileHeight;
+                tile++;
+            }
+        }
+        return new DetectionTiles(imageWidth, imageHeight, inputWidth, inputHeight, regions);
+    }
+
+    /**
+     * Largest image size, in multiples of the detector input, whose tiles still cover
+     * {@value #TILE_SCALE} times the detector input; larger images get larger tiles.
+     */
+    static float getMaxScale() {
+        // With n tiles overlapping by MIN_OVERLAP, a side covers n - (n - 1) * MIN_OVERLAP tiles.
+        return TILE_SCALE * (MAX_TILES_PER_SIDE - (MAX_TILES_PER_SIDE - 1) * MIN_OVERLAP);
+    }
+
+    private static int countTiles(int size, int tileSize) {
+        if (size <= tileSize) {
+            return 1;
+        }
+        float overlap = tileSize * MIN_OVERLAP;
+        int count = (int) Math.ceil((size - overlap) / (tileSize - overlap));
+        return Math.min(MAX_TILES_PER_SIDE, count);
+    }
+
+    // Spreads the tiles evenly, so the overlap grows beyond the minimum instead of the last tile sticking out.
+    private static int getTileStart(int size, int tileSize, int count, int index) {
+        return count == 1 ? 0 : (int) ((long) (size - tileSize) * index / (count - 1));
+    }
+
+    /**
+     * Whether the image is split into tiles besides the whole-image tile 0.
+     */
+    public boolean isTiled() {
+        return getCount() > 1;
+    }
+
+    public int getCount() {
+        return regions.length / 4;
+    }
+
+    public int getX(int tile) {
+        return regions[tile * 4];
+    }
+
+    public int getY(int tile) {
+        return regions[tile * 4 + 1];
+    }
+
+    public int getWidth(int tile) {
+        return regions[tile * 4 + 2];
+    }
+
+    public int getHeight(int tile) {
+        return regions[tile * 4 + 3];
+    }
+
+    /**
+     * Maps {@code count} candidates of {@code tile}, given in detector input
+     * coordinates in the {@link RotatedNms} layout, to image coordinates and appends
+     * the ones not left to a neighbouring tile to {@code outBoxes} and
+     * {@code outConfidences} from candidate {@code outOffset} on. The output arrays must
+     * have room for all {@code count} candidates.
+     *
+     * @return the number of appended candidates
+     */
+    public int mapCandidates(
+            int tile,
+            float[] boxes,
+            float[] confidences,
+            int count,
+            float[] outBoxes,
+            float[] outConfidences,
+            int outOffset
+    ) {
+        int x = getX(tile);
+        int y = getY(tile);
+        float scaleX = (float) getWidth(tile) / inputWidth;
+        float scaleY = (float) getHeight(tile) / inputHeight;
+        boolean innerLeft = x > 0;
+        boolean innerTop = y > 0;
+        boolean innerRight = x + getWidth(tile) < imageWidth;
+        boolean innerBottom = y + getHeight(tile) < imageHeight;
+
+        int mapped = 0;
+        for (int i = 0; i < count; i++) {
+            RotatedNms.getCorners(boxes, i, corners, 0);
+            float minX = Float.MAX_VALUE;
+            float minY = Float.MAX_VALUE;
+            float maxX = -Float.MAX_VALUE;
+            float maxY = -Float.MAX_VALUE;
+            for (int j = 0; j < CORNERS_SIZE; j += 2) {
+                minX = Math.min(minX, corners[j]);
+                maxX = Math.max(maxX, corners[j]);
+                minY = Math.min(minY, corners[j + 1]);
+                maxY = Math.max(maxY, corners[j + 1]);
+            }
+            if ((innerLeft && minX < EDGE_MARGIN)
+                    || (innerTop && minY < EDGE_MARGIN)
+                    || (innerRight && maxX > inputWidth - EDGE_MARGIN)
+                    || (innerBottom && maxY > inputHeight - EDGE_MARGIN)) {
+                continue;
+            }
+
+            for (int j = 0; j < CORNERS_SIZE; j += 2) {
+                corners[j] = x + corners[j] * scaleX;
+                corners[j + 1] = y + corners[j + 1] * scaleY;
+            }
+            setBox(corners, outBoxes, outOffset + mapped);
+            outConfidences[outOffset + mapped] = confidences[i];
+            mapped++;
+        }
+        return mapped;
+    }
+
+    /**
+     * Inverse of {@link RotatedNms#getCorners}. When a tile is scaled differently along
+     * its sides, rotated boxes become parallelograms, which are approximated by the
+     * rectangle with the same center, edge lengths and top edge direction.
+     */
+    static void setBox(float[] corners, float[] boxes, int box) {
+        // Corners are bottom-left, top-left, top-right and bottom-right.
+        float topDx = corners[4] - corners[2];
+        float topDy = corners[5] - corners[3];
+        float leftDx = corners[2] - corners[0];
+        float leftDy = corners[3] - corners[1];
+
+        int offset = box * RotatedNms.BOX_SIZE;
+        boxes[offset] = (corners[2] + corners[6]) * 0.5f;
+        boxes[offset + 1] = (corners[3] + corners[7]) * 0.5f;
+        boxes[offset + 2] = (float) Math.sqrt(topDx * topDx + topDy * topDy);
+        boxes[offset + 3] = (float) Math.sqrt(leftDx * leftDx + leftDy * leftDy);
+        boxes[offset + 4] = (float) Math.toDegrees(Math.atan2(topDy, topDx));
+    }
+}
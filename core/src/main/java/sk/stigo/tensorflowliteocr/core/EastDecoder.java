@@ -0,0 +1,333 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decodes the EAST score and geometry maps into rotated boxes without allocating.
+ *
+ * The interpreter writes its outputs straight into preallocated direct buffers in
+ * NHWC order (see {@link #getOutputs()}), and {@link #decode(float)} reads them in
+ * place and writes candidates into primitive arrays in the interleaved box layout
+ * read by {@link RotatedNms}.
+ *
+ * Quantized outputs are kept as bytes: scores are compared with the threshold in the
+ * quantized domain, and only the geometry of cells that pass is dequantized.
+ *
+ * Decoding is pruned so cluttered images cannot flood the suppression, which is
+ * quadratic in the candidate count: the geometry of a score map without any cell at
+ * the threshold is not read at all, candidates may be merged within connected regions
+ * of the score map first, and only the best {@code maxCandidates} are kept.
+ */
+public class EastDecoder {
+    public static final int OUTPUT_HEIGHT = 80;
+    public static final int OUTPUT_WIDTH = 80;
+    private static final int GEOMETRY_CHANNELS = 5;
+    /** Number of cells of the score map, the most candidates one image can have. */
+    public static final int MAX_CANDIDATES = OUTPUT_HEIGHT * OUTPUT_WIDTH;
+    /** Candidates kept of each image by default, enough for a page of text. */
+    public static final int DEFAULT_MAX_CANDIDATES = 1024;
+    // Neighbouring candidates of one region overlapping more than this are merged.
+    private static final float MERGE_IOU_THRESHOLD = 0.5f;
+    private static final float CELL_SIZE = 4f;
+    private static final float RADIANS_TO_DEGREES = (float) (180.0 / Math.PI);
+
+    // Angles are looked up in a table instead of calling Math.cos and Math.sin per cell.
+    private static final int TRIG_TABLE_SIZE = 2048;
+    private static final float TRIG_TABLE_MIN = (float) -Math.PI;
+    private static final float TRIG_TABLE_STEP = (float) (2 * Math.PI / TRIG_TABLE_SIZE);
+    private static final float[] COS_TABLE = new float[TRIG_TABLE_SIZE + 1];
+    private static final float[] SIN_TABLE = new float[TRIG_TABLE_SIZE + 1];
+
+    static {
+        for (int i = 0; i <= TRIG_TABLE_SIZE; i++) {
+            double angle = TRIG_TABLE_MIN + i * (double) TRIG_TABLE_STEP;
+            COS_TABLE[i] = (float) Math.cos(angle);
+            SIN_TABLE[i] = (float) Math.sin(angle);
+        }
+    }
+
+    private final Quantization scoreQuantization;
+    private final Quantization geometryQuantization;
+    private final ByteBuffer scoresBuffer;
+    private final ByteBuffer geometriesBuffer;
+    private final FloatBuffer scores;
+    private final FloatBuffer geometries;
+    private final Map<Integer, Object> outputs;
+    private final float[] boxes;
+    private final float[] confidences;
+    // Region label of every cell, 0 below the threshold; regions are numbered from 1.
+    private final int[] regions;
+    private final int[] regionStack;
+    // Last candidate of each region, which the next cell of the region may merge into.
+    private final int[] lastCandidates;
+    // Sum of the scores merged into each candidate.
+    private final float[] weights;
+    private final float[] pair;
+    private final float[] sortedConfidences;
+    private final RotatedNms overlap;
+    private int count;
+
+    public EastDecoder() {
+        this(Quantization.FLOAT32, Quantization.FLOAT32);
+    }
+
+    /**
+     * @param scoreQuantization    type of the score output, index 0
+     * @param geometryQuantization type of the geometry output, index 1
+     */
+    public EastDecoder(Quantization scoreQuantization, Quantization geometryQuantization) {
+        this.scoreQuantization = scoreQuantization;
+        this.geometryQuantization = geometryQuantization;
+        this.scoresBuffer = allocate(MAX_CANDIDATES * scoreQuantization.getBytesPerElement());
+        this.geometriesBuffer = allocate(MAX_CANDIDATES * GEOMETRY_CHANNELS * geometryQuantization.getBytesPerElement());
+        this.scores = scoresBuffer.asFloatBuffer();
+        this.geometries = geometriesBuffer.asFloatBuffer();
+        this.outputs = new HashMap<>();
+        this.outputs.put(0, scoresBuffer);
+        this.outputs.put(1, geometriesBuffer);
+        this.boxes = new float[MAX_CANDIDATES * RotatedNms.BOX_SIZE];
+        this.confidences = new float[MAX_CANDIDATES];
+        this.regions = new int[MAX_CANDIDATES];
+        this.regionStack = new int[MAX_CANDIDATES];
+        this.lastCandidates = new int[MAX_CANDIDATES + 1];
+        this.weights = new float[MAX_CANDIDATES];
+        this.pair = new float[2 * RotatedNms.BOX_SIZE];
+        this.sortedConfidences = new float[MAX_CANDIDATES];
+        this.overlap = new RotatedNms();
+    }
+
+    /**
+     * Output map for {@code Interpreter.runForMultipleInputsOutputs}. The same map and
+     * buffers are returned on every call.
+     */
+    public Map<Integer, Object> getOutputs() {
+        for (Object output : outputs.values()) {
+            ((ByteBuffer) output).rewind();
+        }
+        return outputs;
+    }
+
+    /**
+     * Decodes every cell whose score reaches {@code scoreThreshold} and returns the
+     * number of candidates written to {@link #getBoxes()} and {@link #getConfidences()}.
+     */
+    public int decode(float scoreThreshold) {
+        return decode(scoreThreshold, false, MAX_CANDIDATES);
+    }
+
+    /**
+     * Like {@link #decode(float)}, pruned for dense score maps.
+     *
+     * @param mergeLocally  merge each candidate into the previous one of its connected
+     *                      region of the score map when they overlap, averaging their
+     *                      geometry weighted by score, as the locality-aware NMS of the
+     *                      EAST paper does before the full suppression
+     * @param maxCandidates keep only this many candidates with the highest scores
+     */
+    public int decode(float scoreThreshold, boolean mergeLocally, int maxCandidates) {
+        count = 0;
+        if (markCells(scoreThreshold) == 0) {
+            // Nothing reaches the threshold, so no geometry is read.
+            return 0;
+        }
+        if (mergeLocally) {
+            labelRegions();
+        }
+
+        for (int y = 0; y < OUTPUT_HEIGHT; y++) {
+            for (int x = 0; x < OUTPUT_WIDTH; x++) {
+                int cell = y * OUTPUT_WIDTH + x;
+                if (regions[cell] == 0) {
+                    continue;
+                }
+                decodeCell(cell, x, y, count);
+                if (mergeLocally && mergeIntoRegion(regions[cell], count)) {
+                    continue;
+                }
+                count++;
+            }
+        }
+
+        if (count > maxCandidates) {
+            keepBest(maxCandidates);
+        }
+        return count;
+    }
+
+    // Marks the cells that reach the threshold in regions with -1 and the others with
+    // 0, and returns the number of marked cells.
+    private int markCells(float scoreThreshold) {
+        boolean quantizedScores = scoreQuantization.isQuantized();
+        int quantizedThreshold = quantizedScores ? scoreQuantization.quantizeThreshold(scoreThreshold) : 0;
+
+        int marked = 0;
+        for (int cell = 0; cell < MAX_CANDIDATES; cell++) {
+            boolean passes = quantizedScores
+                    ? scoreQuantization.toInt(scoresBuffer.get(cell)) >= quantizedThreshold
+                    : scores.get(cell) >= scoreThreshold;
+            regions[cell] = passes ? -1 : 0;
+            marked += passes ? 1 : 0;
+        }
+        return marked;
+    }
+
+    // Numbers the 8-connected regions of marked cells by flood fill and clears the last
+    // candidate of each.
+    private void labelRegions() {
+        int regionCount = 0;
+        for (int start = 0; start < MAX_CANDIDATES; start++) {
+            if (regions[start] != -1) {
+                continue;
+            }
+            int region = ++regionCount;
+            lastCandidates[region] = -1;
+            regions[start] = region;
+            int stackSize = 0;
+            regionStack[stackSize++] = start;
+            while (stackSize > 0) {
+                int cell = regionStack[--stackSize];
+                int x = cell % OUTPUT_WIDTH;
+                int y = cell / OUTPUT_WIDTH;
+                for (int ny = Math.max(0, y - 1); ny <= Math.min(OUTPUT_HEIGHT - 1, y + 1); ny++) {
+                    for (int nx = Math.max(0, x - 1); nx <= Math.min(OUTPUT_WIDTH - 1, x + 1); nx++) {
+                        int neighbour = ny * OUTPUT_WIDTH + nx;
+                        if (regions[neighbour] == -1) {
+                            regions[neighbour] = region;
+                            regionStack[stackSize++] = neighbour;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void decodeCell(int cell, int x, int y, int candidate) {
+        float score = scoreQuantization.isQuantized()
+                ? scoreQuantization.dequantize(scoresBuffer.get(cell))
+                : scores.get(cell);
+
+        int geometry = cell * GEOMETRY_CHANNELS;
+        float top = getGeometry(geometry);
+        float right = getGeometry(geometry + 1);
+        float bottom = getGeometry(geometry + 2);
+        float left = getGeometry(geometry + 3);
+        float angle = getGeometry(geometry + 4);
+
+        float cos = cos(angle);
+        float sin = sin(angle);
+        float h = top + bottom;
+        float w = right + left;
+
+        float offsetX = x * CELL_SIZE + cos * right + sin * bottom;
+        float offsetY = y * CELL_SIZE - sin * right + cos * bottom;
+
+        int box = candidate * RotatedNms.BOX_SIZE;
+        boxes[box] = offsetX - 0.5f * (sin * h + cos * w);
+        boxes[box + 1] = offsetY - 0.5f * (cos * h - sin * w);
+        boxes[box + 2] = w;
+        boxes[box + 3] = h;
+        boxes[box + 4] = -angle * RADIANS_TO_DEGREES;
+        confidences[candidate] = score;
+    }
+
+    // Merges the decoded candidate into the last one of its region if they overlap, or
+    // makes it the last one. Returns whether it was merged.
+    private boolean mergeIntoRegion(int region, int candidate) {
+        int last = lastCandidates[region];
+        float score = confidences[candidate];
+        if (last >= 0) {
+            System.arraycopy(boxes, last * RotatedNms.BOX_SIZE, pair, 0, RotatedNms.BOX_SIZE);
+            System.arraycopy(boxes, candidate * RotatedNms.BOX_SIZE, pair, RotatedNms.BOX_SIZE, RotatedNms.BOX_SIZE);
+            if (overlap.overlap(pair, 0, 1) > MERGE_IOU_THRESHOLD) {
+                float weight = weights[last];
+                float total = weight + score;
+                int lastBox = last * RotatedNms.BOX_SIZE;
+                int box = candidate * RotatedNms.BOX_SIZE;
+                for (int k = 0; k < RotatedNms.BOX_SIZE; k++) {
+                    boxes[lastBox + k] = (boxes[lastBox + k] * weight + boxes[box + k] * score) / total;
+                }
+                weights[last] = total;
+                confidences[last] = Math.max(confidences[last], score);
+                return true;
+            }
+        }
+        lastCandidates[region] = candidate;
+        weights[candidate] = score;
+        return false;
+    }
+
+    // Keeps the maxCandidates best candidates in decoding order; of equal scores at the
+    // cut, the first ones.
+    private void keepBest(int maxCandidates) {
+        if (maxCandidates <= 0) {
+            count = 0;
+            return;
+        }
+        System.arraycopy(confidences, 0, sortedConfidences, 0, count);
+        Arrays.sort(sortedConfidences, 0, count);
+        float cut = sortedConfidences[count - maxCandidates];
+        int above = 0;
+        for (int i = 0; i < count; i++) {
+            above += confidences[i] > cut ? 1 : 0;
+        }
+
+        int atCut = maxCandidates - above;
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            boolean keep = confidences[i] > cut || (confidences[i] == cut && atCut-- > 0);
+            if (keep) {
+                confidences[kept] = confidences[i];
+                System.arraycopy(boxes, i * RotatedNms.BOX_SIZE, boxes, kept * RotatedNms.BOX_SIZE, RotatedNms.BOX_SIZE);
+                kept++;
+            }
+        }
+        count = kept;
+    }
+
+    private float getGeometry(int index) {
+        return geometryQuantization.isQuantized()
+                ? geometryQuantization.dequantize(geometriesBuffer.get(index))
+                : geometries.get(index);
+    }
+
+    public float[] getBoxes() {
+        return boxes;
+    }
+
+    public float[] getConfidences() {
+        return confidences;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    static float cos(float angle) {
+        return lookup(COS_TABLE, angle, true);
+    }
+
+    static float sin(float angle) {
+        return lookup(SIN_TABLE, angle, false);
+    }
+
+    private static float lookup(float[] table, float angle, boolean cos) {
+        float position = (angle - TRIG_TABLE_MIN) / TRIG_TABLE_STEP;
+        if (!(position >= 0 && position < TRIG_TABLE_SIZE)) {
+            return (float) (cos ? Math.cos(angle) : Math.sin(angle));
+        }
+        int index = (int) position;
+        float fraction = position - index;
+        return table[index] + (table[index + 1] - table[index]) * fraction;
+    }
+
+    private static ByteBuffer allocate(int size) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        buffer.order(ByteOrder.nativeOrder());
+        return buffer;
+    }
+}
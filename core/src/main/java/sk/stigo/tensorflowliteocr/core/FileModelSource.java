@@ -0,0 +1,27 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link ModelSource} that memory-maps model files from a directory, for running the
+ * pipeline on the desktop against the models bundled in the app assets.
+ */
+public class FileModelSource implements ModelSource {
+    private final File directory;
+
+    public FileModelSource(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public ByteBuffer load(String modelName) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory, modelName), "r");
+             FileChannel fileChannel = file.getChannel()) {
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import java.io.IOException;
+
+/**
+ * Live frames for {@link StreamingOcr#stream}, such as camera previews or a replay of
+ * still images.
+ */
+public interface FrameSource {
+    /**
+     * Waits for and returns the next frame, or {@code null} when the stream has ended.
+     */
+    PixelBuffer nextFrame() throws IOException, InterruptedException;
+}
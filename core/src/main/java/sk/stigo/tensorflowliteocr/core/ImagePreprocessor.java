@@ -0,0 +1,139 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Per-model preprocessing that fills a preallocated input buffer in place, replacing
+ * the {@code ImageProcessor} and {@code TensorImage} built on every call by the
+ * tflite-support helpers. FLOAT32 inputs get {@code (value - mean) / std}; UINT8 and
+ * INT8 inputs get the same value quantized with the input's parameters, read from
+ * per-channel lookup tables instead of computed in floats.
+ *
+ * Source images are read through {@link PixelBuffer#readPixels} already resized to the
+ * model input, so an implementation backed by a large Android bitmap can scale it
+ * natively instead of copying the full-resolution pixels to the Java heap. Instances
+ * are not thread-safe.
+ */
+public class ImagePreprocessor {
+    private final int width;
+    private final int height;
+    private final float[] means;
+    private final float[] stds;
+    private final boolean grayscale;
+    private final Quantization quantization;
+    private final byte[][] lookupTables;
+    private final ByteBuffer inputBuffer;
+    private final int[] pixels;
+
+    public ImagePreprocessor(int width, int height, float[] means, float[] stds, boolean grayscale) {
+        this(width, height, means, stds, grayscale, Quantization.FLOAT32);
+    }
+
+    public ImagePreprocessor(
+            int width,
+            int height,
+            float[] means,
+            float[] stds,
+            boolean grayscale,
+            Quantization quantization
+    ) {
+        this.width = width;
+        this.height = height;
+        this.means = means;
+        this.stds = stds;
+        this.grayscale = grayscale;
+        this.quantization = quantization;
+        if (quantization.isQuantized()) {
+            this.lookupTables = new byte[grayscale ? 1 : 3][];
+            for (int i = 0; i < lookupTables.length; i++) {
+                lookupTables[i] = quantization.getLookupTable(means[i], stds[i]);
+            }
+        } else {
+            this.lookupTables = null;
+        }
+        this.inputBuffer = ByteBuffer.allocateDirect(getInputSize());
+        this.inputBuffer.order(ByteOrder.nativeOrder());
+        this.pixels = new int[width * height];
+    }
+
+    public static ImagePreprocessor forDetection(int width, int height, float[] means, float[] stds) {
+        return new ImagePreprocessor(width, height, means, stds, false);
+    }
+
+    public static ImagePreprocessor forDetection(
+            int width,
+            int height,
+            float[] means,
+            float[] stds,
+            Quantization quantization
+    ) {
+        return new ImagePreprocessor(width, height, means, stds, false, quantization);
+    }
+
+    public static ImagePreprocessor forRecognition(int width, int height, float mean, float std) {
+        return new ImagePreprocessor(width, height, new float[]{mean}, new float[]{std}, true);
+    }
+
+    /**
+     * Size of one preprocessed image in bytes.
+     */
+    public int getInputSize() {
+        return width * height * (grayscale ? 1 : 3) * quantization.getBytesPerElement();
+    }
+
+    public Quantization getQuantization() {
+        return quantization;
+    }
+
+    /**
+     * Preprocesses {@code image} into the internal input buffer and returns it rewound.
+     */
+    public ByteBuffer process(PixelBuffer image) {
+        inputBuffer.clear();
+        process(image, inputBuffer);
+        inputBuffer.rewind();
+        return inputBuffer;
+    }
+
+    /**
+     * Preprocesses the region {@code regionWidth} x {@code regionHeight} at
+     * {@code regionX}, {@code regionY} of {@code image}, for example one detection tile,
+     * into the internal input buffer and returns it rewound.
+     */
+    public ByteBuffer process(PixelBuffer image, int regionX, int regionY, int regionWidth, int regionHeight) {
+        image.readPixels(pixels, regionX, regionY, regionWidth, regionHeight, width, height);
+        inputBuffer.clear();
+        write(pixels, width, height, inputBuffer);
+        inputBuffer.rewind();
+        return inputBuffer;
+    }
+
+    /**
+     * Preprocesses {@code image} into {@code out} at its current position, for example
+     * into one slot of a batched input buffer.
+     */
+    public void process(PixelBuffer image, ByteBuffer out) {
+        image.readPixels(pixels, width, height);
+        write(pixels, width, height, out);
+    }
+
+    /**
+     * Fused path for pixels that are already on the Java heap, in any size: resize,
+     * grayscale and normalization happen in a single pass into the internal buffer.
+     */
+    public ByteBuffer process(int[] argb, int srcWidth, int srcHeight) {
+        inputBuffer.clear();
+        write(argb, srcWidth, srcHeight, inputBuffer);
+        inputBuffer.rewind();
+        return inputBuffer;
+    }
+
+    private void write(int[] argb, int srcWidth, int srcHeight, ByteBuffer out) {
+        if (lookupTables != null) {
+            PixelUtils.argbToQuantizedBuffer(argb, srcWidth, srcHeight, out, width, height, lookupTables, grayscale);
+        } else {
+            PixelUtils.argbToFloatBuffer(argb, srcWidth, srcHeight, out, width, height, means, stds, grayscale);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations with power-of-two microsecond buckets, from under
+ * 1 us to over an hour. Percentiles are reported as the upper bound of the bucket
+ * they fall into, so they are accurate to within a factor of two.
+ */
+public class LatencyHistogram {
+    private static final int BUCKET_COUNT = 33;
+
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong sumNanos;
+    private final AtomicLong maxNanos;
+
+    public LatencyHistogram() {
+        this.buckets = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new AtomicLong();
+        this.sumNanos = new AtomicLong();
+        this.maxNanos = new AtomicLong();
+    }
+
+    public void record(long nanos) {
+        buckets.incrementAndGet(bucket(nanos));
+        count.incrementAndGet();
+        sumNanos.addAndGet(nanos);
+
+        long max;
+        while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+            // Another thread raised the maximum; compare again.
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSumNanos() {
+        return sumNanos.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public double getMeanNanos() {
+        long count = getCount();
+        return count > 0 ? (double) getSumNanos() / count : 0;
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the {@code percentile}-th
+     * percentile, capped at the largest recorded value, or 0 when empty.
+     */
+    public long getPercentileNanos(double percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundNanos(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sumNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    // Bucket i holds durations below 2^i microseconds.
+    private static int bucket(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    private static long upperBoundNanos(int bucket) {
+        return (1L << bucket) * 1000;
+    }
+}
@@ -0,0 +1,23 @@
+package sk.stigo.tensorflowliteocr.core;
+
+/**
+ * Receives stage timings and counts from {@link OCRPipeline}. Calls come from the
+ * thread running the stage, which for recognition is one of the pool threads, so
+ * implementations must be thread-safe. A stage is always finished on the thread that
+ * started it.
+ *
+ * With {@link #NONE}, the default, the pipeline does not even read the clock.
+ */
+public interface MetricsListener {
+    MetricsListener NONE = new MetricsListener() {
+    };
+
+    default void onStageStarted(Stage stage) {
+    }
+
+    default void onStageFinished(Stage stage, long durationNanos) {
+    }
+
+    default void onCount(Counter counter, long value) {
+    }
+}
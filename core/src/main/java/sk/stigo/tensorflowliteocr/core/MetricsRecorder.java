@@ -0,0 +1,175 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link MetricsListener} that aggregates everything it receives: a latency histogram
+ * per {@link Stage}, the total and latest value of each {@link Counter} and,
+ * when given a per-thread allocation counter, the bytes allocated in each stage.
+ * The allocation counter is platform specific, e.g. the HotSpot {@code ThreadMXBean}
+ * on the desktop; Android has no supported per-thread counter.
+ */
+public class MetricsRecorder implements MetricsListener {
+    private static final Stage[] STAGES = Stage.values();
+    private static final Counter[] COUNTERS = Counter.values();
+
+    private final LatencyHistogram[] histograms;
+    private final AtomicLong[] counterTotals;
+    private final AtomicLong[] counterLatest;
+    private final AtomicLong[] allocatedBytes;
+    private final LongSupplier threadAllocatedBytes;
+    private final ThreadLocal<long[]> stageStartAllocations;
+
+    public MetricsRecorder() {
+        this(null);
+    }
+
+    /**
+     * @param threadAllocatedBytes returns the bytes allocated so far by the calling
+     *                             thread, or {@code null} to skip allocation tracking
+     */
+    public MetricsRecorder(LongSupplier threadAllocatedBytes) {
+        this.histograms = new LatencyHistogram[STAGES.length];
+        this.allocatedBytes = new AtomicLong[STAGES.length];
+        for (int i = 0; i < STAGES.length; i++) {
+            histograms[i] = new LatencyHistogram();
+            allocatedBytes[i] = new AtomicLong();
+        }
+        this.counterTotals = new AtomicLong[COUNTERS.length];
+        this.counterLatest = new AtomicLong[COUNTERS.length];
+        for (int i = 0; i < COUNTERS.length; i++) {
+            counterTotals[i] = new AtomicLong();
+            counterLatest[i] = new AtomicLong();
+        }
+        this.threadAllocatedBytes = threadAllocatedBytes;
+        this.stageStartAllocations = ThreadLocal.withInitial(() -> new long[STAGES.length]);
+    }
+
+    @Override
+    public void onStageStarted(Stage stage) {
+        if (threadAllocatedBytes != null) {
+            stageStartAllocations.get()[stage.ordinal()] = threadAllocatedBytes.getAsLong();
+        }
+    }
+
+    @Override
+    public void onStageFinished(Stage stage, long durationNanos) {
+        histograms[stage.ordinal()].record(durationNanos);
+        if (threadAllocatedBytes != null) {
+            long allocated = threadAllocatedBytes.getAsLong() - stageStartAllocations.get()[stage.ordinal()];
+            allocatedBytes[stage.ordinal()].addAndGet(Math.max(0, allocated));
+        }
+    }
+
+    @Override
+    public void onCount(Counter counter, long value) {
+        counterTotals[counter.ordinal()].addAndGet(value);
+        counterLatest[counter.ordinal()].set(value);
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    public long getCounterTotal(Counter counter) {
+        return counterTotals[counter.ordinal()].get();
+    }
+
+    public long getCounterLatest(Counter counter) {
+        return counterLatest[counter.ordinal()].get();
+    }
+
+    /**
+     * Bytes allocated in {@code stage} over all calls, or 0 without allocation tracking.
+     */
+    public long getAllocatedBytes(Stage stage) {
+        return allocatedBytes[stage.ordinal()].get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < STAGES.length; i++) {
+            histograms[i].reset();
+            allocatedBytes[i].set(0);
+        }
+        for (int i = 0; i < COUNTERS.length; i++) {
+            counterTotals[i].set(0);
+            counterLatest[i].set(0);
+        }
+    }
+
+    /**
+     * Dumps all metrics as one JSON object with durations in milliseconds.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"stages\":{");
+        for (int i = 0; i < STAGES.length; i++) {
+            LatencyHistogram histogram = histograms[i];
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('"').append(STAGES[i].name()).append("\":{")
+                    .append("\"count\":").append(histogram.getCount())
+                    .append(",\"meanMs\":").append(millis(histogram.getMeanNanos()))
+                    .append(",\"p50Ms\":").append(millis(histogram.getPercentileNanos(50)))
+                    .append(",\"p95Ms\":").append(millis(histogram.getPercentileNanos(95)))
+                    .append(",\"p99Ms\":").append(millis(histogram.getPercentileNanos(99)))
+                    .append(",\"maxMs\":").append(millis(histogram.getMaxNanos()));
+            if (threadAllocatedBytes != null) {
+                json.append(",\"allocatedBytes\":").append(allocatedBytes[i].get());
+            }
+            json.append('}');
+        }
+        json.append("},\"counters\":{");
+        for (int i = 0; i < COUNTERS.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('"').append(COUNTERS[i].name()).append("\":{")
+                    .append("\"total\":").append(counterTotals[i].get())
+                    .append(",\"latest\":").append(counterLatest[i].get())
+                    .append('}');
+        }
+        return json.append("}}").toString();
+    }
+
+    /**
+     * One line per stage and counter, for logs.
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < STAGES.length; i++) {
+            LatencyHistogram histogram = histograms[i];
+            text.append(String.format(
+                    Locale.ROOT,
+                    "%-23s n=%-6d mean=%8.2f ms  p50<=%8.2f ms  p95<=%8.2f ms  max=%8.2f ms",
+                    STAGES[i],
+                    histogram.getCount(),
+                    histogram.getMeanNanos() / 1e6,
+                    histogram.getPercentileNanos(50) / 1e6,
+                    histogram.getPercentileNanos(95) / 1e6,
+                    histogram.getMaxNanos() / 1e6
+            ));
+            if (threadAllocatedBytes != null) {
+                text.append(String.format(Locale.ROOT, "  alloc=%d B", allocatedBytes[i].get()));
+            }
+            text.append('\n');
+        }
+        for (int i = 0; i < COUNTERS.length; i++) {
+            text.append(String.format(
+                    Locale.ROOT,
+                    "%-23s total=%d latest=%d%n",
+                    COUNTERS[i],
+                    counterTotals[i].get(),
+                    counterLatest[i].get()
+            ));
+        }
+        return text.toString();
+    }
+
+    private static String millis(double nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+}
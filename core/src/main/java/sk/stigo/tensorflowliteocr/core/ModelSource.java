@@ -0,0 +1,14 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Loads TFLite model files by name, from Android assets or from a directory on disk.
+ */
+public interface ModelSource {
+    /**
+     * Returns the model as a direct or memory-mapped buffer the interpreter can use.
+     */
+    ByteBuffer load(String modelName) throws IOException;
+}
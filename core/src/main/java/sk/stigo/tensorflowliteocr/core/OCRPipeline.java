@@ -0,0 +1,1263 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import org.opencv.core.Point;
+import org.tensorflow.lite.Delegate;
+import org.tensorflow.lite.Interpreter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Text detection and recognition pipeline without any Android dependency. Images come
+ * in through {@link PixelBuffer} and models through {@link ModelSource}, so the same
+ * code runs in the app and on a desktop JVM with the TFLite Java and OpenCV bindings.
+ *
+ * {@link #run} may be called from several threads at once: every call keeps its state
+ * in locals and returns its own {@link OCRPipelineResult}, detection is serialized on
+ * the shared detection interpreters, and the crops of each call are recognized in
+ * parallel by a {@link TextRecognizerPool}.
+ *
+ * Models are loaded lazily: a detector when it is first used and the recognizers
+ * when the first text box needs recognizing. {@link #warmUp} loads and exercises them
+ * ahead of the first real image, and {@link #release} frees them again under memory
+ * pressure.
+ *
+ * With {@link #setTiledDetection tiled detection} large photos are detected in
+ * overlapping tiles planned by {@link DetectionTiles}, in addition to the whole image.
+ */
+public class OCRPipeline implements Closeable {
+    /**
+     * Receives the progress of {@link #runScheduled} on the calling thread.
+     */
+    public interface ProgressListener {
+        /**
+         * Called whenever more boxes are recognized, with all boxes recognized so far in
+         * the order of the schedule.
+         */
+        void onPartialResult(OCRPipelineResult partial);
+
+        /**
+         * Called once when the deadline leaves boxes unrecognized, with their corners in
+         * the order of the schedule, which {@link #recognize} can read later.
+         */
+        default void onDeferred(float[] corners) {
+        }
+    }
+
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private static final int MOBILE_NET_DETECTION_IMAGE_HEIGHT = 300;
+    private static final int MOBILE_NET_DETECTION_IMAGE_WIDTH = 300;
+    private static final int EAST_DETECTION_IMAGE_HEIGHT = 320;
+    private static final int EAST_DETECTION_IMAGE_WIDTH = 320;
+    private static final float[] MOBILE_NET_DETECTION_IMAGE_MEANS = new float[]{127.5f, 127.5f, 127.5f};
+    private static final float[] MOBILE_NET_DETECTION_IMAGE_STDS = new float[]{127.5f, 127.5f, 127.5f};
+    private static final float[] EAST_DETECTION_IMAGE_MEANS = new float[]{103.94f, 116.78f, 123.68f};
+    private static final float[] EAST_DETECTION_IMAGE_STDS = new float[]{1f, 1f, 1f};
+    private static final String MOBILE_NET_DETECTION_MODEL = "final_model.tflite";
+    private static final String EAST_DETECTION_MODEL = "lite-model_east-text-detector_fp16_1.tflite";
+    private static final String TXT_RECOGNITION_MODEL = "lite-model_keras-ocr_float16_2.tflite";
+    // Input and output types are read from the models, so a fully quantized conversion
+    // may replace either file; MobileNet has no quantized variant.
+    private static final String QUANTIZED_EAST_DETECTION_MODEL = "lite-model_east-text-detector_int8_1.tflite";
+    private static final String QUANTIZED_TXT_RECOGNITION_MODEL = "lite-model_keras-ocr_dr_2.tflite";
+    private static final float DETECTION_CONFIDENCE_THRESHOLD = 0.5f;
+    private static final float DETECTION_NMS_THRESHOLD = 0.4f;
+    private static final int DETECTION_NMS_TOP_K = 0;
+    private static final int MOBILE_NET_DETECTION_MAX_BOXES = 10;
+
+    private final ModelSource modelSource;
+    // Replaced only with the model write lock held.
+    private volatile RuntimeOptions options;
+    private final Map<Interpreter, Delegate> delegates;
+    // Guarded by detectionLock.
+    private Interpreter mobileNetDetectionInterpreter;
+    private Interpreter eastDetectionInterpreter;
+    // Guarded by recognitionLock; the pool is also read without it once set.
+    private List<Interpreter> recognitionInterpreters;
+    private volatile TextRecognizerPool textRecognizerPool;
+    // Built for the input and output types of the loaded detectors; guarded by detectionLock.
+    private ImagePreprocessor mobileNetDetectionPreprocessor;
+    private ImagePreprocessor eastDetectionPreprocessor;
+    private EastDecoder eastDecoder;
+    private final float[] mobileNetBoundingBoxes;
+    private final float[] mobileNetConfidences;
+    // Candidates of all tiles in image coordinates; guarded by detectionLock.
+    private float[] tiledBoxes;
+    private float[] tiledConfidences;
+    private final RotatedNms rotatedNms;
+    private final Object detectionLock;
+    private final Object recognitionLock;
+    // Held for reading by every call that uses the models and for writing to release them.
+    private final ReadWriteLock modelLock;
+    private final Queue<ByteBuffer> cropBuffers;
+    private volatile MetricsListener metrics;
+    private volatile boolean tiledDetection;
+    private volatile RecognitionCache recognitionCache;
+    private volatile boolean bucketedRecognition;
+    private volatile AdaptiveDetection adaptiveDetection;
+    private volatile boolean localityAwareMerging;
+    private volatile int maxDetectionCandidates;
+    private final RecognitionGroupTimes recognitionGroupTimes;
+
+    public OCRPipeline(ModelSource modelSource) {
+        this(modelSource, new RuntimeOptions());
+    }
+
+    /**
+     * @param delegateFactory creates one delegate per interpreter, for example a GPU
+     *                        delegate on Android, or {@code null} to run on the CPU
+     */
+    public OCRPipeline(ModelSource modelSource, Supplier<Delegate> delegateFactory) {
+        this(modelSource, new RuntimeOptions().setDelegateFactory(delegateFactory));
+    }
+
+    public OCRPipeline(ModelSource modelSource, RuntimeOptions options) {
+        this.modelSource = modelSource;
+        this.options = new RuntimeOptions(options);
+        this.delegates = new IdentityHashMap<>();
+        this.mobileNetBoundingBoxes = new float[MOBILE_NET_DETECTION_MAX_BOXES * RotatedNms.BOX_SIZE];
+        this.mobileNetConfidences = new float[MOBILE_NET_DETECTION_MAX_BOXES];
+        this.tiledBoxes = new float[0];
+        this.tiledConfidences = new float[0];
+        this.rotatedNms = new RotatedNms();
+        this.detectionLock = new Object();
+        this.recognitionLock = new Object();
+        this.modelLock = new ReentrantReadWriteLock();
+        this.cropBuffers = new ConcurrentLinkedQueue<>();
+        this.metrics = MetricsListener.NONE;
+        this.maxDetectionCandidates = EastDecoder.DEFAULT_MAX_CANDIDATES;
+        this.recognitionGroupTimes = new RecognitionGroupTimes(TextRecognizer.BUCKET_WIDTHS);
+    }
+
+    /**
+     * Sends stage timings and counts of every following {@link #run} call to
+     * {@code metrics}; {@code null} restores the no-op {@link MetricsListener#NONE}.
+     */
+    public void setMetricsListener(MetricsListener metrics) {
+        synchronized (recognitionLock) {
+            this.metrics = metrics != null ? metrics : MetricsListener.NONE;
+            if (textRecognizerPool != null) {
+                textRecognizerPool.setMetricsListener(this.metrics);
+            }
+        }
+    }
+
+    /**
+     * Detects text in overlapping tiles of large images in every following {@link #run}
+     * call, which finds small text at the cost of up to
+     * {@value DetectionTiles#MAX_TILES_PER_SIDE} squared more detector invocations.
+     * Images not much larger than the detector input are detected in one pass anyway.
+     */
+    public void setTiledDetection(boolean tiledDetection) {
+        this.tiledDetection = tiledDetection;
+    }
+
+    /**
+     * Merges overlapping EAST candidates of one connected region of the score map
+     * before the suppression in every following call, which leaves the suppression a
+     * few candidates per text line instead of one per cell.
+     */
+    public void setLocalityAwareMerging(boolean localityAwareMerging) {
+        this.localityAwareMerging = localityAwareMerging;
+    }
+
+    /**
+     * Keeps only the {@code maxDetectionCandidates} best scoring EAST candidates of each
+     * image or tile in every following call, which bounds the time of the suppression
+     * on cluttered images. Defaults to {@value EastDecoder#DEFAULT_MAX_CANDIDATES}.
+     */
+    public void setMaxDetectionCandidates(int maxDetectionCandidates) {
+        if (maxDetectionCandidates < 1) {
+            throw new IllegalArgumentException("maxDetectionCandidates must be positive, got " + maxDetectionCandidates);
+        }
+        this.maxDetectionCandidates = maxDetectionCandidates;
+    }
+
+    /**
+     * Warps the boxes of every following call with their aspect ratio kept, padded to
+     * the narrowest crop width that holds them, instead of stretching every box to
+     * {@value TextRecognizer#IMAGE_WIDTH} pixels. Boxes of one width are recognized
+     * together. Short text then takes narrower, cheaper crops if the model accepts
+     * other widths, see {@link TextRecognizerPool#getBucketWidths()}, and long text is
+     * no longer squeezed.
+     */
+    public void setBucketedRecognition(boolean bucketedRecognition) {
+        this.bucketedRecognition = bucketedRecognition;
+    }
+
+    /**
+     * Lets {@code adaptiveDetection} decide after every following {@link #run} with
+     * {@link DetectionModel#MOBILE_NET} whether to run again with
+     * {@link DetectionModel#EAST}, whose result is then returned instead, and teaches
+     * it the cost of both passes; {@code null} turns escalation off. Runs that select
+     * EAST, {@link #detect} and {@link #recognize} are not affected.
+     */
+    public void setAdaptiveDetection(AdaptiveDetection adaptiveDetection) {
+        this.adaptiveDetection = adaptiveDetection;
+    }
+
+    /**
+     * Looks up the crops of every following call in {@code recognitionCache} before
+     * recognizing them, and adds the newly recognized ones; {@code null} turns the
+     * lookup off. The cache is cleared when the runtime options change.
+     */
+    public void setRecognitionCache(RecognitionCache recognitionCache) {
+        this.recognitionCache = recognitionCache;
+    }
+
+    /**
+     * Replaces the runtime options. Every loaded model is released, waiting for calls in
+     * progress, and loaded again with the new options when next used.
+     */
+    public void setRuntimeOptions(RuntimeOptions options) {
+        modelLock.writeLock().lock();
+        try {
+            releaseAll();
+            this.options = new RuntimeOptions(options);
+            recognitionGroupTimes.clear();
+            RecognitionCache recognitionCache = this.recognitionCache;
+            if (recognitionCache != null) {
+                // Another recognition model may read the same crops differently.
+                recognitionCache.clear();
+            }
+        } finally {
+            modelLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Loads {@code detectionModel} and the recognizers if they are not loaded yet and
+     * runs each interpreter once on a blank input, so the first real image does not
+     * pay for delegate, kernel and memory setup. Meant for a background thread.
+     *
+     * @throws UncheckedIOException if a model cannot be loaded
+     */
+    public void warmUp(DetectionModel detectionModel) {
+        modelLock.readLock().lock();
+        try {
+            MetricsListener metrics = this.metrics;
+            long start = StageTimer.start(metrics, Stage.WARM_UP);
+
+            int width = getDetectionImageWidth(detectionModel);
+            int height = getDetectionImageHeight(detectionModel);
+            detectTexts(new ArgbPixelBuffer(width, height, new int[width * height]), detectionModel, MetricsListener.NONE);
+
+            TextRecognizerPool pool = getTextRecognizerPool();
+            if (bucketedRecognition) {
+                // Tries the crop widths the model may accept.
+                pool.getBucketWidths();
+            }
+            ByteBuffer crop = acquireCropBuffer(1, pool.getCropSizeBytes());
+            try {
+                pool.warmUp(crop);
+            } finally {
+                cropBuffers.offer(crop);
+            }
+
+            StageTimer.finish(metrics, Stage.WARM_UP, start);
+        } finally {
+            modelLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Closes the interpreter of {@code detectionModel} to free its memory; it is loaded
+     * again when next used. Waits for calls in progress to finish.
+     */
+    public void release(DetectionModel detectionModel) {
+        modelLock.writeLock().lock();
+        try {
+            releaseDetector(detectionModel);
+        } finally {
+            modelLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Closes every loaded interpreter and delegate and stops the recognition workers.
+     * The pipeline stays usable and loads the models again when next used. Waits for
+     * calls in progress to finish.
+     */
+    public void releaseAll() {
+        modelLock.writeLock().lock();
+        try {
+            releaseDetector(DetectionModel.MOBILE_NET);
+            releaseDetector(DetectionModel.EAST);
+            synchronized (recognitionLock) {
+                if (textRecognizerPool != null) {
+                    textRecognizerPool.close();
+                    for (Interpreter recognitionInterpreter : recognitionInterpreters) {
+                        closeInterpreter(recognitionInterpreter);
+                    }
+                    textRecognizerPool = null;
+                    recognitionInterpreters = null;
+                }
+            }
+        } finally {
+            modelLock.writeLock().unlock();
+        }
+    }
+
+    boolean isLoaded(DetectionModel detectionModel) {
+        synchronized (detectionLock) {
+            return (detectionModel == DetectionModel.MOBILE_NET
+                    ? mobileNetDetectionInterpreter
+                    : eastDetectionInterpreter) != null;
+        }
+    }
+
+    boolean isRecognitionLoaded() {
+        return textRecognizerPool != null;
+    }
+
+    /**
+     * Detects text boxes in {@code image} and recognizes the text in each of them.
+     *
+     * @param batched       recognize the crops of each recognizer in one invocation
+     * @param deadlineNanos {@link System#nanoTime()} after which the call fails with a
+     *                      {@link CancellationException}, or {@link #NO_DEADLINE}
+     * @throws CancellationException if the calling thread is interrupted or the
+     *                               deadline passes between stages or text boxes
+     * @throws UncheckedIOException  if a model cannot be loaded
+     */
+    public OCRPipelineResult run(PixelBuffer image, DetectionModel detectionModel, boolean batched, long deadlineNanos) {
+        modelLock.readLock().lock();
+        try {
+            return runWithModels(image, detectionModel, batched, deadlineNanos);
+        } finally {
+            modelLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Like {@link #run}, but with the deadline as a budget of recognition instead of a
+     * failure. The boxes are recognized in the order of {@code schedule}, as many at a
+     * time as there are recognizers, and a group is only started when it is expected to
+     * finish before the deadline, judged by the time of earlier groups of the same mode
+     * and widest crop width. The boxes left
+     * when the deadline comes are not in the result; they are passed to
+     * {@link ProgressListener#onDeferred}. Adaptive detection does not apply.
+     *
+     * @param listener receives the boxes as they are recognized, or {@code null}
+     * @return the recognized boxes in the order of {@code schedule}
+     * @throws CancellationException if the calling thread is interrupted, or the
+     *                               deadline passes before detection finishes
+     */
+    public OCRPipelineResult runScheduled(
+            PixelBuffer image,
+            DetectionModel detectionModel,
+            boolean batched,
+            long deadlineNanos,
+            RecognitionSchedule schedule,
+            ProgressListener listener
+    ) {
+        modelLock.readLock().lock();
+        try {
+            MetricsListener metrics = this.metrics;
+            long start = StageTimer.start(metrics, Stage.TOTAL);
+            Detections detections = detectRegions(image, detectionModel, deadlineNanos, metrics);
+            int[] order = schedule.order(detections.boxes, detections.confidences);
+            OCRPipelineResult result = recognizeScheduled(
+                    image,
+                    detections,
+                    order,
+                    batched,
+                    deadlineNanos,
+                    metrics,
+                    listener
+            );
+
+            StageTimer.count(metrics, Counter.RECOGNIZED_TEXTS, result.getTexts().size());
+            StageTimer.finish(metrics, Stage.TOTAL, start);
+            return result;
+        } finally {
+            modelLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Recognizes the text in known boxes of {@code image} without running the detector,
+     * for example the boxes of an earlier result of a fixed camera.
+     *
+     * @param corners {@value OCRPipelineResult#CORNERS_SIZE} floats per box in source
+     *                image coordinates, as returned by {@link OCRPipelineResult#getCorners()}
+     * @see #run
+     */
+    public OCRPipelineResult recognize(PixelBuffer image, float[] corners, boolean batched, long deadlineNanos) {
+        modelLock.readLock().lock();
+        try {
+            MetricsListener metrics = this.metrics;
+            long start = StageTimer.start(metrics, Stage.TOTAL);
+            checkCancelled(deadlineNanos);
+            OCRPipelineResult result = recognizeRegions(image, corners, null, batched, deadlineNanos, metrics);
+
+            StageTimer.count(metrics, Counter.RECOGNIZED_TEXTS, result.getTexts().size());
+            StageTimer.finish(metrics, Stage.TOTAL, start);
+            return result;
+        } finally {
+            modelLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Detects text boxes in {@code image} without recognizing them, for example to
+     * recognize them later with {@link #recognize} on another thread.
+     *
+     * @return {@value OCRPipelineResult#CORNERS_SIZE} floats per box in source image
+     *         coordinates, like {@link OCRPipelineResult#getCorners()}
+     * @see #run
+     */
+    public float[] detect(PixelBuffer image, DetectionModel detectionModel, long deadlineNanos) {
+        modelLock.readLock().lock();
+        try {
+            checkCancelled(deadlineNanos);
+            return detectRegions(image, detectionModel, deadlineNanos, this.metrics).boxes;
+        } finally {
+            modelLock.readLock().unlock();
+        }
+    }
+
+    private OCRPipelineResult runWithModels(
+            PixelBuffer image,
+            DetectionModel detectionModel,
+            boolean batched,
+            long deadlineNanos
+    ) {
+        MetricsListener metrics = this.metrics;
+        long start = StageTimer.start(metrics, Stage.TOTAL);
+        long passStart = System.nanoTime();
+        OCRPipelineResult result = detectAndRecognize(image, detectionModel, batched, deadlineNanos, metrics);
+
+        AdaptiveDetection adaptiveDetection = this.adaptiveDetection;
+        if (adaptiveDetection != null && detectionModel == DetectionModel.MOBILE_NET) {
+            result = escalate(image, result, adaptiveDetection, batched, passStart, deadlineNanos, metrics);
+        }
+
+        StageTimer.count(metrics, Counter.RECOGNIZED_TEXTS, result.getTexts().size());
+        StageTimer.finish(metrics, Stage.TOTAL, start);
+        return result;
+    }
+
+    private OCRPipelineResult detectAndRecognize(
+            PixelBuffer image,
+            DetectionModel detectionModel,
+            boolean batched,
+            long deadlineNanos,
+            MetricsListener metrics
+    ) {
+        Detections detections = detectRegions(image, detectionModel, deadlineNanos, metrics);
+
+        checkCancelled(deadlineNanos);
+        return recognizeRegions(
+                image,
+                detections.boxes,
+                detections.confidences,
+                batched,
+                deadlineNanos,
+                metrics
+        );
+    }
+
+    // Runs a MobileNet result found incomplete again with EAST, if it fits the budget.
+    private OCRPipelineResult escalate(
+            PixelBuffer image,
+            OCRPipelineResult firstPass,
+            AdaptiveDetection adaptiveDetection,
+            boolean batched,
+            long passStart,
+            long deadlineNanos,
+            MetricsListener metrics
+    ) {
+        long now = System.nanoTime();
+        adaptiveDetection.record(DetectionModel.MOBILE_NET, now - passStart);
+        long remainingNanos = deadlineNanos == NO_DEADLINE ? Long.MAX_VALUE : deadlineNanos - now;
+        if (!adaptiveDetection.shouldEscalate(firstPass, MOBILE_NET_DETECTION_MAX_BOXES, now - passStart, remainingNanos)) {
+            return firstPass;
+        }
+        StageTimer.count(metrics, Counter.DETECTOR_ESCALATIONS, 1);
+
+        // Loaded before the pass is timed, so the first load does not count as its cost.
+        synchronized (detectionLock) {
+            getDetectionInterpreter(DetectionModel.EAST);
+        }
+        long eastStart = System.nanoTime();
+        OCRPipelineResult result;
+        try {
+            result = detectAndRecognize(image, DetectionModel.EAST, batched, deadlineNanos, metrics);
+        } catch (CancellationException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw e;
+            }
+            // Only the deadline passed; the first pass is still a result.
+            return firstPass;
+        }
+        adaptiveDetection.record(DetectionModel.EAST, System.nanoTime() - eastStart);
+        return result;
+    }
+
+    // Returns the detected boxes as corners in source image coordinates.
+    private Detections detectRegions(
+            PixelBuffer image,
+            DetectionModel detectionModel,
+            long deadlineNanos,
+            MetricsListener metrics
+    ) {
+        int detectionWidth = getDetectionImageWidth(detectionModel);
+        int detectionHeight = getDetectionImageHeight(detectionModel);
+        DetectionTiles tiles = tiledDetection
+                ? DetectionTiles.plan(image.getWidth(), image.getHeight(), detectionWidth, detectionHeight)
+                : null;
+        float ratioHeight;
+        float ratioWidth;
+        Detections detections;
+
+        if (tiles != null && tiles.isTiled()) {
+            // Tiled boxes are already in image coordinates.
+            ratioHeight = 1f;
+            ratioWidth = 1f;
+            detections = detectTextsInTiles(image, detectionModel, tiles, deadlineNanos, metrics);
+        } else {
+            ratioHeight = (float)image.getHeight() / detectionHeight;
+            ratioWidth = (float)image.getWidth() / detectionWidth;
+            detections = detectTexts(image, detectionModel, metrics);
+        }
+        return new Detections(getCorners(detections.boxes, ratioWidth, ratioHeight), detections.confidences);
+    }
+
+    /**
+     * Returns the boxes kept after non-maximum suppression and their scores, packed in
+     * the {@link RotatedNms} layout in detection model coordinates.
+     */
+    private Detections detectTexts(PixelBuffer image, DetectionModel detectionModel, MetricsListener metrics) {
+        synchronized (detectionLock) {
+            int candidateCount = detectCandidates(
+                    image,
+                    0,
+                    0,
+                    image.getWidth(),
+                    image.getHeight(),
+                    detectionModel,
+                    metrics
+            );
+            return suppressNonMaximum(
+                    getCandidateBoxes(detectionModel),
+                    getCandidateConfidences(detectionModel),
+                    candidateCount,
+                    metrics
+            );
+        }
+    }
+
+    /**
+     * Like {@link #detectTexts} for every tile of {@code tiles}, one after another on the
+     * shared detector, with one suppression over the candidates of all tiles. Returns
+     * the boxes in image coordinates.
+     */
+    private Detections detectTextsInTiles(
+            PixelBuffer image,
+            DetectionModel detectionModel,
+            DetectionTiles tiles,
+            long deadlineNanos,
+            MetricsListener metrics
+    ) {
+        synchronized (detectionLock) {
+            int candidateCount = 0;
+            for (int tile = 0; tile < tiles.getCount(); tile++) {
+                checkCancelled(deadlineNanos);
+                int tileCandidateCount = detectCandidates(
+                        image,
+                        tiles.getX(tile),
+                        tiles.getY(tile),
+                        tiles.getWidth(tile),
+                        tiles.getHeight(tile),
+                        detectionModel,
+                        metrics
+                );
+
+                long start = StageTimer.start(metrics, Stage.DETECTION_DECODING);
+                ensureTiledCapacity(candidateCount + tileCandidateCount);
+                candidateCount += tiles.mapCandidates(
+                        tile,
+                        getCandidateBoxes(detectionModel),
+                        getCandidateConfidences(detectionModel),
+                        tileCandidateCount,
+                        tiledBoxes,
+                        tiledConfidences,
+                        candidateCount
+                );
+                StageTimer.finish(metrics, Stage.DETECTION_DECODING, start);
+            }
+            StageTimer.count(metrics, Counter.DETECTION_TILES, tiles.getCount());
+
+            return suppressNonMaximum(tiledBoxes, tiledConfidences, candidateCount, metrics);
+        }
+    }
+
+    // Called with detectionLock held.
+    private void ensureTiledCapacity(int count) {
+        if (tiledConfidences.length < count) {
+            int capacity = Math.max(count, tiledConfidences.length * 2);
+            tiledBoxes = Arrays.copyOf(tiledBoxes, capacity * RotatedNms.BOX_SIZE);
+            tiledConfidences = Arrays.copyOf(tiledConfidences, capacity);
+        }
+    }
+
+    /**
+     * Runs the detector on the given region of {@code image} and returns the number of
+     * candidates left in {@link #getCandidateBoxes} and {@link #getCandidateConfidences},
+     * in detection model coordinates. Called with detectionLock held.
+     */
+    private int detectCandidates(
+            PixelBuffer image,
+            int regionX,
+            int regionY,
+            int regionWidth,
+            int regionHeight,
+            DetectionModel detectionModel,
+            MetricsListener metrics
+    ) {
+        return detectionModel == DetectionModel.MOBILE_NET
+                ? detectCandidatesUsingMobileNet(image, regionX, regionY, regionWidth, regionHeight, metrics)
+                : detectCandidatesUsingEast(image, regionX, regionY, regionWidth, regionHeight, metrics);
+    }
+
+    private float[] getCandidateBoxes(DetectionModel detectionModel) {
+        return detectionModel == DetectionModel.MOBILE_NET ? mobileNetBoundingBoxes : eastDecoder.getBoxes();
+    }
+
+    private float[] getCandidateConfidences(DetectionModel detectionModel) {
+        return detectionModel == DetectionModel.MOBILE_NET ? mobileNetConfidences : eastDecoder.getConfidences();
+    }
+
+    private int detectCandidatesUsingMobileNet(
+            PixelBuffer image,
+            int regionX,
+            int regionY,
+            int regionWidth,
+            int regionHeight,
+            MetricsListener metrics
+    ) {
+        Interpreter interpreter = getDetectionInterpreter(DetectionModel.MOBILE_NET);
+
+        long start = StageTimer.start(metrics, Stage.DETECTION_PREPROCESSING);
+        Buffer[] detectionInputs = new Buffer[]{
+                mobileNetDetectionPreprocessor.process(image, regionX, regionY, regionWidth, regionHeight)
+        };
+        StageTimer.finish(metrics, Stage.DETECTION_PREPROCESSING, start);
+        HashMap<Integer, Object> detectionOutputs = new HashMap();
+
+
+        float[][][] detectionBoxes = new float[1][MOBILE_NET_DETECTION_MAX_BOXES][4];
+        float[][] detectionClasses = new float[1][MOBILE_NET_DETECTION_MAX_BOXES];
+        float[][] detectionScores = new float[1][MOBILE_NET_DETECTION_MAX_BOXES];
+        float[] detectionMasks = new float[1];
+
+        detectionOutputs.put(0, detectionBoxes);
+        detectionOutputs.put(1, detectionClasses);
+        detectionOutputs.put(2, detectionScores);
+        detectionOutputs.put(3, detectionMasks);
+
+
+        start = StageTimer.start(metrics, Stage.DETECTION_INFERENCE);
+        interpreter.runForMultipleInputsOutputs(detectionInputs, detectionOutputs);
+        StageTimer.finish(metrics, Stage.DETECTION_INFERENCE, start);
+
+        start = StageTimer.start(metrics, Stage.DETECTION_DECODING);
+        int candidateCount = 0;
+        for (int x = 0; x < MOBILE_NET_DETECTION_MAX_BOXES; x++) {
+            float detectionScoreData = detectionScores[0][x];
+            float detectionGeometryYMin = detectionBoxes[0][x][0];
+            float detectionGeometryXMin = detectionBoxes[0][x][1];
+            float detectionGeometryYMax = detectionBoxes[0][x][2];
+            float detectionGeometryXMax = detectionBoxes[0][x][3];
+
+            if (detectionScoreData < DETECTION_CONFIDENCE_THRESHOLD) {
+                continue;
+            }
+
+            float w = (detectionGeometryXMax - detectionGeometryXMin) * MOBILE_NET_DETECTION_IMAGE_WIDTH;
+            float h = (detectionGeometryYMax - detectionGeometryYMin) * MOBILE_NET_DETECTION_IMAGE_HEIGHT;
+
+            int box = candidateCount * RotatedNms.BOX_SIZE;
+            mobileNetBoundingBoxes[box] = detectionGeometryXMin * MOBILE_NET_DETECTION_IMAGE_WIDTH + w / 2;
+            mobileNetBoundingBoxes[box + 1] = detectionGeometryYMin * MOBILE_NET_DETECTION_IMAGE_HEIGHT + h / 2;
+            mobileNetBoundingBoxes[box + 2] = w;
+            mobileNetBoundingBoxes[box + 3] = h;
+            mobileNetBoundingBoxes[box + 4] = 0f;
+            mobileNetConfidences[candidateCount] = detectionScoreData;
+            candidateCount++;
+        }
+        StageTimer.finish(metrics, Stage.DETECTION_DECODING, start);
+        return candidateCount;
+    }
+
+    private int detectCandidatesUsingEast(
+            PixelBuffer image,
+            int regionX,
+            int regionY,
+            int regionWidth,
+            int regionHeight,
+            MetricsListener metrics
+    ) {
+        Interpreter interpreter = getDetectionInterpreter(DetectionModel.EAST);
+
+        long start = StageTimer.start(metrics, Stage.DETECTION_PREPROCESSING);
+        Buffer[] detectionInputs = new Buffer[]{
+                eastDetectionPreprocessor.process(image, regionX, regionY, regionWidth, regionHeight)
+        };
+        StageTimer.finish(metrics, Stage.DETECTION_PREPROCESSING, start);
+
+        start = StageTimer.start(metrics, Stage.DETECTION_INFERENCE);
+        interpreter.runForMultipleInputsOutputs(detectionInputs, eastDecoder.getOutputs());
+        StageTimer.finish(metrics, Stage.DETECTION_INFERENCE, start);
+
+        start = StageTimer.start(metrics, Stage.DETECTION_DECODING);
+        int candidateCount = eastDecoder.decode(
+                DETECTION_CONFIDENCE_THRESHOLD,
+                localityAwareMerging,
+                maxDetectionCandidates
+        );
+        StageTimer.finish(metrics, Stage.DETECTION_DECODING, start);
+        return candidateCount;
+    }
+
+    // Copies the kept boxes out of the shared detection buffers so they outlive the lock.
+    private Detections suppressNonMaximum(
+            float[] candidateBoxes,
+            float[] candidateConfidences,
+            int candidateCount,
+            MetricsListener metrics
+    ) {
+        StageTimer.count(metrics, Counter.CANDIDATE_BOXES, candidateCount);
+        long start = StageTimer.start(metrics, Stage.NMS);
+        int keptCount = rotatedNms.run(
+                candidateBoxes,
+                candidateConfidences,
+                candidateCount,
+                DETECTION_CONFIDENCE_THRESHOLD,
+                DETECTION_NMS_THRESHOLD,
+                DETECTION_NMS_TOP_K
+        );
+        StageTimer.finish(metrics, Stage.NMS, start);
+        StageTimer.count(metrics, Counter.NMS_SURVIVORS, keptCount);
+
+        int[] indices = rotatedNms.getIndices();
+        float[] boundingBoxes = new float[keptCount * RotatedNms.BOX_SIZE];
+        float[] confidences = new float[keptCount];
+        for (int i = 0; i < keptCount; i++) {
+            confidences[i] = candidateConfidences[indices[i]];
+            System.arraycopy(
+                    candidateBoxes,
+                    indices[i] * RotatedNms.BOX_SIZE,
+                    boundingBoxes,
+                    i * RotatedNms.BOX_SIZE,
+                    RotatedNms.BOX_SIZE
+            );
+        }
+        return new Detections(boundingBoxes, confidences);
+    }
+
+    // Corners of boxes in the RotatedNms layout, scaled by the ratios.
+    private static float[] getCorners(float[] boundingBoxes, float ratioWidth, float ratioHeight) {
+        int boundingBoxesCount = boundingBoxes.length / RotatedNms.BOX_SIZE;
+        float[] corners = new float[boundingBoxesCount * OCRPipelineResult.CORNERS_SIZE];
+        for (int i = 0; i < boundingBoxesCount; i++) {
+            int offset = i * OCRPipelineResult.CORNERS_SIZE;
+            RotatedNms.getCorners(boundingBoxes, i, corners, offset);
+            for (int j = 0; j < 4; j++) {
+                corners[offset + j * 2] *= ratioWidth;
+                corners[offset + j * 2 + 1] *= ratioHeight;
+            }
+        }
+        return corners;
+    }
+
+    // Recognizes the boxes given by their corners in source image coordinates.
+    private OCRPipelineResult recognizeRegions(
+            PixelBuffer image,
+            float[] corners,
+            float[] confidences,
+            boolean batched,
+            long deadlineNanos,
+            MetricsListener metrics
+    ) {
+        int boundingBoxesCount = corners.length / OCRPipelineResult.CORNERS_SIZE;
+        if (boundingBoxesCount == 0) {
+            return new OCRPipelineResult(new float[0], new String[0]);
+        }
+
+        TextRecognizerPool pool = getTextRecognizerPool();
+        boolean bucketed = bucketedRecognition;
+        int[] widths = getCropWidths(pool, corners, bucketed);
+        int[] boxes = new int[boundingBoxesCount];
+        for (int i = 0; i < boundingBoxesCount; i++) {
+            boxes[i] = i;
+        }
+
+        PreparedFrame preparedFrame = new PreparedFrame(image, TextRecognizer.IMAGE_WIDTH, TextRecognizer.IMAGE_HEIGHT);
+        String[] texts = new String[boundingBoxesCount];
+        int cacheHits;
+        try {
+            cacheHits = recognizeBoxes(
+                    pool,
+                    preparedFrame,
+                    corners,
+                    widths,
+                    bucketed,
+                    boxes,
+                    0,
+                    boundingBoxesCount,
+                    batched,
+                    deadlineNanos,
+                    metrics,
+                    texts
+            );
+        } finally {
+            preparedFrame.release();
+        }
+        if (recognitionCache != null) {
+            StageTimer.count(metrics, Counter.RECOGNITION_CACHE_HITS, cacheHits);
+        }
+
+        return new OCRPipelineResult(corners, confidences, texts);
+    }
+
+    // Recognizes the boxes in groups in the given order until the next group is not
+    // expected to finish before the deadline.
+    private OCRPipelineResult recognizeScheduled(
+            PixelBuffer image,
+            Detections detections,
+            int[] order,
+            boolean batched,
+            long deadlineNanos,
+            MetricsListener metrics,
+            ProgressListener listener
+    ) {
+        int boxCount = order.length;
+        if (boxCount == 0) {
+            return new OCRPipelineResult(new float[0], new String[0]);
+        }
+
+        TextRecognizerPool pool = getTextRecognizerPool();
+        boolean bucketed = bucketedRecognition;
+        int[] widths = getCropWidths(pool, detections.boxes, bucketed);
+        int groupSize = pool.getSize();
+
+        PreparedFrame preparedFrame = new PreparedFrame(image, TextRecognizer.IMAGE_WIDTH, TextRecognizer.IMAGE_HEIGHT);
+        String[] texts = new String[boxCount];
+        int recognized = 0;
+        int cacheHits = 0;
+        try {
+            while (recognized < boxCount) {
+                int groupCount = Math.min(groupSize, boxCount - recognized);
+                int groupWidth = getWidestCrop(widths, order, recognized, groupCount);
+                long groupStart = System.nanoTime();
+                if (!recognitionGroupTimes.fits(batched, groupWidth, groupStart, deadlineNanos)) {
+                    break;
+                }
+                // A started group is finished; only interruption stops it.
+                cacheHits += recognizeBoxes(
+                        pool,
+                        preparedFrame,
+                        detections.boxes,
+                        widths,
+                        bucketed,
+                        order,
+                        recognized,
+                        groupCount,
+                        batched,
+                        NO_DEADLINE,
+                        metrics,
+                        texts
+                );
+                recognitionGroupTimes.record(batched, groupWidth, System.nanoTime() - groupStart);
+                recognized += groupCount;
+                if (listener != null) {
+                    listener.onPartialResult(select(detections, order, 0, recognized, texts));
+                }
+            }
+        } finally {
+            preparedFrame.release();
+        }
+        if (recognitionCache != null) {
+            StageTimer.count(metrics, Counter.RECOGNITION_CACHE_HITS, cacheHits);
+        }
+
+        if (recognized < boxCount) {
+            StageTimer.count(metrics, Counter.DEFERRED_BOXES, boxCount - recognized);
+            if (listener != null) {
+                listener.onDeferred(select(detections, order, recognized, boxCount, texts).getCorners());
+            }
+        }
+        return select(detections, order, 0, recognized, texts);
+    }
+
+    private static int getWidestCrop(int[] widths, int[] order, int from, int count) {
+        int widest = 0;
+        for (int i = from; i < from + count; i++) {
+            widest = Math.max(widest, widths[order[i]]);
+        }
+        return widest;
+    }
+
+    // Result of the boxes order[from, to), with their texts if they were recognized.
+    private static OCRPipelineResult select(Detections detections, int[] order, int from, int to, String[] texts) {
+        int count = to - from;
+        float[] corners = new float[count * OCRPipelineResult.CORNERS_SIZE];
+        float[] confidences = new float[count];
+        String[] selectedTexts = new String[count];
+        for (int i = 0; i < count; i++) {
+            int box = order[from + i];
+            System.arraycopy(
+                    detections.boxes,
+                    box * OCRPipelineResult.CORNERS_SIZE,
+                    corners,
+                    i * OCRPipelineResult.CORNERS_SIZE,
+                    OCRPipelineResult.CORNERS_SIZE
+            );
+            confidences[i] = detections.confidences[box];
+            selectedTexts[i] = texts[box] != null ? texts[box] : "";
+        }
+        return new OCRPipelineResult(corners, confidences, selectedTexts);
+    }
+
+    // Crop width of every box: the bucket that holds its aspect ratio, or the fixed width.
+    private static int[] getCropWidths(TextRecognizerPool pool, float[] corners, boolean bucketed) {
+        int[] widths = new int[corners.length / OCRPipelineResult.CORNERS_SIZE];
+        for (int i = 0; i < widths.length; i++) {
+            widths[i] = bucketed
+                    ? pool.getBucketWidth(PreparedFrame.getAspectWidth(corners, i, TextRecognizer.IMAGE_HEIGHT))
+                    : TextRecognizer.IMAGE_WIDTH;
+        }
+        return widths;
+    }
+
+    /**
+     * Recognizes the boxes {@code boxes[from, from + count)} into {@code texts}, one crop
+     * width after another, and returns the number of recognition cache hits.
+     */
+    private int recognizeBoxes(
+            TextRecognizerPool pool,
+            PreparedFrame preparedFrame,
+            float[] corners,
+            int[] widths,
+            boolean bucketed,
+            int[] boxes,
+            int from,
+            int count,
+            boolean batched,
+            long deadlineNanos,
+            MetricsListener metrics,
+            String[] texts
+    ) {
+        int[] bucketWidths = bucketed ? pool.getBucketWidths() : new int[]{TextRecognizer.IMAGE_WIDTH};
+        int[] bucketBoxes = new int[count];
+        int cacheHits = 0;
+        for (int width : bucketWidths) {
+            int bucketCount = 0;
+            for (int j = from; j < from + count; j++) {
+                if (widths[boxes[j]] == width) {
+                    bucketBoxes[bucketCount++] = boxes[j];
+                }
+            }
+            if (bucketCount > 0) {
+                preparedFrame.setTarget(width, bucketed);
+                cacheHits += recognizeBucket(
+                        pool,
+                        preparedFrame,
+                        corners,
+                        bucketBoxes,
+                        bucketCount,
+                        width,
+                        batched,
+                        deadlineNanos,
+                        metrics,
+                        texts
+                );
+            }
+        }
+        return cacheHits;
+    }
+
+    private int recognizeBucket(
+            TextRecognizerPool pool,
+            PreparedFrame preparedFrame,
+            float[] corners,
+            int[] boxes,
+            int count,
+            int width,
+            boolean batched,
+            long deadlineNanos,
+            MetricsListener metrics,
+            String[] texts
+    ) {
+        RecognitionCache recognitionCache = this.recognitionCache;
+        byte[] lookupTable = pool.getInputLookupTable();
+        int cropSizeBytes = pool.getCropSizeBytes(width);
+        ByteBuffer recognitionInput = acquireCropBuffer(count, cropSizeBytes);
+        // Boxes whose crops were not found in the recognition cache, in crop order.
+        int[] pendingBoxes = new int[count];
+        long[] pendingHashes = new long[count];
+        int pendingCount = 0;
+
+        try {
+            for (int j = 0; j < count; j++) {
+                int i = boxes[j];
+                checkCancelled(deadlineNanos);
+
+                long start = StageTimer.start(metrics, Stage.WARPING);
+                Point[] srcVertices = preparedFrame.getVertices(corners, i);
+                if (lookupTable != null) {
+                    preparedFrame.warp(srcVertices, recognitionInput, lookupTable);
+                } else {
+                    preparedFrame.warp(srcVertices, recognitionInput, TextRecognizer.IMAGE_MEAN, TextRecognizer.IMAGE_STD);
+                }
+                StageTimer.finish(metrics, Stage.WARPING, start);
+
+                if (recognitionCache != null) {
+                    long hash = RecognitionCache.hash(recognitionInput, pendingCount * cropSizeBytes, cropSizeBytes);
+                    String cachedText = recognitionCache.get(hash);
+                    if (cachedText != null) {
+                        // The next crop overwrites this one.
+                        texts[i] = cachedText;
+                        recognitionInput.position(pendingCount * cropSizeBytes);
+                        continue;
+                    }
+                    pendingHashes[pendingCount] = hash;
+                }
+                pendingBoxes[pendingCount++] = i;
+            }
+
+            if (pendingCount > 0) {
+                checkCancelled(deadlineNanos);
+                List<String> recognizedTexts = pool.recognize(recognitionInput, pendingCount, width, batched);
+                for (int i = 0; i < pendingCount; i++) {
+                    texts[pendingBoxes[i]] = recognizedTexts.get(i);
+                    if (recognitionCache != null) {
+                        recognitionCache.put(pendingHashes[i], recognizedTexts.get(i));
+                    }
+                }
+            }
+        } finally {
+            cropBuffers.offer(recognitionInput);
+        }
+        return count - pendingCount;
+    }
+
+    // Crop buffers are pooled so concurrent calls never share one and steady-state calls do not allocate.
+    private ByteBuffer acquireCropBuffer(int count, int cropSizeBytes) {
+        ByteBuffer cropBuffer = cropBuffers.poll();
+        if (cropBuffer == null || cropBuffer.capacity() < count * cropSizeBytes) {
+            cropBuffer = ByteBuffer.allocateDirect(count * cropSizeBytes);
+            cropBuffer.order(ByteOrder.nativeOrder());
+        }
+        cropBuffer.clear();
+        return cropBuffer;
+    }
+
+    static int getDetectionImageWidth(DetectionModel detectionModel) {
+        return detectionModel == DetectionModel.MOBILE_NET
+                ? MOBILE_NET_DETECTION_IMAGE_WIDTH
+                : EAST_DETECTION_IMAGE_WIDTH;
+    }
+
+    static int getDetectionImageHeight(DetectionModel detectionModel) {
+        return detectionModel == DetectionModel.MOBILE_NET
+                ? MOBILE_NET_DETECTION_IMAGE_HEIGHT
+                : EAST_DETECTION_IMAGE_HEIGHT;
+    }
+
+    private static void checkCancelled(long deadlineNanos) {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("OCR request was cancelled");
+        }
+        if (deadlineNanos != NO_DEADLINE && System.nanoTime() > deadlineNanos) {
+            throw new CancellationException("OCR request exceeded its deadline");
+        }
+    }
+
+    // Called with detectionLock held.
+    private Interpreter getDetectionInterpreter(DetectionModel detectionModel) {
+        if (detectionModel == DetectionModel.MOBILE_NET) {
+            if (mobileNetDetectionInterpreter == null) {
+                long start = StageTimer.start(metrics, Stage.MODEL_LOADING);
+                Interpreter interpreter = getInterpreter(
+                        loadModel(MOBILE_NET_DETECTION_MODEL),
+                        options.getDetectionThreads()
+                );
+                mobileNetDetectionPreprocessor = ImagePreprocessor.forDetection(
+                        MOBILE_NET_DETECTION_IMAGE_WIDTH,
+                        MOBILE_NET_DETECTION_IMAGE_HEIGHT,
+                        MOBILE_NET_DETECTION_IMAGE_MEANS,
+                        MOBILE_NET_DETECTION_IMAGE_STDS,
+                        Quantization.of(interpreter.getInputTensor(0))
+                );
+                mobileNetDetectionInterpreter = interpreter;
+                StageTimer.finish(metrics, Stage.MODEL_LOADING, start);
+            }
+            return mobileNetDetectionInterpreter;
+        }
+
+        if (eastDetectionInterpreter == null) {
+            long start = StageTimer.start(metrics, Stage.MODEL_LOADING);
+            Interpreter interpreter = getInterpreter(
+                    loadModel(options.isQuantizedModels() ? QUANTIZED_EAST_DETECTION_MODEL : EAST_DETECTION_MODEL),
+                    options.getDetectionThreads()
+            );
+            eastDetectionPreprocessor = ImagePreprocessor.forDetection(
+                    EAST_DETECTION_IMAGE_WIDTH,
+                    EAST_DETECTION_IMAGE_HEIGHT,
+                    EAST_DETECTION_IMAGE_MEANS,
+                    EAST_DETECTION_IMAGE_STDS,
+                    Quantization.of(interpreter.getInputTensor(0))
+            );
+            eastDecoder = new EastDecoder(
+                    Quantization.of(interpreter.getOutputTensor(0)),
+                    Quantization.of(interpreter.getOutputTensor(1))
+            );
+            eastDetectionInterpreter = interpreter;
+            StageTimer.finish(metrics, Stage.MODEL_LOADING, start);
+        }
+        return eastDetectionInterpreter;
+    }
+
+    private TextRecognizerPool getTextRecognizerPool() {
+        TextRecognizerPool pool = textRecognizerPool;
+        if (pool != null) {
+            return pool;
+        }
+
+        synchronized (recognitionLock) {
+            if (textRecognizerPool == null) {
+                long start = StageTimer.start(metrics, Stage.MODEL_LOADING);
+                // All recognizers share one mapping of the model and split the threads between them.
+                ByteBuffer recognitionModel = loadModel(
+                        options.isQuantizedModels() ? QUANTIZED_TXT_RECOGNITION_MODEL : TXT_RECOGNITION_MODEL);
+                int poolSize = options.getRecognitionPoolSize();
+                int recognitionThreads = options.getThreadsPerRecognizer();
+                List<Interpreter> interpreters = new ArrayList<>(poolSize);
+                List<TextRecognizer> textRecognizers = new ArrayList<>(poolSize);
+                for (int i = 0; i < poolSize; i++) {
+                    Interpreter recognitionInterpreter = getInterpreter(recognitionModel, recognitionThreads);
+                    interpreters.add(recognitionInterpreter);
+                    textRecognizers.add(new TextRecognizer(recognitionInterpreter));
+                }
+
+                pool = new TextRecognizerPool(textRecognizers);
+                pool.setMetricsListener(metrics);
+                recognitionInterpreters = interpreters;
+                textRecognizerPool = pool;
+                StageTimer.finish(metrics, Stage.MODEL_LOADING, start);
+            }
+            return textRecognizerPool;
+        }
+    }
+
+    private ByteBuffer loadModel(String modelName) {
+        try {
+            return modelSource.load(modelName);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load model " + modelName, e);
+        }
+    }
+
+    private Interpreter getInterpreter(ByteBuffer model, int numThreads) {
+        RuntimeOptions options = this.options;
+        if (options.getDelegateFactory() != null) {
+            Delegate delegate = options.getDelegateFactory().get();
+            try {
+                Interpreter interpreter = new Interpreter(model, getTfliteOptions(options, numThreads).addDelegate(delegate));
+                synchronized (delegates) {
+                    delegates.put(interpreter, delegate);
+                }
+                return interpreter;
+            } catch (RuntimeException e) {
+                // The delegate cannot run this model on this device; fall back to the CPU.
+                closeDelegate(delegate);
+                StageTimer.count(metrics, Counter.DELEGATE_FALLBACKS, 1);
+            }
+        }
+
+        return new Interpreter(model, getTfliteOptions(options, numThreads));
+    }
+
+    private static Interpreter.Options getTfliteOptions(RuntimeOptions options, int numThreads) {
+        return new Interpreter.Options()
+                .setNumThreads(numThreads)
+                .setUseXNNPACK(options.isUseXnnpack())
+                .setAllowFp16PrecisionForFp32(options.isAllowFp16());
+    }
+
+    // Called with the model write lock held.
+    private void releaseDetector(DetectionModel detectionModel) {
+        synchronized (detectionLock) {
+            if (detectionModel == DetectionModel.MOBILE_NET && mobileNetDetectionInterpreter != null) {
+                closeInterpreter(mobileNetDetectionInterpreter);
+                mobileNetDetectionInterpreter = null;
+                mobileNetDetectionPreprocessor = null;
+            } else if (detectionModel == DetectionModel.EAST && eastDetectionInterpreter != null) {
+                closeInterpreter(eastDetectionInterpreter);
+                eastDetectionInterpreter = null;
+                eastDetectionPreprocessor = null;
+                eastDecoder = null;
+            }
+        }
+    }
+
+    private void closeInterpreter(Interpreter interpreter) {
+        interpreter.close();
+        Delegate delegate;
+        synchronized (delegates) {
+            delegate = delegates.remove(interpreter);
+        }
+        closeDelegate(delegate);
+    }
+
+    private static void closeDelegate(Delegate delegate) {
+        // GpuDelegate is Closeable, NnApiDelegate only AutoCloseable.
+        if (delegate instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) delegate).close();
+            } catch (Exception e) {
+                // Closing a delegate only frees native memory; nothing to recover.
+            }
+        }
+    }
+
+    /**
+     * Stops the recognition workers and closes every interpreter and delegate, waiting
+     * for calls in progress to finish.
+     */
+    @Override
+    public void close() {
+        releaseAll();
+    }
+
+    // Boxes kept by the detector, in the RotatedNms layout or as corners, and their scores.
+    private static final class Detections {
+        final float[] boxes;
+        final float[] confidences;
+
+        Detections(float[] boxes, float[] confidences) {
+            this.boxes = boxes;
+            this.confidences = confidences;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Detected text boxes of one image, the text recognized in each of them and its
+ * confidence, in detection order. Boxes are quadrilaterals in source image
+ * coordinates: four {@code x, y} corners per box in the order returned by
+ * {@link RotatedNms#getCorners}. Nothing is drawn; overlays are up to the caller.
+ */
+public class OCRPipelineResult {
+    public static final int CORNERS_SIZE = 8;
+
+    private final float[] corners;
+    private final float[] confidences;
+    private final String[] boxTexts;
+    private final List<String> texts;
+
+    /**
+     * Result of boxes that were not scored by a detector, each with confidence 1.
+     */
+    public OCRPipelineResult(float[] corners, String[] boxTexts) {
+        this(corners, null, boxTexts);
+    }
+
+    /**
+     * @param confidences detector score of every box, or {@code null} for 1
+     */
+    public OCRPipelineResult(float[] corners, float[] confidences, String[] boxTexts) {
+        this.corners = corners.clone();
+        this.boxTexts = boxTexts.clone();
+        if (confidences != null) {
+            this.confidences = confidences.clone();
+        } else {
+            this.confidences = new float[boxTexts.length];
+            Arrays.fill(this.confidences, 1f);
+        }
+
+        List<String> texts = new ArrayList<>(boxTexts.length);
+        for (String boxText : boxTexts) {
+            if (!boxText.isEmpty()) {
+                texts.add(boxText);
+            }
+        }
+        this.texts = Collections.unmodifiableList(texts);
+    }
+
+    public int getBoxCount() {
+        return boxTexts.length;
+    }
+
+    /**
+     * Returns a copy of the corners of all boxes, {@value #CORNERS_SIZE} floats per box.
+     */
+    public float[] getCorners() {
+        return corners.clone();
+    }
+
+    public float getCorner(int box, int index) {
+        return corners[box * CORNERS_SIZE + index];
+    }
+
+    /**
+     * Confidence of the text of {@code box}, from 0 to 1: the detector's score of the
+     * box, or 0 when no text was recognized in it. The recognizer outputs characters
+     * without probabilities, so an empty box is its only low confidence signal.
+     */
+    public float getConfidence(int box) {
+        return boxTexts[box].isEmpty() ? 0f : confidences[box];
+    }
+
+    /**
+     * Returns a copy of the detector scores of all boxes, whether or not text was
+     * recognized in them.
+     */
+    public float[] getDetectionConfidences() {
+        return confidences.clone();
+    }
+
+    /**
+     * Text recognized in {@code box}, empty when nothing was recognized.
+     */
+    public String getText(int box) {
+        return boxTexts[box];
+    }
+
+    /**
+     * Non-empty recognized texts in detection order.
+     */
+    public List<String> getTexts() {
+        return texts;
+    }
+
+    @Override
+    public String toString() {
+        return "OCRPipelineResult{boxes=" + getBoxCount() + ", texts=" + Arrays.toString(boxTexts) + "}";
+    }
+}
@@ -0,0 +1,114 @@
+package sk.stigo.tensorflowliteocr.core;
+
+/**
+ * How the stored pixels of an image are turned to show it upright, as in the EXIF
+ * orientation tag, in the order of its values 1 to 8. Rotations are clockwise.
+ *
+ * The image is described in upright coordinates; every orientation maps them to
+ * stored coordinates by optionally swapping the axes and then mirroring them, which
+ * is all {@link OrientedPixelBuffer} and {@link PreparedFrame} need to work on the
+ * stored pixels without rotating them.
+ */
+public enum Orientation {
+    NORMAL(false, false, false),
+    FLIP_HORIZONTAL(false, true, false),
+    ROTATE_180(false, true, true),
+    FLIP_VERTICAL(false, false, true),
+    TRANSPOSE(true, false, false),
+    ROTATE_90(true, false, true),
+    TRANSVERSE(true, true, true),
+    ROTATE_270(true, true, false);
+
+    private final boolean transposed;
+    private final boolean flipX;
+    private final boolean flipY;
+
+    Orientation(boolean transposed, boolean flipX, boolean flipY) {
+        this.transposed = transposed;
+        this.flipX = flipX;
+        this.flipY = flipY;
+    }
+
+    /**
+     * Orientation of an EXIF orientation tag value, {@link #NORMAL} for unknown values.
+     */
+    public static Orientation fromExif(int exifOrientation) {
+        Orientation[] orientations = values();
+        return exifOrientation >= 1 && exifOrientation <= orientations.length
+                ? orientations[exifOrientation - 1]
+                : NORMAL;
+    }
+
+    /**
+     * Whether the upright image is as wide as the stored one is high.
+     */
+    public boolean isTransposed() {
+        return transposed;
+    }
+
+    /**
+     * Whether the stored x axis runs against the upright axis it comes from.
+     */
+    public boolean isFlippedX() {
+        return flipX;
+    }
+
+    /**
+     * Whether the stored y axis runs against the upright axis it comes from.
+     */
+    public boolean isFlippedY() {
+        return flipY;
+    }
+
+    /**
+     * Stored x of the upright point {@code x}, {@code y} of an image stored
+     * {@code storedWidth} pixels wide. Points are continuous, 0 being the left edge.
+     */
+    public float getStoredX(float x, float y, int storedWidth) {
+        float u = transposed ? y : x;
+        return flipX ? storedWidth - u : u;
+    }
+
+    /**
+     * Stored y of the upright point {@code x}, {@code y} of an image stored
+     * {@code storedHeight} pixels high.
+     */
+    public float getStoredY(float x, float y, int storedHeight) {
+        float v = transposed ? x : y;
+        return flipY ? storedHeight - v : v;
+    }
+
+    /**
+     * Maps the upright region {@code x}, {@code y}, {@code width} x {@code height} of an
+     * image stored {@code storedWidth} x {@code storedHeight} to its stored x, y, width
+     * and height in {@code out}.
+     */
+    public void getStoredRegion(int x, int y, int width, int height, int storedWidth, int storedHeight, int[] out) {
+        int u = transposed ? y : x;
+        int v = transposed ? x : y;
+        int uSize = transposed ? height : width;
+        int vSize = transposed ? width : height;
+        out[0] = flipX ? storedWidth - u - uSize : u;
+        out[1] = flipY ? storedHeight - v - vSize : v;
+        out[2] = uSize;
+        out[3] = vSize;
+    }
+
+    /**
+     * Writes the stored pixels {@code stored}, {@code storedWidth} x {@code storedHeight}
+     * row by row, upright into {@code out}.
+     */
+    public void reorient(int[] stored, int storedWidth, int storedHeight, int[] out) {
+        int width = transposed ? storedHeight : storedWidth;
+        int height = transposed ? storedWidth : storedHeight;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int u = transposed ? y : x;
+                int v = transposed ? x : y;
+                int storedX = flipX ? storedWidth - 1 - u : u;
+                int storedY = flipY ? storedHeight - 1 - v : v;
+                out[y * width + x] = stored[storedY * storedWidth + storedX];
+            }
+        }
+    }
+}
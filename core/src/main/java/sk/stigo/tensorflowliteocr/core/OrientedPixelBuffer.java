@@ -0,0 +1,86 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import org.opencv.core.Mat;
+
+/**
+ * {@link PixelBuffer} showing another buffer upright in an {@link Orientation}, such
+ * as a camera photo stored sideways with an EXIF orientation. Reads resize the stored
+ * region and only then reorient the resized pixels, and {@link #toRgbaMat()} returns
+ * the stored pixels, whose orientation {@link PreparedFrame} folds into the
+ * perspective transforms of the text crops, so the full image is never rotated.
+ * Instances can be pointed at a new source with {@link #set} and reused; they are
+ * not thread-safe.
+ */
+public class OrientedPixelBuffer implements PixelBuffer {
+    private final int[] storedRegion;
+    private PixelBuffer source;
+    private Orientation orientation;
+    private int[] storedPixels;
+
+    public OrientedPixelBuffer() {
+        this.storedRegion = new int[4];
+    }
+
+    public OrientedPixelBuffer(PixelBuffer source, Orientation orientation) {
+        this();
+        set(source, orientation);
+    }
+
+    public void set(PixelBuffer source, Orientation orientation) {
+        this.source = source;
+        this.orientation = orientation;
+    }
+
+    public PixelBuffer getSource() {
+        return source;
+    }
+
+    @Override
+    public Orientation getOrientation() {
+        return orientation;
+    }
+
+    @Override
+    public int getWidth() {
+        return orientation.isTransposed() ? source.getHeight() : source.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return orientation.isTransposed() ? source.getWidth() : source.getHeight();
+    }
+
+    @Override
+    public void readPixels(int[] out, int width, int height) {
+        readPixels(out, 0, 0, getWidth(), getHeight(), width, height);
+    }
+
+    @Override
+    public void readPixels(int[] out, int regionX, int regionY, int regionWidth, int regionHeight, int width, int height) {
+        if (orientation == Orientation.NORMAL) {
+            source.readPixels(out, regionX, regionY, regionWidth, regionHeight, width, height);
+            return;
+        }
+        orientation.getStoredRegion(
+                regionX, regionY, regionWidth, regionHeight,
+                source.getWidth(), source.getHeight(),
+                storedRegion
+        );
+        int storedWidth = orientation.isTransposed() ? height : width;
+        int storedHeight = orientation.isTransposed() ? width : height;
+        if (storedPixels == null || storedPixels.length < width * height) {
+            storedPixels = new int[width * height];
+        }
+        source.readPixels(
+                storedPixels,
+                storedRegion[0], storedRegion[1], storedRegion[2], storedRegion[3],
+                storedWidth, storedHeight
+        );
+        orientation.reorient(storedPixels, storedWidth, storedHeight, out);
+    }
+
+    @Override
+    public Mat toRgbaMat() {
+        return source.toRgbaMat();
+    }
+}
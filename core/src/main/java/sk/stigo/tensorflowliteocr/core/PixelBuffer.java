@@ -0,0 +1,41 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import org.opencv.core.Mat;
+
+/**
+ * Source image handed to {@link OCRPipeline}. Implementations adapt whatever the
+ * platform decodes images into, such as an Android Bitmap or a desktop ARGB array,
+ * so the pipeline itself never depends on a UI toolkit.
+ */
+public interface PixelBuffer {
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * Writes the whole image resized to {@code width} x {@code height} with bilinear
+     * filtering into {@code out} as packed ARGB, row by row.
+     */
+    void readPixels(int[] out, int width, int height);
+
+    /**
+     * Writes the region {@code regionWidth} x {@code regionHeight} at {@code regionX},
+     * {@code regionY} resized to {@code width} x {@code height} with bilinear filtering
+     * into {@code out} as packed ARGB, row by row. The region lies within the image.
+     */
+    void readPixels(int[] out, int regionX, int regionY, int regionWidth, int regionHeight, int width, int height);
+
+    /**
+     * Returns the image at full size as an 8-bit RGBA Mat, stored in
+     * {@link #getOrientation()}. The caller releases it.
+     */
+    Mat toRgbaMat();
+
+    /**
+     * Orientation of the pixels of {@link #toRgbaMat()}; the other methods see the
+     * image upright.
+     */
+    default Orientation getOrientation() {
+        return Orientation.NORMAL;
+    }
+}
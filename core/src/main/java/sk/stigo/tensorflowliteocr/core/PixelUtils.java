@@ -0,0 +1,165 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pixel conversions of the detection preprocessing. Works on plain ARGB arrays so it
+ * runs the same on Android and on the desktop JVM.
+ */
+public class PixelUtils {
+    private static final float GRAYSCALE_RED = 0.299f;
+    private static final float GRAYSCALE_GREEN = 0.587f;
+    private static final float GRAYSCALE_BLUE = 0.114f;
+
+    /**
+     * Resizes ARGB pixels with bilinear sampling, optionally converts them to grayscale
+     * and writes {@code (value - mean) / std} as floats to {@code out}, all in one pass.
+     * The output is written in HWC order starting at the current position of
+     * {@code out}, which is advanced past the written values.
+     */
+    public static void argbToFloatBuffer(
+            int[] pixels,
+            int srcWidth,
+            int srcHeight,
+            ByteBuffer out,
+            int width,
+            int height,
+            float[] means,
+            float[] stds,
+            boolean grayscale
+    ) {
+        float scaleX = (float) srcWidth / width;
+        float scaleY = (float) srcHeight / height;
+        float mean0 = means[0];
+        float mean1 = grayscale ? 0f : means[1];
+        float mean2 = grayscale ? 0f : means[2];
+        float invStd0 = 1f / stds[0];
+        float invStd1 = grayscale ? 0f : 1f / stds[1];
+        float invStd2 = grayscale ? 0f : 1f / stds[2];
+
+        for (int y = 0; y < height; y++) {
+            float srcY = Math.max(0f, (y + 0.5f) * scaleY - 0.5f);
+            int y0 = Math.min((int) srcY, srcHeight - 1);
+            int y1 = Math.min(y0 + 1, srcHeight - 1);
+            float fy = srcY - y0;
+            int row0 = y0 * srcWidth;
+            int row1 = y1 * srcWidth;
+
+            for (int x = 0; x < width; x++) {
+                float srcX = Math.max(0f, (x + 0.5f) * scaleX - 0.5f);
+                int x0 = Math.min((int) srcX, srcWidth - 1);
+                int x1 = Math.min(x0 + 1, srcWidth - 1);
+                float fx = srcX - x0;
+
+                int p00 = pixels[row0 + x0];
+                int p01 = pixels[row0 + x1];
+                int p10 = pixels[row1 + x0];
+                int p11 = pixels[row1 + x1];
+                float w00 = (1f - fx) * (1f - fy);
+                float w01 = fx * (1f - fy);
+                float w10 = (1f - fx) * fy;
+                float w11 = fx * fy;
+
+                float r = ((p00 >> 16) & 0xff) * w00 + ((p01 >> 16) & 0xff) * w01
+                        + ((p10 >> 16) & 0xff) * w10 + ((p11 >> 16) & 0xff) * w11;
+                float g = ((p00 >> 8) & 0xff) * w00 + ((p01 >> 8) & 0xff) * w01
+                        + ((p10 >> 8) & 0xff) * w10 + ((p11 >> 8) & 0xff) * w11;
+                float b = (p00 & 0xff) * w00 + (p01 & 0xff) * w01
+                        + (p10 & 0xff) * w10 + (p11 & 0xff) * w11;
+
+                if (grayscale) {
+                    float gray = GRAYSCALE_RED * r + GRAYSCALE_GREEN * g + GRAYSCALE_BLUE * b;
+                    out.putFloat((gray - mean0) * invStd0);
+                } else {
+                    out.putFloat((r - mean0) * invStd0);
+                    out.putFloat((g - mean1) * invStd1);
+                    out.putFloat((b - mean2) * invStd2);
+                }
+            }
+        }
+    }
+
+    /**
+     * Quantized counterpart of {@link #argbToFloatBuffer}: writes one byte per channel
+     * looked up in {@code lookupTables}, one 256-entry table per output channel as built
+     * by {@link Quantization#getLookupTable}. Without resizing no float is computed.
+     */
+    public static void argbToQuantizedBuffer(
+            int[] pixels,
+            int srcWidth,
+            int srcHeight,
+            ByteBuffer out,
+            int width,
+            int height,
+            byte[][] lookupTables,
+            boolean grayscale
+    ) {
+        byte[] table0 = lookupTables[0];
+        byte[] table1 = grayscale ? null : lookupTables[1];
+        byte[] table2 = grayscale ? null : lookupTables[2];
+
+        if (srcWidth == width && srcHeight == height) {
+            for (int i = 0; i < width * height; i++) {
+                int pixel = pixels[i];
+                int r = (pixel >> 16) & 0xff;
+                int g = (pixel >> 8) & 0xff;
+                int b = pixel & 0xff;
+                if (grayscale) {
+                    out.put(table0[grayscale(r, g, b)]);
+                } else {
+                    out.put(table0[r]);
+                    out.put(table1[g]);
+                    out.put(table2[b]);
+                }
+            }
+            return;
+        }
+
+        float scaleX = (float) srcWidth / width;
+        float scaleY = (float) srcHeight / height;
+        for (int y = 0; y < height; y++) {
+            float srcY = Math.max(0f, (y + 0.5f) * scaleY - 0.5f);
+            int y0 = Math.min((int) srcY, srcHeight - 1);
+            int y1 = Math.min(y0 + 1, srcHeight - 1);
+            float fy = srcY - y0;
+            int row0 = y0 * srcWidth;
+            int row1 = y1 * srcWidth;
+
+            for (int x = 0; x < width; x++) {
+                float srcX = Math.max(0f, (x + 0.5f) * scaleX - 0.5f);
+                int x0 = Math.min((int) srcX, srcWidth - 1);
+                int x1 = Math.min(x0 + 1, srcWidth - 1);
+                float fx = srcX - x0;
+
+                int p00 = pixels[row0 + x0];
+                int p01 = pixels[row0 + x1];
+                int p10 = pixels[row1 + x0];
+                int p11 = pixels[row1 + x1];
+                float w00 = (1f - fx) * (1f - fy);
+                float w01 = fx * (1f - fy);
+                float w10 = (1f - fx) * fy;
+                float w11 = fx * fy;
+
+                int r = Math.round(((p00 >> 16) & 0xff) * w00 + ((p01 >> 16) & 0xff) * w01
+                        + ((p10 >> 16) & 0xff) * w10 + ((p11 >> 16) & 0xff) * w11);
+                int g = Math.round(((p00 >> 8) & 0xff) * w00 + ((p01 >> 8) & 0xff) * w01
+                        + ((p10 >> 8) & 0xff) * w10 + ((p11 >> 8) & 0xff) * w11);
+                int b = Math.round((p00 & 0xff) * w00 + (p01 & 0xff) * w01
+                        + (p10 & 0xff) * w10 + (p11 & 0xff) * w11);
+
+                if (grayscale) {
+                    out.put(table0[grayscale(r, g, b)]);
+                } else {
+                    out.put(table0[r]);
+                    out.put(table1[g]);
+                    out.put(table2[b]);
+                }
+            }
+        }
+    }
+
+    // Integer version of the grayscale weights, rounded to the nearest value.
+    static int grayscale(int r, int g, int b) {
+        return (299 * r + 587 * g + 114 * b + 500) / 1000;
+    }
+}
@@ -0,0 +1,368 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.opencv.imgproc.Imgproc.cvtColor;
+import static org.opencv.imgproc.Imgproc.getPerspectiveTransform;
+import static org.opencv.imgproc.Imgproc.warpPerspective;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Source image converted to a grayscale Mat once per run. Every detected box is warped
+ * from a sub-region (ROI) of this shared Mat, so the full image is copied only once no
+ * matter how many boxes the detector returns. Crops are warped straight into the
+ * recognizer input buffer through a Mat backed by it: FLOAT32 crops from the ROI
+ * normalized to floats, and quantized crops as 8-bit gray when the lookup table maps
+ * every gray value to itself. Only other lookup tables need an 8-bit crop to look
+ * the input up from. No crop is copied through the Java heap.
+ *
+ * Vertices are given upright; for an image stored in another {@link Orientation} they
+ * are mapped to the stored pixels, so each crop comes out upright without rotating
+ * the image.
+ *
+ * Boxes are stretched to the target size, or with {@link #setTarget} scaled to fit
+ * it with their aspect ratio kept and the rest of the target black, the way keras-ocr
+ * prepares its crops.
+ *
+ * Call {@link #release()} when the run is finished to free the native Mats.
+ */
+public class PreparedFrame {
+    // Extra pixels around the box so bilinear sampling at the ROI edge still sees real pixels.
+    private static final int ROI_PADDING = 2;
+
+    private final Mat srcImageMat;
+    private final Orientation orientation;
+    private final float ratioWidth;
+    private final float ratioHeight;
+    private final int targetHeight;
+    private final Size targetSize;
+    private final Size cropSize;
+    private boolean keepAspectRatio;
+    private final float[] boundingBoxPoints;
+    private final Point[] srcVertices;
+    private final Point[] storedVertices;
+    private final Point[] roiVertices;
+    private final MatOfPoint2f srcVerticesMat;
+    private final MatOfPoint2f targetVerticesMat;
+    private final Point[] targetVertices;
+    private final Mat recognitionMat;
+    private final Mat roiFloatMat;
+    private Mat lookupTableMat;
+    private byte[] lookupTable;
+    private boolean identityLookupTable;
+
+    /**
+     * Frame for boxes given by their corners in source image coordinates, see
+     * {@link #getVertices}.
+     */
+    public PreparedFrame(PixelBuffer image, int targetWidth, int targetHeight) {
+        this(image, 1f, 1f, targetWidth, targetHeight);
+    }
+
+    public PreparedFrame(PixelBuffer image, float ratioWidth, float ratioHeight, int targetWidth, int targetHeight) {
+        Mat rgbaMat = image.toRgbaMat();
+        try {
+            this.srcImageMat = new Mat();
+            cvtColor(rgbaMat, srcImageMat, Imgproc.COLOR_RGBA2GRAY);
+        } finally {
+            rgbaMat.release();
+        }
+        this.orientation = image.getOrientation();
+
+        this.ratioWidth = ratioWidth;
+        this.ratioHeight = ratioHeight;
+        this.targetHeight = targetHeight;
+        this.targetSize = new Size(targetWidth, targetHeight);
+        this.cropSize = new Size();
+        this.boundingBoxPoints = new float[8];
+        this.srcVertices = new Point[]{new Point(), new Point(), new Point(), new Point()};
+        this.storedVertices = new Point[]{new Point(), new Point(), new Point(), new Point()};
+        this.roiVertices = new Point[]{new Point(), new Point(), new Point(), new Point()};
+        this.srcVerticesMat = new MatOfPoint2f();
+        this.targetVerticesMat = new MatOfPoint2f();
+        this.targetVertices = new Point[]{new Point(), new Point(), new Point(), new Point()};
+        this.recognitionMat = new Mat();
+        this.roiFloatMat = new Mat();
+        setTarget(targetWidth, false);
+    }
+
+    /**
+     * Warps the following boxes to {@code targetWidth} pixels wide, keeping their aspect
+     * ratio or not.
+     */
+    public void setTarget(int targetWidth, boolean keepAspectRatio) {
+        this.targetSize.width = targetWidth;
+        this.keepAspectRatio = keepAspectRatio;
+        if (!keepAspectRatio) {
+            setTargetVertices(targetWidth, targetHeight);
+        }
+    }
+
+    /**
+     * Width of {@code box}, read from corners like {@link #getVertices}, when scaled to
+     * {@code height} with its aspect ratio kept.
+     */
+    static int getAspectWidth(float[] corners, int box, int height) {
+        int offset = box * OCRPipelineResult.CORNERS_SIZE;
+        float boxWidth = getBoxWidth(corners, offset);
+        float boxHeight = getBoxHeight(corners, offset);
+        return boxHeight > 0f ? (int) Math.ceil(boxWidth * height / boxHeight) : height;
+    }
+
+    // Corners run bottom left, top left, top right, bottom right; see the target vertices.
+    private static float getBoxWidth(float[] corners, int offset) {
+        return (distance(corners, offset, 1, 2) + distance(corners, offset, 0, 3)) / 2f;
+    }
+
+    private static float getBoxHeight(float[] corners, int offset) {
+        return (distance(corners, offset, 0, 1) + distance(corners, offset, 3, 2)) / 2f;
+    }
+
+    private static float distance(float[] corners, int offset, int from, int to) {
+        float dx = corners[offset + to * 2] - corners[offset + from * 2];
+        float dy = corners[offset + to * 2 + 1] - corners[offset + from * 2 + 1];
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private void setTargetVertices(int width, int height) {
+        targetVertices[0].x = 0;
+        targetVertices[0].y = height - 1;
+        targetVertices[1].x = 0;
+        targetVertices[1].y = 0;
+        targetVertices[2].x = width - 1;
+        targetVertices[2].y = 0;
+        targetVertices[3].x = width - 1;
+        targetVertices[3].y = height - 1;
+        targetVerticesMat.fromArray(targetVertices);
+    }
+
+    /**
+     * Returns the four corners of the detected box scaled to the source image. Boxes
+     * are read in the {@link RotatedNms} layout. The returned array is reused by the
+     * next call.
+     */
+    public Point[] getSourceVertices(float[] boundingBoxes, int boundingBox) {
+        RotatedNms.getCorners(boundingBoxes, boundingBox, boundingBoxPoints, 0);
+
+        for (int j = 0; j < 4; j++) {
+            srcVertices[j].x = boundingBoxPoints[j * 2] * ratioWidth;
+            srcVertices[j].y = boundingBoxPoints[j * 2 + 1] * ratioHeight;
+        }
+        return srcVertices;
+    }
+
+    /**
+     * Returns the four corners of {@code box} read from {@code corners}, which holds
+     * {@value OCRPipelineResult#CORNERS_SIZE} floats per box like
+     * {@link OCRPipelineResult#getCorners()}, scaled to the source image. The returned
+     * array is reused by the next call.
+     */
+    public Point[] getVertices(float[] corners, int box) {
+        int offset = box * OCRPipelineResult.CORNERS_SIZE;
+        for (int j = 0; j < 4; j++) {
+            srcVertices[j].x = corners[offset + j * 2] * ratioWidth;
+            srcVertices[j].y = corners[offset + j * 2 + 1] * ratioHeight;
+        }
+        return srcVertices;
+    }
+
+    /**
+     * Warps the quadrilateral given by {@code vertices} to the target size given in the
+     * constructor and writes it to {@code out}, a direct buffer, at its current position
+     * as grayscale floats normalized to {@code (gray - mean) / std}.
+     */
+    public void warp(Point[] vertices, ByteBuffer out, float mean, float std) {
+        int size = getTargetPixelCount() * 4;
+        Mat inputMat = new Mat(
+                targetHeight,
+                (int) targetSize.width,
+                CvType.CV_32FC1,
+                TextRecognizer.view(out, out.position(), size)
+        );
+        try {
+            warp(vertices, inputMat, 1.0 / std, -mean / std);
+        } finally {
+            inputMat.release();
+        }
+        out.position(out.position() + size);
+    }
+
+    /**
+     * Like {@link #warp(Point[], ByteBuffer, float, float)} for a quantized recognizer:
+     * writes one byte per pixel, looked up in {@code lookupTable} by its gray value.
+     */
+    public void warp(Point[] vertices, ByteBuffer out, byte[] lookupTable) {
+        int size = getTargetPixelCount();
+        Mat inputMat = new Mat(
+                targetHeight,
+                (int) targetSize.width,
+                CvType.CV_8UC1,
+                TextRecognizer.view(out, out.position(), size)
+        );
+        try {
+            if (isIdentity(lookupTable)) {
+                warp(vertices, inputMat, 1.0, 0.0);
+            } else {
+                recognitionMat.create(targetHeight, (int) targetSize.width, CvType.CV_8UC1);
+                warp(vertices, recognitionMat, 1.0, 0.0);
+                Core.LUT(recognitionMat, lookupTableMat, inputMat);
+            }
+        } finally {
+            inputMat.release();
+        }
+        out.position(out.position() + size);
+    }
+
+    private int getTargetPixelCount() {
+        return (int) targetSize.width * targetHeight;
+    }
+
+    // The table is the same for every crop of a recognizer, so it is checked and, unless
+    // it is the identity, converted to lookupTableMat once.
+    private boolean isIdentity(byte[] lookupTable) {
+        if (this.lookupTable != lookupTable) {
+            identityLookupTable = true;
+            for (int gray = 0; gray < 256 && identityLookupTable; gray++) {
+                identityLookupTable = lookupTable[gray] == (byte) gray;
+            }
+            if (!identityLookupTable) {
+                if (lookupTableMat == null) {
+                    lookupTableMat = new Mat(1, 256, CvType.CV_8UC1);
+                }
+                lookupTableMat.put(0, 0, lookupTable);
+            }
+            this.lookupTable = lookupTable;
+        }
+        return identityLookupTable;
+    }
+
+    // Warps into destination, a target-sized 8-bit or float Mat, with every gray value
+    // mapped to gray * scale + offset; black comes out as offset.
+    private void warp(Point[] uprightVertices, Mat destination, double scale, double offset) {
+        if (keepAspectRatio) {
+            warpKeepingAspectRatio(uprightVertices, destination, scale, offset);
+        } else {
+            warp(uprightVertices, destination, targetSize, scale, offset);
+        }
+    }
+
+    // Scales the box to fit the target and warps it to the top left of a black target.
+    private void warpKeepingAspectRatio(Point[] uprightVertices, Mat destination, double scale, double offset) {
+        for (int j = 0; j < 4; j++) {
+            boundingBoxPoints[j * 2] = (float) uprightVertices[j].x;
+            boundingBoxPoints[j * 2 + 1] = (float) uprightVertices[j].y;
+        }
+        float boxWidth = getBoxWidth(boundingBoxPoints, 0);
+        float boxHeight = getBoxHeight(boundingBoxPoints, 0);
+        int targetWidth = (int) targetSize.width;
+        float fit = Math.min(targetWidth / Math.max(boxWidth, 1f), targetHeight / Math.max(boxHeight, 1f));
+        int cropWidth = clamp(Math.round(boxWidth * fit), 1, targetWidth);
+        int cropHeight = clamp(Math.round(boxHeight * fit), 1, targetHeight);
+
+        setTargetVertices(cropWidth, cropHeight);
+        cropSize.width = cropWidth;
+        cropSize.height = cropHeight;
+        destination.setTo(new Scalar(offset));
+        // Same size and type, so the warp writes into the target instead of reallocating.
+        Mat cropMat = destination.submat(0, cropHeight, 0, cropWidth);
+        try {
+            warp(uprightVertices, cropMat, cropSize, scale, offset);
+        } finally {
+            cropMat.release();
+        }
+    }
+
+    // Warps into destination at the given size. Float destinations are warped from the
+    // ROI normalized to floats, since a warp keeps the type of its source.
+    private void warp(Point[] uprightVertices, Mat destination, Size size, double scale, double offset) {
+        Point[] vertices = toStored(uprightVertices);
+        Rect roi = getRoi(vertices);
+
+        for (int j = 0; j < 4; j++) {
+            roiVertices[j].x = vertices[j].x - roi.x;
+            roiVertices[j].y = vertices[j].y - roi.y;
+        }
+        srcVerticesMat.fromArray(roiVertices);
+
+        Mat roiMat = srcImageMat.submat(roi);
+        Mat rotationMatrix = getPerspectiveTransform(srcVerticesMat, targetVerticesMat);
+        try {
+            Mat source = roiMat;
+            if (destination.depth() == CvType.CV_32F) {
+                roiMat.convertTo(roiFloatMat, CvType.CV_32F, scale, offset);
+                source = roiFloatMat;
+            }
+            warpPerspective(
+                    source,
+                    destination,
+                    rotationMatrix,
+                    size,
+                    Imgproc.INTER_LINEAR,
+                    Core.BORDER_CONSTANT,
+                    new Scalar(offset)
+            );
+        } finally {
+            rotationMatrix.release();
+            roiMat.release();
+        }
+    }
+
+    private Point[] toStored(Point[] vertices) {
+        if (orientation == Orientation.NORMAL) {
+            return vertices;
+        }
+        for (int j = 0; j < 4; j++) {
+            float x = (float) vertices[j].x;
+            float y = (float) vertices[j].y;
+            storedVertices[j].x = orientation.getStoredX(x, y, srcImageMat.cols());
+            storedVertices[j].y = orientation.getStoredY(x, y, srcImageMat.rows());
+        }
+        return storedVertices;
+    }
+
+    private Rect getRoi(Point[] vertices) {
+        double minX = vertices[0].x;
+        double minY = vertices[0].y;
+        double maxX = vertices[0].x;
+        double maxY = vertices[0].y;
+        for (int j = 1; j < 4; j++) {
+            minX = Math.min(minX, vertices[j].x);
+            minY = Math.min(minY, vertices[j].y);
+            maxX = Math.max(maxX, vertices[j].x);
+            maxY = Math.max(maxY, vertices[j].y);
+        }
+
+        int cols = srcImageMat.cols();
+        int rows = srcImageMat.rows();
+        int left = clamp((int) Math.floor(minX) - ROI_PADDING, 0, cols - 1);
+        int top = clamp((int) Math.floor(minY) - ROI_PADDING, 0, rows - 1);
+        int right = clamp((int) Math.ceil(maxX) + ROI_PADDING, left + 1, cols);
+        int bottom = clamp((int) Math.ceil(maxY) + ROI_PADDING, top + 1, rows);
+
+        return new Rect(left, top, right - left, bottom - top);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    public void release() {
+        srcImageMat.release();
+        srcVerticesMat.release();
+        targetVerticesMat.release();
+        recognitionMat.release();
+        roiFloatMat.release();
+        if (lookupTableMat != null) {
+            lookupTableMat.release();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Tensor;
+
+/**
+ * Element type and affine quantization parameters of a model input or output, where
+ * {@code real = (quantized - zeroPoint) * scale}. FLOAT32 tensors use {@link #FLOAT32}.
+ */
+public class Quantization {
+    public static final Quantization FLOAT32 = new Quantization(DataType.FLOAT32, 1f, 0);
+
+    private final DataType dataType;
+    private final float scale;
+    private final int zeroPoint;
+
+    public Quantization(DataType dataType, float scale, int zeroPoint) {
+        if (dataType != DataType.FLOAT32 && dataType != DataType.UINT8 && dataType != DataType.INT8) {
+            throw new IllegalArgumentException("Unsupported tensor type " + dataType);
+        }
+        if (dataType != DataType.FLOAT32 && !(scale > 0f)) {
+            throw new IllegalArgumentException("Quantized tensor without a scale");
+        }
+        this.dataType = dataType;
+        this.scale = scale;
+        this.zeroPoint = zeroPoint;
+    }
+
+    public static Quantization of(Tensor tensor) {
+        if (tensor.dataType() == DataType.FLOAT32) {
+            return FLOAT32;
+        }
+        Tensor.QuantizationParams params = tensor.quantizationParams();
+        return new Quantization(tensor.dataType(), params.getScale(), params.getZeroPoint());
+    }
+
+    public boolean isQuantized() {
+        return dataType != DataType.FLOAT32;
+    }
+
+    public DataType getDataType() {
+        return dataType;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    public int getZeroPoint() {
+        return zeroPoint;
+    }
+
+    public int getBytesPerElement() {
+        return isQuantized() ? 1 : 4;
+    }
+
+    /**
+     * Raw integer value of a quantized element as stored in a buffer.
+     */
+    public int toInt(byte quantized) {
+        return dataType == DataType.UINT8 ? quantized & 0xff : quantized;
+    }
+
+    public float dequantize(byte quantized) {
+        return (toInt(quantized) - zeroPoint) * scale;
+    }
+
+    /**
+     * Nearest representable value, saturated to the range of the element type.
+     */
+    public byte quantize(float value) {
+        int quantized = Math.round(value / scale) + zeroPoint;
+        if (dataType == DataType.UINT8) {
+            return (byte) Math.max(0, Math.min(255, quantized));
+        }
+        return (byte) Math.max(-128, Math.min(127, quantized));
+    }
+
+    /**
+     * Smallest raw value whose real value is at least {@code threshold}, so quantized
+     * scores can be compared with a float threshold without dequantizing them.
+     */
+    public int quantizeThreshold(float threshold) {
+        return (int) Math.ceil(threshold / scale - 1e-4f) + zeroPoint;
+    }
+
+    /**
+     * Quantized {@code (value - mean) / std} for every 8-bit pixel value, which turns
+     * normalization and quantization of an input into one table lookup per channel.
+     */
+    public byte[] getLookupTable(float mean, float std) {
+        byte[] table = new byte[256];
+        for (int value = 0; value < 256; value++) {
+            table[value] = quantize((value - mean) / std);
+        }
+        return table;
+    }
+
+    @Override
+    public String toString() {
+        return isQuantized() ? dataType + "(scale=" + scale + ", zeroPoint=" + zeroPoint + ")" : dataType.toString();
+    }
+}
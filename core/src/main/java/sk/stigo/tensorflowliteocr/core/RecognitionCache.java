@@ -0,0 +1,74 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Recognized texts keyed by a 64-bit hash of the warped and normalized recognizer
+ * input, so a text region whose crop is byte for byte the same as an earlier one, for
+ * example a static label in every frame, skips recognition. Holds the
+ * {@code maxEntries} most recently used crops. All methods are thread-safe.
+ *
+ * @see OCRPipeline#setRecognitionCache
+ */
+public class RecognitionCache {
+    public static final int DEFAULT_MAX_ENTRIES = 512;
+    private static final long HASH_PRIME = 0x9e3779b97f4a7c15L;
+
+    private final Map<Long, String> texts;
+
+    public RecognitionCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public RecognitionCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive, got " + maxEntries);
+        }
+        this.texts = new LinkedHashMap<Long, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Hash of the {@code size} bytes of {@code crops} from {@code offset} on, read
+     * eight bytes at a time.
+     */
+    public static long hash(ByteBuffer crops, int offset, int size) {
+        long hash = size;
+        int end = offset + size;
+        int i = offset;
+        for (; i + 8 <= end; i += 8) {
+            hash = (hash ^ crops.getLong(i)) * HASH_PRIME;
+            hash ^= hash >>> 29;
+        }
+        for (; i < end; i++) {
+            hash = (hash ^ crops.get(i)) * HASH_PRIME;
+            hash ^= hash >>> 29;
+        }
+        return hash;
+    }
+
+    /**
+     * Text recognized earlier in a crop with this hash, or {@code null}.
+     */
+    public synchronized String get(long cropHash) {
+        return texts.get(cropHash);
+    }
+
+    public synchronized void put(long cropHash, String text) {
+        texts.put(cropHash, text);
+    }
+
+    public synchronized int size() {
+        return texts.size();
+    }
+
+    public synchronized void clear() {
+        texts.clear();
+    }
+}
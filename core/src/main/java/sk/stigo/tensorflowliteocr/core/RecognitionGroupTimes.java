@@ -0,0 +1,71 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Moving averages of the time of one group of boxes of {@link OCRPipeline#runScheduled},
+ * kept apart for batched and per-crop recognition and for every crop width, whose costs
+ * differ by far. A group is counted under its widest crop. All methods are thread-safe;
+ * the averages are updated atomically, so concurrent calls do not lose their groups.
+ */
+class RecognitionGroupTimes {
+    // The newest group moves an average by a quarter of its difference.
+    private static final int SMOOTHING_DIVISOR = 4;
+
+    private final int[] widths;
+    // Per-crop averages by width, then batched ones; 0 before the first group.
+    private final AtomicLongArray nanos;
+
+    /**
+     * @param widths every crop width a group can have
+     */
+    RecognitionGroupTimes(int[] widths) {
+        this.widths = widths.clone();
+        this.nanos = new AtomicLongArray(widths.length * 2);
+    }
+
+    /**
+     * Average time of a group whose widest crop is {@code width}, or 0 before the first.
+     */
+    long getNanos(boolean batched, int width) {
+        return nanos.get(index(batched, width));
+    }
+
+    void record(boolean batched, int width, long groupNanos) {
+        nanos.accumulateAndGet(
+                index(batched, width),
+                Math.max(1, groupNanos),
+                (average, sample) -> average == 0 ? sample : average + (sample - average) / SMOOTHING_DIVISOR
+        );
+    }
+
+    /**
+     * Whether a group started at {@code nowNanos} is expected to finish by the deadline.
+     * No group fits once the deadline has passed; before it, a group of a kind not seen
+     * yet fits, so its time gets measured.
+     *
+     * @param deadlineNanos {@link System#nanoTime()} of the deadline, or
+     *                      {@link OCRPipeline#NO_DEADLINE}
+     */
+    boolean fits(boolean batched, int width, long nowNanos, long deadlineNanos) {
+        if (deadlineNanos == OCRPipeline.NO_DEADLINE) {
+            return true;
+        }
+        return nowNanos < deadlineNanos && getNanos(batched, width) <= deadlineNanos - nowNanos;
+    }
+
+    void clear() {
+        for (int i = 0; i < nanos.length(); i++) {
+            nanos.set(i, 0);
+        }
+    }
+
+    private int index(boolean batched, int width) {
+        for (int i = 0; i < widths.length; i++) {
+            if (widths[i] == width) {
+                return batched ? widths.length + i : i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown crop width " + width);
+    }
+}
@@ -0,0 +1,114 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import java.util.Arrays;
+
+/**
+ * Order in which {@link OCRPipeline#runScheduled} recognizes the detected boxes, so the
+ * boxes left out when the deadline comes are the least important ones. The priority
+ * of a box is its detection score, raised by up to {@code areaWeight} times itself for
+ * the largest box of the image, and multiplied by the weight of the region of interest
+ * if the region contains the center of the box.
+ */
+public class RecognitionSchedule {
+    public static final float DEFAULT_AREA_WEIGHT = 0.5f;
+
+    private float areaWeight;
+    private float regionLeft;
+    private float regionTop;
+    private float regionRight;
+    private float regionBottom;
+    private float regionWeight;
+
+    public RecognitionSchedule() {
+        this.areaWeight = DEFAULT_AREA_WEIGHT;
+        this.regionWeight = 1f;
+    }
+
+    /**
+     * How much larger boxes are preferred over smaller ones of the same score; 0 orders
+     * by score alone.
+     */
+    public RecognitionSchedule setAreaWeight(float areaWeight) {
+        if (!(areaWeight >= 0f)) {
+            throw new IllegalArgumentException("areaWeight must not be negative, got " + areaWeight);
+        }
+        this.areaWeight = areaWeight;
+        return this;
+    }
+
+    /**
+     * Multiplies the priority of boxes centered in the given rectangle of the source
+     * image by {@code weight}, for example 2 to read a region the user points at first.
+     */
+    public RecognitionSchedule setRegionOfInterest(float left, float top, float right, float bottom, float weight) {
+        if (!(weight > 0f)) {
+            throw new IllegalArgumentException("weight must be positive, got " + weight);
+        }
+        this.regionLeft = left;
+        this.regionTop = top;
+        this.regionRight = right;
+        this.regionBottom = bottom;
+        this.regionWeight = weight;
+        return this;
+    }
+
+    /**
+     * Returns the indices of the boxes by descending priority; boxes of equal priority
+     * keep their detection order.
+     *
+     * @param corners     {@value OCRPipelineResult#CORNERS_SIZE} floats per box
+     * @param confidences detection score of each box
+     */
+    public int[] order(float[] corners, float[] confidences) {
+        int boxCount = corners.length / OCRPipelineResult.CORNERS_SIZE;
+        float[] areas = new float[boxCount];
+        float maxArea = 0f;
+        for (int box = 0; box < boxCount; box++) {
+            areas[box] = getArea(corners, box);
+            maxArea = Math.max(maxArea, areas[box]);
+        }
+
+        float[] priorities = new float[boxCount];
+        Integer[] order = new Integer[boxCount];
+        for (int box = 0; box < boxCount; box++) {
+            float priority = confidences[box];
+            if (maxArea > 0f) {
+                priority *= 1f + areaWeight * areas[box] / maxArea;
+            }
+            if (isCenteredInRegion(corners, box)) {
+                priority *= regionWeight;
+            }
+            priorities[box] = priority;
+            order[box] = box;
+        }
+        Arrays.sort(order, (first, second) -> Float.compare(priorities[second], priorities[first]));
+
+        int[] indices = new int[boxCount];
+        for (int i = 0; i < boxCount; i++) {
+            indices[i] = order[i];
+        }
+        return indices;
+    }
+
+    // Area of the box quadrilateral by the shoelace formula.
+    static float getArea(float[] corners, int box) {
+        int offset = box * OCRPipelineResult.CORNERS_SIZE;
+        float doubleArea = 0f;
+        for (int corner = 0; corner < 4; corner++) {
+            int next = (corner + 1) % 4;
+            doubleArea += corners[offset + corner * 2] * corners[offset + next * 2 + 1]
+                    - corners[offset + next * 2] * corners[offset + corner * 2 + 1];
+        }
+        return Math.abs(doubleArea) / 2f;
+    }
+
+    private boolean isCenteredInRegion(float[] corners, int box) {
+        if (regionWeight == 1f) {
+            return false;
+        }
+        int offset = box * OCRPipelineResult.CORNERS_SIZE;
+        float centerX = (corners[offset] + corners[offset + 2] + corners[offset + 4] + corners[offset + 6]) / 4f;
+        float centerY = (corners[offset + 1] + corners[offset + 3] + corners[offset + 5] + corners[offset + 7]) / 4f;
+        return centerX >= regionLeft && centerX <= regionRight && centerY >= regionTop && centerY <= regionBottom;
+    }
+}
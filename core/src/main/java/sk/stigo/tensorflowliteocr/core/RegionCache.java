@@ -0,0 +1,130 @@
+package sk.stigo.tensorflowliteocr.core;
+
+/**
+ * Text regions of a fixed camera, so steady frames can skip the detector and only
+ * recognize the boxes of the last full detection with {@link OCRPipeline#recognize}.
+ *
+ * The cached regions are given up, and the next frame detected again, when one of
+ * these cheap checks fails:
+ * <ul>
+ *     <li>the regions have served {@code refreshInterval} frames since the detection;</li>
+ *     <li>the {@value #THUMBNAIL_SIZE}x{@value #THUMBNAIL_SIZE} grayscale thumbnail of
+ *     the frame differs from the detected frame's by more than
+ *     {@code maxThumbnailDifference} gray levels on average;</li>
+ *     <li>the frame has a different size;</li>
+ *     <li>a cached region is recognized as empty, see {@link #accept}. The recognizer
+ *     outputs characters without probabilities, so an empty box is the low confidence
+ *     signal.</li>
+ * </ul>
+ * Detections without any box are not cached. All methods are thread-safe.
+ */
+public class RegionCache {
+    public static final int THUMBNAIL_SIZE = 16;
+    public static final int DEFAULT_REFRESH_INTERVAL = 30;
+    public static final float DEFAULT_MAX_THUMBNAIL_DIFFERENCE = 10f;
+
+    private final int refreshInterval;
+    private final float maxThumbnailDifference;
+    private int[] thumbnail;
+    private int width;
+    private int height;
+    private float[] corners;
+    private int framesSinceDetection;
+
+    public RegionCache() {
+        this(DEFAULT_REFRESH_INTERVAL, DEFAULT_MAX_THUMBNAIL_DIFFERENCE);
+    }
+
+    /**
+     * @param refreshInterval        frames served from the cache before detecting again
+     * @param maxThumbnailDifference mean absolute gray level difference of the thumbnails
+     *                               up to which a frame counts as unchanged
+     */
+    public RegionCache(int refreshInterval, float maxThumbnailDifference) {
+        if (refreshInterval < 1) {
+            throw new IllegalArgumentException("refreshInterval must be positive, got " + refreshInterval);
+        }
+        this.refreshInterval = refreshInterval;
+        this.maxThumbnailDifference = maxThumbnailDifference;
+    }
+
+    /**
+     * Grayscale values of {@code image} downsampled to
+     * {@value #THUMBNAIL_SIZE}x{@value #THUMBNAIL_SIZE}, for {@link #lookup} and
+     * {@link #remember}.
+     */
+    public static int[] thumbnail(PixelBuffer image) {
+        int[] pixels = new int[THUMBNAIL_SIZE * THUMBNAIL_SIZE];
+        image.readPixels(pixels, THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+        for (int i = 0; i < pixels.length; i++) {
+            int argb = pixels[i];
+            pixels[i] = PixelUtils.grayscale((argb >> 16) & 0xff, (argb >> 8) & 0xff, argb & 0xff);
+        }
+        return pixels;
+    }
+
+    /**
+     * Returns the corners of the cached regions, in the layout of
+     * {@link OCRPipelineResult#getCorners()}, to recognize in a {@code width} x
+     * {@code height} frame with the given {@link #thumbnail}, or {@code null} when the
+     * frame has to be detected.
+     */
+    public synchronized float[] lookup(int[] frameThumbnail, int width, int height) {
+        if (corners == null) {
+            return null;
+        }
+        if (framesSinceDetection >= refreshInterval
+                || width != this.width
+                || height != this.height
+                || getDifference(frameThumbnail) > maxThumbnailDifference) {
+            invalidate();
+            return null;
+        }
+        framesSinceDetection++;
+        return corners;
+    }
+
+    /**
+     * Checks the recognition of cached regions and returns whether it can be used. A
+     * region recognized as empty invalidates the cache; the frame should then be
+     * detected again.
+     */
+    public synchronized boolean accept(OCRPipelineResult result) {
+        for (int box = 0; box < result.getBoxCount(); box++) {
+            if (result.getText(box).isEmpty()) {
+                invalidate();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Caches the boxes of a full detection of a {@code width} x {@code height} frame
+     * with the given {@link #thumbnail}.
+     */
+    public synchronized void remember(int[] frameThumbnail, int width, int height, OCRPipelineResult result) {
+        if (result.getBoxCount() == 0) {
+            invalidate();
+            return;
+        }
+        this.thumbnail = frameThumbnail;
+        this.width = width;
+        this.height = height;
+        this.corners = result.getCorners();
+        this.framesSinceDetection = 0;
+    }
+
+    public synchronized void invalidate() {
+        thumbnail = null;
+        corners = null;
+    }
+
+    private float getDifference(int[] frameThumbnail) {
+        long difference = 0;
+        for (int i = 0; i < thumbnail.length; i++) {
+            difference += Math.abs(frameThumbnail[i] - thumbnail[i]);
+        }
+        return (float) difference / thumbnail.length;
+    }
+}
@@ -0,0 +1,47 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FrameSource} replaying still images over and over at a fixed frame rate, to
+ * exercise {@link StreamingOcr} like a camera without one. Frames are due at fixed
+ * times from the first one, so a consumer that falls behind gets the late frames
+ * back to back rather than a lower rate.
+ */
+public class ReplayFrameSource implements FrameSource {
+    private final List<PixelBuffer> images;
+    private final long frameIntervalNanos;
+    private final int frameCount;
+    private int frame;
+    private long startNanos;
+
+    /**
+     * @param frameCount frames to return before the stream ends
+     */
+    public ReplayFrameSource(List<? extends PixelBuffer> images, double framesPerSecond, int frameCount) {
+        if (images.isEmpty() || framesPerSecond <= 0) {
+            throw new IllegalArgumentException("Replay needs images and a positive frame rate");
+        }
+        this.images = new ArrayList<>(images);
+        this.frameIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / framesPerSecond);
+        this.frameCount = frameCount;
+    }
+
+    @Override
+    public synchronized PixelBuffer nextFrame() throws InterruptedException {
+        if (frame >= frameCount) {
+            return null;
+        }
+        if (frame == 0) {
+            startNanos = System.nanoTime();
+        } else {
+            long waitNanos = startNanos + frame * frameIntervalNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+        return images.get(frame++ % images.size());
+    }
+}
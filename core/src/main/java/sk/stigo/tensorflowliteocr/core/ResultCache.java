@@ -0,0 +1,298 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Results of whole images keyed by a hash of their decoded pixels, so a resubmitted
+ * image, such as the same asset or a duplicate upload, skips the pipeline. Build
+ * keys with {@link #key}, which also takes the settings that change the result,
+ * e.g. the detector.
+ *
+ * Results are kept in memory in least recently used order, bounded by entry count and
+ * by an estimate of their heap size. With a directory, every result is also written
+ * to disk, where it survives restarts and is read back on a memory miss; the directory
+ * keeps the most recently used {@code maxDiskEntries} files. Disk errors are treated
+ * as misses. Hits and misses are counted for {@link #toString()}. All methods are
+ * thread-safe.
+ */
+public class ResultCache {
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+    public static final long DEFAULT_MAX_BYTES = 1024 * 1024;
+    public static final int DEFAULT_MAX_DISK_ENTRIES = 4096;
+    private static final int FILE_VERSION = 2;
+    private static final String FILE_SUFFIX = ".ocr";
+    // Object headers, references and array lengths of one entry, roughly.
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+    private static final int TEXT_OVERHEAD_BYTES = 48;
+    private static final long HASH_PRIME = 0x9e3779b97f4a7c15L;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final File directory;
+    private final int maxDiskEntries;
+    private final LinkedHashMap<String, OCRPipelineResult> entries;
+    private long bytes;
+    private int diskEntries;
+    private final AtomicLong memoryHits;
+    private final AtomicLong diskHits;
+    private final AtomicLong misses;
+
+    public ResultCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES, null, 0);
+    }
+
+    /**
+     * @param directory      directory of the disk tier, created if missing, or
+     *                       {@code null} to keep results in memory only
+     * @param maxDiskEntries result files kept in {@code directory}
+     */
+    public ResultCache(int maxEntries, long maxBytes, File directory, int maxDiskEntries) {
+        if (maxEntries < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("Cache bounds must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+        this.maxDiskEntries = maxDiskEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.memoryHits = new AtomicLong();
+        this.diskHits = new AtomicLong();
+        this.misses = new AtomicLong();
+        if (directory != null) {
+            directory.mkdirs();
+            File[] files = listResultFiles();
+            diskEntries = files != null ? files.length : 0;
+        }
+    }
+
+    /**
+     * Cache key of {@code image} processed with {@code settings}: a 64-bit hash of its
+     * pixels, read row by row so the image is never copied as a whole, and its size.
+     *
+     * @param settings every setting that changes the result, in a stable form
+     */
+    public static String key(PixelBuffer image, String settings) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] row = new int[width];
+        long hash = width * 31L + height;
+        for (int y = 0; y < height; y++) {
+            image.readPixels(row, 0, y, width, 1, width, 1);
+            for (int x = 0; x < width; x++) {
+                hash = (hash ^ row[x]) * HASH_PRIME;
+                hash ^= hash >>> 29;
+            }
+        }
+        return settings + "-" + width + "x" + height + "-" + Long.toHexString(hash);
+    }
+
+    /**
+     * Returns the cached result for {@code key}, from memory or else from disk, or
+     * {@code null} on a miss.
+     */
+    public OCRPipelineResult get(String key) {
+        synchronized (entries) {
+            OCRPipelineResult result = entries.get(key);
+            if (result != null) {
+                memoryHits.incrementAndGet();
+                return result;
+            }
+        }
+
+        OCRPipelineResult result = directory != null ? read(key) : null;
+        if (result == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        diskHits.incrementAndGet();
+        putInMemory(key, result);
+        return result;
+    }
+
+    public void put(String key, OCRPipelineResult result) {
+        putInMemory(key, result);
+        if (directory != null) {
+            write(key, result);
+        }
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Estimated heap size of the results held in memory.
+     */
+    public long getBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    private void putInMemory(String key, OCRPipelineResult result) {
+        long size = estimateBytes(key, result);
+        synchronized (entries) {
+            OCRPipelineResult previous = entries.put(key, result);
+            if (previous != null) {
+                bytes -= estimateBytes(key, previous);
+            }
+            bytes += size;
+
+            Iterator<Map.Entry<String, OCRPipelineResult>> eldest = entries.entrySet().iterator();
+            while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+                Map.Entry<String, OCRPipelineResult> entry = eldest.next();
+                bytes -= estimateBytes(entry.getKey(), entry.getValue());
+                eldest.remove();
+            }
+        }
+    }
+
+    static long estimateBytes(String key, OCRPipelineResult result) {
+        long size = ENTRY_OVERHEAD_BYTES + key.length() * 2L + result.getBoxCount() * (OCRPipelineResult.CORNERS_SIZE + 1) * 4L;
+        for (int box = 0; box < result.getBoxCount(); box++) {
+            size += TEXT_OVERHEAD_BYTES + result.getText(box).length() * 2L;
+        }
+        return size;
+    }
+
+    private OCRPipelineResult read(String key) {
+        File file = getFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != FILE_VERSION || !key.equals(input.readUTF())) {
+                return null;
+            }
+            int boxCount = input.readInt();
+            // A box takes its floats and at least the length of its text, so a count
+            // the file cannot hold is corrupt and must not size the arrays.
+            if (boxCount < 0 || boxCount * ((OCRPipelineResult.CORNERS_SIZE + 1) * 4L + 2) > file.length()) {
+                delete(file);
+                return null;
+            }
+            float[] corners = new float[boxCount * OCRPipelineResult.CORNERS_SIZE];
+            for (int i = 0; i < corners.length; i++) {
+                corners[i] = input.readFloat();
+            }
+            float[] confidences = new float[boxCount];
+            for (int box = 0; box < boxCount; box++) {
+                confidences[box] = input.readFloat();
+            }
+            String[] texts = new String[boxCount];
+            for (int box = 0; box < boxCount; box++) {
+                texts[box] = input.readUTF();
+            }
+            // Keeps recently read files from being trimmed first.
+            file.setLastModified(System.currentTimeMillis());
+            return new OCRPipelineResult(corners, confidences, texts);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void write(String key, OCRPipelineResult result) {
+        File file = getFile(key);
+        File temporary = new File(directory, file.getName() + ".tmp" + Thread.currentThread().getId());
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            output.writeInt(FILE_VERSION);
+            output.writeUTF(key);
+            output.writeInt(result.getBoxCount());
+            for (float corner : result.getCorners()) {
+                output.writeFloat(corner);
+            }
+            for (float confidence : result.getDetectionConfidences()) {
+                output.writeFloat(confidence);
+            }
+            for (int box = 0; box < result.getBoxCount(); box++) {
+                output.writeUTF(result.getText(box));
+            }
+        } catch (IOException e) {
+            temporary.delete();
+            return;
+        }
+
+        synchronized (this) {
+            boolean replaced = file.exists();
+            if (!temporary.renameTo(file) && !(file.delete() && temporary.renameTo(file))) {
+                temporary.delete();
+                return;
+            }
+            if (!replaced && ++diskEntries > maxDiskEntries) {
+                trimDisk();
+            }
+        }
+    }
+
+    private synchronized void delete(File file) {
+        if (file.delete()) {
+            diskEntries--;
+        }
+    }
+
+    // Deletes the least recently used files down to three quarters of the limit, so
+    // trimming, which lists the directory, does not run on every write.
+    private void trimDisk() {
+        File[] files = listResultFiles();
+        if (files == null) {
+            return;
+        }
+        // Times are read once, since reads touch files while they are sorted.
+        long[] times = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            times[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> times[i]));
+        int keep = maxDiskEntries * 3 / 4;
+        for (int i = 0; i < files.length - keep; i++) {
+            files[order[i]].delete();
+        }
+        diskEntries = Math.min(files.length, keep);
+    }
+
+    private File[] listResultFiles() {
+        return directory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+    }
+
+    private File getFile(String key) {
+        return new File(directory, key.replaceAll("[^A-Za-z0-9._-]", "_") + FILE_SUFFIX);
+    }
+
+    @Override
+    public String toString() {
+        return "ResultCache{memoryHits=" + getMemoryHits()
+                + ", diskHits=" + getDiskHits()
+                + ", misses=" + getMisses()
+                + ", entries=" + size()
+                + ", bytes=" + getBytes() + "}";
+    }
+}
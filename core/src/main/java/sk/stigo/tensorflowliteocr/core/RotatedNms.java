@@ -0,0 +1,281 @@
+package sk.stigo.tensorflowliteocr.core;
+
+/**
+ * Non-maximum suppression of rotated boxes on primitive arrays, a pure Java
+ * replacement for OpenCV's {@code Dnn.NMSBoxesRotated}.
+ *
+ * Boxes are read interleaved as {@code centerX, centerY, width, height, angle} with
+ * the angle in degrees, the layout of OpenCV's {@code RotatedRect}. The selection follows
+ * OpenCV: candidates scoring above the threshold are stable-sorted by descending
+ * score, optionally capped to the top K, and a candidate is kept when its IoU with
+ * every kept box is at most the NMS threshold. Like OpenCV, a box fully enclosed in
+ * another one counts as a full overlap.
+ *
+ * Scratch arrays grow with the candidate count and are reused, so a warmed-up
+ * instance does not allocate. Instances are not thread-safe.
+ */
+public class RotatedNms {
+    public static final int BOX_SIZE = 5;
+    private static final int CORNERS_SIZE = 8;
+    private static final float SAME_POINT_EPS = 0.00001f;
+    private static final float FULL_OVERLAP_EPS = 1e-4f;
+
+    private int[] order = new int[0];
+    private int[] sortScratch = new int[0];
+    private int[] indices = new int[0];
+    private float[] corners = new float[0];
+    private float[] bounds = new float[0];
+    private float[] areas = new float[0];
+    private final float[] clipA = new float[16];
+    private final float[] clipB = new float[16];
+
+    /**
+     * Runs the suppression and returns the number of kept boxes. Their indices, in
+     * descending score order, are the first entries of {@link #getIndices()}.
+     *
+     * @param topK keep at most this many candidates before suppression, or 0 for no cap
+     */
+    public int run(float[] boxes, float[] scores, int count, float scoreThreshold, float nmsThreshold, int topK) {
+        ensureCapacity(count);
+
+        int candidates = 0;
+        for (int i = 0; i < count; i++) {
+            if (scores[i] > scoreThreshold) {
+                order[candidates++] = i;
+            }
+        }
+        sortByScoreDescending(scores, candidates);
+        if (topK > 0 && topK < candidates) {
+            candidates = topK;
+        }
+
+        int kept = 0;
+        for (int i = 0; i < candidates; i++) {
+            int candidate = order[i];
+            prepare(boxes, candidate);
+
+            boolean keep = true;
+            for (int k = 0; k < kept && keep; k++) {
+                keep = intersectionOverUnion(candidate, indices[k]) <= nmsThreshold;
+            }
+            if (keep) {
+                indices[kept++] = candidate;
+            }
+        }
+        return kept;
+    }
+
+    public int[] getIndices() {
+        return indices;
+    }
+
+    /**
+     * Writes the four corners of a box in the order of OpenCV's {@code boxPoints}:
+     * bottom-left, top-left, top-right, bottom-right for an unrotated box.
+     */
+    public static void getCorners(float[] boxes, int box, float[] out, int outOffset) {
+        int offset = box * BOX_SIZE;
+        float centerX = boxes[offset];
+        float centerY = boxes[offset + 1];
+        float width = boxes[offset + 2];
+        float height = boxes[offset + 3];
+        double angle = boxes[offset + 4] * Math.PI / 180.0;
+        float b = (float) Math.cos(angle) * 0.5f;
+        float a = (float) Math.sin(angle) * 0.5f;
+
+        out[outOffset] = centerX - a * height - b * width;
+        out[outOffset + 1] = centerY + b * height - a * width;
+        out[outOffset + 2] = centerX + a * height - b * width;
+        out[outOffset + 3] = centerY - b * height - a * width;
+        out[outOffset + 4] = 2 * centerX - out[outOffset];
+        out[outOffset + 5] = 2 * centerY - out[outOffset + 1];
+        out[outOffset + 6] = 2 * centerX - out[outOffset + 2];
+        out[outOffset + 7] = 2 * centerY - out[outOffset + 3];
+    }
+
+    /**
+     * IoU of two rotated boxes, computed the same way as {@link #run}.
+     */
+    static float intersectionOverUnion(float[] boxes, int first, int second) {
+        return new RotatedNms().overlap(boxes, first, second);
+    }
+
+    /**
+     * Like {@link #intersectionOverUnion(float[], int, int)} on the scratch arrays of
+     * this instance, which grow to the larger index.
+     */
+    float overlap(float[] boxes, int first, int second) {
+        ensureCapacity(Math.max(first, second) + 1);
+        prepare(boxes, first);
+        prepare(boxes, second);
+        return intersectionOverUnion(first, second);
+    }
+
+    private void prepare(float[] boxes, int box) {
+        int cornerOffset = box * CORNERS_SIZE;
+        getCorners(boxes, box, corners, cornerOffset);
+
+        float minX = corners[cornerOffset];
+        float minY = corners[cornerOffset + 1];
+        float maxX = minX;
+        float maxY = minY;
+        for (int j = 2; j < CORNERS_SIZE; j += 2) {
+            minX = Math.min(minX, corners[cornerOffset + j]);
+            maxX = Math.max(maxX, corners[cornerOffset + j]);
+            minY = Math.min(minY, corners[cornerOffset + j + 1]);
+            maxY = Math.max(maxY, corners[cornerOffset + j + 1]);
+        }
+        int boundsOffset = box * 4;
+        bounds[boundsOffset] = minX;
+        bounds[boundsOffset + 1] = minY;
+        bounds[boundsOffset + 2] = maxX;
+        bounds[boundsOffset + 3] = maxY;
+        areas[box] = boxes[box * BOX_SIZE + 2] * boxes[box * BOX_SIZE + 3];
+    }
+
+    private float intersectionOverUnion(int first, int second) {
+        int firstBounds = first * 4;
+        int secondBounds = second * 4;
+        if (bounds[firstBounds] > bounds[secondBounds + 2] || bounds[secondBounds] > bounds[firstBounds + 2]
+                || bounds[firstBounds + 1] > bounds[secondBounds + 3]
+                || bounds[secondBounds + 1] > bounds[firstBounds + 3]) {
+            return 0f;
+        }
+        if (samePoints(first * CORNERS_SIZE, second * CORNERS_SIZE)) {
+            return 1f;
+        }
+
+        float intersection = intersectionArea(first * CORNERS_SIZE, second * CORNERS_SIZE);
+        if (intersection <= 0f) {
+            return 0f;
+        }
+        float smallerArea = Math.min(areas[first], areas[second]);
+        if (intersection >= smallerArea * (1f - FULL_OVERLAP_EPS)) {
+            return 1f;
+        }
+        return intersection / (areas[first] + areas[second] - intersection);
+    }
+
+    private boolean samePoints(int firstCorners, int secondCorners) {
+        for (int j = 0; j < CORNERS_SIZE; j++) {
+            if (Math.abs(corners[firstCorners + j] - corners[secondCorners + j]) > SAME_POINT_EPS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Clips the first box by each edge of the second one (Sutherland-Hodgman) and
+     * returns the area of the resulting convex polygon.
+     */
+    private float intersectionArea(int subjectCorners, int clipCorners) {
+        float[] input = clipA;
+        float[] output = clipB;
+        System.arraycopy(corners, subjectCorners, input, 0, CORNERS_SIZE);
+        int inputCount = 4;
+
+        float orientation = Math.signum(signedArea(corners, clipCorners, 4));
+        if (orientation == 0) {
+            return 0f;
+        }
+        for (int edge = 0; edge < 4 && inputCount > 0; edge++) {
+            int from = clipCorners + edge * 2;
+            int to = clipCorners + ((edge + 1) % 4) * 2;
+            float edgeX = corners[from];
+            float edgeY = corners[from + 1];
+            float edgeDx = corners[to] - edgeX;
+            float edgeDy = corners[to + 1] - edgeY;
+
+            int outputCount = 0;
+            float previousX = input[(inputCount - 1) * 2];
+            float previousY = input[(inputCount - 1) * 2 + 1];
+            float previousSide = orientation * (edgeDx * (previousY - edgeY) - edgeDy * (previousX - edgeX));
+            for (int j = 0; j < inputCount; j++) {
+                float currentX = input[j * 2];
+                float currentY = input[j * 2 + 1];
+                float currentSide = orientation * (edgeDx * (currentY - edgeY) - edgeDy * (currentX - edgeX));
+
+                if (currentSide >= 0) {
+                    if (previousSide < 0) {
+                        float t = previousSide / (previousSide - currentSide);
+                        output[outputCount * 2] = previousX + t * (currentX - previousX);
+                        output[outputCount * 2 + 1] = previousY + t * (currentY - previousY);
+                        outputCount++;
+                    }
+                    output[outputCount * 2] = currentX;
+                    output[outputCount * 2 + 1] = currentY;
+                    outputCount++;
+                } else if (previousSide >= 0) {
+                    float t = previousSide / (previousSide - currentSide);
+                    output[outputCount * 2] = previousX + t * (currentX - previousX);
+                    output[outputCount * 2 + 1] = previousY + t * (currentY - previousY);
+                    outputCount++;
+                }
+
+                previousX = currentX;
+                previousY = currentY;
+                previousSide = currentSide;
+            }
+
+            float[] swap = input;
+            input = output;
+            output = swap;
+            inputCount = outputCount;
+        }
+
+        return inputCount < 3 ? 0f : Math.abs(signedArea(input, 0, inputCount));
+    }
+
+    private static float signedArea(float[] points, int offset, int count) {
+        float area = 0f;
+        for (int j = 0; j < count; j++) {
+            int current = offset + j * 2;
+            int next = offset + ((j + 1) % count) * 2;
+            area += points[current] * points[next + 1] - points[next] * points[current + 1];
+        }
+        return area * 0.5f;
+    }
+
+    // Bottom-up merge sort, stable like the std::stable_sort used by OpenCV.
+    private void sortByScoreDescending(float[] scores, int count) {
+        int[] source = order;
+        int[] target = sortScratch;
+        for (int width = 1; width < count; width *= 2) {
+            for (int left = 0; left < count; left += 2 * width) {
+                int middle = Math.min(left + width, count);
+                int right = Math.min(left + 2 * width, count);
+                int i = left;
+                int j = middle;
+                int k = left;
+                while (i < middle && j < right) {
+                    target[k++] = scores[source[j]] > scores[source[i]] ? source[j++] : source[i++];
+                }
+                while (i < middle) {
+                    target[k++] = source[i++];
+                }
+                while (j < right) {
+                    target[k++] = source[j++];
+                }
+            }
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        if (source != order) {
+            System.arraycopy(source, 0, order, 0, count);
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if (order.length >= count) {
+            return;
+        }
+        order = new int[count];
+        sortScratch = new int[count];
+        indices = new int[count];
+        corners = new float[count * CORNERS_SIZE];
+        bounds = new float[count * 4];
+        areas = new float[count];
+    }
+}
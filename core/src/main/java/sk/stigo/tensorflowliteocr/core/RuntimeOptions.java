@@ -0,0 +1,142 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import org.tensorflow.lite.Delegate;
+
+import java.util.function.Supplier;
+
+/**
+ * TFLite runtime settings of an {@link OCRPipeline}. Detection and recognition get
+ * separate thread budgets, which by default split the cores between them, so a
+ * detection running next to the recognition of another image does not oversubscribe
+ * the CPU. Setters return {@code this} for chaining.
+ */
+public class RuntimeOptions {
+    private static final int MAX_THREADS_PER_STAGE = 4;
+
+    private int detectionThreads;
+    private int recognitionThreads;
+    private int recognitionPoolSize;
+    private boolean useXnnpack;
+    private boolean allowFp16;
+    private boolean quantizedModels;
+    private Supplier<Delegate> delegateFactory;
+
+    public RuntimeOptions() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.detectionThreads = Math.max(1, Math.min(MAX_THREADS_PER_STAGE, cores / 2));
+        this.recognitionThreads = Math.max(1, Math.min(MAX_THREADS_PER_STAGE, cores - detectionThreads));
+        this.recognitionPoolSize = Math.max(1, Math.min(MAX_THREADS_PER_STAGE, cores / 2));
+        this.useXnnpack = true;
+        this.allowFp16 = false;
+    }
+
+    public RuntimeOptions(RuntimeOptions other) {
+        this.detectionThreads = other.detectionThreads;
+        this.recognitionThreads = other.recognitionThreads;
+        this.recognitionPoolSize = other.recognitionPoolSize;
+        this.useXnnpack = other.useXnnpack;
+        this.allowFp16 = other.allowFp16;
+        this.quantizedModels = other.quantizedModels;
+        this.delegateFactory = other.delegateFactory;
+    }
+
+    /**
+     * Threads of the detection interpreter, shared by both detectors.
+     */
+    public RuntimeOptions setDetectionThreads(int detectionThreads) {
+        this.detectionThreads = requirePositive(detectionThreads, "detectionThreads");
+        return this;
+    }
+
+    /**
+     * Threads of all recognition interpreters together; each of the
+     * {@link #setRecognitionPoolSize pool} interpreters gets an equal share, at least one.
+     */
+    public RuntimeOptions setRecognitionThreads(int recognitionThreads) {
+        this.recognitionThreads = requirePositive(recognitionThreads, "recognitionThreads");
+        return this;
+    }
+
+    /**
+     * Number of recognition interpreters, i.e. crops recognized in parallel.
+     */
+    public RuntimeOptions setRecognitionPoolSize(int recognitionPoolSize) {
+        this.recognitionPoolSize = requirePositive(recognitionPoolSize, "recognitionPoolSize");
+        return this;
+    }
+
+    /**
+     * Runs supported CPU operations through the XNNPACK delegate. On by default.
+     */
+    public RuntimeOptions setUseXnnpack(boolean useXnnpack) {
+        this.useXnnpack = useXnnpack;
+        return this;
+    }
+
+    /**
+     * Lets float32 operations run in float16 where the hardware supports it.
+     */
+    public RuntimeOptions setAllowFp16(boolean allowFp16) {
+        this.allowFp16 = allowFp16;
+        return this;
+    }
+
+    /**
+     * Loads the int8 EAST detector and the quantized keras-ocr recognizer instead of the
+     * float16 ones. UINT8 and INT8 inputs are filled straight from pixels and outputs
+     * are dequantized only where needed, based on each model's own tensor types.
+     */
+    public RuntimeOptions setQuantizedModels(boolean quantizedModels) {
+        this.quantizedModels = quantizedModels;
+        return this;
+    }
+
+    /**
+     * Creates one hardware delegate per interpreter, for example NNAPI or GPU, or
+     * {@code null} to run on the CPU only. A model the delegate cannot run falls back
+     * to the CPU.
+     */
+    public RuntimeOptions setDelegateFactory(Supplier<Delegate> delegateFactory) {
+        this.delegateFactory = delegateFactory;
+        return this;
+    }
+
+    public int getDetectionThreads() {
+        return detectionThreads;
+    }
+
+    public int getRecognitionThreads() {
+        return recognitionThreads;
+    }
+
+    public int getRecognitionPoolSize() {
+        return recognitionPoolSize;
+    }
+
+    public int getThreadsPerRecognizer() {
+        return Math.max(1, recognitionThreads / recognitionPoolSize);
+    }
+
+    public boolean isUseXnnpack() {
+        return useXnnpack;
+    }
+
+    public boolean isAllowFp16() {
+        return allowFp16;
+    }
+
+    public boolean isQuantizedModels() {
+        return quantizedModels;
+    }
+
+    public Supplier<Delegate> getDelegateFactory() {
+        return delegateFactory;
+    }
+
+    private static int requirePositive(int value, String name) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be positive, got " + value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,28 @@
+package sk.stigo.tensorflowliteocr.core;
+
+/**
+ * Timed stages of one {@link OCRPipeline#run} call, plus the one-off model loading
+ * and warm-up done on first use or by {@link OCRPipeline#warmUp}.
+ */
+public enum Stage {
+    /** The whole call, from detection preprocessing to the last recognized crop. */
+    TOTAL,
+    /** Resizing and normalizing the image into the detector input. */
+    DETECTION_PREPROCESSING,
+    /** The detector interpreter invocation. */
+    DETECTION_INFERENCE,
+    /** Turning detector outputs into candidate boxes, e.g. EAST geometry decoding. */
+    DETECTION_DECODING,
+    /** Rotated non-maximum suppression of the candidate boxes. */
+    NMS,
+    /** Perspective warp and normalization of one box into the recognizer input. */
+    WARPING,
+    /** One recognizer interpreter invocation, for a single crop or a batch. */
+    RECOGNITION_INFERENCE,
+    /** Mapping recognizer outputs to text for the crops of one invocation. */
+    RECOGNITION_DECODING,
+    /** Mapping a model and building its interpreter, including delegate setup. */
+    MODEL_LOADING,
+    /** Warm-up invocations of a freshly loaded detector and the recognizers. */
+    WARM_UP
+}
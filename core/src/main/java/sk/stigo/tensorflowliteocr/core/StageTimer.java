@@ -0,0 +1,30 @@
+package sk.stigo.tensorflowliteocr.core;
+
+/**
+ * Reports stages to a {@link MetricsListener}, skipping the clock entirely when the
+ * listener is {@link MetricsListener#NONE}.
+ */
+final class StageTimer {
+    private StageTimer() {
+    }
+
+    static long start(MetricsListener metrics, Stage stage) {
+        if (metrics == MetricsListener.NONE) {
+            return 0;
+        }
+        metrics.onStageStarted(stage);
+        return System.nanoTime();
+    }
+
+    static void finish(MetricsListener metrics, Stage stage, long start) {
+        if (metrics != MetricsListener.NONE) {
+            metrics.onStageFinished(stage, System.nanoTime() - start);
+        }
+    }
+
+    static void count(MetricsListener metrics, Counter counter, long value) {
+        if (metrics != MetricsListener.NONE) {
+            metrics.onCount(counter, value);
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs OCR over a live stream of frames, such as camera previews, in two stages with
+ * a thread each, so the detection of a frame overlaps with the recognition of the
+ * frame before it.
+ *
+ * Frames are handed over with {@link #submit} or pulled from a {@link FrameSource}
+ * with {@link #stream}. Only the latest frame waits for the detector: a newer frame
+ * replaces it, so a pipeline slower than the source skips frames instead of falling
+ * behind. A detected frame waits for the recognizer in a one-frame handoff, and the
+ * detector waits for the handoff to be free.
+ *
+ * Every submitted frame gets exactly one {@link Listener} call, on a stage thread or
+ * the submitting one: a result, a drop or an error. The stream does not touch the
+ * frame afterwards, so the source can reuse it. The stream counts frames and records
+ * the latency from submission to result; see {@link #toString()}.
+ */
+public class StreamingOcr implements Closeable {
+    /**
+     * Receives the outcome of every frame. Calls must return quickly and not throw;
+     * they hold up the stage they come from.
+     */
+    public interface Listener {
+        void onResult(PixelBuffer frame, OCRPipelineResult result, long latencyNanos);
+
+        /**
+         * The frame was replaced by a newer one before detection, or the stream closed.
+         */
+        default void onDropped(PixelBuffer frame) {
+        }
+
+        default void onError(PixelBuffer frame, RuntimeException e) {
+        }
+    }
+
+    // The two stages, separate from OCRPipeline so they can be replaced in tests.
+    interface Stages {
+        float[] detect(PixelBuffer frame);
+
+        OCRPipelineResult recognize(PixelBuffer frame, float[] corners);
+    }
+
+    private static final class Frame {
+        final PixelBuffer image;
+        final long submittedNanos;
+        float[] corners;
+
+        Frame(PixelBuffer image, long submittedNanos) {
+            this.image = image;
+            this.submittedNanos = submittedNanos;
+        }
+    }
+
+    private final Stages stages;
+    private final Listener listener;
+    private final Object lock;
+    private final Thread detectionThread;
+    private final Thread recognitionThread;
+    private final LatencyHistogram latencies;
+    // Guarded by lock.
+    private Frame pending;
+    private Frame detected;
+    private int framesInProgress;
+    private boolean closed;
+    private long submittedFrames;
+    private long completedFrames;
+    private long droppedFrames;
+    private long failedFrames;
+    private long firstSubmittedNanos;
+    private long lastCompletedNanos;
+
+    public StreamingOcr(OCRPipeline pipeline, DetectionModel detectionModel, boolean batched, Listener listener) {
+        this(new Stages() {
+            @Override
+            public float[] detect(PixelBuffer frame) {
+                return pipeline.detect(frame, detectionModel, OCRPipeline.NO_DEADLINE);
+            }
+
+            @Override
+            public OCRPipelineResult recognize(PixelBuffer frame, float[] corners) {
+                return pipeline.recognize(frame, corners, batched, OCRPipeline.NO_DEADLINE);
+            }
+        }, listener);
+    }
+
+    StreamingOcr(Stages stages, Listener listener) {
+        this.stages = stages;
+        this.listener = listener;
+        this.lock = new Object();
+        this.latencies = new LatencyHistogram();
+        this.detectionThread = new Thread(this::detectFrames, "OCRStreamDetection");
+        this.recognitionThread = new Thread(this::recognizeFrames, "OCRStreamRecognition");
+        detectionThread.start();
+        recognitionThread.start();
+    }
+
+    /**
+     * Queues {@code frame} for detection, replacing the frame still waiting for it.
+     * Never blocks.
+     */
+    public void submit(PixelBuffer frame) {
+        PixelBuffer dropped = null;
+        synchronized (lock) {
+            if (closed) {
+                dropped = frame;
+            } else {
+                long now = System.nanoTime();
+                if (submittedFrames++ == 0) {
+                    firstSubmittedNanos = now;
+                }
+                if (pending == null) {
+                    framesInProgress++;
+                } else {
+                    dropped = pending.image;
+                    droppedFrames++;
+                }
+                pending = new Frame(frame, now);
+                lock.notifyAll();
+            }
+        }
+        if (dropped != null) {
+            listener.onDropped(dropped);
+        }
+    }
+
+    /**
+     * Submits the frames of {@code source} as they come until it ends, then waits for
+     * the last of them to be processed.
+     */
+    public void stream(FrameSource source) throws IOException, InterruptedException {
+        PixelBuffer frame;
+        while ((frame = source.nextFrame()) != null) {
+            submit(frame);
+        }
+        awaitIdle();
+    }
+
+    /**
+     * Waits until every submitted frame has had its listener call.
+     */
+    public void awaitIdle() throws InterruptedException {
+        synchronized (lock) {
+            while (framesInProgress > 0) {
+                lock.wait();
+            }
+        }
+    }
+
+    public long getSubmittedFrames() {
+        synchronized (lock) {
+            return submittedFrames;
+        }
+    }
+
+    public long getCompletedFrames() {
+        synchronized (lock) {
+            return completedFrames;
+        }
+    }
+
+    /**
+     * Frames replaced by newer ones before detection or left when the stream closed.
+     */
+    public long getDroppedFrames() {
+        synchronized (lock) {
+            return droppedFrames;
+        }
+    }
+
+    public long getFailedFrames() {
+        synchronized (lock) {
+            return failedFrames;
+        }
+    }
+
+    /**
+     * Results per second from the first submitted frame to the last result.
+     */
+    public double getFramesPerSecond() {
+        synchronized (lock) {
+            long elapsedNanos = lastCompletedNanos - firstSubmittedNanos;
+            return completedFrames > 0 && elapsedNanos > 0
+                    ? completedFrames * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos
+                    : 0;
+        }
+    }
+
+    /**
+     * Latencies from {@link #submit} to the result of the completed frames.
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Stops both stages and drops the frames still waiting. Waits for the frames being
+     * processed, which stop at the next stage or text box.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+        }
+        detectionThread.interrupt();
+        recognitionThread.interrupt();
+        boolean interrupted = false;
+        for (Thread thread : new Thread[]{detectionThread, recognitionThread}) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        drop(takeLeftover(true));
+        drop(takeLeftover(false));
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void detectFrames() {
+        try {
+            while (true) {
+                Frame frame;
+                synchronized (lock) {
+                    while (pending == null) {
+                        lock.wait();
+                    }
+                    frame = pending;
+                    pending = null;
+                }
+
+                try {
+                    frame.corners = stages.detect(frame.image);
+                } catch (CancellationException e) {
+                    drop(frame);
+                    return;
+                } catch (RuntimeException e) {
+                    fail(frame, e);
+                    continue;
+                }
+
+                if (!handOff(frame)) {
+                    // Closed while the frame waited for the recognizer, so only this
+                    // thread still holds it.
+                    drop(frame);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed while waiting for a frame; close() drops the frames left.
+        }
+    }
+
+    // Waits for the recognizer to take the previous frame and passes it this one.
+    // Returns false if interrupted meanwhile.
+    private boolean handOff(Frame frame) {
+        synchronized (lock) {
+            try {
+                while (detected != null) {
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                return false;
+            }
+            detected = frame;
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    private void recognizeFrames() {
+        try {
+            while (true) {
+                Frame frame;
+                synchronized (lock) {
+                    while (detected == null) {
+                        lock.wait();
+                    }
+                    frame = detected;
+                    detected = null;
+                    lock.notifyAll();
+                }
+
+                OCRPipelineResult result;
+                try {
+                    result = stages.recognize(frame.image, frame.corners);
+                } catch (CancellationException e) {
+                    drop(frame);
+                    return;
+                } catch (RuntimeException e) {
+                    fail(frame, e);
+                    continue;
+                }
+                complete(frame, result);
+            }
+        } catch (InterruptedException e) {
+            // Closed; close() drops the frames left.
+        }
+    }
+
+    private void complete(Frame frame, OCRPipelineResult result) {
+        long now = System.nanoTime();
+        long latencyNanos = now - frame.submittedNanos;
+        latencies.record(latencyNanos);
+        listener.onResult(frame.image, result, latencyNanos);
+        synchronized (lock) {
+            completedFrames++;
+            lastCompletedNanos = now;
+            finish();
+        }
+    }
+
+    private void fail(Frame frame, RuntimeException e) {
+        listener.onError(frame.image, e);
+        synchronized (lock) {
+            failedFrames++;
+            finish();
+        }
+    }
+
+    private void drop(Frame frame) {
+        if (frame == null) {
+            return;
+        }
+        listener.onDropped(frame.image);
+        synchronized (lock) {
+            droppedFrames++;
+            finish();
+        }
+    }
+
+    // Called with lock held.
+    private void finish() {
+        framesInProgress--;
+        lock.notifyAll();
+    }
+
+    private Frame takeLeftover(boolean waitingForDetection) {
+        synchronized (lock) {
+            Frame frame = waitingForDetection ? pending : detected;
+            if (waitingForDetection) {
+                pending = null;
+            } else {
+                detected = null;
+            }
+            return frame;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (lock) {
+            return String.format(
+                    Locale.ROOT,
+                    "StreamingOcr{submitted=%d, completed=%d, dropped=%d, failed=%d, fps=%.2f, "
+                            + "latencyMeanMs=%.1f, latencyP50Ms=%.1f, latencyP95Ms=%.1f, latencyMaxMs=%.1f}",
+                    submittedFrames,
+                    completedFrames,
+                    droppedFrames,
+                    failedFrames,
+                    getFramesPerSecond(),
+                    latencies.getMeanNanos() / 1e6,
+                    latencies.getPercentileNanos(50) / 1e6,
+                    latencies.getPercentileNanos(95) / 1e6,
+                    latencies.getMaxNanos() / 1e6
+            );
+        }
+    }
+}
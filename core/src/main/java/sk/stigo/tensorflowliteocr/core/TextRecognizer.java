@@ -0,0 +1,298 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the keras-ocr recognition model either once per crop or once for a whole
+ * batch of crops. The batch dimension of the interpreter input is resized on demand,
+ * so a frame with N text boxes can be recognized in a single invocation.
+ *
+ * Crops are {@value #IMAGE_WIDTH} pixels wide by default. Models that accept other
+ * widths also take the narrower and wider {@link #BUCKET_WIDTHS}, see
+ * {@link #getSupportedWidths()}; the input is reshaped only when the width or the
+ * batch size changes.
+ *
+ * Crops are FLOAT32 or, for a quantized model, one UINT8 or INT8 byte per pixel; see
+ * {@link #getInputQuantization()} and {@link #getCropSizeBytes()}.
+ */
+public class TextRecognizer {
+    public static final int IMAGE_HEIGHT = 31;
+    public static final int IMAGE_WIDTH = 200;
+    public static final float IMAGE_MEAN = 0f;
+    public static final float IMAGE_STD = 255f;
+    /** Size of one FLOAT32 crop. */
+    public static final int CROP_SIZE_BYTES = IMAGE_HEIGHT * IMAGE_WIDTH * 4;
+    /** Crop widths to choose from by the aspect ratio of a box, ascending. */
+    static final int[] BUCKET_WIDTHS = new int[]{64, 128, IMAGE_WIDTH, 400};
+    private static final int MODEL_OUTPUT_SIZE = 48;
+    private static final int OUTPUT_ELEMENT_BYTES = 8;
+    private static final String ALPHABETS = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+    private final Model model;
+    private final Quantization inputQuantization;
+    private final int bytesPerPixel;
+    private final int cropSizeBytes;
+    private final byte[] inputLookupTable;
+    private ByteBuffer inputBuffer;
+    private ByteBuffer outputBuffer;
+    private int batchSize;
+    private int imageWidth;
+    private int outputSteps;
+    private boolean batchingSupported;
+    private volatile MetricsListener metrics;
+
+    /**
+     * The interpreter calls of the recognizer, replaced by fakes in tests.
+     */
+    interface Model {
+        /**
+         * Resizes the input to {@code inputShape} and allocates the tensors; returns the
+         * number of output steps per crop.
+         */
+        int reshape(int[] inputShape);
+
+        void run(ByteBuffer input, ByteBuffer output);
+    }
+
+    public TextRecognizer(Interpreter interpreter) {
+        this(new InterpreterModel(interpreter), Quantization.of(interpreter.getInputTensor(0)));
+    }
+
+    TextRecognizer(Model model, Quantization inputQuantization) {
+        this.model = model;
+        this.inputQuantization = inputQuantization;
+        this.bytesPerPixel = inputQuantization.getBytesPerElement();
+        this.cropSizeBytes = getCropSizeBytes(IMAGE_WIDTH);
+        this.inputLookupTable = inputQuantization.isQuantized()
+                ? inputQuantization.getLookupTable(IMAGE_MEAN, IMAGE_STD)
+                : null;
+        this.batchSize = 1;
+        this.imageWidth = IMAGE_WIDTH;
+        this.outputSteps = MODEL_OUTPUT_SIZE;
+        this.batchingSupported = true;
+        this.inputBuffer = allocate(cropSizeBytes);
+        this.outputBuffer = allocate(MODEL_OUTPUT_SIZE * OUTPUT_ELEMENT_BYTES);
+        this.metrics = MetricsListener.NONE;
+    }
+
+    /**
+     * Reports {@link Stage#RECOGNITION_INFERENCE} and {@link Stage#RECOGNITION_DECODING}
+     * to {@code metrics}.
+     */
+    public void setMetricsListener(MetricsListener metrics) {
+        this.metrics = metrics != null ? metrics : MetricsListener.NONE;
+    }
+
+    public Quantization getInputQuantization() {
+        return inputQuantization;
+    }
+
+    public int getCropSizeBytes() {
+        return cropSizeBytes;
+    }
+
+    /**
+     * Size of one crop {@code width} pixels wide.
+     */
+    public int getCropSizeBytes(int width) {
+        return IMAGE_HEIGHT * width * bytesPerPixel;
+    }
+
+    /**
+     * Returns the {@link #BUCKET_WIDTHS} the model accepts, always including
+     * {@value #IMAGE_WIDTH}. Models with a fixed width reject the others when their
+     * tensors are allocated, so each width is tried once here.
+     */
+    public int[] getSupportedWidths() {
+        int[] widths = new int[BUCKET_WIDTHS.length];
+        int count = 0;
+        for (int width : BUCKET_WIDTHS) {
+            if (width == IMAGE_WIDTH) {
+                widths[count++] = width;
+                continue;
+            }
+            try {
+                resize(1, width);
+                widths[count++] = width;
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                // Not resizable to this width.
+            }
+        }
+        resize(1, IMAGE_WIDTH);
+        return Arrays.copyOf(widths, count);
+    }
+
+    /**
+     * Gray value to quantized input table of a quantized model, {@code null} for FLOAT32.
+     */
+    public byte[] getInputLookupTable() {
+        return inputLookupTable;
+    }
+
+    /**
+     * Returns a cleared direct buffer large enough for {@code count} preprocessed crops.
+     * Crops are written one after another in [N, 31, 200, 1] order.
+     */
+    public ByteBuffer getInputBuffer(int count) {
+        if (inputBuffer.capacity() < count * cropSizeBytes) {
+            inputBuffer = allocate(count * cropSizeBytes);
+        }
+        inputBuffer.clear();
+        return inputBuffer;
+    }
+
+    /**
+     * Recognizes a single preprocessed 1x31x200x1 crop stored at the start of {@code crop}.
+     */
+    public String recognize(ByteBuffer crop) {
+        return recognize(crop, IMAGE_WIDTH);
+    }
+
+    /**
+     * Recognizes a single preprocessed crop {@code width} pixels wide, one of the
+     * {@link #getSupportedWidths()}, stored at the start of {@code crop}.
+     */
+    public String recognize(ByteBuffer crop, int width) {
+        MetricsListener metrics = this.metrics;
+        resize(1, width);
+        long start = StageTimer.start(metrics, Stage.RECOGNITION_INFERENCE);
+        model.run(
+                view(crop, 0, getCropSizeBytes(width)),
+                view(outputBuffer, 0, outputSteps * OUTPUT_ELEMENT_BYTES)
+        );
+        StageTimer.finish(metrics, Stage.RECOGNITION_INFERENCE, start);
+
+        start = StageTimer.start(metrics, Stage.RECOGNITION_DECODING);
+        String text = decode(0);
+        StageTimer.finish(metrics, Stage.RECOGNITION_DECODING, start);
+        return text;
+    }
+
+    /**
+     * Recognizes {@code count} crops packed into {@code crops} with one interpreter
+     * invocation. Falls back to one invocation per crop when the model does not
+     * accept a dynamic batch dimension.
+     */
+    public List<String> recognizeBatch(ByteBuffer crops, int count) {
+        return recognizeBatch(crops, count, IMAGE_WIDTH);
+    }
+
+    /**
+     * Like {@link #recognizeBatch(ByteBuffer, int)} for crops {@code width} pixels wide,
+     * one of the {@link #getSupportedWidths()}.
+     */
+    public List<String> recognizeBatch(ByteBuffer crops, int count, int width) {
+        List<String> texts = new ArrayList<>(count);
+        if (count == 0) {
+            return texts;
+        }
+
+        int cropSizeBytes = getCropSizeBytes(width);
+        if (batchingSupported) {
+            try {
+                resize(count, width);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                // A fixed batch dimension fails the resize or the allocation; the crops
+                // are then run one by one, with the input back at a single crop.
+                batchingSupported = false;
+                resize(1, width);
+            }
+        }
+
+        if (!batchingSupported) {
+            for (int i = 0; i < count; i++) {
+                texts.add(recognize(view(crops, i * cropSizeBytes, cropSizeBytes), width));
+            }
+            return texts;
+        }
+
+        MetricsListener metrics = this.metrics;
+        long start = StageTimer.start(metrics, Stage.RECOGNITION_INFERENCE);
+        model.run(
+                view(crops, 0, count * cropSizeBytes),
+                view(outputBuffer, 0, count * outputSteps * OUTPUT_ELEMENT_BYTES)
+        );
+        StageTimer.finish(metrics, Stage.RECOGNITION_INFERENCE, start);
+
+        start = StageTimer.start(metrics, Stage.RECOGNITION_DECODING);
+        for (int i = 0; i < count; i++) {
+            texts.add(decode(i));
+        }
+        StageTimer.finish(metrics, Stage.RECOGNITION_DECODING, start);
+        return texts;
+    }
+
+    // The number of output steps follows from the width, e.g. 48 for 200 pixels.
+    private void resize(int count, int width) {
+        if (batchSize == count && imageWidth == width) {
+            return;
+        }
+        // Unknown until the new shape is allocated, in case allocation fails.
+        batchSize = 0;
+        outputSteps = model.reshape(new int[]{count, IMAGE_HEIGHT, width, 1});
+        if (outputBuffer.capacity() < count * outputSteps * OUTPUT_ELEMENT_BYTES) {
+            outputBuffer = allocate(count * outputSteps * OUTPUT_ELEMENT_BYTES);
+        }
+        batchSize = count;
+        imageWidth = width;
+    }
+
+    // The model outputs collapsed CTC labels padded with -1, so decoding stops at the
+    // first padding step instead of reading every step.
+    private String decode(int row) {
+        StringBuilder recognizedText = new StringBuilder();
+        int rowOffset = row * outputSteps * OUTPUT_ELEMENT_BYTES;
+        for (int k = 0; k < outputSteps; k++) {
+            int alphabetIndex = (int) outputBuffer.getLong(rowOffset + k * OUTPUT_ELEMENT_BYTES);
+            if (alphabetIndex < 0) {
+                break;
+            }
+
+            if (alphabetIndex < ALPHABETS.length()) {
+                recognizedText.append(ALPHABETS.charAt(alphabetIndex));
+            }
+        }
+        return recognizedText.toString();
+    }
+
+    // The interpreter compares buffer capacity with the tensor size, so pass exact-size views.
+    static ByteBuffer view(ByteBuffer buffer, int offset, int size) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.limit(offset + size);
+        duplicate.position(offset);
+        return duplicate.slice().order(ByteOrder.nativeOrder());
+    }
+
+    private static ByteBuffer allocate(int size) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        buffer.order(ByteOrder.nativeOrder());
+        return buffer;
+    }
+
+    private static class InterpreterModel implements Model {
+        private final Interpreter interpreter;
+
+        InterpreterModel(Interpreter interpreter) {
+            this.interpreter = interpreter;
+        }
+
+        @Override
+        public int reshape(int[] inputShape) {
+            interpreter.resizeInput(0, inputShape);
+            interpreter.allocateTensors();
+            int[] outputShape = interpreter.getOutputTensor(0).shape();
+            return outputShape[outputShape.length - 1];
+        }
+
+        @Override
+        public void run(ByteBuffer input, ByteBuffer output) {
+            interpreter.run(input, output);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of {@link TextRecognizer} instances, each owning its own interpreter.
+ * The crops of one call are spread over as many recognizers as are free, and any
+ * number of threads may call {@link #recognize} at the same time: callers block only
+ * while every recognizer is busy.
+ *
+ * The calling thread always takes part in the work itself, so a call never waits
+ * for worker threads that are all busy with other callers' crops.
+ *
+ * Crops of one call share a width, {@value TextRecognizer#IMAGE_WIDTH} pixels or one
+ * of the {@link #getBucketWidths()}.
+ */
+public class TextRecognizerPool {
+    private final List<TextRecognizer> allRecognizers;
+    private final BlockingQueue<TextRecognizer> recognizers;
+    private final int size;
+    private final int cropSizeBytes;
+    private final Quantization inputQuantization;
+    private final byte[] inputLookupTable;
+    private final ExecutorService executor;
+    private volatile int[] bucketWidths;
+
+    public TextRecognizerPool(List<TextRecognizer> recognizers) {
+        this.allRecognizers = new ArrayList<>(recognizers);
+        this.size = recognizers.size();
+        this.cropSizeBytes = recognizers.get(0).getCropSizeBytes();
+        this.inputQuantization = recognizers.get(0).getInputQuantization();
+        this.inputLookupTable = recognizers.get(0).getInputLookupTable();
+        this.recognizers = new ArrayBlockingQueue<>(size, false, recognizers);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(
+                Math.max(1, size - 1),
+                runnable -> new Thread(runnable, "OCRRecognition-" + threadNumber.incrementAndGet())
+        );
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Size of one crop, the same for every recognizer since they share one model.
+     */
+    public int getCropSizeBytes() {
+        return cropSizeBytes;
+    }
+
+    /**
+     * Size of one crop {@code width} pixels wide.
+     */
+    public int getCropSizeBytes(int width) {
+        return allRecognizers.get(0).getCropSizeBytes(width);
+    }
+
+    /**
+     * Crop widths the model accepts, ascending, found out on the first call.
+     *
+     * @see TextRecognizer#getSupportedWidths()
+     */
+    public int[] getBucketWidths() {
+        int[] widths = bucketWidths;
+        if (widths != null) {
+            return widths;
+        }
+        synchronized (this) {
+            if (bucketWidths == null) {
+                TextRecognizer recognizer = acquire();
+                try {
+                    bucketWidths = recognizer.getSupportedWidths();
+                } finally {
+                    recognizers.add(recognizer);
+                }
+            }
+            return bucketWidths;
+        }
+    }
+
+    /**
+     * The narrowest of the {@link #getBucketWidths()} that holds a crop
+     * {@code contentWidth} pixels wide, or the widest one.
+     */
+    public int getBucketWidth(int contentWidth) {
+        int[] widths = getBucketWidths();
+        for (int width : widths) {
+            if (width >= contentWidth) {
+                return width;
+            }
+        }
+        return widths[widths.length - 1];
+    }
+
+    public Quantization getInputQuantization() {
+        return inputQuantization;
+    }
+
+    /**
+     * @see TextRecognizer#getInputLookupTable()
+     */
+    public byte[] getInputLookupTable() {
+        return inputLookupTable;
+    }
+
+    public void setMetricsListener(MetricsListener metrics) {
+        for (TextRecognizer recognizer : allRecognizers) {
+            recognizer.setMetricsListener(metrics);
+        }
+    }
+
+    /**
+     * Recognizes {@code count} preprocessed crops packed into {@code crops} in
+     * [N, 31, 200, 1] order and returns the texts in crop order. With {@code batched}
+     * each recognizer gets one contiguous chunk of crops and runs it in a single
+     * invocation, otherwise recognizers take crops one at a time.
+     *
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    public List<String> recognize(ByteBuffer crops, int count, boolean batched) {
+        return recognize(crops, count, TextRecognizer.IMAGE_WIDTH, batched);
+    }
+
+    /**
+     * Like {@link #recognize(ByteBuffer, int, boolean)} for crops {@code width} pixels
+     * wide, one of the {@link #getBucketWidths()}.
+     *
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    public List<String> recognize(ByteBuffer crops, int count, int width, boolean batched) {
+        String[] texts = new String[count];
+        if (count == 0) {
+            return new ArrayList<>();
+        }
+
+        int taskCount = Math.min(count, size);
+        int chunkSize = batched ? (count + taskCount - 1) / taskCount : 1;
+        AtomicInteger nextCrop = new AtomicInteger();
+        Runnable task = () -> recognizeChunks(crops, count, width, chunkSize, batched, nextCrop, texts);
+
+        List<Future<?>> futures = new ArrayList<>(taskCount - 1);
+        for (int i = 1; i < taskCount; i++) {
+            futures.add(executor.submit(task));
+        }
+
+        try {
+            task.run();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Text recognition was interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        return new ArrayList<>(Arrays.asList(texts));
+    }
+
+    private void recognizeChunks(
+            ByteBuffer crops,
+            int count,
+            int width,
+            int chunkSize,
+            boolean batched,
+            AtomicInteger nextCrop,
+            String[] texts
+    ) {
+        // Workers queued behind other callers may start after the caller has taken every crop.
+        if (nextCrop.get() >= count) {
+            return;
+        }
+
+        int cropSizeBytes = getCropSizeBytes(width);
+        TextRecognizer recognizer = acquire();
+        try {
+            int start;
+            while ((start = nextCrop.getAndAdd(chunkSize)) < count) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException("Text recognition was interrupted");
+                }
+
+                int end = Math.min(count, start + chunkSize);
+                if (batched) {
+                    ByteBuffer chunk = TextRecognizer.view(
+                            crops,
+                            start * cropSizeBytes,
+                            (end - start) * cropSizeBytes
+                    );
+                    List<String> chunkTexts = recognizer.recognizeBatch(chunk, end - start, width);
+                    for (int i = start; i < end; i++) {
+                        texts[i] = chunkTexts.get(i - start);
+                    }
+                } else {
+                    texts[start] = recognizer.recognize(
+                            TextRecognizer.view(crops, start * cropSizeBytes, cropSizeBytes),
+                            width
+                    );
+                }
+            }
+        } finally {
+            recognizers.add(recognizer);
+        }
+    }
+
+    /**
+     * Runs every recognizer once on {@code crop}, so the first real call does not pay
+     * for kernel preparation and memory planning. Waits for recognizers that are busy.
+     *
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    public void warmUp(ByteBuffer crop) {
+        List<TextRecognizer> acquired = new ArrayList<>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                acquired.add(acquire());
+            }
+            for (TextRecognizer recognizer : acquired) {
+                recognizer.recognize(TextRecognizer.view(crop, 0, cropSizeBytes));
+            }
+        } finally {
+            recognizers.addAll(acquired);
+        }
+    }
+
+    private TextRecognizer acquire() {
+        try {
+            return recognizers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Text recognition was interrupted");
+        }
+    }
+
+    /**
+     * Stops the worker threads. The interpreters are owned and closed by the caller.
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+}
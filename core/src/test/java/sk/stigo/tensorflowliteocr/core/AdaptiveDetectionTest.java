@@ -0,0 +1,90 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class AdaptiveDetectionTest {
+    private static final int MAX_BOXES = 10;
+    private static final long MS = 1_000_000L;
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    @Test
+    public void isIncomplete_acceptsConfidentRecognizedBoxes() {
+        AdaptiveDetection adaptive = new AdaptiveDetection();
+
+        assertFalse(adaptive.isIncomplete(result(3, 0.9f, 0), MAX_BOXES));
+    }
+
+    @Test
+    public void isIncomplete_flagsEmptyFullUncertainAndUnreadableResults() {
+        AdaptiveDetection adaptive = new AdaptiveDetection();
+
+        assertTrue(adaptive.isIncomplete(result(0, 0.9f, 0), MAX_BOXES));
+        assertTrue(adaptive.isIncomplete(result(MAX_BOXES, 0.9f, 0), MAX_BOXES));
+        assertTrue(adaptive.isIncomplete(result(3, 0.55f, 0), MAX_BOXES));
+        assertTrue(adaptive.isIncomplete(result(3, 0.9f, 2), MAX_BOXES));
+    }
+
+    @Test
+    public void shouldEscalate_skipsEastOverTheBudgetButProbesItAgain() {
+        AdaptiveDetection adaptive = new AdaptiveDetection(100 * MS, 0.7f, 0.5f);
+        OCRPipelineResult incomplete = result(0, 0f, 0);
+
+        // Unknown cost: EAST runs once to be measured.
+        assertTrue(adaptive.shouldEscalate(incomplete, MAX_BOXES, 20 * MS, NO_DEADLINE));
+        adaptive.record(DetectionModel.EAST, 200 * MS);
+
+        for (int i = 1; i < AdaptiveDetection.PROBE_INTERVAL; i++) {
+            assertFalse(adaptive.shouldEscalate(incomplete, MAX_BOXES, 20 * MS, NO_DEADLINE));
+        }
+        assertTrue(adaptive.shouldEscalate(incomplete, MAX_BOXES, 20 * MS, NO_DEADLINE));
+        assertEquals(2, adaptive.getEscalations());
+        assertEquals(AdaptiveDetection.PROBE_INTERVAL - 1, adaptive.getSkippedEscalations());
+    }
+
+    @Test
+    public void shouldEscalate_neverRunsEastPastTheDeadline() {
+        AdaptiveDetection adaptive = new AdaptiveDetection();
+        adaptive.record(DetectionModel.EAST, 200 * MS);
+
+        for (int i = 0; i < AdaptiveDetection.PROBE_INTERVAL * 2; i++) {
+            assertFalse(adaptive.shouldEscalate(result(0, 0f, 0), MAX_BOXES, 20 * MS, 100 * MS));
+        }
+        assertTrue(adaptive.shouldEscalate(result(0, 0f, 0), MAX_BOXES, 20 * MS, 300 * MS));
+    }
+
+    @Test
+    public void shouldEscalate_keepsCompleteResults() {
+        AdaptiveDetection adaptive = new AdaptiveDetection();
+
+        assertFalse(adaptive.shouldEscalate(result(3, 0.9f, 0), MAX_BOXES, 20 * MS, NO_DEADLINE));
+        assertEquals(1, adaptive.getRuns());
+        assertEquals(0, adaptive.getEscalations());
+    }
+
+    @Test
+    public void record_averagesTheCostOfEachDetector() {
+        AdaptiveDetection adaptive = new AdaptiveDetection();
+        adaptive.record(DetectionModel.MOBILE_NET, 100 * MS);
+        adaptive.record(DetectionModel.MOBILE_NET, 200 * MS);
+
+        assertEquals(120 * MS, adaptive.getCostNanos(DetectionModel.MOBILE_NET));
+        assertEquals(0, adaptive.getCostNanos(DetectionModel.EAST));
+    }
+
+    private static OCRPipelineResult result(int boxCount, float confidence, int emptyTexts) {
+        float[] corners = new float[boxCount * OCRPipelineResult.CORNERS_SIZE];
+        float[] confidences = new float[boxCount];
+        Arrays.fill(confidences, confidence);
+        String[] texts = new String[boxCount];
+        for (int box = 0; box < boxCount; box++) {
+            texts[box] = box < emptyTexts ? "" : "text";
+        }
+        return new OCRPipelineResult(corners, confidences, texts);
+    }
+}
@@ -0,0 +1,63 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+public class ArgbPixelBufferTest {
+
+    @Test
+    public void readPixels_copiesAtSameSize() {
+        int[] pixels = new int[]{0xff102030, 0xff405060, 0x80708090, 0x00000000};
+        int[] out = new int[4];
+
+        new ArgbPixelBuffer(2, 2, pixels).readPixels(out, 2, 2);
+
+        assertArrayEquals(pixels, out);
+    }
+
+    @Test
+    public void readPixels_downscalesEachChannelBilinearly() {
+        int[] pixels = new int[]{
+                0xff000000, 0xff000000, 0xff646464, 0xff646464,
+                0xff000000, 0xff000000, 0xff646464, 0xff646464
+        };
+        int[] out = new int[2];
+
+        new ArgbPixelBuffer(4, 2, pixels).readPixels(out, 2, 1);
+
+        assertArrayEquals(new int[]{0xff000000, 0xff646464}, out);
+    }
+
+    @Test
+    public void readPixels_interpolatesBetweenPixelsWhenUpscaling() {
+        int[] pixels = new int[]{0xff000000, 0xffc86400};
+        int[] out = new int[4];
+
+        new ArgbPixelBuffer(2, 1, pixels).readPixels(out, 4, 1);
+
+        assertArrayEquals(new int[]{0xff000000, 0xff321900, 0xff964b00, 0xffc86400}, out);
+    }
+
+    @Test
+    public void readPixels_readsRegions() {
+        int[] pixels = new int[]{
+                0xff000000, 0xff010101, 0xff020202,
+                0xff030303, 0xff040404, 0xff050505
+        };
+        int[] copied = new int[2];
+        int[] scaled = new int[1];
+
+        ArgbPixelBuffer image = new ArgbPixelBuffer(3, 2, pixels);
+        image.readPixels(copied, 1, 1, 2, 1, 2, 1);
+        image.readPixels(scaled, 1, 0, 2, 2, 1, 1);
+
+        assertArrayEquals(new int[]{0xff040404, 0xff050505}, copied);
+        assertArrayEquals(new int[]{0xff030303}, scaled);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsTooFewPixels() {
+        new ArgbPixelBuffer(2, 2, new int[3]);
+    }
+}
@@ -0,0 +1,52 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DecodeBudgetTest {
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void getSampleSize_keepsTheMinimumShortSide() {
+        DecodeBudget budget = new DecodeBudget(1280, 64 * MB);
+
+        assertEquals(1, budget.getSampleSize(640, 480, 1));
+        assertEquals(1, budget.getSampleSize(2000, 1500, 1));
+        assertEquals(2, budget.getSampleSize(4000, 3000, 1));
+        assertEquals(2, budget.getSampleSize(3000, 4000, 1));
+        assertEquals(4, budget.getSampleSize(12000, 9000, 1));
+    }
+
+    @Test
+    public void getSampleSize_fitsTheCopiesInTheBudget() {
+        DecodeBudget budget = new DecodeBudget(1280, 16 * MB);
+
+        // 2000 x 1500 pixels take 11.4 MB.
+        assertEquals(2, budget.getSampleSize(4000, 3000, 1));
+        assertEquals(4, budget.getSampleSize(4000, 3000, 2));
+        assertTrue(2 * DecodeBudget.getBytes(4000, 3000, 4) <= 16 * MB);
+    }
+
+    @Test
+    public void getSampleSize_stopsAtOnePixel() {
+        DecodeBudget budget = new DecodeBudget(1, 1);
+
+        assertEquals(4, budget.getSampleSize(4, 3, 1));
+    }
+
+    @Test
+    public void getBytes_roundsSampledSizesUp() {
+        assertEquals(3 * 2 * DecodeBudget.BYTES_PER_PIXEL, DecodeBudget.getBytes(5, 3, 2));
+    }
+
+    @Test
+    public void forDetection_keepsMoreDetailForTiledDetection() {
+        DecodeBudget budget = DecodeBudget.forDetection(DetectionModel.EAST, false, MB);
+        DecodeBudget tiledBudget = DecodeBudget.forDetection(DetectionModel.EAST, true, MB);
+
+        assertEquals(320 * DecodeBudget.RECOGNITION_SCALE, budget.getMinShortSide());
+        assertTrue(tiledBudget.getMinShortSide() > budget.getMinShortSide());
+    }
+}
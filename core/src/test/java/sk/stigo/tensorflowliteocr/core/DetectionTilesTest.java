@@ -0,0 +1,105 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DetectionTilesTest {
+    private static final float TOLERANCE = 1e-3f;
+
+    @Test
+    public void plan_keepsImagesNearTheInputSizeWhole() {
+        DetectionTiles tiles = DetectionTiles.plan(640, 480, 320, 320);
+
+        assertFalse(tiles.isTiled());
+        assertEquals(1, tiles.getCount());
+        assertEquals(640, tiles.getWidth(0));
+        assertEquals(480, tiles.getHeight(0));
+    }
+
+    @Test
+    public void plan_coversMediumImagesWithTilesOfTwiceTheInputSize() {
+        DetectionTiles tiles = DetectionTiles.plan(1280, 960, 320, 320);
+
+        // The whole image, then 3 columns and 2 rows.
+        assertEquals(7, tiles.getCount());
+        assertEquals(1280, tiles.getWidth(0));
+        assertEquals(960, tiles.getHeight(0));
+        assertTile(tiles, 1, 0, 0, 640);
+        assertTile(tiles, 2, 320, 0, 640);
+        assertTile(tiles, 3, 640, 0, 640);
+        assertTile(tiles, 4, 0, 320, 640);
+        assertTile(tiles, 6, 640, 320, 640);
+    }
+
+    @Test
+    public void plan_growsTilesInsteadOfExceedingTheTilesPerSide() {
+        DetectionTiles tiles = DetectionTiles.plan(4000, 3000, 320, 320);
+
+        assertTrue(tiles.isTiled());
+        assertEquals(1 + DetectionTiles.MAX_TILES_PER_SIDE * DetectionTiles.MAX_TILES_PER_SIDE, tiles.getCount());
+        assertTile(tiles, 1, 0, 0, 1600);
+        assertTile(tiles, 2, 1200, 0, 1600);
+        assertTile(tiles, 3, 2400, 0, 1600);
+        assertTile(tiles, 9, 2400, 1400, 1600);
+    }
+
+    @Test
+    public void mapCandidates_scalesBoxesIntoImageCoordinates() {
+        DetectionTiles tiles = DetectionTiles.plan(1280, 960, 320, 320);
+        float[] boxes = new float[]{160f, 100f, 40f, 20f, 0f};
+        float[] outBoxes = new float[2 * RotatedNms.BOX_SIZE];
+        float[] outConfidences = new float[2];
+
+        int mapped = tiles.mapCandidates(3, boxes, new float[]{0.9f}, 1, outBoxes, outConfidences, 1);
+
+        assertEquals(1, mapped);
+        assertArrayEquals(
+                new float[]{0f, 0f, 0f, 0f, 0f, 960f, 200f, 80f, 40f, 0f},
+                outBoxes,
+                TOLERANCE
+        );
+        assertEquals(0.9f, outConfidences[1], 0f);
+    }
+
+    @Test
+    public void mapCandidates_leavesBoxesAtInnerEdgesToTheNeighbouringTile() {
+        DetectionTiles tiles = DetectionTiles.plan(1280, 960, 320, 320);
+        float[] boxes = new float[]{
+                // Touches the left image border: kept.
+                10f, 100f, 20f, 10f, 0f,
+                // Touches the right edge, shared with the next tile: dropped.
+                310f, 100f, 20f, 10f, 0f,
+                // Touches the bottom edge, shared with the tile below: dropped.
+                100f, 318f, 20f, 10f, 0f
+        };
+        float[] outBoxes = new float[3 * RotatedNms.BOX_SIZE];
+
+        int mapped = tiles.mapCandidates(1, boxes, new float[3], 3, outBoxes, new float[3], 0);
+
+        assertEquals(1, mapped);
+        assertEquals(20f, outBoxes[0], TOLERANCE);
+    }
+
+    @Test
+    public void setBox_invertsGetCorners() {
+        float[] box = new float[]{50f, 60f, 30f, 10f, -20f};
+        float[] corners = new float[8];
+        float[] out = new float[RotatedNms.BOX_SIZE];
+
+        RotatedNms.getCorners(box, 0, corners, 0);
+        DetectionTiles.setBox(corners, out, 0);
+
+        assertArrayEquals(box, out, TOLERANCE);
+    }
+
+    private static void assertTile(DetectionTiles tiles, int tile, int x, int y, int size) {
+        assertEquals(x, tiles.getX(tile));
+        assertEquals(y, tiles.getY(tile));
+        assertEquals(size, tiles.getWidth(tile));
+        assertEquals(size, tiles.getHeight(tile));
+    }
+}
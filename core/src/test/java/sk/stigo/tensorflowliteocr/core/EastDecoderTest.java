@@ -0,0 +1,155 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.tensorflow.lite.DataType;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+public class EastDecoderTest {
+    private static final float TOLERANCE = 1e-3f;
+
+    @Test
+    public void decode_skipsCellsBelowThreshold() {
+        EastDecoder decoder = new EastDecoder();
+        Map<Integer, Object> outputs = decoder.getOutputs();
+        ByteBuffer scores = (ByteBuffer) outputs.get(0);
+
+        scores.putFloat(cellOffset(3, 7), 0.49f);
+        scores.putFloat(cellOffset(40, 2), 0.5f);
+        scores.putFloat(cellOffset(79, 79), 0.9f);
+
+        assertEquals(2, decoder.decode(0.5f));
+        assertEquals(0.5f, decoder.getConfidences()[0], 0f);
+        assertEquals(0.9f, decoder.getConfidences()[1], 0f);
+    }
+
+    @Test
+    public void decode_matchesRotatedRectGeometry() {
+        EastDecoder decoder = new EastDecoder();
+        Map<Integer, Object> outputs = decoder.getOutputs();
+        ByteBuffer scores = (ByteBuffer) outputs.get(0);
+        ByteBuffer geometries = (ByteBuffer) outputs.get(1);
+
+        int x = 12;
+        int y = 30;
+        float[] geometry = new float[]{6f, 40f, 9f, 25f, 0.3f};
+        scores.putFloat(cellOffset(y, x), 0.8f);
+        for (int k = 0; k < geometry.length; k++) {
+            geometries.putFloat(cellOffset(y, x) * 5 + k * 4, geometry[k]);
+        }
+
+        assertEquals(1, decoder.decode(0.5f));
+
+        double h = geometry[0] + geometry[2];
+        double w = geometry[1] + geometry[3];
+        double cos = Math.cos(geometry[4]);
+        double sin = Math.sin(geometry[4]);
+        double offsetX = x * 4.0 + cos * geometry[1] + sin * geometry[2];
+        double offsetY = y * 4.0 - sin * geometry[1] + cos * geometry[2];
+        double centerX = 0.5 * ((-sin * h + offsetX) + (-cos * w + offsetX));
+        double centerY = 0.5 * ((-cos * h + offsetY) + (sin * w + offsetY));
+
+        float[] boxes = decoder.getBoxes();
+        assertEquals(centerX, boxes[0], TOLERANCE);
+        assertEquals(centerY, boxes[1], TOLERANCE);
+        assertEquals(w, boxes[2], TOLERANCE);
+        assertEquals(h, boxes[3], TOLERANCE);
+        assertEquals(-geometry[4] * 180.0 / Math.PI, boxes[4], TOLERANCE);
+    }
+
+    @Test
+    public void decode_comparesQuantizedScoresWithoutDequantizingSkippedCells() {
+        Quantization scoreQuantization = new Quantization(DataType.UINT8, 1f / 256f, 0);
+        Quantization geometryQuantization = new Quantization(DataType.INT8, 0.5f, 10);
+        EastDecoder decoder = new EastDecoder(scoreQuantization, geometryQuantization);
+        Map<Integer, Object> outputs = decoder.getOutputs();
+        ByteBuffer scores = (ByteBuffer) outputs.get(0);
+        ByteBuffer geometries = (ByteBuffer) outputs.get(1);
+
+        int below = 3 * EastDecoder.OUTPUT_WIDTH + 7;
+        int at = 40 * EastDecoder.OUTPUT_WIDTH + 2;
+        scores.put(below, (byte) 127);
+        scores.put(at, (byte) 128);
+        // Geometry of 0 after dequantization: top, right, bottom, left and angle.
+        for (int k = 0; k < 5; k++) {
+            geometries.put(at * 5 + k, (byte) 10);
+        }
+        geometries.put(at * 5 + 1, (byte) 30);
+
+        assertEquals(1, decoder.decode(0.5f));
+        assertEquals(0.5f, decoder.getConfidences()[0], 0f);
+        assertEquals(10f, decoder.getBoxes()[2], TOLERANCE);
+        assertEquals(0f, decoder.getBoxes()[3], TOLERANCE);
+    }
+
+    @Test
+    public void decode_findsNoCandidatesWhenNothingPasses() {
+        EastDecoder decoder = new EastDecoder();
+        ByteBuffer scores = (ByteBuffer) decoder.getOutputs().get(0);
+        scores.putFloat(cellOffset(10, 10), 0.3f);
+        scores.putFloat(cellOffset(20, 20), 0.45f);
+
+        assertEquals(0, decoder.decode(0.5f, true, 10));
+        assertEquals(0, decoder.getCount());
+    }
+
+    @Test
+    public void decode_mergesOverlappingCandidatesOfOneRegionOnly() {
+        EastDecoder decoder = new EastDecoder();
+        Map<Integer, Object> outputs = decoder.getOutputs();
+        ByteBuffer scores = (ByteBuffer) outputs.get(0);
+        ByteBuffer geometries = (ByteBuffer) outputs.get(1);
+
+        // One word of three neighbouring cells, each predicting nearly the same box, and
+        // an identical box predicted by a cell of a separate region.
+        putCell(scores, geometries, 30, 10, 0.6f, new float[]{4f, 20f, 4f, 4f, 0f});
+        putCell(scores, geometries, 30, 11, 0.9f, new float[]{4f, 16f, 4f, 8f, 0f});
+        putCell(scores, geometries, 30, 12, 0.6f, new float[]{4f, 12f, 4f, 12f, 0f});
+        putCell(scores, geometries, 30, 14, 0.7f, new float[]{4f, 12f, 4f, 20f, 0f});
+
+        assertEquals(4, decoder.decode(0.5f));
+        assertEquals(2, decoder.decode(0.5f, true, EastDecoder.MAX_CANDIDATES));
+        assertEquals(0.9f, decoder.getConfidences()[0], 0f);
+        assertEquals(0.7f, decoder.getConfidences()[1], 0f);
+        assertEquals(48f, decoder.getBoxes()[0], TOLERANCE);
+        assertEquals(24f, decoder.getBoxes()[2], TOLERANCE);
+    }
+
+    @Test
+    public void decode_keepsTheBestCandidatesInOrder() {
+        EastDecoder decoder = new EastDecoder();
+        ByteBuffer scores = (ByteBuffer) decoder.getOutputs().get(0);
+        float[] cellScores = new float[]{0.6f, 0.9f, 0.7f, 0.9f, 0.8f};
+        for (int x = 0; x < cellScores.length; x++) {
+            scores.putFloat(cellOffset(5, x * 2), cellScores[x]);
+        }
+
+        assertEquals(3, decoder.decode(0.5f, false, 3));
+        assertEquals(0.9f, decoder.getConfidences()[0], 0f);
+        assertEquals(0.9f, decoder.getConfidences()[1], 0f);
+        assertEquals(0.8f, decoder.getConfidences()[2], 0f);
+        assertEquals(24f, decoder.getBoxes()[RotatedNms.BOX_SIZE], TOLERANCE);
+    }
+
+    @Test
+    public void trigonometryTable_isAccurate() {
+        for (float angle = -4f; angle <= 4f; angle += 0.001f) {
+            assertEquals(Math.cos(angle), EastDecoder.cos(angle), 1e-5);
+            assertEquals(Math.sin(angle), EastDecoder.sin(angle), 1e-5);
+        }
+    }
+
+    private static void putCell(ByteBuffer scores, ByteBuffer geometries, int y, int x, float score, float[] geometry) {
+        scores.putFloat(cellOffset(y, x), score);
+        for (int k = 0; k < geometry.length; k++) {
+            geometries.putFloat(cellOffset(y, x) * 5 + k * 4, geometry[k]);
+        }
+    }
+
+    private static int cellOffset(int y, int x) {
+        return (y * EastDecoder.OUTPUT_WIDTH + x) * 4;
+    }
+}
@@ -0,0 +1,45 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+    @Test
+    public void emptyHistogram_reportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(50));
+        assertEquals(0, histogram.getMeanNanos(), 0);
+    }
+
+    @Test
+    public void percentiles_areBucketUpperBoundsCappedAtMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(3_000);
+        }
+        histogram.record(10_000_000);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(10_000_000, histogram.getMaxNanos());
+        // 3 us falls into the bucket below 4 us.
+        assertEquals(4_000, histogram.getPercentileNanos(50));
+        assertEquals(4_000, histogram.getPercentileNanos(99));
+        assertEquals(10_000_000, histogram.getPercentileNanos(100));
+        assertEquals((99 * 3_000 + 10_000_000) / 100.0, histogram.getMeanNanos(), 1e-6);
+    }
+
+    @Test
+    public void reset_clearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_000_000);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getSumNanos());
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(0, histogram.getPercentileNanos(99));
+    }
+}
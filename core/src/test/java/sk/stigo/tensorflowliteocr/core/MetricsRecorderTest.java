@@ -0,0 +1,70 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MetricsRecorderTest {
+    @Test
+    public void stagesAndCounters_areAggregated() {
+        MetricsRecorder recorder = new MetricsRecorder();
+        recorder.onStageStarted(Stage.NMS);
+        recorder.onStageFinished(Stage.NMS, 2_000_000);
+        recorder.onStageStarted(Stage.NMS);
+        recorder.onStageFinished(Stage.NMS, 4_000_000);
+        recorder.onCount(Counter.CANDIDATE_BOXES, 7);
+        recorder.onCount(Counter.CANDIDATE_BOXES, 3);
+
+        assertEquals(2, recorder.getHistogram(Stage.NMS).getCount());
+        assertEquals(4_000_000, recorder.getHistogram(Stage.NMS).getMaxNanos());
+        assertEquals(0, recorder.getHistogram(Stage.TOTAL).getCount());
+        assertEquals(10, recorder.getCounterTotal(Counter.CANDIDATE_BOXES));
+        assertEquals(3, recorder.getCounterLatest(Counter.CANDIDATE_BOXES));
+        assertEquals(0, recorder.getAllocatedBytes(Stage.NMS));
+    }
+
+    @Test
+    public void allocations_areAttributedToTheFinishedStage() {
+        AtomicLong allocated = new AtomicLong(1000);
+        MetricsRecorder recorder = new MetricsRecorder(allocated::get);
+
+        recorder.onStageStarted(Stage.TOTAL);
+        recorder.onStageStarted(Stage.WARPING);
+        allocated.addAndGet(64);
+        recorder.onStageFinished(Stage.WARPING, 1);
+        allocated.addAndGet(100);
+        recorder.onStageFinished(Stage.TOTAL, 1);
+
+        assertEquals(64, recorder.getAllocatedBytes(Stage.WARPING));
+        assertEquals(164, recorder.getAllocatedBytes(Stage.TOTAL));
+    }
+
+    @Test
+    public void toJson_listsEveryStageAndCounter() {
+        MetricsRecorder recorder = new MetricsRecorder(() -> 0);
+        recorder.onStageFinished(Stage.DETECTION_INFERENCE, 1_500_000);
+        String json = recorder.toJson();
+
+        assertTrue(json, json.startsWith("{\"stages\":{\"TOTAL\":{\"count\":0,"));
+        assertTrue(json, json.contains("\"DETECTION_INFERENCE\":{\"count\":1,\"meanMs\":1.500,"));
+        assertTrue(json, json.contains("\"allocatedBytes\":0"));
+        assertTrue(json, json.contains("\"RECOGNIZED_TEXTS\":{\"total\":0,\"latest\":0}"));
+        assertFalse(json, new MetricsRecorder().toJson().contains("allocatedBytes"));
+    }
+
+    @Test
+    public void reset_clearsEverything() {
+        MetricsRecorder recorder = new MetricsRecorder();
+        recorder.onStageFinished(Stage.TOTAL, 1_000);
+        recorder.onCount(Counter.NMS_SURVIVORS, 5);
+        recorder.reset();
+
+        assertEquals(0, recorder.getHistogram(Stage.TOTAL).getCount());
+        assertEquals(0, recorder.getCounterTotal(Counter.NMS_SURVIVORS));
+        assertEquals(0, recorder.getCounterLatest(Counter.NMS_SURVIVORS));
+    }
+}
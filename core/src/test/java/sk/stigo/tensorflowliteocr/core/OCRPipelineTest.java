@@ -0,0 +1,289 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Runs the whole pipeline on the desktop over the photos bundled with the app. The
+ * models are read from {@code ocr.models.dir} and the photos from {@code ocr.photos.dir};
+ * the tests are skipped when the models or the TFLite JNI library are not available.
+ */
+public class OCRPipelineTest {
+    private static OCRPipeline pipeline;
+    private static List<String> photos;
+    private static List<PixelBuffer> images;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        File modelsDirectory = new File(System.getProperty("ocr.models.dir", "../app/src/main/assets"));
+        File photosDirectory = new File(System.getProperty("ocr.photos.dir", "../app/src/main/assets/photo"));
+        Assume.assumeTrue("No models in " + modelsDirectory,
+                new File(modelsDirectory, "lite-model_keras-ocr_float16_2.tflite").isFile());
+
+        try {
+            nu.pattern.OpenCV.loadLocally();
+            pipeline = new OCRPipeline(new FileModelSource(modelsDirectory));
+        } catch (UnsatisfiedLinkError e) {
+            Assume.assumeNoException(e);
+        }
+
+        photos = new ArrayList<>();
+        images = new ArrayList<>();
+        File[] files = photosDirectory.listFiles();
+        Arrays.sort(files);
+        for (File file : files) {
+            photos.add(file.getName());
+            images.add(load(file));
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    @Test
+    public void run_isRepeatableAndBatchingDoesNotChangeTexts() {
+        for (DetectionModel detectionModel : DetectionModel.values()) {
+            for (int i = 0; i < images.size(); i++) {
+                String message = photos.get(i) + ", " + detectionModel;
+                OCRPipelineResult perCrop = pipeline.run(images.get(i), detectionModel, false, OCRPipeline.NO_DEADLINE);
+                OCRPipelineResult repeated = pipeline.run(images.get(i), detectionModel, false, OCRPipeline.NO_DEADLINE);
+                OCRPipelineResult batched = pipeline.run(images.get(i), detectionModel, true, OCRPipeline.NO_DEADLINE);
+
+                assertEquals(message, perCrop.getBoxCount() * OCRPipelineResult.CORNERS_SIZE, perCrop.getCorners().length);
+                assertEquals(message, perCrop.getTexts(), repeated.getTexts());
+                assertEquals(message, perCrop.getTexts(), batched.getTexts());
+            }
+        }
+    }
+
+    @Test
+    public void models_areLoadedOnDemandAndReloadedAfterRelease() throws IOException {
+        File modelsDirectory = new File(System.getProperty("ocr.models.dir", "../app/src/main/assets"));
+        try (OCRPipeline lazyPipeline = new OCRPipeline(new FileModelSource(modelsDirectory))) {
+            assertFalse(lazyPipeline.isLoaded(DetectionModel.MOBILE_NET));
+            assertFalse(lazyPipeline.isLoaded(DetectionModel.EAST));
+            assertFalse(lazyPipeline.isRecognitionLoaded());
+
+            lazyPipeline.warmUp(DetectionModel.EAST);
+            assertFalse(lazyPipeline.isLoaded(DetectionModel.MOBILE_NET));
+            assertTrue(lazyPipeline.isLoaded(DetectionModel.EAST));
+            assertTrue(lazyPipeline.isRecognitionLoaded());
+
+            OCRPipelineResult beforeRelease = lazyPipeline.run(images.get(0), DetectionModel.EAST, false, OCRPipeline.NO_DEADLINE);
+            lazyPipeline.releaseAll();
+            assertFalse(lazyPipeline.isLoaded(DetectionModel.EAST));
+            assertFalse(lazyPipeline.isRecognitionLoaded());
+
+            OCRPipelineResult afterRelease = lazyPipeline.run(images.get(0), DetectionModel.EAST, false, OCRPipeline.NO_DEADLINE);
+            assertEquals(beforeRelease.getTexts(), afterRelease.getTexts());
+            assertFalse(lazyPipeline.isLoaded(DetectionModel.MOBILE_NET));
+        }
+    }
+
+    @Test
+    public void run_keepsBoxesInsideTheImage() {
+        for (int i = 0; i < images.size(); i++) {
+            PixelBuffer image = images.get(i);
+            OCRPipelineResult result = pipeline.run(image, DetectionModel.EAST, false, OCRPipeline.NO_DEADLINE);
+
+            // Rotated boxes may poke slightly out of the frame, but not by more than a box.
+            for (int box = 0; box < result.getBoxCount(); box++) {
+                float confidence = result.getConfidence(box);
+                assertTrue(photos.get(i), confidence >= 0f && confidence <= 1f);
+                assertEquals(photos.get(i), result.getText(box).isEmpty(), confidence == 0f);
+                for (int corner = 0; corner < 4; corner++) {
+                    float x = result.getCorner(box, corner * 2);
+                    float y = result.getCorner(box, corner * 2 + 1);
+                    assertTrue(photos.get(i), x > -image.getWidth() / 2f && x < image.getWidth() * 1.5f);
+                    assertTrue(photos.get(i), y > -image.getHeight() / 2f && y < image.getHeight() * 1.5f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void recognize_reproducesTheTextsOfDetectedRegions() {
+        for (int i = 0; i < images.size(); i++) {
+            OCRPipelineResult detected = pipeline.run(images.get(i), DetectionModel.EAST, false, OCRPipeline.NO_DEADLINE);
+            OCRPipelineResult recognized = pipeline.recognize(
+                    images.get(i),
+                    detected.getCorners(),
+                    false,
+                    OCRPipeline.NO_DEADLINE
+            );
+
+            assertArrayEquals(photos.get(i), detected.getCorners(), recognized.getCorners(), 0f);
+            assertEquals(photos.get(i), detected.getTexts(), recognized.getTexts());
+        }
+    }
+
+    @Test
+    public void run_tiledDetectionIsRepeatableAndKeepsBoxesInsideTheImage() throws IOException {
+        File modelsDirectory = new File(System.getProperty("ocr.models.dir", "../app/src/main/assets"));
+        try (OCRPipeline tiledPipeline = new OCRPipeline(new FileModelSource(modelsDirectory))) {
+            tiledPipeline.setTiledDetection(true);
+            for (int i = 0; i < images.size(); i++) {
+                PixelBuffer image = images.get(i);
+                OCRPipelineResult result = tiledPipeline.run(image, DetectionModel.EAST, false, OCRPipeline.NO_DEADLINE);
+                OCRPipelineResult repeated = tiledPipeline.run(image, DetectionModel.EAST, false, OCRPipeline.NO_DEADLINE);
+
+                assertEquals(photos.get(i), result.getTexts(), repeated.getTexts());
+                for (int box = 0; box < result.getBoxCount(); box++) {
+                    for (int corner = 0; corner < 4; corner++) {
+                        float x = result.getCorner(box, corner * 2);
+                        float y = result.getCorner(box, corner * 2 + 1);
+                        assertTrue(photos.get(i), x > -image.getWidth() / 2f && x < image.getWidth() * 1.5f);
+                        assertTrue(photos.get(i), y > -image.getHeight() / 2f && y < image.getHeight() * 1.5f);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void run_bucketedRecognitionIsRepeatableAndKeepsTheBoxes() throws IOException {
+        File modelsDirectory = new File(System.getProperty("ocr.models.dir", "../app/src/main/assets"));
+        try (OCRPipeline bucketedPipeline = new OCRPipeline(new FileModelSource(modelsDirectory))) {
+            bucketedPipeline.setBucketedRecognition(true);
+            bucketedPipeline.warmUp(DetectionModel.EAST);
+            for (int i = 0; i < images.size(); i++) {
+                OCRPipelineResult expected = pipeline.run(images.get(i), DetectionModel.EAST, false, OCRPipeline.NO_DEADLINE);
+                OCRPipelineResult result = bucketedPipeline.run(images.get(i), DetectionModel.EAST, false, OCRPipeline.NO_DEADLINE);
+                OCRPipelineResult batched = bucketedPipeline.run(images.get(i), DetectionModel.EAST, true, OCRPipeline.NO_DEADLINE);
+
+                assertArrayEquals(photos.get(i), expected.getCorners(), result.getCorners(), 0f);
+                assertEquals(photos.get(i), result.getTexts(), batched.getTexts());
+            }
+        }
+    }
+
+    @Test
+    public void run_localityAwareMergingIsRepeatableAndKeepsBoxesInsideTheImage() throws IOException {
+        File modelsDirectory = new File(System.getProperty("ocr.models.dir", "../app/src/main/assets"));
+        try (OCRPipeline mergingPipeline = new OCRPipeline(new FileModelSource(modelsDirectory))) {
+            mergingPipeline.setLocalityAwareMerging(true);
+            for (int i = 0; i < images.size(); i++) {
+                PixelBuffer image = images.get(i);
+                OCRPipelineResult result = mergingPipeline.run(image, DetectionModel.EAST, false, OCRPipeline.NO_DEADLINE);
+                OCRPipelineResult repeated = mergingPipeline.run(image, DetectionModel.EAST, false, OCRPipeline.NO_DEADLINE);
+
+                assertEquals(photos.get(i), result.getTexts(), repeated.getTexts());
+                for (int box = 0; box < result.getBoxCount(); box++) {
+                    for (int corner = 0; corner < 4; corner++) {
+                        float x = result.getCorner(box, corner * 2);
+                        float y = result.getCorner(box, corner * 2 + 1);
+                        assertTrue(photos.get(i), x > -image.getWidth() / 2f && x < image.getWidth() * 1.5f);
+                        assertTrue(photos.get(i), y > -image.getHeight() / 2f && y < image.getHeight() * 1.5f);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void run_adaptiveDetectionReturnsTheEastResultWhenItEscalates() throws IOException {
+        File modelsDirectory = new File(System.getProperty("ocr.models.dir", "../app/src/main/assets"));
+        try (OCRPipeline adaptivePipeline = new OCRPipeline(new FileModelSource(modelsDirectory))) {
+            // No mean score reaches 1.1, so every MobileNet pass is escalated.
+            AdaptiveDetection adaptiveDetection = new AdaptiveDetection(AdaptiveDetection.NO_BUDGET, 1.1f, 1f);
+            adaptivePipeline.setAdaptiveDetection(adaptiveDetection);
+            for (int i = 0; i < images.size(); i++) {
+                OCRPipelineResult expected = pipeline.run(images.get(i), DetectionModel.EAST, false, OCRPipeline.NO_DEADLINE);
+                OCRPipelineResult result = adaptivePipeline.run(images.get(i), DetectionModel.MOBILE_NET, false, OCRPipeline.NO_DEADLINE);
+
+                assertArrayEquals(photos.get(i), expected.getCorners(), result.getCorners(), 0f);
+                assertEquals(photos.get(i), expected.getTexts(), result.getTexts());
+            }
+            assertEquals(images.size(), adaptiveDetection.getEscalations());
+            assertTrue(adaptiveDetection.getCostNanos(DetectionModel.EAST) > 0);
+        }
+    }
+
+    @Test
+    public void runScheduled_recognizesEveryBoxWithoutDeadlineAndDefersThemAfterIt() {
+        RecognitionSchedule schedule = new RecognitionSchedule();
+        for (int i = 0; i < images.size(); i++) {
+            OCRPipelineResult expected = pipeline.run(images.get(i), DetectionModel.EAST, false, OCRPipeline.NO_DEADLINE);
+            List<OCRPipelineResult> partials = new ArrayList<>();
+            List<float[]> deferred = new ArrayList<>();
+            OCRPipeline.ProgressListener listener = new OCRPipeline.ProgressListener() {
+                @Override
+                public void onPartialResult(OCRPipelineResult partial) {
+                    partials.add(partial);
+                }
+
+                @Override
+                public void onDeferred(float[] corners) {
+                    deferred.add(corners);
+                }
+            };
+
+            OCRPipelineResult result = pipeline.runScheduled(
+                    images.get(i), DetectionModel.EAST, false, OCRPipeline.NO_DEADLINE, schedule, listener);
+            assertEquals(photos.get(i), expected.getBoxCount(), result.getBoxCount());
+            assertEquals(photos.get(i), new HashSet<>(expected.getTexts()), new HashSet<>(result.getTexts()));
+            assertTrue(photos.get(i), deferred.isEmpty());
+            if (result.getBoxCount() > 0) {
+                assertArrayEquals(photos.get(i), result.getCorners(), partials.get(partials.size() - 1).getCorners(), 0f);
+            }
+
+            // The deadline has passed by the time detection finishes.
+            OCRPipelineResult late = pipeline.runScheduled(
+                    images.get(i), DetectionModel.EAST, false, System.nanoTime(), schedule, listener);
+            assertEquals(photos.get(i), 0, late.getBoxCount());
+            if (expected.getBoxCount() > 0) {
+                assertEquals(photos.get(i), 1, deferred.size());
+                assertArrayEquals(photos.get(i), result.getCorners(), deferred.get(0), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void run_readsSidewaysPhotosUpright() {
+        for (int i = 0; i < images.size(); i++) {
+            PixelBuffer image = images.get(i);
+            int[] upright = new int[image.getWidth() * image.getHeight()];
+            image.readPixels(upright, image.getWidth(), image.getHeight());
+            // Stored rotated counterclockwise, as a camera held upright writes a landscape sensor image.
+            int[] stored = new int[upright.length];
+            Orientation.ROTATE_270.reorient(upright, image.getWidth(), image.getHeight(), stored);
+            PixelBuffer sideways = new OrientedPixelBuffer(
+                    new ArgbPixelBuffer(image.getHeight(), image.getWidth(), stored),
+                    Orientation.ROTATE_90
+            );
+
+            OCRPipelineResult expected = pipeline.run(image, DetectionModel.EAST, false, OCRPipeline.NO_DEADLINE);
+            OCRPipelineResult result = pipeline.run(sideways, DetectionModel.EAST, false, OCRPipeline.NO_DEADLINE);
+
+            assertArrayEquals(photos.get(i), expected.getCorners(), result.getCorners(), 0.01f);
+            assertEquals(photos.get(i), expected.getTexts(), result.getTexts());
+        }
+    }
+
+    private static PixelBuffer load(File file) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+        return new ArgbPixelBuffer(image.getWidth(), image.getHeight(), pixels);
+    }
+}
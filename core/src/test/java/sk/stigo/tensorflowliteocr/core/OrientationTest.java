@@ -0,0 +1,68 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class OrientationTest {
+    @Test
+    public void fromExif_followsTheTagValues() {
+        assertEquals(Orientation.NORMAL, Orientation.fromExif(1));
+        assertEquals(Orientation.ROTATE_180, Orientation.fromExif(3));
+        assertEquals(Orientation.ROTATE_90, Orientation.fromExif(6));
+        assertEquals(Orientation.ROTATE_270, Orientation.fromExif(8));
+        assertEquals(Orientation.NORMAL, Orientation.fromExif(0));
+        assertEquals(Orientation.NORMAL, Orientation.fromExif(9));
+    }
+
+    @Test
+    public void getStored_mapsUprightCornersOfARotatedPhoto() {
+        // A 40 x 30 photo stored sideways: upright it is 30 wide and 40 high.
+        Orientation orientation = Orientation.ROTATE_90;
+
+        // The upright top left corner is the stored bottom left one.
+        assertEquals(0f, orientation.getStoredX(0f, 0f, 40), 0f);
+        assertEquals(30f, orientation.getStoredY(0f, 0f, 30), 0f);
+        // The upright top right corner is the stored top left one.
+        assertEquals(0f, orientation.getStoredX(30f, 0f, 40), 0f);
+        assertEquals(0f, orientation.getStoredY(30f, 0f, 30), 0f);
+    }
+
+    @Test
+    public void getStoredRegion_coversTheSameStoredPixelsAsTheirPoints() {
+        int[] region = new int[4];
+        for (Orientation orientation : Orientation.values()) {
+            orientation.getStoredRegion(2, 3, 5, 7, 40, 30, region);
+            float x0 = orientation.getStoredX(2f, 3f, 40);
+            float y0 = orientation.getStoredY(2f, 3f, 30);
+            float x1 = orientation.getStoredX(7f, 10f, 40);
+            float y1 = orientation.getStoredY(7f, 10f, 30);
+
+            assertArrayEquals(orientation.name(), new int[]{
+                    (int) Math.min(x0, x1), (int) Math.min(y0, y1),
+                    (int) Math.abs(x1 - x0), (int) Math.abs(y1 - y0)
+            }, region);
+        }
+    }
+
+    @Test
+    public void reorient_rotatesPixels() {
+        // Stored 3 x 2:  1 2 3
+        //                4 5 6
+        int[] stored = {1, 2, 3, 4, 5, 6};
+        int[] upright = new int[6];
+
+        Orientation.ROTATE_90.reorient(stored, 3, 2, upright);
+        assertArrayEquals(new int[]{4, 1, 5, 2, 6, 3}, upright);
+
+        Orientation.ROTATE_270.reorient(stored, 3, 2, upright);
+        assertArrayEquals(new int[]{3, 6, 2, 5, 1, 4}, upright);
+
+        Orientation.ROTATE_180.reorient(stored, 3, 2, upright);
+        assertArrayEquals(new int[]{6, 5, 4, 3, 2, 1}, upright);
+
+        Orientation.FLIP_HORIZONTAL.reorient(stored, 3, 2, upright);
+        assertArrayEquals(new int[]{3, 2, 1, 6, 5, 4}, upright);
+    }
+}
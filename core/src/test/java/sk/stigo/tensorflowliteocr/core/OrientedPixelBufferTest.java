@@ -0,0 +1,68 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class OrientedPixelBufferTest {
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 6;
+
+    @Test
+    public void readPixels_readsTheUprightImage() {
+        int[] stored = gradient(WIDTH, HEIGHT);
+        for (Orientation orientation : Orientation.values()) {
+            OrientedPixelBuffer image = new OrientedPixelBuffer(new ArgbPixelBuffer(WIDTH, HEIGHT, stored), orientation);
+            int width = image.getWidth();
+            int height = image.getHeight();
+            int[] upright = new int[width * height];
+            orientation.reorient(stored, WIDTH, HEIGHT, upright);
+
+            int[] whole = new int[width * height];
+            image.readPixels(whole, width, height);
+            assertArrayEquals(orientation.name(), upright, whole);
+
+            int[] region = new int[3 * 2];
+            image.readPixels(region, 1, 2, 3, 2, 3, 2);
+            for (int y = 0; y < 2; y++) {
+                for (int x = 0; x < 3; x++) {
+                    assertEquals(orientation.name(), upright[(2 + y) * width + 1 + x], region[y * 3 + x]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void readPixels_resizesLikeTheUprightImage() {
+        int[] stored = gradient(WIDTH, HEIGHT);
+        int[] upright = new int[WIDTH * HEIGHT];
+        Orientation.ROTATE_270.reorient(stored, WIDTH, HEIGHT, upright);
+        PixelBuffer expected = new ArgbPixelBuffer(HEIGHT, WIDTH, upright);
+        PixelBuffer image = new OrientedPixelBuffer(new ArgbPixelBuffer(WIDTH, HEIGHT, stored), Orientation.ROTATE_270);
+
+        int[] expectedPixels = new int[3 * 4];
+        int[] pixels = new int[3 * 4];
+        expected.readPixels(expectedPixels, 3, 4);
+        image.readPixels(pixels, 3, 4);
+
+        assertArrayEquals(expectedPixels, pixels);
+    }
+
+    @Test
+    public void getSize_isUpright() {
+        PixelBuffer source = new ArgbPixelBuffer(WIDTH, HEIGHT, new int[WIDTH * HEIGHT]);
+
+        assertEquals(HEIGHT, new OrientedPixelBuffer(source, Orientation.ROTATE_90).getWidth());
+        assertEquals(WIDTH, new OrientedPixelBuffer(source, Orientation.ROTATE_90).getHeight());
+        assertEquals(WIDTH, new OrientedPixelBuffer(source, Orientation.ROTATE_180).getWidth());
+    }
+
+    private static int[] gradient(int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xff000000 | (i * 5) << 16 | (i * 3) << 8 | i;
+        }
+        return pixels;
+    }
+}
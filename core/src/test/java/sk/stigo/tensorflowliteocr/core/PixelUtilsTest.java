@@ -0,0 +1,110 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.tensorflow.lite.DataType;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class PixelUtilsTest {
+    private static final float TOLERANCE = 1e-4f;
+
+    @Test
+    public void argbToFloatBuffer_normalizesEachChannelAtSameSize() {
+        int[] pixels = new int[]{0xff102030, 0xff405060};
+        ByteBuffer out = allocate(2 * 3);
+
+        PixelUtils.argbToFloatBuffer(pixels, 2, 1, out, 2, 1,
+                new float[]{16f, 32f, 48f}, new float[]{2f, 4f, 8f}, false);
+
+        out.rewind();
+        assertEquals(0f, out.getFloat(), TOLERANCE);
+        assertEquals(0f, out.getFloat(), TOLERANCE);
+        assertEquals(0f, out.getFloat(), TOLERANCE);
+        assertEquals((0x40 - 16f) / 2f, out.getFloat(), TOLERANCE);
+        assertEquals((0x50 - 32f) / 4f, out.getFloat(), TOLERANCE);
+        assertEquals((0x60 - 48f) / 8f, out.getFloat(), TOLERANCE);
+    }
+
+    @Test
+    public void argbToFloatBuffer_downscalesBilinearly() {
+        int[] pixels = new int[]{
+                0xff000000, 0xff000000, 0xff646464, 0xff646464,
+                0xff000000, 0xff000000, 0xff646464, 0xff646464
+        };
+        ByteBuffer out = allocate(2);
+
+        PixelUtils.argbToFloatBuffer(pixels, 4, 2, out, 2, 1,
+                new float[]{0f}, new float[]{1f}, true);
+
+        out.rewind();
+        assertEquals(0f, out.getFloat(), TOLERANCE);
+        assertEquals(100f, out.getFloat(), TOLERANCE);
+    }
+
+    @Test
+    public void argbToFloatBuffer_convertsToGrayscale() {
+        int[] pixels = new int[]{0xffff0000, 0xff00ff00, 0xff0000ff};
+        ByteBuffer out = allocate(3);
+
+        PixelUtils.argbToFloatBuffer(pixels, 3, 1, out, 3, 1,
+                new float[]{0f}, new float[]{255f}, true);
+
+        out.rewind();
+        assertEquals(0.299f, out.getFloat(), TOLERANCE);
+        assertEquals(0.587f, out.getFloat(), TOLERANCE);
+        assertEquals(0.114f, out.getFloat(), TOLERANCE);
+    }
+
+    @Test
+    public void argbToQuantizedBuffer_looksUpEachChannel() {
+        Quantization quantization = new Quantization(DataType.UINT8, 1f / 255f, 0);
+        byte[][] tables = new byte[][]{
+                quantization.getLookupTable(0f, 255f),
+                quantization.getLookupTable(0f, 255f),
+                quantization.getLookupTable(0f, 255f)
+        };
+        int[] pixels = new int[]{0xff102030, 0xffc08040};
+        ByteBuffer out = ByteBuffer.allocateDirect(2 * 3);
+
+        PixelUtils.argbToQuantizedBuffer(pixels, 2, 1, out, 2, 1, tables, false);
+
+        out.rewind();
+        byte[] expected = new byte[]{0x10, 0x20, 0x30, (byte) 0xc0, (byte) 0x80, 0x40};
+        for (byte value : expected) {
+            assertEquals(value, out.get());
+        }
+    }
+
+    @Test
+    public void argbToQuantizedBuffer_matchesQuantizedFloatPathWhenResizing() {
+        Quantization quantization = new Quantization(DataType.INT8, 0.05f, -3);
+        int[] pixels = new int[]{
+                0xff000000, 0xff202020, 0xff646464, 0xff808080,
+                0xff101010, 0xff303030, 0xff747474, 0xffffffff
+        };
+        ByteBuffer floats = allocate(2);
+        ByteBuffer quantized = ByteBuffer.allocateDirect(2);
+
+        PixelUtils.argbToFloatBuffer(pixels, 4, 2, floats, 2, 1,
+                new float[]{127.5f}, new float[]{127.5f}, true);
+        PixelUtils.argbToQuantizedBuffer(pixels, 4, 2, quantized, 2, 1,
+                new byte[][]{quantization.getLookupTable(127.5f, 127.5f)}, true);
+
+        floats.rewind();
+        quantized.rewind();
+        for (int i = 0; i < 2; i++) {
+            // The lookup rounds the gray value to an integer first: within one step.
+            float expected = floats.getFloat();
+            assertEquals(expected, quantization.dequantize(quantized.get()), quantization.getScale() + 1f / 127.5f);
+        }
+    }
+
+    private static ByteBuffer allocate(int floats) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(floats * 4);
+        buffer.order(ByteOrder.nativeOrder());
+        return buffer;
+    }
+}
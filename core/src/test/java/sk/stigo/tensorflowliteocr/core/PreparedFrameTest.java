@@ -0,0 +1,189 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Point;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+public class PreparedFrameTest {
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 31;
+    // Bytes before the crop, which the warp must leave alone.
+    private static final int OFFSET = 8;
+    // A 40x10 box in the middle of a 100x50 image, scaled to 124x31 with its aspect ratio kept.
+    private static final Point[] BOX = new Point[]{
+            new Point(20, 30), new Point(20, 20), new Point(60, 20), new Point(60, 30)
+    };
+    private static final int ASPECT_WIDTH = 124;
+
+    private static boolean openCvLoaded;
+
+    @BeforeClass
+    public static void setUp() {
+        try {
+            nu.pattern.OpenCV.loadLocally();
+            openCvLoaded = true;
+        } catch (UnsatisfiedLinkError e) {
+            openCvLoaded = false;
+        }
+    }
+
+    @Test
+    public void getAspectWidth_scalesTheBoxToTheHeight() {
+        // Bottom left, top left, top right, bottom right of a 40x10 box.
+        float[] corners = new float[]{0f, 10f, 0f, 0f, 40f, 0f, 40f, 10f};
+
+        assertEquals(124, PreparedFrame.getAspectWidth(corners, 0, 31));
+    }
+
+    @Test
+    public void getAspectWidth_measuresRotatedBoxesAlongTheirSides() {
+        // The 40x10 box turned by 90 degrees, its text running top to bottom.
+        float[] corners = new float[]{
+                0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f,
+                10f, 0f, 0f, 0f, 0f, 40f, 10f, 40f
+        };
+
+        assertEquals(124, PreparedFrame.getAspectWidth(corners, 1, 31));
+    }
+
+    @Test
+    public void warp_normalizesFloatCropsAtTheBufferPosition() {
+        Assume.assumeTrue("OpenCV not available", openCvLoaded);
+        PreparedFrame frame = new PreparedFrame(gray(100, 50, 100), WIDTH, HEIGHT);
+        ByteBuffer out = allocate(WIDTH * HEIGHT * 4);
+        try {
+            frame.warp(BOX, out, 10f, 2f);
+        } finally {
+            frame.release();
+        }
+
+        assertEquals(OFFSET + WIDTH * HEIGHT * 4, out.position());
+        assertEquals(0L, out.getLong(0));
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            assertEquals(45f, out.getFloat(OFFSET + i * 4), 1e-4f);
+        }
+    }
+
+    @Test
+    public void warp_padsFloatCropsKeepingTheAspectRatioWithBlack() {
+        Assume.assumeTrue("OpenCV not available", openCvLoaded);
+        PreparedFrame frame = new PreparedFrame(gray(100, 50, 100), WIDTH, HEIGHT);
+        frame.setTarget(WIDTH, true);
+        ByteBuffer out = allocate(WIDTH * HEIGHT * 4);
+        try {
+            frame.warp(BOX, out, 10f, 2f);
+        } finally {
+            frame.release();
+        }
+
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                float expected = x < ASPECT_WIDTH ? 45f : -5f;
+                assertEquals(x + "," + y, expected, out.getFloat(OFFSET + (y * WIDTH + x) * 4), 1e-4f);
+            }
+        }
+    }
+
+    @Test
+    public void warp_looksUpQuantizedCropsAndTheirPadding() {
+        Assume.assumeTrue("OpenCV not available", openCvLoaded);
+        byte[] inverted = new byte[256];
+        for (int gray = 0; gray < 256; gray++) {
+            inverted[gray] = (byte) (255 - gray);
+        }
+        PreparedFrame frame = new PreparedFrame(gray(100, 50, 100), WIDTH, HEIGHT);
+        frame.setTarget(WIDTH, true);
+        ByteBuffer out = allocate(WIDTH * HEIGHT);
+        try {
+            frame.warp(BOX, out, inverted);
+        } finally {
+            frame.release();
+        }
+
+        assertEquals(OFFSET + WIDTH * HEIGHT, out.position());
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int expected = x < ASPECT_WIDTH ? 155 : 255;
+                assertEquals(x + "," + y, expected, out.get(OFFSET + y * WIDTH + x) & 0xff);
+            }
+        }
+    }
+
+    @Test
+    public void warp_writesIdentityLookupsStraightAsGray() {
+        Assume.assumeTrue("OpenCV not available", openCvLoaded);
+        byte[] identity = new byte[256];
+        for (int gray = 0; gray < 256; gray++) {
+            identity[gray] = (byte) gray;
+        }
+        PreparedFrame frame = new PreparedFrame(gray(100, 50, 100), WIDTH, HEIGHT);
+        ByteBuffer out = allocate(2 * WIDTH * HEIGHT);
+        try {
+            frame.warp(BOX, out, identity);
+            frame.setTarget(WIDTH, true);
+            frame.warp(BOX, out, identity);
+        } finally {
+            frame.release();
+        }
+
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            assertEquals(100, out.get(OFFSET + i) & 0xff);
+        }
+        for (int x = 0; x < WIDTH; x++) {
+            int expected = x < ASPECT_WIDTH ? 100 : 0;
+            assertEquals(expected, out.get(OFFSET + WIDTH * HEIGHT + 15 * WIDTH + x) & 0xff);
+        }
+    }
+
+    @Test
+    public void warp_readsBoxesOfSidewaysImagesUpright() {
+        Assume.assumeTrue("OpenCV not available", openCvLoaded);
+        // Upright 80x20 image, dark on the left half and light on the right.
+        int[] upright = new int[80 * 20];
+        for (int y = 0; y < 20; y++) {
+            Arrays.fill(upright, y * 80, y * 80 + 40, argb(60));
+            Arrays.fill(upright, y * 80 + 40, y * 80 + 80, argb(180));
+        }
+        // Stored rotated counterclockwise, as a camera held upright writes a landscape sensor image.
+        int[] stored = new int[upright.length];
+        Orientation.ROTATE_270.reorient(upright, 80, 20, stored);
+        PixelBuffer sideways = new OrientedPixelBuffer(new ArgbPixelBuffer(20, 80, stored), Orientation.ROTATE_90);
+        Point[] box = new Point[]{new Point(4, 16), new Point(4, 4), new Point(76, 4), new Point(76, 16)};
+
+        PreparedFrame frame = new PreparedFrame(sideways, WIDTH, HEIGHT);
+        ByteBuffer out = allocate(WIDTH * HEIGHT * 4);
+        try {
+            frame.warp(box, out, 0f, 1f);
+        } finally {
+            frame.release();
+        }
+
+        for (int y = 5; y < HEIGHT - 5; y++) {
+            assertEquals(60f, out.getFloat(OFFSET + (y * WIDTH + 20) * 4), 1e-3f);
+            assertEquals(180f, out.getFloat(OFFSET + (y * WIDTH + 180) * 4), 1e-3f);
+        }
+    }
+
+    private static PixelBuffer gray(int width, int height, int gray) {
+        int[] pixels = new int[width * height];
+        Arrays.fill(pixels, argb(gray));
+        return new ArgbPixelBuffer(width, height, pixels);
+    }
+
+    private static int argb(int gray) {
+        return 0xff000000 | gray << 16 | gray << 8 | gray;
+    }
+
+    private static ByteBuffer allocate(int size) {
+        ByteBuffer out = ByteBuffer.allocateDirect(OFFSET + size).order(ByteOrder.nativeOrder());
+        out.position(OFFSET);
+        return out;
+    }
+}
@@ -0,0 +1,55 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.tensorflow.lite.DataType;
+
+public class QuantizationTest {
+    @Test
+    public void quantize_roundsAndSaturates() {
+        Quantization uint8 = new Quantization(DataType.UINT8, 0.5f, 10);
+        assertEquals(10, uint8.toInt(uint8.quantize(0f)));
+        assertEquals(13, uint8.toInt(uint8.quantize(1.4f)));
+        assertEquals(255, uint8.toInt(uint8.quantize(1000f)));
+        assertEquals(0, uint8.toInt(uint8.quantize(-1000f)));
+
+        Quantization int8 = new Quantization(DataType.INT8, 0.5f, -10);
+        assertEquals(127, int8.toInt(int8.quantize(1000f)));
+        assertEquals(-128, int8.toInt(int8.quantize(-1000f)));
+        assertEquals(-1f, int8.dequantize(int8.quantize(-1f)), 0f);
+    }
+
+    @Test
+    public void quantizeThreshold_isSmallestValueReachingTheThreshold() {
+        Quantization quantization = new Quantization(DataType.UINT8, 1f / 255f, 0);
+        for (float threshold : new float[]{0.1f, 0.4f, 0.5f, 0.9f}) {
+            int raw = quantization.quantizeThreshold(threshold);
+            assertTrue(quantization.dequantize((byte) raw) >= threshold - 1e-6f);
+            assertTrue(quantization.dequantize((byte) (raw - 1)) < threshold);
+        }
+    }
+
+    @Test
+    public void lookupTable_normalizesAndQuantizes() {
+        Quantization quantization = new Quantization(DataType.INT8, 1f / 128f, 0);
+        byte[] table = quantization.getLookupTable(128f, 128f);
+
+        assertEquals(-128, table[0]);
+        assertEquals(0, table[128]);
+        assertEquals(127, table[255]);
+    }
+
+    @Test
+    public void float32_isNotQuantized() {
+        assertFalse(Quantization.FLOAT32.isQuantized());
+        assertEquals(4, Quantization.FLOAT32.getBytesPerElement());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsOtherTypes() {
+        new Quantization(DataType.INT64, 1f, 0);
+    }
+}
@@ -0,0 +1,38 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class RecognitionCacheTest {
+    @Test
+    public void hash_coversEveryByteOfTheCrop() {
+        ByteBuffer crops = ByteBuffer.allocate(2 * 13);
+        long first = RecognitionCache.hash(crops, 0, 13);
+
+        assertEquals(first, RecognitionCache.hash(crops, 13, 13));
+        crops.put(25, (byte) 1);
+        assertNotEquals(first, RecognitionCache.hash(crops, 13, 13));
+        crops.put(25, (byte) 0);
+        crops.put(14, (byte) 1);
+        assertNotEquals(first, RecognitionCache.hash(crops, 13, 13));
+    }
+
+    @Test
+    public void put_evictsTheLeastRecentlyUsedCrops() {
+        RecognitionCache cache = new RecognitionCache(2);
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+        cache.get(1L);
+        cache.put(3L, "three");
+
+        assertEquals(2, cache.size());
+        assertEquals("one", cache.get(1L));
+        assertNull(cache.get(2L));
+        assertEquals("three", cache.get(3L));
+    }
+}
@@ -0,0 +1,70 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RecognitionGroupTimesTest {
+    private static final long MS = 1_000_000L;
+    private static final long NOW = 1_000 * MS;
+
+    @Test
+    public void record_keepsBatchedAndPerCropGroupsApart() {
+        RecognitionGroupTimes times = new RecognitionGroupTimes(TextRecognizer.BUCKET_WIDTHS);
+        times.record(true, TextRecognizer.IMAGE_WIDTH, 10 * MS);
+        times.record(false, TextRecognizer.IMAGE_WIDTH, 80 * MS);
+
+        assertEquals(10 * MS, times.getNanos(true, TextRecognizer.IMAGE_WIDTH));
+        assertEquals(80 * MS, times.getNanos(false, TextRecognizer.IMAGE_WIDTH));
+        assertEquals(0, times.getNanos(true, 400));
+    }
+
+    @Test
+    public void record_averagesGroupsOfTheSameKind() {
+        RecognitionGroupTimes times = new RecognitionGroupTimes(TextRecognizer.BUCKET_WIDTHS);
+        times.record(false, 64, 100 * MS);
+        times.record(false, 64, 200 * MS);
+
+        assertEquals(125 * MS, times.getNanos(false, 64));
+    }
+
+    @Test
+    public void fits_judgesAGroupByTheTimeOfItsOwnMode() {
+        RecognitionGroupTimes times = new RecognitionGroupTimes(TextRecognizer.BUCKET_WIDTHS);
+        times.record(true, TextRecognizer.IMAGE_WIDTH, 10 * MS);
+        times.record(false, TextRecognizer.IMAGE_WIDTH, 80 * MS);
+        long deadline = NOW + 50 * MS;
+
+        assertTrue(times.fits(true, TextRecognizer.IMAGE_WIDTH, NOW, deadline));
+        assertFalse(times.fits(false, TextRecognizer.IMAGE_WIDTH, NOW, deadline));
+        // A cheap narrow group does not vouch for a wide one.
+        times.record(true, 64, MS);
+        assertTrue(times.fits(true, 400, NOW, deadline));
+        times.record(true, 400, 60 * MS);
+        assertFalse(times.fits(true, 400, NOW, deadline));
+        assertTrue(times.fits(true, 64, NOW, deadline));
+    }
+
+    @Test
+    public void fits_noGroupAfterTheDeadline() {
+        RecognitionGroupTimes times = new RecognitionGroupTimes(TextRecognizer.BUCKET_WIDTHS);
+
+        assertTrue(times.fits(false, TextRecognizer.IMAGE_WIDTH, NOW, NOW + MS));
+        assertFalse(times.fits(false, TextRecognizer.IMAGE_WIDTH, NOW, NOW));
+        assertFalse(times.fits(false, TextRecognizer.IMAGE_WIDTH, NOW, NOW - MS));
+        assertTrue(times.fits(false, TextRecognizer.IMAGE_WIDTH, NOW, OCRPipeline.NO_DEADLINE));
+    }
+
+    @Test
+    public void clear_forgetsEveryAverage() {
+        RecognitionGroupTimes times = new RecognitionGroupTimes(TextRecognizer.BUCKET_WIDTHS);
+        times.record(true, 128, 10 * MS);
+        times.record(false, 128, 20 * MS);
+        times.clear();
+
+        assertEquals(0, times.getNanos(true, 128));
+        assertEquals(0, times.getNanos(false, 128));
+    }
+}
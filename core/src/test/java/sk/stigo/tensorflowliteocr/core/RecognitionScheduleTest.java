@@ -0,0 +1,56 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class RecognitionScheduleTest {
+    // Boxes of 10x10, 40x20 and 10x10 pixels, in OpenCV boxPoints order.
+    private static final float[] CORNERS = new float[]{
+            0f, 10f, 0f, 0f, 10f, 0f, 10f, 10f,
+            100f, 120f, 100f, 100f, 140f, 100f, 140f, 120f,
+            200f, 210f, 200f, 200f, 210f, 200f, 210f, 210f
+    };
+
+    @Test
+    public void order_byScoreAlone() {
+        RecognitionSchedule schedule = new RecognitionSchedule().setAreaWeight(0f);
+
+        assertArrayEquals(new int[]{2, 0, 1}, schedule.order(CORNERS, new float[]{0.8f, 0.6f, 0.9f}));
+    }
+
+    @Test
+    public void order_keepsDetectionOrderOfEqualPriorities() {
+        RecognitionSchedule schedule = new RecognitionSchedule().setAreaWeight(0f);
+
+        assertArrayEquals(new int[]{0, 1, 2}, schedule.order(CORNERS, new float[]{0.7f, 0.7f, 0.7f}));
+    }
+
+    @Test
+    public void order_prefersLargerBoxesOfSimilarScore() {
+        RecognitionSchedule schedule = new RecognitionSchedule();
+
+        assertArrayEquals(new int[]{1, 2, 0}, schedule.order(CORNERS, new float[]{0.8f, 0.7f, 0.9f}));
+    }
+
+    @Test
+    public void order_putsTheRegionOfInterestFirst() {
+        RecognitionSchedule schedule = new RecognitionSchedule()
+                .setAreaWeight(0f)
+                .setRegionOfInterest(190f, 190f, 220f, 220f, 2f);
+
+        assertArrayEquals(new int[]{2, 0, 1}, schedule.order(CORNERS, new float[]{0.8f, 0.7f, 0.5f}));
+    }
+
+    @Test
+    public void getArea_ofQuadrilaterals() {
+        assertEquals(100f, RecognitionSchedule.getArea(CORNERS, 0), 1e-4f);
+        assertEquals(800f, RecognitionSchedule.getArea(CORNERS, 1), 1e-4f);
+    }
+
+    @Test
+    public void order_ofNoBoxes() {
+        assertEquals(0, new RecognitionSchedule().order(new float[0], new float[0]).length);
+    }
+}
@@ -0,0 +1,85 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class RegionCacheTest {
+    private static final int SIZE = RegionCache.THUMBNAIL_SIZE * RegionCache.THUMBNAIL_SIZE;
+    private static final float[] CORNERS = new float[]{0f, 10f, 0f, 0f, 20f, 0f, 20f, 10f};
+    private static final OCRPipelineResult DETECTED = new OCRPipelineResult(CORNERS, new String[]{"42"});
+
+    @Test
+    public void lookup_returnsDetectedRegionsForUnchangedFrames() {
+        RegionCache cache = new RegionCache();
+        int[] thumbnail = gray(100);
+
+        assertNull(cache.lookup(thumbnail, 640, 480));
+        cache.remember(thumbnail, 640, 480, DETECTED);
+
+        assertArrayEquals(CORNERS, cache.lookup(gray(105), 640, 480), 0f);
+    }
+
+    @Test
+    public void lookup_detectsAgainAfterTheRefreshInterval() {
+        RegionCache cache = new RegionCache(2, RegionCache.DEFAULT_MAX_THUMBNAIL_DIFFERENCE);
+        cache.remember(gray(100), 640, 480, DETECTED);
+
+        assertNotNull(cache.lookup(gray(100), 640, 480));
+        assertNotNull(cache.lookup(gray(100), 640, 480));
+        assertNull(cache.lookup(gray(100), 640, 480));
+        assertNull(cache.lookup(gray(100), 640, 480));
+    }
+
+    @Test
+    public void lookup_detectsAgainWhenTheFrameChanges() {
+        RegionCache cache = new RegionCache();
+        cache.remember(gray(100), 640, 480, DETECTED);
+        assertNull(cache.lookup(gray(120), 640, 480));
+
+        cache.remember(gray(100), 640, 480, DETECTED);
+        assertNull(cache.lookup(gray(100), 480, 640));
+    }
+
+    @Test
+    public void accept_rejectsEmptyRegionsAndInvalidates() {
+        RegionCache cache = new RegionCache();
+        cache.remember(gray(100), 640, 480, DETECTED);
+
+        assertTrue(cache.accept(new OCRPipelineResult(CORNERS, new String[]{"43"})));
+        assertFalse(cache.accept(new OCRPipelineResult(CORNERS, new String[]{""})));
+        assertNull(cache.lookup(gray(100), 640, 480));
+    }
+
+    @Test
+    public void remember_doesNotCacheFramesWithoutText() {
+        RegionCache cache = new RegionCache();
+        cache.remember(gray(100), 640, 480, new OCRPipelineResult(new float[0], new String[0]));
+
+        assertNull(cache.lookup(gray(100), 640, 480));
+    }
+
+    @Test
+    public void thumbnail_isGrayscale() {
+        int[] pixels = new int[64 * 32];
+        Arrays.fill(pixels, 0xff808080);
+
+        int[] thumbnail = RegionCache.thumbnail(new ArgbPixelBuffer(64, 32, pixels));
+
+        assertEquals(SIZE, thumbnail.length);
+        assertArrayEquals(gray(128), thumbnail);
+    }
+
+    private static int[] gray(int value) {
+        int[] thumbnail = new int[SIZE];
+        Arrays.fill(thumbnail, value);
+        return thumbnail;
+    }
+}
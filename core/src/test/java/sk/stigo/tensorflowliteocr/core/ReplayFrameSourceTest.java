@@ -0,0 +1,45 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+public class ReplayFrameSourceTest {
+    @Test
+    public void nextFrame_cyclesTheImagesForTheGivenFrameCount() throws InterruptedException {
+        PixelBuffer first = new ArgbPixelBuffer(1, 1, new int[1]);
+        PixelBuffer second = new ArgbPixelBuffer(1, 1, new int[1]);
+        ReplayFrameSource source = new ReplayFrameSource(Arrays.asList(first, second), 1000, 3);
+
+        assertSame(first, source.nextFrame());
+        assertSame(second, source.nextFrame());
+        assertSame(first, source.nextFrame());
+        assertNull(source.nextFrame());
+    }
+
+    @Test
+    public void nextFrame_keepsTheFrameRate() throws InterruptedException {
+        ReplayFrameSource source = new ReplayFrameSource(
+                Collections.singletonList(new ArgbPixelBuffer(1, 1, new int[1])),
+                50,
+                6
+        );
+
+        long start = System.nanoTime();
+        while (source.nextFrame() != null) {
+            // Five intervals of 20 ms after the first frame.
+        }
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsNoImages() {
+        new ReplayFrameSource(Collections.emptyList(), 30, 1);
+    }
+}
@@ -0,0 +1,142 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class ResultCacheTest {
+    private static final float[] CORNERS = new float[]{0f, 10f, 0f, 0f, 20f, 0f, 20f, 10f};
+    private static final OCRPipelineResult RESULT = new OCRPipelineResult(CORNERS, new float[]{0.75f}, new String[]{"42"});
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("ocr-results").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void get_countsHitsAndMisses() {
+        ResultCache cache = new ResultCache();
+
+        assertNull(cache.get("a"));
+        cache.put("a", RESULT);
+
+        assertSame(RESULT, cache.get("a"));
+        assertEquals(1, cache.getMemoryHits());
+        assertEquals(0, cache.getDiskHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void put_evictsTheLeastRecentlyUsedEntries() {
+        ResultCache cache = new ResultCache(2, ResultCache.DEFAULT_MAX_BYTES, null, 0);
+        cache.put("a", RESULT);
+        cache.put("b", RESULT);
+        cache.get("a");
+        cache.put("c", RESULT);
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void put_keepsTheEstimatedBytesBounded() {
+        long entryBytes = ResultCache.estimateBytes("a", RESULT);
+        ResultCache cache = new ResultCache(100, entryBytes * 3, null, 0);
+        for (String key : new String[]{"a", "b", "c", "d", "e"}) {
+            cache.put(key, RESULT);
+        }
+
+        assertEquals(3, cache.size());
+        assertEquals(entryBytes * 3, cache.getBytes());
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("e"));
+    }
+
+    @Test
+    public void get_readsResultsWrittenByAnEarlierCache() {
+        new ResultCache(1, ResultCache.DEFAULT_MAX_BYTES, directory, 10).put("model/a", RESULT);
+
+        ResultCache restarted = new ResultCache(1, ResultCache.DEFAULT_MAX_BYTES, directory, 10);
+        OCRPipelineResult result = restarted.get("model/a");
+
+        assertNotNull(result);
+        assertArrayEquals(CORNERS, result.getCorners(), 0f);
+        assertEquals(RESULT.getTexts(), result.getTexts());
+        assertEquals(0.75f, result.getConfidence(0), 0f);
+        assertEquals(1, restarted.getDiskHits());
+        assertSame(result, restarted.get("model/a"));
+        assertEquals(1, restarted.getMemoryHits());
+    }
+
+    @Test
+    public void get_deletesFilesWithABoxCountTheyCannotHold() throws IOException {
+        new ResultCache(1, ResultCache.DEFAULT_MAX_BYTES, directory, 10).put("a", RESULT);
+        File file = directory.listFiles()[0];
+        try (DataOutputStream output = new DataOutputStream(new FileOutputStream(file))) {
+            output.writeInt(2);
+            output.writeUTF("a");
+            output.writeInt(Integer.MAX_VALUE);
+        }
+
+        ResultCache restarted = new ResultCache(1, ResultCache.DEFAULT_MAX_BYTES, directory, 10);
+
+        assertNull(restarted.get("a"));
+        assertEquals(1, restarted.getMisses());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void put_trimsTheDiskTier() {
+        ResultCache cache = new ResultCache(1, ResultCache.DEFAULT_MAX_BYTES, directory, 4);
+        for (int i = 0; i < 5; i++) {
+            cache.put("key" + i, RESULT);
+        }
+
+        assertTrue(directory.listFiles().length <= 4);
+        assertNotNull(cache.get("key4"));
+    }
+
+    @Test
+    public void key_dependsOnPixelsSizeAndSettings() {
+        int[] pixels = new int[8 * 4];
+        Arrays.fill(pixels, 0xff808080);
+        String key = ResultCache.key(new ArgbPixelBuffer(8, 4, pixels.clone()), "EAST");
+
+        assertEquals(key, ResultCache.key(new ArgbPixelBuffer(8, 4, pixels.clone()), "EAST"));
+        assertNotEquals(key, ResultCache.key(new ArgbPixelBuffer(8, 4, pixels.clone()), "MOBILE_NET"));
+        assertNotEquals(key, ResultCache.key(new ArgbPixelBuffer(4, 8, pixels.clone()), "EAST"));
+        pixels[13] = 0xff808081;
+        assertNotEquals(key, ResultCache.key(new ArgbPixelBuffer(8, 4, pixels), "EAST"));
+    }
+}
@@ -0,0 +1,114 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class RotatedNmsTest {
+    private static final float TOLERANCE = 1e-4f;
+
+    @Test
+    public void intersectionOverUnion_axisAligned() {
+        float[] boxes = new float[]{
+                10f, 10f, 20f, 10f, 0f,
+                20f, 10f, 20f, 10f, 0f,
+                100f, 100f, 20f, 10f, 0f
+        };
+
+        assertEquals(1f / 3f, RotatedNms.intersectionOverUnion(boxes, 0, 1), TOLERANCE);
+        assertEquals(0f, RotatedNms.intersectionOverUnion(boxes, 0, 2), 0f);
+        assertEquals(1f, RotatedNms.intersectionOverUnion(boxes, 1, 1), 0f);
+    }
+
+    @Test
+    public void intersectionOverUnion_rotated() {
+        // A unit square and the same square rotated by 45 degrees intersect in a regular
+        // octagon with area 2 * (sqrt(2) - 1).
+        float[] boxes = new float[]{
+                0f, 0f, 1f, 1f, 0f,
+                0f, 0f, 1f, 1f, 45f
+        };
+        float intersection = (float) (2 * (Math.sqrt(2) - 1));
+
+        assertEquals(intersection / (2f - intersection), RotatedNms.intersectionOverUnion(boxes, 0, 1), TOLERANCE);
+        assertEquals(intersection / (2f - intersection), RotatedNms.intersectionOverUnion(boxes, 1, 0), TOLERANCE);
+    }
+
+    @Test
+    public void intersectionOverUnion_enclosedBoxIsFullOverlap() {
+        float[] boxes = new float[]{
+                50f, 50f, 100f, 40f, -10f,
+                50f, 50f, 10f, 4f, -10f
+        };
+
+        assertEquals(1f, RotatedNms.intersectionOverUnion(boxes, 0, 1), 0f);
+    }
+
+    @Test
+    public void getCorners_matchesBoxPointsOrder() {
+        float[] corners = new float[8];
+
+        RotatedNms.getCorners(new float[]{10f, 20f, 4f, 2f, 0f}, 0, corners, 0);
+
+        assertArrayEquals(new float[]{8f, 21f, 8f, 19f, 12f, 19f, 12f, 21f}, corners, TOLERANCE);
+    }
+
+    @Test
+    public void run_keepsHighestScoringOfOverlappingBoxes() {
+        float[] boxes = new float[]{
+                10f, 10f, 20f, 10f, 0f,
+                11f, 10f, 20f, 10f, 0f,
+                100f, 100f, 20f, 10f, 0f,
+                101f, 100f, 20f, 10f, 5f
+        };
+        float[] scores = new float[]{0.6f, 0.9f, 0.7f, 0.7f};
+        RotatedNms nms = new RotatedNms();
+
+        int kept = nms.run(boxes, scores, 4, 0.5f, 0.4f, 0);
+
+        assertArrayEquals(new int[]{1, 2}, Arrays.copyOf(nms.getIndices(), kept));
+    }
+
+    @Test
+    public void run_appliesScoreThresholdAndTopK() {
+        float[] boxes = new float[]{
+                10f, 10f, 5f, 5f, 0f,
+                30f, 10f, 5f, 5f, 0f,
+                50f, 10f, 5f, 5f, 0f,
+                70f, 10f, 5f, 5f, 0f
+        };
+        float[] scores = new float[]{0.5f, 0.8f, 0.6f, 0.9f};
+        RotatedNms nms = new RotatedNms();
+
+        int kept = nms.run(boxes, scores, 4, 0.5f, 0.4f, 0);
+        assertArrayEquals(new int[]{3, 1, 2}, Arrays.copyOf(nms.getIndices(), kept));
+
+        kept = nms.run(boxes, scores, 4, 0.5f, 0.4f, 2);
+        assertArrayEquals(new int[]{3, 1}, Arrays.copyOf(nms.getIndices(), kept));
+    }
+
+    @Test
+    public void run_sortIsStableForEqualScores() {
+        float[] boxes = new float[5 * 40];
+        float[] scores = new float[40];
+        for (int i = 0; i < 40; i++) {
+            boxes[i * 5] = i * 10f;
+            boxes[i * 5 + 2] = 4f;
+            boxes[i * 5 + 3] = 4f;
+            scores[i] = i % 2 == 0 ? 0.7f : 0.8f;
+        }
+        RotatedNms nms = new RotatedNms();
+
+        int kept = nms.run(boxes, scores, 40, 0.5f, 0.4f, 0);
+
+        int[] expected = new int[40];
+        for (int i = 0; i < 20; i++) {
+            expected[i] = i * 2 + 1;
+            expected[20 + i] = i * 2;
+        }
+        assertArrayEquals(expected, Arrays.copyOf(nms.getIndices(), kept));
+    }
+}
@@ -0,0 +1,48 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RuntimeOptionsTest {
+    @Test
+    public void defaults_splitTheCoresBetweenDetectionAndRecognition() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        RuntimeOptions options = new RuntimeOptions();
+
+        assertTrue(options.getDetectionThreads() >= 1);
+        assertTrue(options.getRecognitionThreads() >= 1);
+        if (cores >= 2) {
+            assertTrue(options.getDetectionThreads() + options.getRecognitionThreads() <= cores);
+        }
+        assertTrue(options.isUseXnnpack());
+        assertFalse(options.isAllowFp16());
+    }
+
+    @Test
+    public void threadsPerRecognizer_isAnEqualShareOfAtLeastOne() {
+        RuntimeOptions options = new RuntimeOptions()
+                .setRecognitionThreads(4)
+                .setRecognitionPoolSize(2);
+        assertEquals(2, options.getThreadsPerRecognizer());
+
+        options.setRecognitionPoolSize(8);
+        assertEquals(1, options.getThreadsPerRecognizer());
+    }
+
+    @Test
+    public void copy_isIndependent() {
+        RuntimeOptions options = new RuntimeOptions().setDetectionThreads(3);
+        RuntimeOptions copy = new RuntimeOptions(options);
+        options.setDetectionThreads(1);
+
+        assertEquals(3, copy.getDetectionThreads());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setDetectionThreads_rejectsZero() {
+        new RuntimeOptions().setDetectionThreads(0);
+    }
+}
@@ -0,0 +1,259 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class StreamingOcrTest {
+    private static final float[] CORNERS = new float[]{0f, 10f, 0f, 0f, 20f, 0f, 20f, 10f};
+
+    @Test
+    public void submit_keepsOnlyTheLatestFrameWaitingForDetection() throws InterruptedException {
+        CountDownLatch detecting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingListener listener = new RecordingListener();
+        PixelBuffer first = frame();
+        PixelBuffer replaced = frame();
+        PixelBuffer latest = frame();
+
+        try (StreamingOcr stream = new StreamingOcr(new Stages() {
+            @Override
+            public float[] detect(PixelBuffer frame) {
+                if (frame == first) {
+                    detecting.countDown();
+                    await(release);
+                }
+                return CORNERS;
+            }
+        }, listener)) {
+            stream.submit(first);
+            assertTrue(detecting.await(5, TimeUnit.SECONDS));
+            stream.submit(replaced);
+            stream.submit(latest);
+            release.countDown();
+            stream.awaitIdle();
+
+            assertEquals(Collections.singletonList(replaced), listener.dropped);
+            assertEquals(2, listener.results.size());
+            assertSame(first, listener.results.get(0));
+            assertSame(latest, listener.results.get(1));
+            assertEquals(3, stream.getSubmittedFrames());
+            assertEquals(2, stream.getCompletedFrames());
+            assertEquals(1, stream.getDroppedFrames());
+            assertEquals(2, stream.getLatencies().getCount());
+        }
+    }
+
+    @Test
+    public void detection_overlapsWithRecognitionOfThePreviousFrame() throws InterruptedException {
+        CountDownLatch recognizing = new CountDownLatch(1);
+        CountDownLatch secondDetected = new CountDownLatch(1);
+        RecordingListener listener = new RecordingListener();
+        PixelBuffer first = frame();
+        PixelBuffer second = frame();
+
+        try (StreamingOcr stream = new StreamingOcr(new Stages() {
+            @Override
+            public float[] detect(PixelBuffer frame) {
+                if (frame == second) {
+                    secondDetected.countDown();
+                }
+                return CORNERS;
+            }
+
+            @Override
+            public OCRPipelineResult recognize(PixelBuffer frame, float[] corners) {
+                if (frame == first) {
+                    recognizing.countDown();
+                    // Completes only once the second frame was detected meanwhile.
+                    await(secondDetected);
+                }
+                return super.recognize(frame, corners);
+            }
+        }, listener)) {
+            stream.submit(first);
+            assertTrue(recognizing.await(5, TimeUnit.SECONDS));
+            stream.submit(second);
+            stream.awaitIdle();
+
+            assertEquals(0, secondDetected.getCount());
+            assertEquals(2, listener.results.size());
+            assertTrue(listener.dropped.isEmpty());
+        }
+    }
+
+    @Test
+    public void errors_areReportedPerFrameAndTheStreamGoesOn() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        PixelBuffer broken = frame();
+        PixelBuffer next = frame();
+
+        try (StreamingOcr stream = new StreamingOcr(new Stages() {
+            @Override
+            public float[] detect(PixelBuffer frame) {
+                if (frame == broken) {
+                    throw new IllegalStateException("broken");
+                }
+                return CORNERS;
+            }
+        }, listener)) {
+            stream.submit(broken);
+            stream.awaitIdle();
+            stream.submit(next);
+            stream.awaitIdle();
+
+            assertEquals(Collections.singletonList(broken), listener.errors);
+            assertEquals(Collections.singletonList(next), listener.results);
+            assertEquals(1, stream.getFailedFrames());
+        }
+    }
+
+    @Test
+    public void stream_processesEveryFrameOfASlowSourceAndReportsStats() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        List<PixelBuffer> images = Collections.singletonList(frame());
+
+        try (StreamingOcr stream = new StreamingOcr(new Stages(), listener)) {
+            stream.stream(new ReplayFrameSource(images, 200, 10));
+
+            assertEquals(10, stream.getSubmittedFrames());
+            assertEquals(10, stream.getCompletedFrames() + stream.getDroppedFrames());
+            assertEquals(stream.getCompletedFrames(), listener.results.size());
+            assertTrue(stream.getFramesPerSecond() > 0);
+            assertTrue(stream.toString().contains("submitted=10"));
+        }
+    }
+
+    @Test
+    public void close_dropsFramesLeftAndLaterSubmissions() throws InterruptedException {
+        CountDownLatch detecting = new CountDownLatch(1);
+        RecordingListener listener = new RecordingListener();
+        PixelBuffer blocked = frame();
+        PixelBuffer waiting = frame();
+        PixelBuffer late = frame();
+
+        StreamingOcr stream = new StreamingOcr(new Stages() {
+            @Override
+            public float[] detect(PixelBuffer frame) {
+                detecting.countDown();
+                // Stands for a stage that stops on interruption, as the pipeline does.
+                await(new CountDownLatch(1));
+                throw new CancellationException();
+            }
+        }, listener);
+        stream.submit(blocked);
+        assertTrue(detecting.await(5, TimeUnit.SECONDS));
+        stream.submit(waiting);
+        stream.close();
+        stream.submit(late);
+
+        assertTrue(listener.results.isEmpty());
+        assertEquals(3, listener.dropped.size());
+        assertTrue(listener.dropped.containsAll(Arrays.asList(blocked, waiting, late)));
+    }
+
+    @Test(timeout = 5000)
+    public void close_dropsTheFrameWaitingToBeHandedToRecognition() throws InterruptedException {
+        CountDownLatch recognizing = new CountDownLatch(1);
+        CountDownLatch detectingSecond = new CountDownLatch(1);
+        CountDownLatch detectingThird = new CountDownLatch(1);
+        RecordingListener listener = new RecordingListener();
+        PixelBuffer recognized = frame();
+        PixelBuffer detected = frame();
+        PixelBuffer handedOff = frame();
+
+        StreamingOcr stream = new StreamingOcr(new Stages() {
+            @Override
+            public float[] detect(PixelBuffer frame) {
+                if (frame == detected) {
+                    detectingSecond.countDown();
+                } else if (frame == handedOff) {
+                    detectingThird.countDown();
+                }
+                return CORNERS;
+            }
+
+            @Override
+            public OCRPipelineResult recognize(PixelBuffer frame, float[] corners) {
+                if (frame == recognized) {
+                    recognizing.countDown();
+                    await(new CountDownLatch(1));
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException();
+                }
+                return super.recognize(frame, corners);
+            }
+        }, listener);
+        stream.submit(recognized);
+        assertTrue(recognizing.await(5, TimeUnit.SECONDS));
+        stream.submit(detected);
+        assertTrue(detectingSecond.await(5, TimeUnit.SECONDS));
+        // Detected while the previous frame still waits for the blocked recognizer.
+        stream.submit(handedOff);
+        assertTrue(detectingThird.await(5, TimeUnit.SECONDS));
+        stream.close();
+        stream.awaitIdle();
+
+        assertTrue(listener.results.isEmpty());
+        assertEquals(1, Collections.frequency(listener.dropped, handedOff));
+        assertEquals(1, Collections.frequency(listener.dropped, detected));
+        assertEquals(1, Collections.frequency(listener.dropped, recognized));
+        assertEquals(3, stream.getDroppedFrames());
+    }
+
+    private static PixelBuffer frame() {
+        return new ArgbPixelBuffer(4, 4, new int[16]);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Stages implements StreamingOcr.Stages {
+        @Override
+        public float[] detect(PixelBuffer frame) {
+            return CORNERS;
+        }
+
+        @Override
+        public OCRPipelineResult recognize(PixelBuffer frame, float[] corners) {
+            return new OCRPipelineResult(corners, new String[]{"42"});
+        }
+    }
+
+    private static class RecordingListener implements StreamingOcr.Listener {
+        final List<PixelBuffer> results = Collections.synchronizedList(new ArrayList<>());
+        final List<PixelBuffer> dropped = Collections.synchronizedList(new ArrayList<>());
+        final List<PixelBuffer> errors = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void onResult(PixelBuffer frame, OCRPipelineResult result, long latencyNanos) {
+            results.add(frame);
+        }
+
+        @Override
+        public void onDropped(PixelBuffer frame) {
+            dropped.add(frame);
+        }
+
+        @Override
+        public void onError(PixelBuffer frame, RuntimeException e) {
+            errors.add(frame);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package sk.stigo.tensorflowliteocr.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TextRecognizerTest {
+    private static final int OUTPUT_STEPS = 4;
+
+    @Test
+    public void recognizeBatch_runsCropsOneByOneWhenAllocationRejectsTheBatch() {
+        FixedBatchModel model = new FixedBatchModel();
+        TextRecognizer recognizer = new TextRecognizer(model, Quantization.FLOAT32);
+
+        assertEquals(Arrays.asList("1", "2", "3"), recognizer.recognizeBatch(crops(recognizer, 1, 2, 3), 3));
+        assertArrayEquals(new int[]{3, 1}, model.getBatchSizes());
+        assertEquals(3, model.runs);
+
+        // The fallback sticks, so later batches do not try the resize again.
+        assertEquals(Arrays.asList("4", "5"), recognizer.recognizeBatch(crops(recognizer, 4, 5), 2));
+        assertArrayEquals(new int[]{3, 1}, model.getBatchSizes());
+    }
+
+    // Each crop starts with the label the fake model outputs for it.
+    private static ByteBuffer crops(TextRecognizer recognizer, int... labels) {
+        ByteBuffer crops = recognizer.getInputBuffer(labels.length);
+        for (int i = 0; i < labels.length; i++) {
+            crops.putFloat(i * recognizer.getCropSizeBytes(), labels[i]);
+        }
+        return crops;
+    }
+
+    // A model whose batch dimension is fixed at 1, so allocating any other fails.
+    private static class FixedBatchModel implements TextRecognizer.Model {
+        private final List<Integer> batchSizes = new ArrayList<>();
+        private int batchSize = 1;
+        private int runs;
+
+        @Override
+        public int reshape(int[] inputShape) {
+            batchSizes.add(inputShape[0]);
+            batchSize = inputShape[0];
+            if (batchSize != 1) {
+                throw new IllegalStateException("Cannot allocate a batch of " + batchSize);
+            }
+            return OUTPUT_STEPS;
+        }
+
+        @Override
+        public void run(ByteBuffer input, ByteBuffer output) {
+            assertEquals(1, batchSize);
+            output.putLong(0, (long) input.getFloat(0));
+            output.putLong(8, -1L);
+            runs++;
+        }
+
+        int[] getBatchSizes() {
+            int[] sizes = new int[batchSizes.size()];
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = batchSizes.get(i);
+            }
+            return sizes;
+        }
+    }
+}